@@ -0,0 +1,253 @@
+package com.spring_stream_backend.benchmark;
+
+import com.spring_stream_backend.repository.VideoRepository;
+import com.spring_stream_backend.service.DirectBufferPool;
+import com.spring_stream_backend.service.FixedChunkSizePolicy;
+import com.spring_stream_backend.service.MappedSegmentCache;
+import com.spring_stream_backend.service.MappedVideoStore;
+import com.spring_stream_backend.service.StorageVolumes;
+import com.spring_stream_backend.service.VideoCatalog;
+import com.spring_stream_backend.service.VideoStreamingService;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpOutputMessage;
+import org.springframework.http.HttpRange;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.http.converter.ResourceHttpMessageConverter;
+import org.springframework.http.converter.ResourceRegionHttpMessageConverter;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.util.FileSystemUtils;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.lang.reflect.Proxy;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.ThreadLocalRandom;
+
+/**
+ * Serves the same ranges through each streaming strategy of {@link VideoStreamingService}.
+ * Response bodies are written the way Spring MVC would write them, into a sink that only counts bytes.
+ * Run through {@link StreamingBenchmarkRunner} to get throughput, latency percentiles and allocation per GB.
+ */
+@Fork(1)
+@Warmup(iterations = 3, time = 2)
+@Measurement(iterations = 5, time = 2)
+public class StreamingBenchmark {
+
+    private static final int RANGES_PER_FILE = 64;
+
+    @State(Scope.Benchmark)
+    public static class Video {
+
+        @Param({"4KB", "64KB", "1MB", "full"})
+        public String range;
+
+        @Param({"8MB", "256MB"})
+        public String fileSize;
+
+        Path root;
+        VideoStreamingService service;
+        String fileName;
+        long fileLength;
+        long rangeLength;
+        String[] rangeHeaders;
+
+        @Setup(Level.Trial)
+        public void setUp() throws IOException {
+            fileLength = parseSize(fileSize);
+            rangeLength = "full".equals(range) ? fileLength : parseSize(range);
+            fileName = "bench-" + fileSize + ".mp4";
+
+            // The generated file goes on a video volume of its own
+            root = Files.createTempDirectory("stream-bench");
+            Path videos = Files.createDirectories(root.resolve("videos"));
+            writeRandomFile(videos.resolve(fileName), fileLength);
+
+            service = new VideoStreamingService(
+                    new VideoCatalog(noDatabase(), new MappedVideoStore(
+                            new StorageVolumes(List.of(videos)),
+                            new DirectBufferPool(64 * 1024, 256),
+                            new MappedSegmentCache(4 * 1024 * 1024, 1024L * 1024 * 1024)), 16, 5000),
+                    new FixedChunkSizePolicy(Long.MAX_VALUE)); // let the requested range decide the size
+
+            rangeHeaders = new String[RANGES_PER_FILE];
+            for (int i = 0; i < RANGES_PER_FILE; i++) {
+                long start = rangeLength >= fileLength ? 0 : ThreadLocalRandom.current().nextLong(fileLength - rangeLength);
+                rangeHeaders[i] = "bytes=" + start + "-" + (start + rangeLength - 1);
+            }
+        }
+
+        @TearDown(Level.Trial)
+        public void tearDown() throws IOException {
+            FileSystemUtils.deleteRecursively(root);
+        }
+    }
+
+    @State(Scope.Thread)
+    public static class Client {
+
+        int next;
+        CountingOutputStream sink;
+
+        @Setup(Level.Trial)
+        public void setUp() {
+            sink = new CountingOutputStream();
+        }
+
+        // Fresh headers per response, like the ones Spring MVC hands to a message converter
+        HttpOutputMessage outputMessage() {
+            HttpHeaders headers = new HttpHeaders();
+            return new HttpOutputMessage() {
+                @Override
+                public OutputStream getBody() {
+                    return sink;
+                }
+
+                @Override
+                public HttpHeaders getHeaders() {
+                    return headers;
+                }
+            };
+        }
+
+        String nextRange(Video video) {
+            next = (next + 1) % RANGES_PER_FILE;
+            return video.rangeHeaders[next];
+        }
+    }
+
+    @Benchmark
+    public long streamIo(Video video, Client client) throws IOException {
+        MockHttpServletResponse response = new CountingServletResponse(client.sink);
+        video.service.streamVideoIo(video.fileName, client.nextRange(video), response);
+        return client.sink.count;
+    }
+
+    @Benchmark
+    public long streamNio(Video video, Client client) throws IOException {
+        ResponseEntity<Resource> entity = video.service.streamVideoNio(video.fileName, client.nextRange(video), null);
+        new ResourceHttpMessageConverter().write(entity.getBody(), MediaType.APPLICATION_OCTET_STREAM, client.outputMessage());
+        return client.sink.count;
+    }
+
+    @Benchmark
+    public long streamResourceRegion(Video video, Client client) throws IOException {
+        HttpHeaders headers = new HttpHeaders();
+        headers.setRange(HttpRange.parseRanges(client.nextRange(video)));
+        ResponseEntity<ResourceRegion> entity = video.service.streamVideo(video.fileName, headers, null);
+        new ResourceRegionHttpMessageConverter().write(entity.getBody(), null, MediaType.APPLICATION_OCTET_STREAM, client.outputMessage());
+        return client.sink.count;
+    }
+
+    @Benchmark
+    public long streamZeroCopy(Video video, Client client) throws IOException {
+        // MockHttpServletRequest has no sendfile support, so this measures the transferTo fallback
+        MockHttpServletResponse response = new CountingServletResponse(client.sink);
+        video.service.streamVideoZeroCopy(video.fileName, client.nextRange(video), new MockHttpServletRequest(), response);
+        return client.sink.count;
+    }
+
+    static long parseSize(String size) {
+        if (size.endsWith("KB")) {
+            return Long.parseLong(size.substring(0, size.length() - 2)) * 1024;
+        }
+        if (size.endsWith("MB")) {
+            return Long.parseLong(size.substring(0, size.length() - 2)) * 1024 * 1024;
+        }
+        return Long.parseLong(size);
+    }
+
+    private static void writeRandomFile(Path path, long length) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocate(1024 * 1024);
+        try (FileChannel channel = FileChannel.open(path, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            long written = 0;
+            while (written < length) {
+                ThreadLocalRandom.current().nextBytes(buffer.array());
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - written));
+                written += channel.write(buffer);
+            }
+        }
+    }
+
+    /**
+     * Discards everything written to it and only keeps a byte count.
+     */
+    static final class CountingOutputStream extends ServletOutputStream {
+
+        long count;
+
+        @Override
+        public void write(int b) {
+            count++;
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) {
+            count += len;
+        }
+
+        @Override
+        public void close() {
+            // the sink is reused across invocations
+        }
+
+        @Override
+        public boolean isReady() {
+            return true;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            throw new UnsupportedOperationException();
+        }
+    }
+
+    private static final class CountingServletResponse extends MockHttpServletResponse {
+
+        private final CountingOutputStream sink;
+
+        private CountingServletResponse(CountingOutputStream sink) {
+            this.sink = sink;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() {
+            return sink;
+        }
+    }
+
+    // No database in the benchmark, the video is described from the store once and then served from the catalog cache
+    static VideoRepository noDatabase() {
+        return (VideoRepository) Proxy.newProxyInstance(VideoRepository.class.getClassLoader(), new Class<?>[]{VideoRepository.class},
+                (proxy, method, args) -> switch (method.getName()) {
+                    case "findById" -> Optional.empty();
+                    case "save" -> args[0];
+                    default -> throw new UnsupportedOperationException(method.getName());
+                });
+    }
+
+    static long bytesPerOperation(String range, String fileSize) {
+        return "full".equals(range) ? parseSize(fileSize) : parseSize(range);
+    }
+}
@@ -0,0 +1,82 @@
+package com.spring_stream_backend.benchmark;
+
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.infra.BenchmarkParams;
+import org.openjdk.jmh.profile.GCProfiler;
+import org.openjdk.jmh.results.Result;
+import org.openjdk.jmh.results.RunResult;
+import org.openjdk.jmh.runner.Runner;
+import org.openjdk.jmh.runner.RunnerException;
+import org.openjdk.jmh.runner.options.CommandLineOptionException;
+import org.openjdk.jmh.runner.options.CommandLineOptions;
+import org.openjdk.jmh.runner.options.Options;
+import org.openjdk.jmh.runner.options.OptionsBuilder;
+import org.openjdk.jmh.util.Statistics;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link StreamingBenchmark} at several concurrency levels and prints one line per
+ * strategy, range size and file size with MB/s, latency percentiles and bytes allocated per GB served.
+ * Extra JMH command line options (e.g. {@code -p range=1MB}) are passed through.
+ */
+public class StreamingBenchmarkRunner {
+
+    private static final int[] THREAD_COUNTS = {1, 4, 16};
+    private static final double GB = 1024.0 * 1024 * 1024;
+    private static final double MB = 1024.0 * 1024;
+
+    public static void main(String[] args) throws RunnerException, CommandLineOptionException {
+        CommandLineOptions commandLine = new CommandLineOptions(args);
+        List<RunResult> results = new ArrayList<>();
+        for (int threads : THREAD_COUNTS) {
+            Options options = new OptionsBuilder()
+                    .parent(commandLine)
+                    .include(StreamingBenchmark.class.getName())
+                    .mode(Mode.Throughput)
+                    .mode(Mode.SampleTime)
+                    .timeUnit(TimeUnit.MICROSECONDS)
+                    .threads(threads)
+                    .addProfiler(GCProfiler.class)
+                    .build();
+            results.addAll(new Runner(options).run());
+        }
+        report(results);
+    }
+
+    // Older JMH versions prefix profiler results with a middle dot
+    private static Result<?> secondaryResult(RunResult result, String label) {
+        Result<?> secondary = result.getSecondaryResults().get(label);
+        return secondary != null ? secondary : result.getSecondaryResults().get("\u00b7" + label);
+    }
+
+    private static void report(Collection<RunResult> results) {
+        System.out.printf("%n%-22s %6s %6s %7s %12s %10s %10s %10s %16s%n",
+                "strategy", "range", "file", "threads", "MB/s", "p50 us", "p99 us", "p99.9 us", "alloc B/GB");
+        for (RunResult result : results) {
+            BenchmarkParams params = result.getParams();
+            String strategy = params.getBenchmark().substring(params.getBenchmark().lastIndexOf('.') + 1);
+            String range = params.getParam("range");
+            String fileSize = params.getParam("fileSize");
+            long bytesPerOp = StreamingBenchmark.bytesPerOperation(range, fileSize);
+
+            Result<?> allocation = secondaryResult(result, "gc.alloc.rate.norm");
+            String allocPerGb = allocation == null ? "n/a" : String.format("%.0f", allocation.getScore() * (GB / bytesPerOp));
+
+            if (params.getMode() == Mode.Throughput) {
+                // ops/us -> MB/s
+                double mbPerSecond = result.getPrimaryResult().getScore() * 1_000_000 * bytesPerOp / MB;
+                System.out.printf("%-22s %6s %6s %7d %12.1f %10s %10s %10s %16s%n",
+                        strategy, range, fileSize, params.getThreads(), mbPerSecond, "", "", "", allocPerGb);
+            } else if (params.getMode() == Mode.SampleTime) {
+                Statistics latency = result.getPrimaryResult().getStatistics();
+                System.out.printf("%-22s %6s %6s %7d %12s %10.1f %10.1f %10.1f %16s%n",
+                        strategy, range, fileSize, params.getThreads(), "",
+                        latency.getPercentile(50), latency.getPercentile(99), latency.getPercentile(99.9), allocPerGb);
+            }
+        }
+    }
+}
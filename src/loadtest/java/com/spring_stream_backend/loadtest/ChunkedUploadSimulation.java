@@ -0,0 +1,101 @@
+package com.spring_stream_backend.loadtest;
+
+import java.io.IOException;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.List;
+import java.util.UUID;
+import java.util.function.BooleanSupplier;
+
+/**
+ * Uploads videos one after another through {@code /api/upload/video/chunk-upload}, chunk by chunk, and merges
+ * each with {@code complete-chunk-upload}. Every upload gets a new name, so the app keeps them all; run the
+ * load test against a disposable storage location.
+ */
+class ChunkedUploadSimulation implements Runnable {
+
+    static final String CHUNK_UPLOAD = "chunk-upload";
+    static final String COMPLETE_CHUNK_UPLOAD = "complete-chunk-upload";
+    private static final long RETRY_MILLIS = 100; // Pause after a failure, a stopped app is not hammered
+    private static final Duration TIMEOUT = Duration.ofMinutes(2);
+
+    private final HttpClient client;
+    private final LoadTestOptions options;
+    private final LatencyRecorder recorder;
+    private final BooleanSupplier running;
+    private final byte[] chunk;
+
+    ChunkedUploadSimulation(HttpClient client, LoadTestOptions options, LatencyRecorder recorder, BooleanSupplier running, byte[] chunk) {
+        this.client = client;
+        this.options = options;
+        this.recorder = recorder;
+        this.running = running;
+        this.chunk = chunk;
+    }
+
+    @Override
+    public void run() {
+        while (running.getAsBoolean()) {
+            String fileName = "loadtest-" + UUID.randomUUID();
+            try {
+                for (int chunkIndex = 1; chunkIndex <= options.uploadChunks(); chunkIndex++) {
+                    send(CHUNK_UPLOAD, chunkRequest(fileName, chunkIndex), chunk.length);
+                }
+                send(COMPLETE_CHUNK_UPLOAD, HttpRequest.newBuilder(options.resolve("/api/upload/video/complete-chunk-upload?fileName=" + fileName))
+                        .timeout(TIMEOUT)
+                        .POST(HttpRequest.BodyPublishers.noBody())
+                        .build(), 0);
+            } catch (IOException e) {
+                // counted, go on with the next upload
+                if (!pause(RETRY_MILLIS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // False if interrupted while pausing
+    private static boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    private HttpRequest chunkRequest(String fileName, int chunkIndex) {
+        String boundary = "loadtest-" + UUID.randomUUID();
+        byte[] head = ("--" + boundary + "\r\n"
+                + "Content-Disposition: form-data; name=\"file\"; filename=\"chunk-" + chunkIndex + ".mp4\"\r\n"
+                + "Content-Type: video/mp4\r\n\r\n").getBytes(StandardCharsets.US_ASCII);
+        byte[] tail = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        return HttpRequest.newBuilder(options.resolve("/api/upload/video/chunk-upload?chunkIndex=" + chunkIndex
+                        + "&totalChunks=" + options.uploadChunks() + "&fileName=" + fileName))
+                .header("Content-Type", "multipart/form-data; boundary=" + boundary)
+                .timeout(TIMEOUT)
+                .POST(HttpRequest.BodyPublishers.ofByteArrays(List.of(head, chunk, tail)))
+                .build();
+    }
+
+    private void send(String operation, HttpRequest request, long bytes) throws IOException, InterruptedException {
+        long started = System.nanoTime();
+        try {
+            HttpResponse<String> response = client.send(request, HttpResponse.BodyHandlers.ofString());
+            if (response.statusCode() != 200) {
+                throw new IOException("Status " + response.statusCode() + ": " + response.body());
+            }
+            recorder.record(operation, System.nanoTime() - started, bytes);
+        } catch (IOException | RuntimeException e) {
+            recorder.failed(operation);
+            throw e instanceof IOException io ? io : new IOException(e);
+        }
+    }
+}
@@ -0,0 +1,78 @@
+package com.spring_stream_backend.loadtest;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentSkipListMap;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Collects the latency, bytes and failures of every request, per operation.
+ * Every sample is kept, so percentiles are exact; a run of millions of requests still needs only a few MB.
+ */
+class LatencyRecorder {
+
+    private final Map<String, Operation> operations = new ConcurrentSkipListMap<>();
+
+    /**
+     * @param operation The operation, e.g. {@code stream seek} or {@code chunk-upload}.
+     * @param nanos     Nanoseconds from sending the request to reading the end of the response.
+     * @param bytes     Body bytes sent or received.
+     */
+    void record(String operation, long nanos, long bytes) {
+        operations.computeIfAbsent(operation, name -> new Operation()).record(nanos, bytes);
+    }
+
+    void failed(String operation) {
+        operations.computeIfAbsent(operation, name -> new Operation()).failures.incrementAndGet();
+    }
+
+    /**
+     * @param seconds The length of the run the samples were taken over.
+     * @return One summary per operation, in name order.
+     */
+    Map<String, Summary> summarize(double seconds) {
+        Map<String, Summary> summaries = new ConcurrentSkipListMap<>();
+        operations.forEach((name, operation) -> summaries.put(name, operation.summarize(seconds)));
+        return summaries;
+    }
+
+    /**
+     * Requests per second, MB/s and latency percentiles in milliseconds of one operation.
+     */
+    record Summary(long requests, long failures, double requestsPerSecond, double megabytesPerSecond,
+                   double p50, double p99, double p999, double max) {
+    }
+
+    private static final class Operation {
+
+        private long[] samples = new long[1024];
+        private int count;
+        private final AtomicLong bytes = new AtomicLong();
+        private final AtomicLong failures = new AtomicLong();
+
+        private synchronized void record(long nanos, long bytes) {
+            if (count == samples.length) {
+                samples = Arrays.copyOf(samples, count * 2);
+            }
+            samples[count++] = nanos;
+            this.bytes.addAndGet(bytes);
+        }
+
+        private synchronized Summary summarize(double seconds) {
+            long[] sorted = Arrays.copyOf(samples, count);
+            Arrays.sort(sorted);
+            return new Summary(count, failures.get(), count / seconds, bytes.get() / seconds / (1024 * 1024),
+                    percentile(sorted, 50), percentile(sorted, 99), percentile(sorted, 99.9),
+                    sorted.length == 0 ? 0 : sorted[sorted.length - 1] / 1e6);
+        }
+
+        // Nearest rank, in milliseconds
+        private static double percentile(long[] sorted, double percentile) {
+            if (sorted.length == 0) {
+                return 0;
+            }
+            int rank = (int) Math.ceil(percentile / 100 * sorted.length);
+            return sorted[Math.max(0, rank - 1)] / 1e6;
+        }
+    }
+}
@@ -0,0 +1,71 @@
+package com.spring_stream_backend.loadtest;
+
+import java.net.URI;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Set;
+
+/**
+ * Settings of a load test run, given as {@code key=value} arguments. Unset keys keep their default.
+ *
+ * <ul>
+ *     <li>{@code url}, where the app runs (http://localhost:8081)</li>
+ *     <li>{@code video}, the video the players watch, it must be streamable by the app (sample.mp4)</li>
+ *     <li>{@code players}, concurrent players (100)</li>
+ *     <li>{@code uploaders}, concurrent chunked uploads, 0 to only stream (4)</li>
+ *     <li>{@code duration}, seconds to run for (60)</li>
+ *     <li>{@code range}, bytes asked for by each sequential request, the region size the app caps responses at (1048576)</li>
+ *     <li>{@code seek}, chance that a player's next request jumps to a random position (0.05)</li>
+ *     <li>{@code abandon}, chance that a player drops a response half read and opens the video again (0.02)</li>
+ *     <li>{@code think}, milliseconds a player waits between requests, 0 to request back to back (0)</li>
+ *     <li>{@code upload-chunks} and {@code upload-chunk-size}, the shape of each upload (4 chunks of 1048576 bytes)</li>
+ *     <li>{@code report}, a CSV file every run appends its results to, for comparing runs (target/loadtest-results.csv)</li>
+ * </ul>
+ */
+record LoadTestOptions(URI baseUrl, String video, int players, int uploaders, int durationSeconds, long rangeSize,
+                       double seekProbability, double abandonProbability, long thinkMillis,
+                       int uploadChunks, int uploadChunkSize, Path report) {
+
+    private static final Set<String> KEYS = Set.of("url", "video", "players", "uploaders", "duration", "range", "seek",
+            "abandon", "think", "upload-chunks", "upload-chunk-size", "report");
+
+    /**
+     * @param args {@code key=value} pairs, several may share one argument separated by spaces.
+     * @return The options of the run.
+     * @throws IllegalArgumentException If an argument is not a known {@code key=value} pair.
+     */
+    static LoadTestOptions parse(String... args) {
+        Map<String, String> values = new HashMap<>();
+        for (String arg : args) {
+            for (String pair : arg.trim().split("\\s+")) {
+                if (pair.isEmpty()) {
+                    continue;
+                }
+                int equals = pair.indexOf('=');
+                if (equals < 0 || !KEYS.contains(pair.substring(0, equals))) {
+                    throw new IllegalArgumentException("Unknown option " + pair + ", expected key=value with a key of " + KEYS);
+                }
+                values.put(pair.substring(0, equals), pair.substring(equals + 1));
+            }
+        }
+        String url = values.getOrDefault("url", "http://localhost:8081");
+        return new LoadTestOptions(
+                URI.create(url.endsWith("/") ? url.substring(0, url.length() - 1) : url),
+                values.getOrDefault("video", "sample.mp4"),
+                Integer.parseInt(values.getOrDefault("players", "100")),
+                Integer.parseInt(values.getOrDefault("uploaders", "4")),
+                Integer.parseInt(values.getOrDefault("duration", "60")),
+                Long.parseLong(values.getOrDefault("range", "1048576")),
+                Double.parseDouble(values.getOrDefault("seek", "0.05")),
+                Double.parseDouble(values.getOrDefault("abandon", "0.02")),
+                Long.parseLong(values.getOrDefault("think", "0")),
+                Integer.parseInt(values.getOrDefault("upload-chunks", "4")),
+                Integer.parseInt(values.getOrDefault("upload-chunk-size", "1048576")),
+                Path.of(values.getOrDefault("report", "target/loadtest-results.csv")));
+    }
+
+    URI resolve(String path) {
+        return URI.create(baseUrl + path);
+    }
+}
@@ -0,0 +1,95 @@
+package com.spring_stream_backend.loadtest;
+
+import java.io.IOException;
+import java.io.PrintWriter;
+import java.net.http.HttpClient;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.time.Duration;
+import java.time.Instant;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Runs {@link PlayerSimulation players} and {@link ChunkedUploadSimulation uploads} against a running app for a
+ * fixed time, then prints requests/s, MB/s and p50/p99/p99.9 latency per operation and appends the same rows
+ * to a CSV file, so runs before and after a change can be compared. See {@link LoadTestOptions} for the arguments.
+ */
+public class LoadTestRunner {
+
+    private static final Duration STOP_GRACE = Duration.ofSeconds(30);
+
+    private static volatile boolean running = true;
+
+    public static void main(String[] args) throws IOException, InterruptedException {
+        LoadTestOptions options = LoadTestOptions.parse(args);
+        LatencyRecorder recorder = new LatencyRecorder();
+        byte[] chunk = new byte[options.uploadChunkSize()];
+        ThreadLocalRandom.current().nextBytes(chunk);
+
+        System.out.printf("%d players on %s and %d uploaders against %s for %d s%n",
+                options.players(), options.video(), options.uploaders(), options.baseUrl(), options.durationSeconds());
+        // One virtual thread per player and uploader, the client keeps its own executor so it can finish the
+        // requests in flight while the simulations stop
+        ExecutorService threads = Executors.newVirtualThreadPerTaskExecutor();
+        HttpClient client = HttpClient.newBuilder()
+                .version(HttpClient.Version.HTTP_1_1)
+                .connectTimeout(Duration.ofSeconds(10))
+                .build();
+        for (int player = 0; player < options.players(); player++) {
+            threads.execute(new PlayerSimulation(client, options, recorder, () -> running, player));
+        }
+        for (int uploader = 0; uploader < options.uploaders(); uploader++) {
+            threads.execute(new ChunkedUploadSimulation(client, options, recorder, () -> running, chunk));
+        }
+
+        long started = System.nanoTime();
+        Thread.sleep(TimeUnit.SECONDS.toMillis(options.durationSeconds()));
+        running = false;
+        double seconds = (System.nanoTime() - started) / 1e9;
+        threads.shutdown();
+        if (!threads.awaitTermination(STOP_GRACE.toSeconds(), TimeUnit.SECONDS)) {
+            threads.shutdownNow();
+        }
+
+        Map<String, LatencyRecorder.Summary> summaries = recorder.summarize(seconds);
+        print(summaries);
+        append(options, summaries);
+    }
+
+    private static void print(Map<String, LatencyRecorder.Summary> summaries) {
+        System.out.printf("%n%-22s %10s %8s %10s %10s %10s %10s %10s %10s%n",
+                "operation", "requests", "failed", "req/s", "MB/s", "p50 ms", "p99 ms", "p99.9 ms", "max ms");
+        summaries.forEach((operation, summary) -> System.out.printf("%-22s %10d %8d %10.1f %10.1f %10.1f %10.1f %10.1f %10.1f%n",
+                operation, summary.requests(), summary.failures(), summary.requestsPerSecond(), summary.megabytesPerSecond(),
+                summary.p50(), summary.p99(), summary.p999(), summary.max()));
+    }
+
+    // One row per operation and run, the header is written when the file is created
+    private static void append(LoadTestOptions options, Map<String, LatencyRecorder.Summary> summaries) throws IOException {
+        Path report = options.report();
+        if (report.getParent() != null) {
+            Files.createDirectories(report.getParent());
+        }
+        boolean created = Files.notExists(report);
+        List<String> lines = new ArrayList<>();
+        if (created) {
+            lines.add("run,players,uploaders,range,operation,requests,failures,requests_per_second,mb_per_second,p50_ms,p99_ms,p999_ms,max_ms");
+        }
+        String run = Instant.now().toString();
+        summaries.forEach((operation, summary) -> lines.add(String.format(Locale.ROOT, "%s,%d,%d,%d,%s,%d,%d,%.2f,%.2f,%.3f,%.3f,%.3f,%.3f",
+                run, options.players(), options.uploaders(), options.rangeSize(), operation, summary.requests(), summary.failures(),
+                summary.requestsPerSecond(), summary.megabytesPerSecond(), summary.p50(), summary.p99(), summary.p999(), summary.max())));
+        try (PrintWriter writer = new PrintWriter(Files.newBufferedWriter(report, StandardOpenOption.CREATE, StandardOpenOption.APPEND))) {
+            lines.forEach(writer::println);
+        }
+        System.out.println("\nAppended to " + report.toAbsolutePath());
+    }
+}
@@ -0,0 +1,154 @@
+package com.spring_stream_backend.loadtest;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.net.URI;
+import java.net.URLEncoder;
+import java.net.http.HttpClient;
+import java.net.http.HttpRequest;
+import java.net.http.HttpResponse;
+import java.nio.charset.StandardCharsets;
+import java.time.Duration;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.function.BooleanSupplier;
+
+/**
+ * One player watching a video the way browsers and players request it from {@code /api/stream/videos/{videoName}}:
+ * an open-ended range to open it, then the next region after each one the app returned, now and then a seek to
+ * a random position (open-ended again) or a response abandoned half read, after which the video is opened anew.
+ * A player that reaches the end opens the video again.
+ */
+class PlayerSimulation implements Runnable {
+
+    static final String OPEN = "stream open";
+    static final String SEQUENTIAL = "stream sequential";
+    static final String SEEK = "stream seek";
+    static final String ABANDONED = "stream abandoned";
+    private static final long RETRY_MILLIS = 100; // Pause after a failure, a stopped app is not hammered
+    private static final Duration TIMEOUT = Duration.ofSeconds(30);
+
+    private final HttpClient client;
+    private final LoadTestOptions options;
+    private final LatencyRecorder recorder;
+    private final BooleanSupplier running;
+    private final URI videoUri;
+    private final String clientId;
+    private final byte[] buffer = new byte[64 * 1024];
+
+    PlayerSimulation(HttpClient client, LoadTestOptions options, LatencyRecorder recorder, BooleanSupplier running, int player) {
+        this.client = client;
+        this.options = options;
+        this.recorder = recorder;
+        this.running = running;
+        this.videoUri = options.resolve("/api/stream/videos/" + URLEncoder.encode(options.video(), StandardCharsets.UTF_8));
+        this.clientId = "loadtest-player-" + player; // Each player gets its own adaptive region size
+    }
+
+    @Override
+    public void run() {
+        ThreadLocalRandom random = ThreadLocalRandom.current();
+        long length = -1;
+        long position = 0;
+        while (running.getAsBoolean()) {
+            try {
+                if (length < 0 || position >= length) {
+                    ContentRange range = fetch(OPEN, "bytes=0-", false);
+                    length = range.length();
+                    position = range.end() + 1;
+                } else {
+                    double dice = random.nextDouble();
+                    if (dice < options.abandonProbability()) {
+                        fetch(ABANDONED, "bytes=" + position + "-", true);
+                        length = -1;
+                    } else if (dice < options.abandonProbability() + options.seekProbability()) {
+                        position = fetch(SEEK, "bytes=" + random.nextLong(length) + "-", false).end() + 1;
+                    } else {
+                        position = fetch(SEQUENTIAL, "bytes=" + position + "-" + (position + options.rangeSize() - 1), false).end() + 1;
+                    }
+                }
+                if (options.thinkMillis() > 0) {
+                    Thread.sleep(options.thinkMillis());
+                }
+            } catch (IOException e) {
+                length = -1; // start over, as a player would after an error
+                if (!pause(RETRY_MILLIS)) {
+                    return;
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                return;
+            }
+        }
+    }
+
+    // False if interrupted while pausing
+    private static boolean pause(long millis) {
+        try {
+            Thread.sleep(millis);
+            return true;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return false;
+        }
+    }
+
+    /**
+     * Requests a range and reads the response, all of it or half of it when abandoning.
+     *
+     * @return The range the app answered with.
+     * @throws IOException If the request failed or was not answered with a partial response, it is counted as a failure.
+     */
+    private ContentRange fetch(String operation, String range, boolean abandon) throws IOException, InterruptedException {
+        HttpRequest request = HttpRequest.newBuilder(videoUri)
+                .header("Range", range)
+                .header("X-Client-Id", clientId)
+                .timeout(TIMEOUT)
+                .GET()
+                .build();
+        long started = System.nanoTime();
+        try {
+            HttpResponse<InputStream> response = client.send(request, HttpResponse.BodyHandlers.ofInputStream());
+            ContentRange contentRange;
+            long read = 0;
+            try (InputStream body = response.body()) {
+                if (response.statusCode() != 206) {
+                    throw new IOException("Status " + response.statusCode() + " for " + range);
+                }
+                contentRange = ContentRange.parse(response.headers().firstValue("Content-Range")
+                        .orElseThrow(() -> new IOException("No Content-Range for " + range)));
+                long toRead = abandon ? (contentRange.end() - contentRange.start() + 1) / 2 : Long.MAX_VALUE;
+                while (read < toRead) {
+                    int n = body.read(buffer, 0, (int) Math.min(buffer.length, toRead - read));
+                    if (n < 0) {
+                        break;
+                    }
+                    read += n;
+                }
+                // Closing an unfinished body drops the connection, like a player that navigated away
+            }
+            recorder.record(operation, System.nanoTime() - started, read);
+            return contentRange;
+        } catch (IOException | RuntimeException e) {
+            recorder.failed(operation);
+            throw e instanceof IOException io ? io : new IOException(e);
+        }
+    }
+
+    /**
+     * The {@code bytes start-end/length} of a partial response.
+     */
+    record ContentRange(long start, long end, long length) {
+
+        static ContentRange parse(String header) throws IOException {
+            try {
+                int dash = header.indexOf('-');
+                int slash = header.indexOf('/');
+                return new ContentRange(Long.parseLong(header.substring("bytes ".length(), dash).trim()),
+                        Long.parseLong(header.substring(dash + 1, slash).trim()),
+                        Long.parseLong(header.substring(slash + 1).trim()));
+            } catch (RuntimeException e) {
+                throw new IOException("Malformed Content-Range: " + header, e);
+            }
+        }
+    }
+}
@@ -0,0 +1,159 @@
+package com.spring_stream_backend.config;
+
+import com.spring_stream_backend.service.BandwidthScheduler;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletRequestWrapper;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.web.filter.OncePerRequestFilter;
+
+import java.io.IOException;
+
+/**
+ * Holds every streaming response to the limits of the {@link BandwidthScheduler}.
+ * Blocking writes wait for their bytes before passing them on; on virtual threads a waiting stream costs no
+ * platform thread. While any limit is set the connector's sendfile support is hidden from the handlers, so
+ * zero-copy ranges are written through the shaped stream as well. Non-blocking writes (the reactive endpoint)
+ * must not block a container thread: they are passed on as they are, and the writer shapes itself with the flow
+ * it finds under {@link BandwidthScheduler#FLOW_ATTRIBUTE}.
+ */
+public class BandwidthShapingFilter extends OncePerRequestFilter {
+
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+
+    private final BandwidthScheduler bandwidthScheduler;
+
+    public BandwidthShapingFilter(BandwidthScheduler bandwidthScheduler) {
+        this.bandwidthScheduler = bandwidthScheduler;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        BandwidthScheduler.Flow flow = bandwidthScheduler.open(BandwidthScheduler.clientKey(request));
+        HttpServletRequest shapedRequest = bandwidthScheduler.isShaping() ? new NoSendfileRequest(request) : request;
+        request.setAttribute(BandwidthScheduler.FLOW_ATTRIBUTE, flow);
+        try {
+            filterChain.doFilter(shapedRequest, new ShapedResponse(response, flow));
+        } finally {
+            if (request.isAsyncStarted()) {
+                request.getAsyncContext().addListener(new FlowClosingListener(flow));
+            } else {
+                flow.close();
+            }
+        }
+    }
+
+    private static final class NoSendfileRequest extends HttpServletRequestWrapper {
+
+        private NoSendfileRequest(HttpServletRequest request) {
+            super(request);
+        }
+
+        @Override
+        public Object getAttribute(String name) {
+            return SENDFILE_SUPPORT_ATTR.equals(name) ? null : super.getAttribute(name);
+        }
+    }
+
+    private static final class FlowClosingListener implements AsyncListener {
+
+        private final BandwidthScheduler.Flow flow;
+
+        private FlowClosingListener(BandwidthScheduler.Flow flow) {
+            this.flow = flow;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            flow.close();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            flow.close();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            flow.close();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // still streaming
+        }
+    }
+
+    static final class ShapedResponse extends HttpServletResponseWrapper {
+
+        private final BandwidthScheduler.Flow flow;
+        private ServletOutputStream outputStream;
+
+        ShapedResponse(HttpServletResponse response, BandwidthScheduler.Flow flow) {
+            super(response);
+            this.flow = flow;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new ShapedOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        private final class ShapedOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream delegate;
+            private volatile boolean nonBlocking;
+
+            private ShapedOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                if (!nonBlocking) {
+                    flow.acquire(1);
+                }
+                delegate.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                if (!nonBlocking) {
+                    flow.acquire(len);
+                }
+                delegate.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                nonBlocking = true;
+                delegate.setWriteListener(writeListener);
+            }
+        }
+    }
+}
@@ -0,0 +1,94 @@
+package com.spring_stream_backend.config;
+
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.servlet.HandlerInterceptor;
+
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Caps the number of requests in flight for one group of endpoints.
+ * With virtual threads the Tomcat pool no longer bounds concurrency, so this is what keeps
+ * a burst of streams or uploads from exhausting file handles, memory or S3 connections.
+ * Requests over the limit are rejected with 503 instead of queueing.
+ * A response handed to sendfile ({@code /stream-zc}) is written by the connector after the handler returns and
+ * releases its permit at that point, so those transfers are not counted; the connector's
+ * {@code server.tomcat.max-connections} is what bounds them.
+ */
+public class ConcurrencyLimitInterceptor implements HandlerInterceptor {
+
+    private final String name;
+    private final Semaphore permits;
+    private final String permitAttribute;
+
+    public ConcurrencyLimitInterceptor(String name, int limit) {
+        this.name = name;
+        this.permits = new Semaphore(limit);
+        this.permitAttribute = ConcurrencyLimitInterceptor.class.getName() + "." + name;
+    }
+
+    @Override
+    public boolean preHandle(HttpServletRequest request, HttpServletResponse response, Object handler) throws Exception {
+        if (!permits.tryAcquire()) {
+            response.setHeader(HttpHeaders.RETRY_AFTER, "1");
+            response.sendError(HttpServletResponse.SC_SERVICE_UNAVAILABLE, "Too many concurrent " + name + " requests.");
+            return false;
+        }
+        request.setAttribute(permitAttribute, Boolean.TRUE);
+        return true;
+    }
+
+    @Override
+    public void afterCompletion(HttpServletRequest request, HttpServletResponse response, Object handler, Exception ex) {
+        if (request.getAttribute(permitAttribute) == null) {
+            return;
+        }
+        request.removeAttribute(permitAttribute);
+        if (request.isAsyncStarted()) {
+            // Handlers that went async themselves (non-blocking streams) hold the permit until the response completes
+            request.getAsyncContext().addListener(new PermitReleasingListener());
+        } else {
+            // Also the point where a sendfile response is released, before the connector has written it
+            permits.release();
+        }
+    }
+
+    public int availablePermits() {
+        return permits.availablePermits();
+    }
+
+    private final class PermitReleasingListener implements AsyncListener {
+
+        private final AtomicBoolean released = new AtomicBoolean();
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            release();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // permit stays held
+        }
+
+        private void release() {
+            if (released.compareAndSet(false, true)) {
+                permits.release();
+            }
+        }
+    }
+}
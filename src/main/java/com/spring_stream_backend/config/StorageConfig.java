@@ -0,0 +1,20 @@
+package com.spring_stream_backend.config;
+
+import com.spring_stream_backend.service.StorageVolumes;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+
+@Configuration
+public class StorageConfig {
+
+    @Bean(StorageVolumes.VIDEOS)
+    public StorageVolumes videoVolumes(@Value("${video.storage.locations:${video.storage.location}}") String locations) {
+        return StorageVolumes.parse(locations);
+    }
+
+    @Bean(StorageVolumes.CHUNKS)
+    public StorageVolumes chunkVolumes(@Value("${file.chunk.storage.locations:${file.chunk.storage.location}}") String locations) {
+        return StorageVolumes.parse(locations);
+    }
+}
@@ -0,0 +1,183 @@
+package com.spring_stream_backend.config;
+
+import com.spring_stream_backend.service.StreamingMetrics;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.FilterChain;
+import jakarta.servlet.ServletException;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import jakarta.servlet.http.HttpServletResponseWrapper;
+import org.springframework.web.filter.OncePerRequestFilter;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Meters every streaming response: bytes served, time to first byte and streams in flight.
+ * The response's output stream is wrapped to count bytes as they are written, which works the same for
+ * byte arrays, resources, regions and non-blocking writes. Ranges handed to Tomcat's sendfile never pass
+ * through it and are counted from the sendfile attributes instead, with the handler's return as first byte.
+ * Responses of handlers that went async are recorded once the response completes.
+ */
+public class StreamMetricsFilter extends OncePerRequestFilter {
+
+    // Set by the zero-copy endpoint when Tomcat writes the range after the handler returns
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+    private static final String UNMATCHED = "unmatched";
+
+    private final StreamingMetrics streamingMetrics;
+
+    public StreamMetricsFilter(StreamingMetrics streamingMetrics) {
+        this.streamingMetrics = streamingMetrics;
+    }
+
+    @Override
+    protected void doFilterInternal(HttpServletRequest request, HttpServletResponse response, FilterChain filterChain)
+            throws ServletException, IOException {
+        MeteredResponse meteredResponse = new MeteredResponse(response, System.nanoTime());
+        streamingMetrics.streamStarted();
+        try {
+            filterChain.doFilter(request, meteredResponse);
+        } finally {
+            if (request.isAsyncStarted()) {
+                // Non-blocking streams keep writing after the handler returns
+                request.getAsyncContext().addListener(new CompletionListener(request, meteredResponse));
+            } else {
+                finished(request, meteredResponse);
+            }
+        }
+    }
+
+    private void finished(HttpServletRequest request, MeteredResponse response) {
+        long bytes = response.bytes;
+        long firstByteNanos = response.firstByteNanos;
+        if (bytes == 0 && request.getAttribute(SENDFILE_START_ATTR) instanceof Long start
+                && request.getAttribute(SENDFILE_END_ATTR) instanceof Long end) {
+            bytes = end - start;
+            firstByteNanos = System.nanoTime() - response.startNanos;
+        }
+        streamingMetrics.streamFinished(endpointOf(request), bytes, firstByteNanos);
+    }
+
+    // The handler's path pattern keeps the endpoint tag to a handful of values, whatever the video names
+    private static String endpointOf(HttpServletRequest request) {
+        Object pattern = request.getAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE);
+        return pattern != null ? pattern.toString() : UNMATCHED;
+    }
+
+    private final class CompletionListener implements AsyncListener {
+
+        private final HttpServletRequest request;
+        private final MeteredResponse response;
+        private final AtomicBoolean recorded = new AtomicBoolean();
+
+        private CompletionListener(HttpServletRequest request, MeteredResponse response) {
+            this.request = request;
+            this.response = response;
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            record();
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            record();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            record();
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // still streaming
+        }
+
+        private void record() {
+            if (recorded.compareAndSet(false, true)) {
+                finished(request, response);
+            }
+        }
+    }
+
+    /**
+     * Counts the body bytes and notes when the first one was written.
+     * Writes of one response never overlap, the fields only need to be visible to the thread that records them.
+     */
+    static final class MeteredResponse extends HttpServletResponseWrapper {
+
+        private final long startNanos;
+        private volatile long bytes;
+        private volatile long firstByteNanos = -1;
+        private ServletOutputStream outputStream;
+
+        MeteredResponse(HttpServletResponse response, long startNanos) {
+            super(response);
+            this.startNanos = startNanos;
+        }
+
+        @Override
+        public ServletOutputStream getOutputStream() throws IOException {
+            if (outputStream == null) {
+                outputStream = new MeteredOutputStream(super.getOutputStream());
+            }
+            return outputStream;
+        }
+
+        private void written(long length) {
+            if (firstByteNanos < 0 && length > 0) {
+                firstByteNanos = System.nanoTime() - startNanos;
+            }
+            bytes += length;
+        }
+
+        private final class MeteredOutputStream extends ServletOutputStream {
+
+            private final ServletOutputStream delegate;
+
+            private MeteredOutputStream(ServletOutputStream delegate) {
+                this.delegate = delegate;
+            }
+
+            @Override
+            public void write(int b) throws IOException {
+                written(1);
+                delegate.write(b);
+            }
+
+            @Override
+            public void write(byte[] b, int off, int len) throws IOException {
+                written(len);
+                delegate.write(b, off, len);
+            }
+
+            @Override
+            public void flush() throws IOException {
+                delegate.flush();
+            }
+
+            @Override
+            public void close() throws IOException {
+                delegate.close();
+            }
+
+            @Override
+            public boolean isReady() {
+                return delegate.isReady();
+            }
+
+            @Override
+            public void setWriteListener(WriteListener writeListener) {
+                delegate.setWriteListener(writeListener);
+            }
+        }
+    }
+}
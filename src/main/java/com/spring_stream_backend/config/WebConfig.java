@@ -0,0 +1,53 @@
+package com.spring_stream_backend.config;
+
+import com.spring_stream_backend.service.BandwidthScheduler;
+import com.spring_stream_backend.service.StreamingMetrics;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.web.servlet.FilterRegistrationBean;
+import org.springframework.context.annotation.Bean;
+import org.springframework.context.annotation.Configuration;
+import org.springframework.core.Ordered;
+import org.springframework.web.servlet.config.annotation.InterceptorRegistry;
+import org.springframework.web.servlet.config.annotation.WebMvcConfigurer;
+
+@Configuration
+public class WebConfig implements WebMvcConfigurer {
+
+    @Value("${video.concurrency.stream-limit}")
+    private int streamLimit;
+
+    @Value("${video.concurrency.upload-limit}")
+    private int uploadLimit;
+
+    @Value("${video.concurrency.s3-upload-limit}")
+    private int s3UploadLimit;
+
+    @Override
+    public void addInterceptors(InterceptorRegistry registry) {
+        registry.addInterceptor(new ConcurrencyLimitInterceptor("stream", streamLimit))
+                .addPathPatterns("/api/stream/**");
+        registry.addInterceptor(new ConcurrencyLimitInterceptor("upload", uploadLimit))
+                .addPathPatterns("/api/upload/video/**", "/api/file/**")
+                .excludePathPatterns("/api/upload/video");
+        registry.addInterceptor(new ConcurrencyLimitInterceptor("s3-upload", s3UploadLimit))
+                .addPathPatterns("/api/upload/video", "/api/upload/video-stream");
+    }
+
+    // Meters every response of the streaming endpoints, including the ones rejected or answered with 304
+    @Bean
+    public FilterRegistrationBean<StreamMetricsFilter> streamMetricsFilter(StreamingMetrics streamingMetrics) {
+        FilterRegistrationBean<StreamMetricsFilter> registration = new FilterRegistrationBean<>(new StreamMetricsFilter(streamingMetrics));
+        registration.addUrlPatterns("/api/stream/*");
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE - 1);
+        return registration;
+    }
+
+    // Inside the metrics filter, so time to first byte includes the wait for bandwidth
+    @Bean
+    public FilterRegistrationBean<BandwidthShapingFilter> bandwidthShapingFilter(BandwidthScheduler bandwidthScheduler) {
+        FilterRegistrationBean<BandwidthShapingFilter> registration = new FilterRegistrationBean<>(new BandwidthShapingFilter(bandwidthScheduler));
+        registration.addUrlPatterns("/api/stream/*");
+        registration.setOrder(Ordered.LOWEST_PRECEDENCE);
+        return registration;
+    }
+}
@@ -0,0 +1,77 @@
+package com.spring_stream_backend.controller;
+
+import com.spring_stream_backend.service.BandwidthScheduler;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.PutMapping;
+import org.springframework.web.bind.annotation.RequestBody;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.util.Map;
+
+// Changes the bandwidth limits of the streaming endpoints at runtime, running streams follow from their next quantum
+@RestController
+@RequestMapping("/api/bandwidth")
+public class BandwidthController {
+
+    private final BandwidthScheduler bandwidthScheduler;
+
+    public BandwidthController(BandwidthScheduler bandwidthScheduler) {
+        this.bandwidthScheduler = bandwidthScheduler;
+    }
+
+    @GetMapping
+    public ResponseEntity<BandwidthScheduler.Limits> getLimits() {
+        return ResponseEntity.ok(bandwidthScheduler.getLimits());
+    }
+
+    // Fields left out of the body keep their current value
+    @PutMapping
+    public ResponseEntity<?> setLimits(@RequestBody LimitsUpdate update) {
+        try {
+            return ResponseEntity.ok(bandwidthScheduler.updateLimits(update::applyTo));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    // Rates given to single clients, by their remote address
+    @GetMapping("/clients")
+    public ResponseEntity<Map<String, Long>> getClientLimits() {
+        return ResponseEntity.ok(bandwidthScheduler.getClientLimits());
+    }
+
+    @PutMapping("/clients/{client}")
+    public ResponseEntity<String> setClientLimit(@PathVariable String client, @RequestParam("bytesPerSecond") long bytesPerSecond) {
+        try {
+            bandwidthScheduler.setClientLimit(client, bytesPerSecond);
+            return ResponseEntity.ok("Client " + client + " limited to " + bytesPerSecond + " bytes per second.");
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/clients/{client}")
+    public ResponseEntity<String> removeClientLimit(@PathVariable String client) {
+        bandwidthScheduler.removeClientLimit(client);
+        return ResponseEntity.ok("Client " + client + " follows the default client limit.");
+    }
+
+    /**
+     * The limits to change, null for the ones to keep.
+     */
+    public record LimitsUpdate(Long globalBytesPerSecond, Long globalBurstBytes, Long clientBytesPerSecond, Long clientBurstBytes) {
+
+        BandwidthScheduler.Limits applyTo(BandwidthScheduler.Limits current) {
+            return new BandwidthScheduler.Limits(
+                    globalBytesPerSecond != null ? globalBytesPerSecond : current.globalBytesPerSecond(),
+                    globalBurstBytes != null ? globalBurstBytes : current.globalBurstBytes(),
+                    clientBytesPerSecond != null ? clientBytesPerSecond : current.clientBytesPerSecond(),
+                    clientBurstBytes != null ? clientBurstBytes : current.clientBurstBytes());
+        }
+    }
+}
@@ -1,33 +1,70 @@
 package com.spring_stream_backend.controller;
 
 import com.spring_stream_backend.service.FileChunkService;
+import com.spring_stream_backend.service.IngestJobStatus;
+import com.spring_stream_backend.service.VideoSegmentService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.net.URI;
+import java.util.NoSuchElementException;
+import java.util.concurrent.RejectedExecutionException;
+
 @RestController
 @RequestMapping("/api/file/chunk")
 public class FileChunkController {
 
     private final FileChunkService fileChunkService;
+    private final VideoSegmentService videoSegmentService;
 
-    public FileChunkController(FileChunkService fileChunkService) {
+    public FileChunkController(FileChunkService fileChunkService, VideoSegmentService videoSegmentService) {
         this.fileChunkService = fileChunkService;
+        this.videoSegmentService = videoSegmentService;
     }
 
+    // Answers as soon as the upload is on disk, chunking runs in the background and is followed at /jobs/{jobId}
     @PostMapping("/upload")
     public ResponseEntity<String> uploadAndChunkFile(MultipartFile file) {
         try {
-            fileChunkService.processAndChunkFile(file);
-            return ResponseEntity.ok("File successfully split into chunks and saved.");
+            IngestJobStatus job = fileChunkService.processAndChunkFile(file);
+            return ResponseEntity.accepted()
+                    .location(URI.create("/api/file/chunk/jobs/" + job.jobId()))
+                    .body("File received, chunking as job: " + job.jobId());
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (RejectedExecutionException e) {
+            return ResponseEntity.status(HttpStatus.SERVICE_UNAVAILABLE).body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error while processing file: " + e.getMessage());
         }
     }
+
+    // Splits an MP4 at keyframes into fMP4 segments, playable from /api/stream/segments/{videoName}/index.m3u8 or manifest.mpd
+    @PostMapping("/segment")
+    public ResponseEntity<String> uploadAndSegmentFile(MultipartFile file) {
+        try {
+            String videoName = videoSegmentService.segmentUpload(file);
+            return ResponseEntity.ok("File successfully segmented for streaming as: " + videoName);
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Error while segmenting file: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/jobs/{jobId}")
+    public ResponseEntity<?> getChunkJob(@PathVariable String jobId) {
+        try {
+            return ResponseEntity.ok(fileChunkService.getJobStatus(jobId));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
 }
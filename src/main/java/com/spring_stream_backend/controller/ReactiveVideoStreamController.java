@@ -0,0 +1,41 @@
+package com.spring_stream_backend.controller;
+
+import com.spring_stream_backend.service.ReactiveVideoStreamingService;
+import com.spring_stream_backend.service.VideoStreamingService;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.http.HttpHeaders;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RequestParam;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+
+@RestController
+@RequestMapping("/api/stream/videos")
+@CrossOrigin(origins = "*", methods = {RequestMethod.GET, RequestMethod.HEAD})
+@ConditionalOnProperty(name = "video.stream.reactive.enabled", havingValue = "true")
+public class ReactiveVideoStreamController {
+
+    private final ReactiveVideoStreamingService reactiveVideoStreamingService;
+    private final VideoStreamingService videoStreamingService;
+
+    public ReactiveVideoStreamController(ReactiveVideoStreamingService reactiveVideoStreamingService, VideoStreamingService videoStreamingService) {
+        this.reactiveVideoStreamingService = reactiveVideoStreamingService;
+        this.videoStreamingService = videoStreamingService;
+    }
+
+    @GetMapping("/stream-reactive")
+    public void streamVideoReactive(@RequestParam String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
+        if (videoStreamingService.isMultiRange(rangeHeader)) {
+            videoStreamingService.streamMultiRange(fileName, rangeHeader, response);
+            return;
+        }
+        reactiveVideoStreamingService.streamVideoReactive(fileName, rangeHeader, request, response);
+    }
+}
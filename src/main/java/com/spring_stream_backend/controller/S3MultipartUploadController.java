@@ -1,44 +1,62 @@
 package com.spring_stream_backend.controller;
 
 
-import com.spring_stream_backend.service.S3MultipartUploadService;
+import com.spring_stream_backend.service.VideoUploadService;
+import jakarta.servlet.http.HttpServletRequest;
 import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.http.MediaType;
 import org.springframework.http.ResponseEntity;
+import org.springframework.util.StringUtils;
 import org.springframework.web.bind.annotation.PostMapping;
 import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.nio.file.Files;
-import java.nio.file.Path;
-import java.nio.file.StandardCopyOption;
+import java.io.InputStream;
 
+// Uploads go to the configured VideoStore under the video's name, so they are streamed back by
+// /api/stream/videos/{videoName}. With video.store=s3 they are sent to the bucket part by part as they arrive.
 @RestController
 @RequestMapping("/api/upload")
 public class S3MultipartUploadController {
 
-    private final S3MultipartUploadService s3MultipartUploadService;
+    private final VideoUploadService videoUploadService;
 
     @Autowired
-    public S3MultipartUploadController(S3MultipartUploadService s3MultipartUploadService) {
-        this.s3MultipartUploadService = s3MultipartUploadService;
+    public S3MultipartUploadController(VideoUploadService videoUploadService) {
+        this.videoUploadService = videoUploadService;
     }
 
     @PostMapping("/video")
     public ResponseEntity<String> uploadVideo(MultipartFile file) {
-        try {
-            // Save the uploaded file temporarily
-            Path tempFile = Files.createTempFile("upload-", file.getOriginalFilename());
-            Files.copy(file.getInputStream(), tempFile, StandardCopyOption.REPLACE_EXISTING);
-
-            // Upload file to S3
-            String keyName = "videos/" + file.getOriginalFilename();
-            String result = s3MultipartUploadService.uploadLargeFile(keyName, tempFile);
-
-            // Delete temporary file
-            Files.delete(tempFile);
+        try (InputStream input = file.getInputStream()) {
+            // The container has already spooled the multipart file to disk, only /video-stream avoids that copy
+            return ResponseEntity.ok(videoUploadService.saveVideoToStore(file.getOriginalFilename(), input));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(500).body("Failed to upload video: " + e.getMessage());
+        }
+    }
 
-            return ResponseEntity.ok(result);
+    /**
+     * Uploads a raw {@code application/octet-stream} request body. The body is never parsed as multipart, so with the
+     * S3 store nothing is spooled to local disk: it is cut into parts as it arrives and each part is sent right away.
+     *
+     * @param fileName The name the video is stored under.
+     * @param request  The request whose body is the video.
+     * @return A success message with where the video is stored.
+     */
+    @PostMapping(value = "/video-stream", consumes = MediaType.APPLICATION_OCTET_STREAM_VALUE)
+    public ResponseEntity<String> uploadVideoStream(@RequestParam("fileName") String fileName, HttpServletRequest request) {
+        if (!StringUtils.hasText(fileName) || fileName.contains("..") || fileName.contains("/") || fileName.contains("\\")) {
+            return ResponseEntity.badRequest().body("Invalid file name: " + fileName);
+        }
+        try (InputStream input = request.getInputStream()) {
+            return ResponseEntity.ok(videoUploadService.saveVideoToStore(fileName, input));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
         } catch (Exception e) {
             return ResponseEntity.status(500).body("Failed to upload video: " + e.getMessage());
         }
@@ -0,0 +1,75 @@
+package com.spring_stream_backend.controller;
+
+import com.spring_stream_backend.service.VideoSegmentService;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.http.CacheControl;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.CrossOrigin;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
+import org.springframework.web.bind.annotation.RequestMapping;
+import org.springframework.web.bind.annotation.RequestMethod;
+import org.springframework.web.bind.annotation.RestController;
+
+import java.io.IOException;
+import java.time.Duration;
+import java.util.NoSuchElementException;
+
+/**
+ * Serves segmented videos: HLS/DASH manifests that may change when a video is re-uploaded,
+ * and versioned fMP4 segments that never change and are cacheable by any CDN or browser.
+ */
+@RestController
+@RequestMapping("/api/stream/segments")
+@CrossOrigin(origins = "*", methods = {RequestMethod.GET, RequestMethod.HEAD})
+public class SegmentStreamController {
+
+    private static final MediaType HLS_PLAYLIST_TYPE = MediaType.parseMediaType("application/vnd.apple.mpegurl");
+    private static final MediaType DASH_MANIFEST_TYPE = MediaType.parseMediaType("application/dash+xml");
+    private static final MediaType SEGMENT_TYPE = MediaType.parseMediaType("video/mp4");
+    private static final CacheControl MANIFEST_CACHE = CacheControl.maxAge(Duration.ofSeconds(10)).cachePublic();
+    private static final CacheControl SEGMENT_CACHE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+
+    @Autowired
+    private VideoSegmentService videoSegmentService;
+
+    @GetMapping("/{videoName}/" + VideoSegmentService.HLS_PLAYLIST)
+    public ResponseEntity<?> hlsPlaylist(@PathVariable String videoName) throws IOException {
+        return manifest(videoName, VideoSegmentService.HLS_PLAYLIST, HLS_PLAYLIST_TYPE);
+    }
+
+    @GetMapping("/{videoName}/" + VideoSegmentService.DASH_MANIFEST)
+    public ResponseEntity<?> dashManifest(@PathVariable String videoName) throws IOException {
+        return manifest(videoName, VideoSegmentService.DASH_MANIFEST, DASH_MANIFEST_TYPE);
+    }
+
+    @GetMapping("/{videoName}/{version}/{segmentName}")
+    public ResponseEntity<?> segment(@PathVariable String videoName, @PathVariable String version, @PathVariable String segmentName) {
+        try {
+            return ResponseEntity.ok()
+                    .contentType(SEGMENT_TYPE)
+                    .cacheControl(SEGMENT_CACHE)
+                    .body(new FileSystemResource(videoSegmentService.segment(videoName, version, segmentName)));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+
+    private ResponseEntity<?> manifest(String videoName, String manifestName, MediaType mediaType) throws IOException {
+        try {
+            return ResponseEntity.ok()
+                    .contentType(mediaType)
+                    .cacheControl(MANIFEST_CACHE)
+                    .body(new FileSystemResource(videoSegmentService.manifest(videoName, manifestName)));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        }
+    }
+}
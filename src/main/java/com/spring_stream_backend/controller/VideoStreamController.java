@@ -1,5 +1,8 @@
 package com.spring_stream_backend.controller;
 
+import com.spring_stream_backend.service.BandwidthScheduler;
+import com.spring_stream_backend.service.MappedSegmentCache;
+import com.spring_stream_backend.service.VideoSeekService;
 import com.spring_stream_backend.service.VideoStreamingService;
 import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
@@ -18,6 +21,7 @@ import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 
 import java.io.IOException;
+import java.util.Map;
 
 @RestController
 @RequestMapping("/api/stream/videos")
@@ -27,28 +31,85 @@ public class VideoStreamController {
     @Autowired
     private VideoStreamingService videoStreamingService;
 
+    @Autowired
+    private MappedSegmentCache mappedSegmentCache;
+
+    @Autowired
+    private VideoSeekService videoSeekService;
+
     @GetMapping("/stream-io")
     public ResponseEntity<byte[]> streamVideoIo(@RequestParam String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
-        String rangeHeader = request.getHeader(HttpHeaders.RANGE); // Get the Range header
-        System.out.println("Requested File Name: " + fileName);
-        System.out.println("Range Header: " + rangeHeader);
+        if (videoStreamingService.checkNotModified(fileName, request, response)) {
+            return null; // 304, the client's copy is current
+        }
+        String rangeHeader = rangeToServe(fileName, request); // Get the Range header
+        if (streamedAsMultiRange(fileName, rangeHeader, response)) {
+            return null; // response already written
+        }
         return videoStreamingService.streamVideoIo(fileName, rangeHeader, response); // Pass response to service
     }
 
     @GetMapping("/stream-nio")
-    public ResponseEntity<Resource> streamVideoNio(@RequestParam String fileName, HttpServletRequest request) {
-        String rangeHeader = request.getHeader(HttpHeaders.RANGE);
-        System.out.println("Requested File Name: " + fileName);
-        System.out.println("Range Header: " + rangeHeader);
-         System.out.println("Range Header: " + rangeHeader);
-        return videoStreamingService.streamVideoNio(fileName, rangeHeader);
+    public ResponseEntity<Resource> streamVideoNio(@RequestParam String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (videoStreamingService.checkNotModified(fileName, request, response)) {
+            return null; // 304, the client's copy is current
+        }
+        String rangeHeader = rangeToServe(fileName, request);
+        if (streamedAsMultiRange(fileName, rangeHeader, response)) {
+            return null; // response already written
+        }
+        return videoStreamingService.streamVideoNio(fileName, rangeHeader, BandwidthScheduler.viewerKey(request));
+    }
+
+    @GetMapping("/stream-zc")
+    public void streamVideoZeroCopy(@RequestParam String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (videoStreamingService.checkNotModified(fileName, request, response)) {
+            return; // 304, the client's copy is current
+        }
+        String rangeHeader = rangeToServe(fileName, request);
+        if (streamedAsMultiRange(fileName, rangeHeader, response)) {
+            return;
+        }
+        videoStreamingService.streamVideoZeroCopy(fileName, rangeHeader, request, response);
     }
 
     @GetMapping("/{videoName}")
-    public ResponseEntity<ResourceRegion> streamVideo(@PathVariable String videoName, @RequestHeader HttpHeaders headers) {
-        System.out.println("headers" + headers.getRange());
-        System.out.println("Requested File Name: " + videoName);
-        return videoStreamingService.streamVideo(videoName, headers);
+    public ResponseEntity<ResourceRegion> streamVideo(@PathVariable String videoName, @RequestHeader HttpHeaders headers, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        if (videoStreamingService.checkNotModified(videoName, request, response)) {
+            return null; // 304, the client's copy is current
+        }
+        if (rangeToServe(videoName, request) == null) {
+            headers.remove(HttpHeaders.RANGE);
+        }
+        if (streamedAsMultiRange(videoName, headers.getFirst(HttpHeaders.RANGE), response)) {
+            return null; // response already written
+        }
+        return videoStreamingService.streamVideo(videoName, headers, BandwidthScheduler.viewerKey(request));
+    }
+
+    // Jumps to a time, e.g. /sample.mp4/seek?t=123.4, the region starts at the keyframe at or before it
+    @GetMapping("/{videoName}/seek")
+    public ResponseEntity<ResourceRegion> seekVideo(@PathVariable String videoName, @RequestParam("t") double seconds, HttpServletRequest request) {
+        return videoSeekService.seek(videoName, seconds, BandwidthScheduler.viewerKey(request));
+    }
+
+    // The Range header unless If-Range says the client holds another version of the video
+    private String rangeToServe(String fileName, HttpServletRequest request) throws IOException {
+        return videoStreamingService.currentRange(fileName, request.getHeader(HttpHeaders.RANGE), request.getHeader(HttpHeaders.IF_RANGE));
+    }
+
+    // Requests for several ranges are answered as multipart/byteranges by every endpoint
+    private boolean streamedAsMultiRange(String fileName, String rangeHeader, HttpServletResponse response) throws IOException {
+        if (!videoStreamingService.isMultiRange(rangeHeader)) {
+            return false;
+        }
+        videoStreamingService.streamMultiRange(fileName, rangeHeader, response);
+        return true;
+    }
+
+    @GetMapping("/cache-stats")
+    public ResponseEntity<Map<String, Long>> cacheStats() {
+        return ResponseEntity.ok(mappedSegmentCache.stats());
     }
 
 }
@@ -1,15 +1,22 @@
 package com.spring_stream_backend.controller;
 
+import com.spring_stream_backend.service.Checksums;
 import com.spring_stream_backend.service.VideoUploadService;
 import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.ResponseEntity;
+import org.springframework.web.bind.annotation.DeleteMapping;
+import org.springframework.web.bind.annotation.GetMapping;
+import org.springframework.web.bind.annotation.PathVariable;
 import org.springframework.web.bind.annotation.PostMapping;
+import org.springframework.web.bind.annotation.RequestHeader;
 import org.springframework.web.bind.annotation.RequestMapping;
 import org.springframework.web.bind.annotation.RequestParam;
 import org.springframework.web.bind.annotation.RestController;
 import org.springframework.web.multipart.MultipartFile;
 
+import java.util.NoSuchElementException;
+
 @RestController
 @RequestMapping("/api/upload/video")
 public class VideoUploadController {
@@ -18,9 +25,9 @@ public class VideoUploadController {
     private VideoUploadService videoUploadService;
 
     @PostMapping("/simple-upload")
-    public ResponseEntity<String> uploadVideoToBackend(MultipartFile file) {
+    public ResponseEntity<String> uploadVideoToBackend(MultipartFile file, @RequestHeader(value = Checksums.SHA256_HEADER, required = false) String sha256) {
         try {
-            String message = videoUploadService.saveVideoToLocal(file);
+            String message = videoUploadService.saveVideoToLocal(file, sha256);
             return ResponseEntity.ok(message);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -30,9 +37,10 @@ public class VideoUploadController {
     }
 
     @PostMapping("/chunk-upload")
-    public ResponseEntity<String> uploadVideoChunk(MultipartFile file, @RequestParam("chunkIndex") int chunkIndex, @RequestParam("totalChunks") int totalChunks, @RequestParam("fileName") String fileName) {
+    public ResponseEntity<String> uploadVideoChunk(MultipartFile file, @RequestParam("chunkIndex") int chunkIndex, @RequestParam("totalChunks") int totalChunks, @RequestParam("fileName") String fileName,
+                                                   @RequestHeader(value = Checksums.CRC32C_HEADER, required = false) String crc32c) {
         try {
-            String message = videoUploadService.saveVideoChunk(file, chunkIndex, totalChunks, fileName);
+            String message = videoUploadService.saveVideoChunk(file, chunkIndex, totalChunks, fileName, crc32c);
             return ResponseEntity.ok(message);
         } catch (IllegalArgumentException e) {
             return ResponseEntity.badRequest().body(e.getMessage());
@@ -51,4 +59,66 @@ public class VideoUploadController {
         }
     }
 
-}
\ No newline at end of file
+    @PostMapping("/sessions")
+    public ResponseEntity<?> createUploadSession(@RequestParam("fileName") String fileName, @RequestParam("totalSize") long totalSize, @RequestParam("chunkSize") long chunkSize) {
+        try {
+            return ResponseEntity.status(HttpStatus.CREATED).body(videoUploadService.createUploadSession(fileName, totalSize, chunkSize));
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to create upload session: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/sessions/{sessionId}/chunks/{chunkIndex}")
+    public ResponseEntity<String> uploadSessionChunk(@PathVariable String sessionId, @PathVariable int chunkIndex, MultipartFile file,
+                                                     @RequestHeader(value = Checksums.CRC32C_HEADER, required = false) String crc32c) {
+        try {
+            String message = videoUploadService.saveSessionChunk(sessionId, file, chunkIndex, crc32c);
+            return ResponseEntity.ok(message);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Upload failed: " + e.getMessage());
+        }
+    }
+
+    @GetMapping("/sessions/{sessionId}")
+    public ResponseEntity<?> getUploadSession(@PathVariable String sessionId) {
+        try {
+            return ResponseEntity.ok(videoUploadService.getUploadSessionStatus(sessionId));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        }
+    }
+
+    @DeleteMapping("/sessions/{sessionId}")
+    public ResponseEntity<String> abortUploadSession(@PathVariable String sessionId) {
+        try {
+            return ResponseEntity.ok(videoUploadService.abortUploadSession(sessionId));
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to abort upload: " + e.getMessage());
+        }
+    }
+
+    @PostMapping("/sessions/{sessionId}/complete")
+    public ResponseEntity<String> completeUploadSession(@PathVariable String sessionId,
+                                                        @RequestHeader(value = Checksums.CRC32C_HEADER, required = false) String crc32c,
+                                                        @RequestHeader(value = Checksums.SHA256_HEADER, required = false) String sha256) {
+        try {
+            String message = videoUploadService.completeUploadSession(sessionId, crc32c, sha256);
+            return ResponseEntity.ok(message);
+        } catch (NoSuchElementException e) {
+            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(e.getMessage());
+        } catch (IllegalArgumentException e) {
+            return ResponseEntity.badRequest().body(e.getMessage());
+        } catch (Exception e) {
+            return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body("Failed to complete upload: " + e.getMessage());
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package com.spring_stream_backend.entity;
+
+import jakarta.persistence.Column;
+import jakarta.persistence.Entity;
+import jakarta.persistence.Id;
+import jakarta.persistence.Table;
+import lombok.Getter;
+import lombok.NoArgsConstructor;
+import lombok.Setter;
+
+/**
+ * Catalog entry of a stored video, everything a range response needs without touching the storage.
+ */
+@Entity
+@Table(name = "videos")
+@Getter
+@Setter
+@NoArgsConstructor
+public class Video {
+    @Id
+    private String name; // The name the video is streamed under
+    private long size;
+    private String mimeType;
+    private Long durationMillis; // Null for videos that are not MP4s
+    private String checksum; // As reported to the uploader, null for videos that were not uploaded with one
+    private boolean immutable; // The name always holds the same content, e.g. a content-addressed upload
+    @Column(length = 1024)
+    private String storageLocation; // File path, or s3://bucket/key
+    private long updatedAt;
+
+    public Video(String name, long size, String mimeType, Long durationMillis, String checksum, boolean immutable,
+                 String storageLocation, long updatedAt) {
+        this.name = name;
+        this.size = size;
+        this.mimeType = mimeType;
+        this.durationMillis = durationMillis;
+        this.checksum = checksum;
+        this.immutable = immutable;
+        this.storageLocation = storageLocation;
+        this.updatedAt = updatedAt;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public long getSize() {
+        return size;
+    }
+
+    public String getMimeType() {
+        return mimeType;
+    }
+
+    public Long getDurationMillis() {
+        return durationMillis;
+    }
+
+    public String getChecksum() {
+        return checksum;
+    }
+
+    public boolean isImmutable() {
+        return immutable;
+    }
+
+    public String getStorageLocation() {
+        return storageLocation;
+    }
+
+    public long getUpdatedAt() {
+        return updatedAt;
+    }
+
+    public void setStorageLocation(String storageLocation) {
+        this.storageLocation = storageLocation;
+    }
+
+    public void setUpdatedAt(long updatedAt) {
+        this.updatedAt = updatedAt;
+    }
+}
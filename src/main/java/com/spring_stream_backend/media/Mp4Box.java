@@ -0,0 +1,285 @@
+package com.spring_stream_backend.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * An ISO base media file format (MP4) box held in memory.
+ * Container boxes keep their parsed children, every other box keeps its raw payload.
+ * Only the metadata boxes (moov, moof and their descendants) are ever loaded this way; media data stays on disk.
+ */
+public final class Mp4Box {
+
+    private static final Set<String> CONTAINERS = Set.of("moov", "trak", "mdia", "minf", "stbl", "edts", "dinf", "mvex", "moof", "traf");
+
+    private final String type;
+    private final byte[] payload;
+    private final List<Mp4Box> children;
+
+    private Mp4Box(String type, byte[] payload, List<Mp4Box> children) {
+        if (type.length() != 4) {
+            throw new IllegalArgumentException("Box type must be four characters: " + type);
+        }
+        this.type = type;
+        this.payload = payload;
+        this.children = children;
+    }
+
+    public static Mp4Box leaf(String type, byte[] payload) {
+        return new Mp4Box(type, payload, null);
+    }
+
+    public static Mp4Box container(String type, List<Mp4Box> children) {
+        return new Mp4Box(type, null, new ArrayList<>(children));
+    }
+
+    /**
+     * Reads one box, with all of its descendants, from a file.
+     *
+     * @param channel The file.
+     * @param header  The box header, as found by {@link #scan}.
+     * @return The box.
+     */
+    public static Mp4Box read(FileChannel channel, Header header) throws IOException {
+        long payloadSize = header.size() - header.headerSize();
+        if (payloadSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Box " + header.type() + " is too large to load: " + header.size() + " bytes.");
+        }
+        ByteBuffer payload = ByteBuffer.allocate((int) payloadSize);
+        long position = header.offset() + header.headerSize();
+        while (payload.hasRemaining()) {
+            if (channel.read(payload, position + payload.position()) < 0) {
+                throw new IllegalArgumentException("Box " + header.type() + " is truncated.");
+            }
+        }
+        return parse(header.type(), payload.flip());
+    }
+
+    /**
+     * Parses the boxes that fill a buffer.
+     *
+     * @param buffer The boxes, from position to limit.
+     * @return The boxes in order.
+     */
+    public static List<Mp4Box> parseAll(ByteBuffer buffer) {
+        List<Mp4Box> boxes = new ArrayList<>();
+        while (buffer.remaining() >= 8) {
+            int start = buffer.position();
+            long size = Integer.toUnsignedLong(buffer.getInt());
+            String type = readType(buffer);
+            if (size == 1) {
+                size = buffer.getLong();
+            } else if (size == 0) {
+                size = buffer.limit() - start;
+            }
+            int headerSize = buffer.position() - start;
+            if (size < headerSize || start + size > buffer.limit()) {
+                throw new IllegalArgumentException("Box " + type + " has an invalid size: " + size);
+            }
+            ByteBuffer payload = buffer.slice(buffer.position(), (int) size - headerSize);
+            boxes.add(parse(type, payload));
+            buffer.position(start + (int) size);
+        }
+        return boxes;
+    }
+
+    private static Mp4Box parse(String type, ByteBuffer payload) {
+        if (CONTAINERS.contains(type)) {
+            return new Mp4Box(type, null, parseAll(payload));
+        }
+        byte[] bytes = new byte[payload.remaining()];
+        payload.get(bytes);
+        return new Mp4Box(type, bytes, null);
+    }
+
+    /**
+     * Lists the boxes between two file offsets without loading them.
+     *
+     * @param channel The file.
+     * @param start   The offset of the first box.
+     * @param end     The offset just past the last box.
+     * @return The box headers in file order.
+     */
+    public static List<Header> scan(FileChannel channel, long start, long end) throws IOException {
+        List<Header> headers = new ArrayList<>();
+        ByteBuffer buffer = ByteBuffer.allocate(16);
+        long offset = start;
+        while (offset + 8 <= end) {
+            buffer.clear().limit((int) Math.min(16, end - offset));
+            while (buffer.hasRemaining() && channel.read(buffer, offset + buffer.position()) >= 0) {
+                // read the whole header
+            }
+            buffer.flip();
+            long size = Integer.toUnsignedLong(buffer.getInt());
+            String type = readType(buffer);
+            int headerSize = 8;
+            if (size == 1) {
+                size = buffer.getLong();
+                headerSize = 16;
+            } else if (size == 0) {
+                size = end - offset;
+            }
+            if (size < headerSize || offset + size > end) {
+                throw new IllegalArgumentException("Box " + type + " at offset " + offset + " has an invalid size: " + size);
+            }
+            headers.add(new Header(type, offset, size, headerSize));
+            offset += size;
+        }
+        return headers;
+    }
+
+    /**
+     * @param headers The box headers, as found by {@link #scan}.
+     * @param type    The box type.
+     * @return The last box of that type, or null.
+     */
+    public static Header findHeader(List<Header> headers, String type) {
+        Header found = null;
+        for (Header header : headers) {
+            if (header.type().equals(type)) {
+                found = header;
+            }
+        }
+        return found;
+    }
+
+    /**
+     * Reads the moov box of a file.
+     *
+     * @param channel The file.
+     * @param headers The top-level box headers of the file.
+     * @return The moov box.
+     */
+    public static Mp4Box readMoov(FileChannel channel, List<Header> headers) throws IOException {
+        Header moov = findHeader(headers, "moov");
+        if (moov == null) {
+            throw new IllegalArgumentException("Not an MP4 file: no moov box.");
+        }
+        return read(channel, moov);
+    }
+
+    private static String readType(ByteBuffer buffer) {
+        byte[] type = new byte[4];
+        buffer.get(type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    public String getType() {
+        return type;
+    }
+
+    public boolean isContainer() {
+        return children != null;
+    }
+
+    /**
+     * @return The payload of a leaf box, big-endian and positioned at its start.
+     */
+    public ByteBuffer payload() {
+        if (payload == null) {
+            throw new IllegalStateException("Box " + type + " is a container.");
+        }
+        return ByteBuffer.wrap(payload);
+    }
+
+    /**
+     * @return The children of a container box, which may be modified.
+     */
+    public List<Mp4Box> children() {
+        if (children == null) {
+            throw new IllegalStateException("Box " + type + " is not a container.");
+        }
+        return children;
+    }
+
+    /**
+     * @param path The types of the boxes to descend through, e.g. {@code "mdia", "minf", "stbl"}.
+     * @return The first box found along the path, or null.
+     */
+    public Mp4Box find(String... path) {
+        Mp4Box box = this;
+        for (String type : path) {
+            Mp4Box next = null;
+            if (box.isContainer()) {
+                for (Mp4Box child : box.children) {
+                    if (child.type.equals(type)) {
+                        next = child;
+                        break;
+                    }
+                }
+            }
+            if (next == null) {
+                return null;
+            }
+            box = next;
+        }
+        return box;
+    }
+
+    public List<Mp4Box> findAll(String type) {
+        List<Mp4Box> found = new ArrayList<>();
+        for (Mp4Box child : children()) {
+            if (child.type.equals(type)) {
+                found.add(child);
+            }
+        }
+        return found;
+    }
+
+    /**
+     * @return The serialized size of the box, header included.
+     */
+    public long size() {
+        long contentSize = 0;
+        if (children != null) {
+            for (Mp4Box child : children) {
+                contentSize += child.size();
+            }
+        } else {
+            contentSize = payload.length;
+        }
+        return contentSize + 8 > 0xFFFFFFFFL ? contentSize + 16 : contentSize + 8;
+    }
+
+    public void writeTo(ByteBuffer out) {
+        long size = size();
+        if (size > 0xFFFFFFFFL) {
+            out.putInt(1).put(type.getBytes(StandardCharsets.ISO_8859_1)).putLong(size);
+        } else {
+            out.putInt((int) size).put(type.getBytes(StandardCharsets.ISO_8859_1));
+        }
+        if (children != null) {
+            for (Mp4Box child : children) {
+                child.writeTo(out);
+            }
+        } else {
+            out.put(payload);
+        }
+    }
+
+    public byte[] toByteArray() {
+        ByteBuffer out = ByteBuffer.allocate(Math.toIntExact(size()));
+        writeTo(out);
+        return out.array();
+    }
+
+    /**
+     * Where a box sits in a file.
+     *
+     * @param type       The four character box type.
+     * @param offset     The file offset of the box header.
+     * @param size       The size of the box, header included.
+     * @param headerSize The size of the header, 8 or 16 bytes.
+     */
+    public record Header(String type, long offset, long size, int headerSize) {
+
+        public long end() {
+            return offset + size;
+        }
+    }
+}
@@ -0,0 +1,200 @@
+package com.spring_stream_backend.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.HashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Moves the moov box of a progressive MP4 in front of its media data ("faststart"), so a player can start
+ * from the first bytes instead of first fetching the end of the file.
+ * The media data is streamed to the new file with {@link FileChannel#transferTo}, only the moov is held in memory.
+ * Chunk offsets are shifted by the size of the relocated moov, tracks whose offsets no longer fit 32 bits get a co64 table.
+ */
+public final class Mp4Faststart {
+
+    private static final int FTYP = 'f' << 24 | 't' << 16 | 'y' << 8 | 'p';
+
+    private Mp4Faststart() {
+    }
+
+    /**
+     * @param channel The file.
+     * @return True if the file starts with an ftyp box, i.e. is an ISO base media file.
+     */
+    public static boolean isMp4(FileChannel channel) throws IOException {
+        ByteBuffer header = ByteBuffer.allocate(8);
+        while (header.hasRemaining() && channel.read(header, header.position()) >= 0) {
+            // read the first box header
+        }
+        return !header.hasRemaining() && header.getInt(4) == FTYP;
+    }
+
+    /**
+     * Writes a faststart copy of a file, unless its moov already precedes its media data.
+     *
+     * @param source The MP4 file.
+     * @param target The file to write the rewritten copy to, created by this call.
+     * @return True if the copy was written, false if the source is already faststart (or fragmented) and was left alone.
+     */
+    public static boolean rewrite(Path source, Path target) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            List<Mp4Box.Header> boxes = Mp4Box.scan(in, 0, in.size());
+            Mp4Box.Header moovHeader = Mp4Box.findHeader(boxes, "moov");
+            if (moovHeader == null) {
+                throw new IllegalArgumentException("Not an MP4 file: no moov box.");
+            }
+            int insertAt = -1;
+            for (int i = 0; i < boxes.size() && insertAt < 0; i++) {
+                switch (boxes.get(i).type()) {
+                    case "moov" -> {
+                        return false;
+                    }
+                    case "mdat", "moof" -> insertAt = i;
+                    default -> {
+                    }
+                }
+            }
+            if (insertAt < 0) {
+                return false;
+            }
+            List<Mp4Box.Header> layout = new ArrayList<>(boxes);
+            layout.remove(moovHeader);
+            layout.add(insertAt, moovHeader);
+
+            // Widening a table to co64 grows the moov, which moves the data again, so lay out until no table needs widening
+            Set<Integer> wideTables = new HashSet<>();
+            Mp4Box moov;
+            long moovSize;
+            do {
+                moov = Mp4Box.read(in, moovHeader);
+                moovSize = moov.size();
+                List<Mp4Box> tables = chunkOffsetTables(moov);
+                for (int t = 0; t < tables.size(); t++) {
+                    if (wideTables.contains(t) && tables.get(t).getType().equals("stco")) {
+                        moovSize += 4L * tables.get(t).payload().getInt(4);
+                    }
+                }
+            } while (!relocate(moov, boxes, deltas(boxes, layout, moovHeader, moovSize), moovHeader, wideTables));
+
+            try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                for (Mp4Box.Header box : layout) {
+                    if (box == moovHeader) {
+                        ByteBuffer bytes = ByteBuffer.wrap(moov.toByteArray());
+                        while (bytes.hasRemaining()) {
+                            out.write(bytes);
+                        }
+                        continue;
+                    }
+                    long position = box.offset();
+                    while (position < box.end()) {
+                        long transferred = in.transferTo(position, box.end() - position, out);
+                        if (transferred <= 0) {
+                            throw new IllegalArgumentException("MP4 file is truncated at offset " + position + ".");
+                        }
+                        position += transferred;
+                    }
+                }
+            }
+            return true;
+        }
+    }
+
+    // How far every top-level box of the source moves, indexed like the source box list
+    private static long[] deltas(List<Mp4Box.Header> boxes, List<Mp4Box.Header> layout, Mp4Box.Header moovHeader, long moovSize) {
+        long[] deltas = new long[boxes.size()];
+        for (int i = 0; i < boxes.size(); i++) {
+            long newOffset = 0;
+            for (Mp4Box.Header placed : layout) {
+                if (placed == boxes.get(i)) {
+                    break;
+                }
+                newOffset += placed == moovHeader ? moovSize : placed.size();
+            }
+            deltas[i] = newOffset - boxes.get(i).offset();
+        }
+        return deltas;
+    }
+
+    // The stco or co64 box of every track, in track order
+    private static List<Mp4Box> chunkOffsetTables(Mp4Box moov) {
+        List<Mp4Box> tables = new ArrayList<>();
+        for (Mp4Box trak : moov.findAll("trak")) {
+            Mp4Box stbl = trak.find("mdia", "minf", "stbl");
+            if (stbl != null) {
+                for (Mp4Box child : stbl.children()) {
+                    if (child.getType().equals("stco") || child.getType().equals("co64")) {
+                        tables.add(child);
+                    }
+                }
+            }
+        }
+        return tables;
+    }
+
+    /**
+     * Rewrites the chunk offsets of every track for the new layout.
+     *
+     * @param wideTables The tables to write as co64, a table whose offsets no longer fit 32 bits is added.
+     * @return False if a table had to be added to {@code wideTables}, the layout must then be computed again.
+     */
+    private static boolean relocate(Mp4Box moov, List<Mp4Box.Header> boxes, long[] deltas, Mp4Box.Header moovHeader, Set<Integer> wideTables) {
+        int tableIndex = 0;
+        for (Mp4Box trak : moov.findAll("trak")) {
+            Mp4Box stbl = trak.find("mdia", "minf", "stbl");
+            if (stbl == null) {
+                continue;
+            }
+            List<Mp4Box> children = stbl.children();
+            for (int i = 0; i < children.size(); i++) {
+                Mp4Box table = children.get(i);
+                boolean wide = table.getType().equals("co64");
+                if (!wide && !table.getType().equals("stco")) {
+                    continue;
+                }
+                ByteBuffer payload = table.payload();
+                int count = payload.getInt(4);
+                boolean writeWide = wide || wideTables.contains(tableIndex);
+                ByteBuffer updated = ByteBuffer.allocate(8 + count * (writeWide ? 8 : 4)).putInt(payload.getInt(0)).putInt(count);
+                for (int c = 0; c < count; c++) {
+                    long offset = wide ? payload.getLong(8 + 8 * c) : Integer.toUnsignedLong(payload.getInt(8 + 4 * c));
+                    long relocated = offset + deltas[boxIndex(boxes, offset, moovHeader)];
+                    if (writeWide) {
+                        updated.putLong(relocated);
+                    } else if (relocated > 0xFFFFFFFFL) {
+                        wideTables.add(tableIndex);
+                        return false;
+                    } else {
+                        updated.putInt((int) relocated);
+                    }
+                }
+                children.set(i, Mp4Box.leaf(writeWide ? "co64" : "stco", updated.array()));
+                tableIndex++;
+            }
+        }
+        return true;
+    }
+
+    // Index of the source box holding a file offset, the boxes are in file order
+    private static int boxIndex(List<Mp4Box.Header> boxes, long offset, Mp4Box.Header moovHeader) {
+        int low = 0;
+        int high = boxes.size() - 1;
+        while (low < high) {
+            int mid = (low + high + 1) >>> 1;
+            if (boxes.get(mid).offset() <= offset) {
+                low = mid;
+            } else {
+                high = mid - 1;
+            }
+        }
+        if (boxes.get(low) == moovHeader) {
+            throw new IllegalArgumentException("Chunk offset " + offset + " points into the moov box.");
+        }
+        return low;
+    }
+}
@@ -0,0 +1,171 @@
+package com.spring_stream_backend.media;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+/**
+ * A compact keyframe index of an MP4: the decode time and file offset of every sync sample of its
+ * reference track (the first video track). Stored next to the video, it maps a time to a byte offset
+ * without loading the moov or scanning the file.
+ * <p>
+ * File format, big-endian: magic {@code MIDX}, int version, long timescale, long duration, int sample count,
+ * int keyframe count, then per keyframe a long decode time and a long file offset.
+ */
+public final class Mp4Index {
+
+    public static final String EXTENSION = ".idx";
+    private static final int MAGIC = 'M' << 24 | 'I' << 16 | 'D' << 8 | 'X';
+    private static final int VERSION = 1;
+
+    private final long timescale;
+    private final long duration;
+    private final int sampleCount;
+    private final long[] keyframeTimes;
+    private final long[] keyframeOffsets;
+
+    private Mp4Index(long timescale, long duration, int sampleCount, long[] keyframeTimes, long[] keyframeOffsets) {
+        this.timescale = timescale;
+        this.duration = duration;
+        this.sampleCount = sampleCount;
+        this.keyframeTimes = keyframeTimes;
+        this.keyframeOffsets = keyframeOffsets;
+    }
+
+    /**
+     * Builds the index of a file from its sample tables.
+     *
+     * @param file The MP4 file, in its final layout since the offsets point into it.
+     * @return The index.
+     */
+    public static Mp4Index build(Path file) throws IOException {
+        try (FileChannel in = FileChannel.open(file, StandardOpenOption.READ)) {
+            Mp4Track track = Mp4Track.reference(Mp4Track.parseAll(Mp4Box.readMoov(in, Mp4Box.scan(in, 0, in.size()))));
+            int keyframes = 0;
+            for (int sample = 0; sample < track.sampleCount(); sample++) {
+                if (track.isSync(sample)) {
+                    keyframes++;
+                }
+            }
+            long[] times = new long[keyframes];
+            long[] offsets = new long[keyframes];
+            int keyframe = 0;
+            for (int sample = 0; sample < track.sampleCount(); sample++) {
+                if (track.isSync(sample)) {
+                    times[keyframe] = track.decodeTime(sample);
+                    offsets[keyframe] = track.offset(sample);
+                    keyframe++;
+                }
+            }
+            return new Mp4Index(track.getTimescale(), track.endTime(), track.sampleCount(), times, offsets);
+        }
+    }
+
+    /**
+     * Writes the index, replacing any previous one atomically.
+     *
+     * @param target The index file.
+     */
+    public void write(Path target) throws IOException {
+        Path tempFile = target.resolveSibling(target.getFileName() + ".tmp");
+        try (DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Files.newOutputStream(tempFile)))) {
+            out.writeInt(MAGIC);
+            out.writeInt(VERSION);
+            out.writeLong(timescale);
+            out.writeLong(duration);
+            out.writeInt(sampleCount);
+            out.writeInt(keyframeTimes.length);
+            for (int i = 0; i < keyframeTimes.length; i++) {
+                out.writeLong(keyframeTimes[i]);
+                out.writeLong(keyframeOffsets[i]);
+            }
+        }
+        Files.move(tempFile, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param file The index file.
+     * @return The index.
+     */
+    public static Mp4Index read(Path file) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(file)))) {
+            if (in.readInt() != MAGIC || in.readInt() != VERSION) {
+                throw new IllegalArgumentException("Not a keyframe index: " + file.getFileName());
+            }
+            long timescale = in.readLong();
+            long duration = in.readLong();
+            int sampleCount = in.readInt();
+            int keyframes = in.readInt();
+            long[] times = new long[keyframes];
+            long[] offsets = new long[keyframes];
+            for (int i = 0; i < keyframes; i++) {
+                times[i] = in.readLong();
+                offsets[i] = in.readLong();
+            }
+            return new Mp4Index(timescale, duration, sampleCount, times, offsets);
+        }
+    }
+
+    /**
+     * @param video The video file.
+     * @return Where the index of the video is stored.
+     */
+    public static Path pathFor(Path video) {
+        return video.resolveSibling(video.getFileName() + EXTENSION);
+    }
+
+    /**
+     * Finds the keyframe to start playback from for a seek, with one binary search over the keyframe times.
+     *
+     * @param seconds The seek target.
+     * @return The last keyframe at or before the target, the first keyframe for targets before it.
+     */
+    public int keyframeAtOrBefore(double seconds) {
+        if (keyframeTimes.length == 0) {
+            throw new IllegalStateException("Index has no keyframes.");
+        }
+        long time = (long) Math.floor(seconds * timescale);
+        int found = Arrays.binarySearch(keyframeTimes, time);
+        if (found >= 0) {
+            return found;
+        }
+        // -(insertion point) - 1, the keyframe before the insertion point is the one at or before the target
+        return Math.max(0, -found - 2);
+    }
+
+    public double seconds(long time) {
+        return (double) time / timescale;
+    }
+
+    public long getTimescale() {
+        return timescale;
+    }
+
+    public long getDuration() {
+        return duration;
+    }
+
+    public int getSampleCount() {
+        return sampleCount;
+    }
+
+    public int keyframeCount() {
+        return keyframeTimes.length;
+    }
+
+    public long keyframeTime(int keyframe) {
+        return keyframeTimes[keyframe];
+    }
+
+    public long keyframeOffset(int keyframe) {
+        return keyframeOffsets[keyframe];
+    }
+}
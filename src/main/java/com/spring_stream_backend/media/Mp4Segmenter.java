@@ -0,0 +1,451 @@
+package com.spring_stream_backend.media;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Splits an MP4 into fragmented MP4 (CMAF style) segments: an init segment holding the track setup and
+ * media segments of one moof + mdat each, every one starting on a video keyframe.
+ * <p>
+ * Progressive files are re-fragmented from their sample tables, segments are cut at the first keyframe
+ * at or after the target duration and the other tracks are cut at the same decode time.
+ * Files that are already fragmented are split at their existing fragment boundaries, consecutive fragments
+ * being grouped until the target duration is reached.
+ * Only metadata is held in memory, media data is copied from the source with {@link FileChannel#transferTo}.
+ */
+public final class Mp4Segmenter {
+
+    // trun flags: data-offset, sample-duration, sample-size, sample-flags and sample-composition-time-offset present
+    private static final int TRUN_FLAGS = 0x000F01;
+    // tfhd flags: default-base-is-moof, data offsets are relative to the start of the moof
+    private static final int TFHD_DEFAULT_BASE_IS_MOOF = 0x020000;
+    private static final int TFHD_BASE_DATA_OFFSET = 0x000001;
+    private static final int SYNC_SAMPLE_FLAGS = 0x02000000;
+    private static final int NON_SYNC_SAMPLE_FLAGS = 0x01010000;
+    private static final int MDAT_HEADER_SIZE = 8;
+
+    private final double targetSeconds;
+
+    /**
+     * @param targetSeconds The minimum duration of every segment but the last, segments only start on keyframes so most run a little longer.
+     */
+    public Mp4Segmenter(double targetSeconds) {
+        if (!(targetSeconds > 0)) {
+            throw new IllegalArgumentException("Target segment duration must be positive.");
+        }
+        this.targetSeconds = targetSeconds;
+    }
+
+    /**
+     * Segments a file.
+     *
+     * @param source          The MP4 file.
+     * @param outputDirectory The existing directory the init segment and media segments are written to.
+     * @return The segments written.
+     */
+    public SegmentedMovie segment(Path source, Path outputDirectory) throws IOException {
+        try (FileChannel in = FileChannel.open(source, StandardOpenOption.READ)) {
+            List<Mp4Box.Header> boxes = Mp4Box.scan(in, 0, in.size());
+            Mp4Box moov = Mp4Box.readMoov(in, boxes);
+            List<Mp4Track> tracks = Mp4Track.parseAll(moov);
+            Mp4Track reference = Mp4Track.reference(tracks);
+            if (moov.find("mvex") != null) {
+                return splitFragments(in, boxes, moov, tracks, reference, outputDirectory);
+            }
+            return fragment(in, moov, tracks, reference, outputDirectory);
+        }
+    }
+
+    //-------------------------------------------------------------- progressive input --------------------------------------------------------
+
+    private SegmentedMovie fragment(FileChannel in, Mp4Box moov, List<Mp4Track> tracks, Mp4Track reference, Path outputDirectory)
+            throws IOException {
+        if (reference.sampleCount() == 0) {
+            throw new IllegalArgumentException("MP4 file has no samples.");
+        }
+        List<Mp4Track> mediaTracks = new ArrayList<>();
+        for (Mp4Track track : tracks) {
+            if (track.sampleCount() > 0) {
+                mediaTracks.add(track);
+            }
+        }
+
+        // Segment start times, in the reference timescale, at keyframes of the reference track
+        List<Long> startTimes = new ArrayList<>();
+        long target = (long) Math.ceil(targetSeconds * reference.getTimescale());
+        startTimes.add(reference.decodeTime(0));
+        for (int sample = 1; sample < reference.sampleCount(); sample++) {
+            if (reference.isSync(sample) && reference.decodeTime(sample) - startTimes.get(startTimes.size() - 1) >= target) {
+                startTimes.add(reference.decodeTime(sample));
+            }
+        }
+
+        // First sample of every segment in every track, the last entry is the sample count
+        int[][] firstSamples = new int[mediaTracks.size()][];
+        for (int t = 0; t < mediaTracks.size(); t++) {
+            Mp4Track track = mediaTracks.get(t);
+            int[] first = new int[startTimes.size() + 1];
+            int sample = 0;
+            for (int s = 1; s < startTimes.size(); s++) {
+                long boundary = startTimes.get(s);
+                while (sample < track.sampleCount()
+                        && track.decodeTime(sample) * reference.getTimescale() < boundary * track.getTimescale()) {
+                    sample++;
+                }
+                first[s] = sample;
+            }
+            first[startTimes.size()] = track.sampleCount();
+            firstSamples[t] = first;
+        }
+
+        long totalBytes = writeFile(outputDirectory.resolve(SegmentedMovie.INIT_SEGMENT), initSegment(moov, tracks));
+        List<SegmentedMovie.Segment> segments = new ArrayList<>();
+        for (int s = 0; s < startTimes.size(); s++) {
+            long end = s + 1 < startTimes.size() ? startTimes.get(s + 1) : reference.endTime();
+            String name = SegmentedMovie.segmentName(s + 1);
+            long size = writeFragment(in, outputDirectory.resolve(name), s + 1, mediaTracks, firstSamples, s);
+            segments.add(new SegmentedMovie.Segment(name, startTimes.get(s), end - startTimes.get(s), size));
+            totalBytes += size;
+        }
+        return movie(tracks, reference, segments, totalBytes);
+    }
+
+    private long writeFragment(FileChannel in, Path target, int sequenceNumber, List<Mp4Track> tracks, int[][] firstSamples, int segment)
+            throws IOException {
+        long[] dataOffsets = new long[tracks.size()];
+        long mdatPayload = 0;
+        for (int t = 0; t < tracks.size(); t++) {
+            for (int sample = firstSamples[t][segment]; sample < firstSamples[t][segment + 1]; sample++) {
+                mdatPayload += tracks.get(t).size(sample);
+            }
+        }
+        if (mdatPayload + MDAT_HEADER_SIZE > 0xFFFFFFFFL) {
+            throw new IllegalArgumentException("Segment " + sequenceNumber + " is larger than 4 GB.");
+        }
+
+        // The trun size does not depend on the data offsets, so the moof is laid out once to learn its size
+        long moofSize = moof(sequenceNumber, tracks, firstSamples, segment, dataOffsets).size();
+        long offset = moofSize + MDAT_HEADER_SIZE;
+        for (int t = 0; t < tracks.size(); t++) {
+            dataOffsets[t] = offset;
+            for (int sample = firstSamples[t][segment]; sample < firstSamples[t][segment + 1]; sample++) {
+                offset += tracks.get(t).size(sample);
+            }
+        }
+        Mp4Box moof = moof(sequenceNumber, tracks, firstSamples, segment, dataOffsets);
+
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer header = ByteBuffer.allocate((int) moofSize + MDAT_HEADER_SIZE);
+            moof.writeTo(header);
+            header.putInt((int) (mdatPayload + MDAT_HEADER_SIZE)).put(new byte[]{'m', 'd', 'a', 't'}).flip();
+            while (header.hasRemaining()) {
+                out.write(header);
+            }
+            // Contiguous samples are copied as one range
+            for (int t = 0; t < tracks.size(); t++) {
+                Mp4Track track = tracks.get(t);
+                long rangeStart = -1;
+                long rangeEnd = -1;
+                for (int sample = firstSamples[t][segment]; sample < firstSamples[t][segment + 1]; sample++) {
+                    if (track.offset(sample) != rangeEnd) {
+                        transfer(in, rangeStart, rangeEnd, out);
+                        rangeStart = track.offset(sample);
+                    }
+                    rangeEnd = track.offset(sample) + track.size(sample);
+                }
+                transfer(in, rangeStart, rangeEnd, out);
+            }
+            return out.position();
+        }
+    }
+
+    private static Mp4Box moof(int sequenceNumber, List<Mp4Track> tracks, int[][] firstSamples, int segment, long[] dataOffsets) {
+        List<Mp4Box> children = new ArrayList<>();
+        children.add(Mp4Box.leaf("mfhd", ByteBuffer.allocate(8).putInt(0).putInt(sequenceNumber).array()));
+        for (int t = 0; t < tracks.size(); t++) {
+            Mp4Track track = tracks.get(t);
+            int first = firstSamples[t][segment];
+            int count = firstSamples[t][segment + 1] - first;
+            if (count == 0) {
+                continue;
+            }
+            Mp4Box tfhd = Mp4Box.leaf("tfhd", ByteBuffer.allocate(8).putInt(TFHD_DEFAULT_BASE_IS_MOOF).putInt(track.getTrackId()).array());
+            Mp4Box tfdt = Mp4Box.leaf("tfdt", ByteBuffer.allocate(12).putInt(0x01000000).putLong(track.decodeTime(first)).array());
+            // Version 1 trun, composition offsets are signed
+            ByteBuffer trun = ByteBuffer.allocate(12 + 16 * count)
+                    .putInt(0x01000000 | TRUN_FLAGS)
+                    .putInt(count)
+                    .putInt((int) dataOffsets[t]);
+            for (int sample = first; sample < first + count; sample++) {
+                trun.putInt(track.duration(sample))
+                        .putInt(track.size(sample))
+                        .putInt(track.isSync(sample) ? SYNC_SAMPLE_FLAGS : NON_SYNC_SAMPLE_FLAGS)
+                        .putInt(track.compositionOffset(sample));
+            }
+            children.add(Mp4Box.container("traf", List.of(tfhd, tfdt, Mp4Box.leaf("trun", trun.array()))));
+        }
+        return Mp4Box.container("moof", children);
+    }
+
+    //-------------------------------------------------------------- init segment --------------------------------------------------------
+
+    // The moov without sample tables, plus an mvex that announces the fragments
+    private static byte[] initSegment(Mp4Box moov, List<Mp4Track> tracks) {
+        Mp4Box ftyp = Mp4Box.leaf("ftyp", ByteBuffer.allocate(20)
+                .put(new byte[]{'i', 's', 'o', '6'}).putInt(0)
+                .put(new byte[]{'i', 's', 'o', '6'}).put(new byte[]{'c', 'm', 'f', 'c'}).put(new byte[]{'m', 'p', '4', '1'})
+                .array());
+
+        List<Mp4Box> children = new ArrayList<>();
+        long movieDuration = 0;
+        for (Mp4Box child : moov.children()) {
+            switch (child.getType()) {
+                case "mvhd" -> {
+                    movieDuration = readVersioned(child, 16, 24);
+                    children.add(zeroVersioned(child, 16, 24));
+                }
+                case "trak" -> children.add(initTrak(child));
+                default -> children.add(child);
+            }
+        }
+        List<Mp4Box> mvex = new ArrayList<>();
+        mvex.add(Mp4Box.leaf("mehd", ByteBuffer.allocate(12).putInt(0x01000000).putLong(movieDuration).array()));
+        for (Mp4Track track : tracks) {
+            mvex.add(Mp4Box.leaf("trex", ByteBuffer.allocate(24).putInt(0).putInt(track.getTrackId()).putInt(1).array()));
+        }
+        children.add(Mp4Box.container("mvex", mvex));
+
+        Mp4Box initMoov = Mp4Box.container("moov", children);
+        ByteBuffer init = ByteBuffer.allocate(Math.toIntExact(ftyp.size() + initMoov.size()));
+        ftyp.writeTo(init);
+        initMoov.writeTo(init);
+        return init.array();
+    }
+
+    private static Mp4Box initTrak(Mp4Box box) {
+        if (!box.isContainer()) {
+            return switch (box.getType()) {
+                case "tkhd" -> zeroVersioned(box, 20, 28);
+                case "mdhd" -> zeroVersioned(box, 16, 24);
+                case "elst" -> openEndedEditList(box);
+                default -> box;
+            };
+        }
+        if (box.getType().equals("stbl")) {
+            // Sample descriptions stay, the sample tables are emptied since every sample now lives in a fragment
+            List<Mp4Box> stbl = new ArrayList<>();
+            stbl.add(box.find("stsd"));
+            stbl.add(Mp4Box.leaf("stts", new byte[8]));
+            stbl.add(Mp4Box.leaf("stsc", new byte[8]));
+            stbl.add(Mp4Box.leaf("stsz", new byte[12]));
+            stbl.add(Mp4Box.leaf("stco", new byte[8]));
+            stbl.addAll(box.findAll("sgpd"));
+            return Mp4Box.container("stbl", stbl);
+        }
+        List<Mp4Box> children = new ArrayList<>();
+        for (Mp4Box child : box.children()) {
+            children.add(initTrak(child));
+        }
+        return Mp4Box.container(box.getType(), children);
+    }
+
+    // A zero duration on the last edit means it runs to the end of the fragmented media
+    private static Mp4Box openEndedEditList(Mp4Box elst) {
+        ByteBuffer payload = elst.payload();
+        int version = payload.get(0);
+        int entries = payload.getInt(4);
+        int entrySize = version == 1 ? 20 : 12;
+        if (entries == 0) {
+            return elst;
+        }
+        int last = 8 + (entries - 1) * entrySize;
+        long mediaTime = version == 1 ? payload.getLong(last + 8) : payload.getInt(last + 4);
+        if (mediaTime == -1) {
+            return elst;
+        }
+        byte[] copy = payload.array().clone();
+        ByteBuffer edited = ByteBuffer.wrap(copy);
+        if (version == 1) {
+            edited.putLong(last, 0);
+        } else {
+            edited.putInt(last, 0);
+        }
+        return Mp4Box.leaf("elst", copy);
+    }
+
+    private static long readVersioned(Mp4Box box, int offsetV0, int offsetV1) {
+        ByteBuffer payload = box.payload();
+        return payload.get(0) == 1 ? payload.getLong(offsetV1) : Integer.toUnsignedLong(payload.getInt(offsetV0));
+    }
+
+    private static Mp4Box zeroVersioned(Mp4Box box, int offsetV0, int offsetV1) {
+        byte[] copy = box.payload().array().clone();
+        ByteBuffer payload = ByteBuffer.wrap(copy);
+        if (payload.get(0) == 1) {
+            payload.putLong(offsetV1, 0);
+        } else {
+            payload.putInt(offsetV0, 0);
+        }
+        return Mp4Box.leaf(box.getType(), copy);
+    }
+
+    //-------------------------------------------------------------- fragmented input --------------------------------------------------------
+
+    private SegmentedMovie splitFragments(FileChannel in, List<Mp4Box.Header> boxes, Mp4Box moov, List<Mp4Track> tracks,
+                                          Mp4Track reference, Path outputDirectory) throws IOException {
+        ByteBuffer init = ByteBuffer.allocate(Math.toIntExact(moov.size() + boxes.stream()
+                .filter(box -> box.type().equals("ftyp")).mapToLong(Mp4Box.Header::size).sum()));
+        for (Mp4Box.Header box : boxes) {
+            if (box.type().equals("ftyp")) {
+                Mp4Box.read(in, box).writeTo(init);
+            }
+        }
+        moov.writeTo(init);
+        long totalBytes = writeFile(outputDirectory.resolve(SegmentedMovie.INIT_SEGMENT), init.array());
+
+        int defaultDuration = 0;
+        for (Mp4Box trex : moov.find("mvex").findAll("trex")) {
+            ByteBuffer payload = trex.payload();
+            if (payload.getInt(4) == reference.getTrackId()) {
+                defaultDuration = payload.getInt(12);
+            }
+        }
+
+        long target = (long) Math.ceil(targetSeconds * reference.getTimescale());
+        List<SegmentedMovie.Segment> segments = new ArrayList<>();
+        List<long[]> ranges = new ArrayList<>();
+        long segmentStart = 0;
+        long segmentDuration = 0;
+        long nextDecodeTime = 0;
+        for (int i = 0; i < boxes.size(); i++) {
+            Mp4Box.Header box = boxes.get(i);
+            if (!box.type().equals("moof")) {
+                continue;
+            }
+            long[] timing = fragmentTiming(Mp4Box.read(in, box), reference.getTrackId(), defaultDuration, nextDecodeTime);
+            if (ranges.isEmpty()) {
+                segmentStart = timing[0];
+            }
+            nextDecodeTime = timing[0] + timing[1];
+            long end = box.end();
+            while (i + 1 < boxes.size() && boxes.get(i + 1).type().equals("mdat")) {
+                end = boxes.get(++i).end();
+            }
+            ranges.add(new long[]{box.offset(), end});
+            segmentDuration += timing[1];
+            if (segmentDuration >= target) {
+                totalBytes += flushSegment(in, outputDirectory, segments, ranges, segmentStart, segmentDuration);
+                segmentDuration = 0;
+            }
+        }
+        if (!ranges.isEmpty()) {
+            totalBytes += flushSegment(in, outputDirectory, segments, ranges, segmentStart, segmentDuration);
+        }
+        if (segments.isEmpty()) {
+            throw new IllegalArgumentException("Fragmented MP4 file has no fragments.");
+        }
+        return movie(tracks, reference, segments, totalBytes);
+    }
+
+    private static long flushSegment(FileChannel in, Path outputDirectory, List<SegmentedMovie.Segment> segments, List<long[]> ranges,
+                                     long startTime, long duration) throws IOException {
+        String name = SegmentedMovie.segmentName(segments.size() + 1);
+        long size;
+        try (FileChannel out = FileChannel.open(outputDirectory.resolve(name), StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            for (long[] range : ranges) {
+                transfer(in, range[0], range[1], out);
+            }
+            size = out.position();
+        }
+        ranges.clear();
+        segments.add(new SegmentedMovie.Segment(name, startTime, duration, size));
+        return size;
+    }
+
+    // Decode time and duration of one track within a fragment, from its tfdt and trun entries
+    private static long[] fragmentTiming(Mp4Box moof, int trackId, int trexDuration, long expectedDecodeTime) {
+        for (Mp4Box traf : moof.findAll("traf")) {
+            ByteBuffer tfhd = traf.find("tfhd").payload();
+            int tfhdFlags = tfhd.getInt() & 0xFFFFFF;
+            if (tfhd.getInt() != trackId) {
+                continue;
+            }
+            if ((tfhdFlags & TFHD_BASE_DATA_OFFSET) != 0) {
+                throw new IllegalArgumentException("Fragments with absolute base data offsets cannot be split.");
+            }
+            if ((tfhdFlags & 0x02) != 0) {
+                tfhd.getInt();
+            }
+            int defaultDuration = (tfhdFlags & 0x08) != 0 ? tfhd.getInt() : trexDuration;
+
+            long decodeTime = expectedDecodeTime;
+            Mp4Box tfdt = traf.find("tfdt");
+            if (tfdt != null) {
+                decodeTime = readVersioned(tfdt, 4, 4);
+            }
+            long duration = 0;
+            for (Mp4Box trunBox : traf.findAll("trun")) {
+                ByteBuffer trun = trunBox.payload();
+                int flags = trun.getInt() & 0xFFFFFF;
+                int count = trun.getInt();
+                if ((flags & 0x001) != 0) {
+                    trun.getInt();
+                }
+                if ((flags & 0x004) != 0) {
+                    trun.getInt();
+                }
+                for (int sample = 0; sample < count; sample++) {
+                    duration += Integer.toUnsignedLong((flags & 0x100) != 0 ? trun.getInt() : defaultDuration);
+                    trun.position(trun.position() + 4 * Integer.bitCount(flags & 0xE00));
+                }
+            }
+            return new long[]{decodeTime, duration};
+        }
+        return new long[]{expectedDecodeTime, 0};
+    }
+
+    //-------------------------------------------------------------- helpers --------------------------------------------------------
+
+    private static SegmentedMovie movie(List<Mp4Track> tracks, Mp4Track reference, List<SegmentedMovie.Segment> segments, long totalBytes) {
+        List<String> codecs = new ArrayList<>();
+        for (Mp4Track track : tracks) {
+            if (track.isVideo() || "soun".equals(track.getHandler())) {
+                codecs.add(track.codec());
+            }
+        }
+        int width = 0;
+        int height = 0;
+        if (reference.isVideo()) {
+            ByteBuffer tkhd = reference.getTrak().find("tkhd").payload();
+            width = tkhd.getInt(tkhd.limit() - 8) >>> 16;
+            height = tkhd.getInt(tkhd.limit() - 4) >>> 16;
+        }
+        return new SegmentedMovie(reference.getTimescale(), List.copyOf(segments), List.copyOf(codecs), width, height, totalBytes);
+    }
+
+    private static long writeFile(Path target, byte[] content) throws IOException {
+        try (FileChannel out = FileChannel.open(target, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+            ByteBuffer buffer = ByteBuffer.wrap(content);
+            while (buffer.hasRemaining()) {
+                out.write(buffer);
+            }
+        }
+        return content.length;
+    }
+
+    private static void transfer(FileChannel in, long start, long end, FileChannel out) throws IOException {
+        long position = start;
+        while (position < end) {
+            long transferred = in.transferTo(position, end - position, out);
+            if (transferred <= 0) {
+                throw new IllegalArgumentException("MP4 file is truncated: sample data ends before offset " + end + ".");
+            }
+            position += transferred;
+        }
+    }
+}
@@ -0,0 +1,381 @@
+package com.spring_stream_backend.media;
+
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * The samples of one track of a progressive MP4, flattened from its sample tables
+ * (stts, ctts, stss, stsc, stsz and stco/co64) into per-sample arrays.
+ */
+public final class Mp4Track {
+
+    private final Mp4Box trak;
+    private final int trackId;
+    private final String handler;
+    private final long timescale;
+    private final long[] offsets;
+    private final int[] sizes;
+    private final long[] decodeTimes;
+    private final int[] durations;
+    private final int[] compositionOffsets;
+    private final BitSet sync;
+
+    private Mp4Track(Mp4Box trak, int trackId, String handler, long timescale, long[] offsets, int[] sizes, long[] decodeTimes,
+                     int[] durations, int[] compositionOffsets, BitSet sync) {
+        this.trak = trak;
+        this.trackId = trackId;
+        this.handler = handler;
+        this.timescale = timescale;
+        this.offsets = offsets;
+        this.sizes = sizes;
+        this.decodeTimes = decodeTimes;
+        this.durations = durations;
+        this.compositionOffsets = compositionOffsets;
+        this.sync = sync;
+    }
+
+    /**
+     * Reads the sample tables of a track.
+     *
+     * @param trak The trak box.
+     * @return The track.
+     */
+    public static Mp4Track parse(Mp4Box trak) {
+        Mp4Box stbl = require(trak, "mdia", "minf", "stbl");
+        int trackId = trackId(require(trak, "tkhd"));
+        String handler = handler(require(trak, "mdia", "hdlr"));
+        long timescale = timescale(require(trak, "mdia", "mdhd"));
+
+        int[] sizes = sampleSizes(stbl);
+        int sampleCount = sizes.length;
+        long[] offsets = sampleOffsets(stbl, sizes);
+        int[] durations = new int[sampleCount];
+        long[] decodeTimes = new long[sampleCount];
+        fillTimes(require(stbl, "stts"), durations, decodeTimes);
+        int[] compositionOffsets = new int[sampleCount];
+        Mp4Box ctts = stbl.find("ctts");
+        if (ctts != null) {
+            fillCompositionOffsets(ctts, compositionOffsets);
+        }
+        BitSet sync = new BitSet(sampleCount);
+        Mp4Box stss = stbl.find("stss");
+        if (stss == null) {
+            // Every sample is a sync sample when the table is absent
+            sync.set(0, sampleCount);
+        } else {
+            ByteBuffer payload = stss.payload();
+            payload.getInt();
+            int entries = payload.getInt();
+            for (int i = 0; i < entries; i++) {
+                int sample = payload.getInt() - 1;
+                if (sample >= 0 && sample < sampleCount) {
+                    sync.set(sample);
+                }
+            }
+        }
+        return new Mp4Track(trak, trackId, handler, timescale, offsets, sizes, decodeTimes, durations, compositionOffsets, sync);
+    }
+
+    /**
+     * @param moov The moov box.
+     * @return Every track of the movie, in file order.
+     */
+    public static List<Mp4Track> parseAll(Mp4Box moov) {
+        List<Mp4Track> tracks = new ArrayList<>();
+        for (Mp4Box trak : moov.findAll("trak")) {
+            tracks.add(parse(trak));
+        }
+        if (tracks.isEmpty()) {
+            throw new IllegalArgumentException("MP4 file has no tracks.");
+        }
+        return tracks;
+    }
+
+    /**
+     * @param tracks The tracks of a movie.
+     * @return The track that timing and seeking follow: the first video track, else the first track.
+     */
+    public static Mp4Track reference(List<Mp4Track> tracks) {
+        for (Mp4Track track : tracks) {
+            if (track.isVideo()) {
+                return track;
+            }
+        }
+        return tracks.get(0);
+    }
+
+    private static Mp4Box require(Mp4Box box, String... path) {
+        Mp4Box found = box.find(path);
+        if (found == null) {
+            throw new IllegalArgumentException("Track is missing its " + String.join("/", path) + " box.");
+        }
+        return found;
+    }
+
+    private static int trackId(Mp4Box tkhd) {
+        ByteBuffer payload = tkhd.payload();
+        int version = payload.get(0);
+        return payload.getInt(version == 1 ? 20 : 12);
+    }
+
+    private static String handler(Mp4Box hdlr) {
+        byte[] type = new byte[4];
+        hdlr.payload().get(8, type);
+        return new String(type, StandardCharsets.ISO_8859_1);
+    }
+
+    private static long timescale(Mp4Box mdhd) {
+        ByteBuffer payload = mdhd.payload();
+        int version = payload.get(0);
+        return Integer.toUnsignedLong(payload.getInt(version == 1 ? 20 : 12));
+    }
+
+    private static int[] sampleSizes(Mp4Box stbl) {
+        Mp4Box stsz = stbl.find("stsz");
+        if (stsz == null) {
+            throw new IllegalArgumentException("Track has no stsz box (compact stz2 sample sizes are not supported).");
+        }
+        ByteBuffer payload = stsz.payload();
+        payload.getInt();
+        int constantSize = payload.getInt();
+        int[] sizes = new int[payload.getInt()];
+        for (int i = 0; i < sizes.length; i++) {
+            sizes[i] = constantSize != 0 ? constantSize : payload.getInt();
+        }
+        return sizes;
+    }
+
+    // Expands the chunk offsets and the sample-to-chunk runs into one file offset per sample
+    private static long[] sampleOffsets(Mp4Box stbl, int[] sizes) {
+        Mp4Box stco = stbl.find("stco");
+        Mp4Box co64 = stbl.find("co64");
+        if (stco == null && co64 == null) {
+            throw new IllegalArgumentException("Track has no chunk offset box.");
+        }
+        ByteBuffer chunkOffsets = (stco != null ? stco : co64).payload();
+        chunkOffsets.getInt();
+        long[] chunks = new long[chunkOffsets.getInt()];
+        for (int i = 0; i < chunks.length; i++) {
+            chunks[i] = stco != null ? Integer.toUnsignedLong(chunkOffsets.getInt()) : chunkOffsets.getLong();
+        }
+
+        ByteBuffer stsc = require(stbl, "stsc").payload();
+        stsc.getInt();
+        int entries = stsc.getInt();
+        int[] firstChunk = new int[entries];
+        int[] samplesPerChunk = new int[entries];
+        for (int i = 0; i < entries; i++) {
+            firstChunk[i] = stsc.getInt() - 1;
+            samplesPerChunk[i] = stsc.getInt();
+            stsc.getInt(); // sample description index
+        }
+
+        long[] offsets = new long[sizes.length];
+        int sample = 0;
+        for (int entry = 0; entry < entries && sample < sizes.length; entry++) {
+            int lastChunk = entry + 1 < entries ? firstChunk[entry + 1] : chunks.length;
+            for (int chunk = firstChunk[entry]; chunk < lastChunk && sample < sizes.length; chunk++) {
+                long offset = chunks[chunk];
+                for (int i = 0; i < samplesPerChunk[entry] && sample < sizes.length; i++) {
+                    offsets[sample] = offset;
+                    offset += sizes[sample];
+                    sample++;
+                }
+            }
+        }
+        if (sample < sizes.length) {
+            throw new IllegalArgumentException("Sample-to-chunk table covers " + sample + " of " + sizes.length + " samples.");
+        }
+        return offsets;
+    }
+
+    private static void fillTimes(Mp4Box stts, int[] durations, long[] decodeTimes) {
+        ByteBuffer payload = stts.payload();
+        payload.getInt();
+        int entries = payload.getInt();
+        int sample = 0;
+        long time = 0;
+        for (int entry = 0; entry < entries; entry++) {
+            int count = payload.getInt();
+            int delta = payload.getInt();
+            for (int i = 0; i < count && sample < durations.length; i++) {
+                durations[sample] = delta;
+                decodeTimes[sample] = time;
+                time += Integer.toUnsignedLong(delta);
+                sample++;
+            }
+        }
+        if (sample < durations.length) {
+            throw new IllegalArgumentException("Time-to-sample table covers " + sample + " of " + durations.length + " samples.");
+        }
+    }
+
+    private static void fillCompositionOffsets(Mp4Box ctts, int[] compositionOffsets) {
+        ByteBuffer payload = ctts.payload();
+        payload.getInt();
+        int entries = payload.getInt();
+        int sample = 0;
+        for (int entry = 0; entry < entries; entry++) {
+            int count = payload.getInt();
+            int offset = payload.getInt();
+            for (int i = 0; i < count && sample < compositionOffsets.length; i++) {
+                compositionOffsets[sample++] = offset;
+            }
+        }
+    }
+
+    //-------------------------------------------------------------- codec --------------------------------------------------------
+
+    /**
+     * @return The RFC 6381 codec string of the first sample description, e.g. {@code avc1.64001f} or {@code mp4a.40.2}.
+     */
+    public String codec() {
+        ByteBuffer stsd = require(trak, "mdia", "minf", "stbl", "stsd").payload();
+        stsd.position(8);
+        byte[] entryType = new byte[4];
+        stsd.get(stsd.position() + 4, entryType);
+        String type = new String(entryType, StandardCharsets.ISO_8859_1);
+        int entrySize = stsd.getInt(stsd.position());
+        ByteBuffer entryPayload = stsd.slice(stsd.position() + 8, entrySize - 8);
+        switch (type) {
+            case "avc1", "avc3" -> {
+                // Children follow the 78 byte visual sample entry
+                Mp4Box avcC = child(entryPayload, 78, "avcC");
+                if (avcC != null) {
+                    ByteBuffer config = avcC.payload();
+                    return String.format("%s.%02x%02x%02x", type, config.get(1) & 0xFF, config.get(2) & 0xFF, config.get(3) & 0xFF);
+                }
+            }
+            case "mp4a" -> {
+                // Children follow the 28 byte audio sample entry
+                Mp4Box esds = child(entryPayload, 28, "esds");
+                if (esds != null) {
+                    String codec = esdsCodec(esds.payload());
+                    if (codec != null) {
+                        return codec;
+                    }
+                }
+            }
+            default -> {
+            }
+        }
+        return type;
+    }
+
+    private static Mp4Box child(ByteBuffer sampleEntry, int headerSize, String type) {
+        if (sampleEntry.remaining() <= headerSize) {
+            return null;
+        }
+        for (Mp4Box box : Mp4Box.parseAll(sampleEntry.slice(headerSize, sampleEntry.remaining() - headerSize))) {
+            if (box.getType().equals(type)) {
+                return box;
+            }
+        }
+        return null;
+    }
+
+    // ES_Descriptor > DecoderConfigDescriptor (object type) > DecoderSpecificInfo (audio object type)
+    private static String esdsCodec(ByteBuffer esds) {
+        esds.position(4);
+        if (esds.get() != 0x03) {
+            return null;
+        }
+        descriptorLength(esds);
+        esds.getShort(); // ES_ID
+        int flags = esds.get() & 0xFF;
+        if ((flags & 0x80) != 0) {
+            esds.getShort();
+        }
+        if ((flags & 0x40) != 0) {
+            esds.position(esds.position() + (esds.get() & 0xFF));
+        }
+        if ((flags & 0x20) != 0) {
+            esds.getShort();
+        }
+        if (esds.get() != 0x04) {
+            return null;
+        }
+        descriptorLength(esds);
+        int objectType = esds.get() & 0xFF;
+        esds.position(esds.position() + 12);
+        if (objectType == 0x40 && esds.hasRemaining() && esds.get() == 0x05) {
+            descriptorLength(esds);
+            int audioObjectType = (esds.get() & 0xFF) >>> 3;
+            return String.format("mp4a.%02x.%d", objectType, audioObjectType);
+        }
+        return String.format("mp4a.%02x", objectType);
+    }
+
+    private static int descriptorLength(ByteBuffer buffer) {
+        int length = 0;
+        for (int i = 0; i < 4; i++) {
+            int b = buffer.get() & 0xFF;
+            length = (length << 7) | (b & 0x7F);
+            if ((b & 0x80) == 0) {
+                break;
+            }
+        }
+        return length;
+    }
+
+    //-------------------------------------------------------------- accessors --------------------------------------------------------
+
+    public Mp4Box getTrak() {
+        return trak;
+    }
+
+    public int getTrackId() {
+        return trackId;
+    }
+
+    public String getHandler() {
+        return handler;
+    }
+
+    public boolean isVideo() {
+        return "vide".equals(handler);
+    }
+
+    public long getTimescale() {
+        return timescale;
+    }
+
+    public int sampleCount() {
+        return sizes.length;
+    }
+
+    public long offset(int sample) {
+        return offsets[sample];
+    }
+
+    public int size(int sample) {
+        return sizes[sample];
+    }
+
+    public long decodeTime(int sample) {
+        return decodeTimes[sample];
+    }
+
+    public int duration(int sample) {
+        return durations[sample];
+    }
+
+    public int compositionOffset(int sample) {
+        return compositionOffsets[sample];
+    }
+
+    public boolean isSync(int sample) {
+        return sync.get(sample);
+    }
+
+    /**
+     * @return The decode time just past the last sample, in the track timescale.
+     */
+    public long endTime() {
+        int last = sizes.length - 1;
+        return last < 0 ? 0 : decodeTimes[last] + Integer.toUnsignedLong(durations[last]);
+    }
+}
@@ -0,0 +1,117 @@
+package com.spring_stream_backend.media;
+
+import java.util.List;
+import java.util.Locale;
+
+/**
+ * The result of segmenting a movie: an init segment plus media segments, with what the manifests need to describe them.
+ *
+ * @param timescale  The timescale the segment start times and durations are expressed in.
+ * @param segments   The media segments in playback order.
+ * @param codecs     The RFC 6381 codec strings of the tracks, e.g. {@code avc1.64001f}.
+ * @param width      The video width in pixels, or 0 without video.
+ * @param height     The video height in pixels, or 0 without video.
+ * @param totalBytes The size of the init and media segments together.
+ */
+public record SegmentedMovie(long timescale, List<Segment> segments, List<String> codecs, int width, int height, long totalBytes) {
+
+    public static final String INIT_SEGMENT = "init.mp4";
+
+    /**
+     * One media segment.
+     *
+     * @param name      The file name of the segment.
+     * @param startTime The decode time of its first sample, in the movie timescale.
+     * @param duration  Its duration, in the movie timescale.
+     * @param size      Its size in bytes.
+     */
+    public record Segment(String name, long startTime, long duration, long size) {
+    }
+
+    public static String segmentName(int number) {
+        return "seg-" + number + ".m4s";
+    }
+
+    public double durationSeconds() {
+        long duration = 0;
+        for (Segment segment : segments) {
+            duration += segment.duration();
+        }
+        return (double) duration / timescale;
+    }
+
+    /**
+     * Writes an HLS media playlist using fMP4 segments (EXT-X-MAP), version 7.
+     *
+     * @param uriPrefix The prefix of every segment URI, e.g. the directory the segments are served from.
+     * @return The playlist.
+     */
+    public String toHlsPlaylist(String uriPrefix) {
+        double targetDuration = 0;
+        for (Segment segment : segments) {
+            targetDuration = Math.max(targetDuration, (double) segment.duration() / timescale);
+        }
+        StringBuilder playlist = new StringBuilder()
+                .append("#EXTM3U\n")
+                .append("#EXT-X-VERSION:7\n")
+                .append("#EXT-X-TARGETDURATION:").append((long) Math.ceil(targetDuration)).append('\n')
+                .append("#EXT-X-MEDIA-SEQUENCE:0\n")
+                .append("#EXT-X-PLAYLIST-TYPE:VOD\n")
+                .append("#EXT-X-INDEPENDENT-SEGMENTS\n")
+                .append("#EXT-X-MAP:URI=\"").append(uriPrefix).append(INIT_SEGMENT).append("\"\n");
+        for (Segment segment : segments) {
+            playlist.append(String.format(Locale.ROOT, "#EXTINF:%.3f,%n", (double) segment.duration() / timescale))
+                    .append(uriPrefix).append(segment.name()).append('\n');
+        }
+        return playlist.append("#EXT-X-ENDLIST\n").toString();
+    }
+
+    /**
+     * Writes a static DASH manifest with one multiplexed representation and an explicit segment timeline.
+     *
+     * @param uriPrefix The prefix of every segment URI.
+     * @return The MPD.
+     */
+    public String toDashManifest(String uriPrefix) {
+        double duration = durationSeconds();
+        long bandwidth = duration > 0 ? (long) Math.ceil(totalBytes * 8 / duration) : 0;
+        StringBuilder mpd = new StringBuilder()
+                .append("<?xml version=\"1.0\" encoding=\"UTF-8\"?>\n")
+                .append("<MPD xmlns=\"urn:mpeg:dash:schema:mpd:2011\" profiles=\"urn:mpeg:dash:profile:isoff-live:2011\" type=\"static\"")
+                .append(String.format(Locale.ROOT, " mediaPresentationDuration=\"PT%.3fS\" minBufferTime=\"PT2S\">%n", duration))
+                .append("  <Period id=\"0\" start=\"PT0S\">\n")
+                .append("    <AdaptationSet segmentAlignment=\"true\" startWithSAP=\"1\">\n")
+                .append("      <Representation id=\"0\" mimeType=\"").append(width > 0 ? "video/mp4" : "audio/mp4").append('"')
+                .append(" codecs=\"").append(String.join(",", codecs)).append('"')
+                .append(" bandwidth=\"").append(bandwidth).append('"');
+        if (width > 0) {
+            mpd.append(" width=\"").append(width).append("\" height=\"").append(height).append('"');
+        }
+        mpd.append(">\n")
+                .append("        <SegmentTemplate timescale=\"").append(timescale).append('"')
+                .append(" initialization=\"").append(uriPrefix).append(INIT_SEGMENT).append('"')
+                .append(" media=\"").append(uriPrefix).append("seg-$Number$.m4s\" startNumber=\"1\">\n")
+                .append("          <SegmentTimeline>\n");
+        for (int i = 0; i < segments.size(); ) {
+            // Runs of equal durations collapse into one S element
+            Segment segment = segments.get(i);
+            int repeat = 0;
+            while (i + repeat + 1 < segments.size() && segments.get(i + repeat + 1).duration() == segment.duration()) {
+                repeat++;
+            }
+            mpd.append("            <S t=\"").append(segment.startTime()).append("\" d=\"").append(segment.duration()).append('"');
+            if (repeat > 0) {
+                mpd.append(" r=\"").append(repeat).append('"');
+            }
+            mpd.append("/>\n");
+            i += repeat + 1;
+        }
+        return mpd.append("          </SegmentTimeline>\n")
+                .append("        </SegmentTemplate>\n")
+                .append("      </Representation>\n")
+                .append("    </AdaptationSet>\n")
+                .append("  </Period>\n")
+                .append("</MPD>\n")
+                .toString();
+    }
+}
@@ -0,0 +1,9 @@
+package com.spring_stream_backend.repository;
+
+import com.spring_stream_backend.entity.Video;
+import org.springframework.data.jpa.repository.JpaRepository;
+import org.springframework.stereotype.Repository;
+
+@Repository
+public interface VideoRepository extends JpaRepository<Video, String> {
+}
@@ -0,0 +1,110 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Sizes regions from the throughput each client has shown so far.
+ * The throughput sample is the size of the previous region divided by the gap until the next request,
+ * smoothed with an exponentially weighted moving average. A client then gets roughly
+ * {@code targetSeconds} worth of bytes per request, kept within the configured bounds.
+ */
+@Component
+@ConditionalOnProperty(name = "video.stream.chunk-policy", havingValue = "adaptive")
+public class AdaptiveChunkSizePolicy implements ChunkSizePolicy {
+
+    private static final double SMOOTHING = 0.3;
+
+    private final long minChunkSize;
+    private final long maxChunkSize;
+    private final long initialChunkSize;
+    private final double targetSeconds;
+    private final long idleTimeoutNanos;
+    private final int maxClients;
+    private final LongSupplier nanoClock;
+
+    private final Map<String, ClientStats> clients = new ConcurrentHashMap<>();
+
+    @Autowired
+    public AdaptiveChunkSizePolicy(@Value("${video.stream.chunk-size.min:262144}") long minChunkSize,
+                                   @Value("${video.stream.chunk-size.max:16777216}") long maxChunkSize,
+                                   @Value("${video.stream.chunk-size.default:1048576}") long initialChunkSize,
+                                   @Value("${video.stream.chunk-size.target-seconds:4}") double targetSeconds,
+                                   @Value("${video.stream.chunk-size.idle-timeout-seconds:60}") long idleTimeoutSeconds,
+                                   @Value("${video.stream.chunk-size.max-clients:100000}") int maxClients) {
+        this(minChunkSize, maxChunkSize, initialChunkSize, targetSeconds, idleTimeoutSeconds, maxClients, System::nanoTime);
+    }
+
+    AdaptiveChunkSizePolicy(long minChunkSize, long maxChunkSize, long initialChunkSize, double targetSeconds,
+                            long idleTimeoutSeconds, int maxClients, LongSupplier nanoClock) {
+        if (minChunkSize <= 0 || maxChunkSize < minChunkSize) {
+            throw new IllegalArgumentException("Chunk size bounds must satisfy 0 < min <= max.");
+        }
+        this.minChunkSize = minChunkSize;
+        this.maxChunkSize = maxChunkSize;
+        this.initialChunkSize = clamp(initialChunkSize);
+        this.targetSeconds = targetSeconds;
+        this.idleTimeoutNanos = TimeUnit.SECONDS.toNanos(idleTimeoutSeconds);
+        this.maxClients = maxClients;
+        this.nanoClock = nanoClock;
+    }
+
+    @Override
+    public long regionSize(String clientKey, long requestedLength) {
+        if (clientKey == null) {
+            return Math.min(initialChunkSize, requestedLength);
+        }
+
+        long now = nanoClock.getAsLong();
+        if (clients.size() >= maxClients && !clients.containsKey(clientKey)) {
+            evictIdleClients(now);
+            if (clients.size() >= maxClients) {
+                return Math.min(initialChunkSize, requestedLength);
+            }
+        }
+
+        ClientStats stats = clients.computeIfAbsent(clientKey, key -> new ClientStats());
+        synchronized (stats) {
+            long gap = now - stats.lastRequestNanos;
+            // A long pause means the player was idle (paused, buffer full), not that the link is slow
+            if (stats.lastRegionSize > 0 && gap > 0 && gap < idleTimeoutNanos) {
+                double sample = stats.lastRegionSize * (double) TimeUnit.SECONDS.toNanos(1) / gap;
+                stats.bytesPerSecond = stats.bytesPerSecond == 0
+                        ? sample
+                        : SMOOTHING * sample + (1 - SMOOTHING) * stats.bytesPerSecond;
+            }
+
+            long size = stats.bytesPerSecond == 0 ? initialChunkSize : clamp((long) (stats.bytesPerSecond * targetSeconds));
+            size = Math.min(size, requestedLength);
+            stats.lastRequestNanos = now;
+            stats.lastRegionSize = size;
+            return size;
+        }
+    }
+
+    double estimatedBytesPerSecond(String clientKey) {
+        ClientStats stats = clients.get(clientKey);
+        return stats == null ? 0 : stats.bytesPerSecond;
+    }
+
+    private long clamp(long size) {
+        return Math.max(minChunkSize, Math.min(maxChunkSize, size));
+    }
+
+    private void evictIdleClients(long now) {
+        clients.values().removeIf(stats -> now - stats.lastRequestNanos > idleTimeoutNanos);
+    }
+
+    private static final class ClientStats {
+        private long lastRequestNanos;
+        private long lastRegionSize;
+        private double bytesPerSecond;
+    }
+}
@@ -0,0 +1,321 @@
+package com.spring_stream_backend.service;
+
+import jakarta.servlet.http.HttpServletRequest;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+
+import java.io.InterruptedIOException;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.ReentrantLock;
+import java.util.function.LongSupplier;
+import java.util.function.UnaryOperator;
+
+/**
+ * Shapes the bandwidth of the streaming endpoints with token buckets, one shared by all streams and one per client.
+ * A client is its remote address, which it cannot change per request the way it can change its headers; a client
+ * rotating its {@code X-Client-Id} still shares one bucket and never gets a second burst.
+ * A client's bucket starts full with {@code client-burst-bytes}, so a player fills its initial buffer at full speed
+ * and is held to its rate afterwards; all the streams of one client share its bucket.
+ * Bytes are granted in quanta of {@value #QUANTUM} bytes whatever the size of the writes, and streams waiting for
+ * the global bucket queue for each quantum in arrival order (deficit round robin), so under overload every active
+ * stream gets an equal share of bytes instead of the fastest readers or the largest writes taking it all.
+ * Limits can be changed while streams are running, they apply from the next quantum.
+ */
+@Service
+public class BandwidthScheduler {
+
+    public static final String CLIENT_ID_HEADER = "X-Client-Id";
+    // Request attribute holding the response's flow, for writers that must not block and shape themselves
+    public static final String FLOW_ATTRIBUTE = BandwidthScheduler.class.getName() + ".flow";
+    static final int QUANTUM = 64 * 1024;
+    private static final int EVICT_EVERY = 1024; // Flows opened between sweeps of idle client buckets
+
+    private final LongSupplier nanoClock;
+    private final Sleeper sleeper;
+    private final TokenBucket global;
+    private final ReentrantLock globalQueue = new ReentrantLock(true); // Fair, waiting streams are served in order
+    private final Map<String, ClientBucket> clients = new ConcurrentHashMap<>();
+    private final Map<String, Long> clientLimits = new ConcurrentHashMap<>();
+    private final AtomicInteger opened = new AtomicInteger();
+    private volatile Limits limits;
+
+    @Autowired
+    public BandwidthScheduler(@Value("${video.stream.bandwidth.global-bytes-per-second:0}") long globalBytesPerSecond,
+                              @Value("${video.stream.bandwidth.global-burst-bytes:4194304}") long globalBurstBytes,
+                              @Value("${video.stream.bandwidth.client-bytes-per-second:0}") long clientBytesPerSecond,
+                              @Value("${video.stream.bandwidth.client-burst-bytes:8388608}") long clientBurstBytes) {
+        this(new Limits(globalBytesPerSecond, globalBurstBytes, clientBytesPerSecond, clientBurstBytes),
+                System::nanoTime, TimeUnit.NANOSECONDS::sleep);
+    }
+
+    BandwidthScheduler(Limits limits, LongSupplier nanoClock, Sleeper sleeper) {
+        limits.validate();
+        this.limits = limits;
+        this.nanoClock = nanoClock;
+        this.sleeper = sleeper;
+        this.global = new TokenBucket(limits.globalBytesPerSecond(), limits.globalBurstBytes(), nanoClock.getAsLong());
+    }
+
+    /**
+     * The key a client's streams are shaped under, its remote address. Behind a reverse proxy the proxy has to
+     * forward the client's address ({@code server.forward-headers-strategy}).
+     *
+     * @param request The current request.
+     * @return The client key.
+     */
+    public static String clientKey(HttpServletRequest request) {
+        return request.getRemoteAddr();
+    }
+
+    /**
+     * One viewer of a client, for per-viewer state such as chunk sizing: the client's address subdivided by the
+     * {@code X-Client-Id} players can send, otherwise by user agent. Never used for limits, a client chooses it freely.
+     *
+     * @param request The current request.
+     * @return The viewer key.
+     */
+    public static String viewerKey(HttpServletRequest request) {
+        String clientId = request.getHeader(CLIENT_ID_HEADER);
+        String viewer = clientId != null && !clientId.isBlank() ? clientId : request.getHeader(HttpHeaders.USER_AGENT);
+        return clientKey(request) + "|" + viewer;
+    }
+
+    //----------------------------------------------------------flows----------------------------------------------------------
+
+    /**
+     * Starts shaping one response.
+     *
+     * @param clientKey The client the response goes to, see {@link #clientKey}.
+     * @return The flow to take bytes from, closed once the response is complete.
+     */
+    public Flow open(String clientKey) {
+        long now = nanoClock.getAsLong();
+        if (opened.incrementAndGet() % EVICT_EVERY == 0) {
+            evictIdleClients(now);
+        }
+        ClientBucket client = clients.compute(clientKey, (key, existing) -> {
+            ClientBucket bucket = existing != null ? existing
+                    : new ClientBucket(new TokenBucket(clientRate(key), limits.clientBurstBytes(), now));
+            bucket.flows++;
+            return bucket;
+        });
+        return new Flow(clientKey, client);
+    }
+
+    /**
+     * @return True if any limit is set, responses then cannot be handed to sendfile, which bypasses the shaping.
+     */
+    public boolean isShaping() {
+        Limits current = limits;
+        return current.globalBytesPerSecond() > 0 || current.clientBytesPerSecond() > 0 || !clientLimits.isEmpty();
+    }
+
+    // A client's bucket is kept while idle until it has refilled, dropping it earlier would hand out a fresh burst
+    private void evictIdleClients(long now) {
+        for (String key : clients.keySet()) {
+            clients.computeIfPresent(key, (k, bucket) -> bucket.flows == 0 && bucket.tokens.isFull(now) ? null : bucket);
+        }
+    }
+
+    private void takeGlobal(long bytes) throws InterruptedException {
+        if (limits.globalBytesPerSecond() <= 0) {
+            return;
+        }
+        globalQueue.lockInterruptibly();
+        try {
+            // Waiting holds the queue, the next stream in line gets the following quantum
+            pause(global.take(bytes, nanoClock.getAsLong()));
+        } finally {
+            globalQueue.unlock();
+        }
+    }
+
+    private void pause(long nanos) throws InterruptedException {
+        if (nanos > 0) {
+            sleeper.sleep(nanos);
+        }
+    }
+
+    //----------------------------------------------------------limits----------------------------------------------------------
+
+    public Limits getLimits() {
+        return limits;
+    }
+
+    /**
+     * Replaces the limits; running streams are shaped by them from their next quantum.
+     *
+     * @param newLimits The new limits.
+     * @throws IllegalArgumentException If a value is negative.
+     */
+    public synchronized void setLimits(Limits newLimits) {
+        newLimits.validate();
+        long now = nanoClock.getAsLong();
+        limits = newLimits;
+        global.setLimit(newLimits.globalBytesPerSecond(), newLimits.globalBurstBytes(), now);
+        clients.forEach((key, bucket) -> bucket.tokens.setLimit(clientRate(key), newLimits.clientBurstBytes(), now));
+    }
+
+    /**
+     * Changes some of the limits, atomically with respect to other changes.
+     *
+     * @param change Derives the new limits from the current ones.
+     * @return The new limits.
+     * @throws IllegalArgumentException If a value is negative.
+     */
+    public synchronized Limits updateLimits(UnaryOperator<Limits> change) {
+        Limits updated = change.apply(limits);
+        setLimits(updated);
+        return updated;
+    }
+
+    public Map<String, Long> getClientLimits() {
+        return Map.copyOf(clientLimits);
+    }
+
+    /**
+     * Gives one client its own rate instead of {@code client-bytes-per-second}.
+     *
+     * @param clientKey      The client, its remote address.
+     * @param bytesPerSecond The client's rate, 0 for unlimited.
+     */
+    public void setClientLimit(String clientKey, long bytesPerSecond) {
+        if (bytesPerSecond < 0) {
+            throw new IllegalArgumentException("Bandwidth limits cannot be negative.");
+        }
+        clientLimits.put(clientKey, bytesPerSecond);
+        updateClient(clientKey);
+    }
+
+    public void removeClientLimit(String clientKey) {
+        clientLimits.remove(clientKey);
+        updateClient(clientKey);
+    }
+
+    private void updateClient(String clientKey) {
+        ClientBucket bucket = clients.get(clientKey);
+        if (bucket != null) {
+            bucket.tokens.setLimit(clientRate(clientKey), limits.clientBurstBytes(), nanoClock.getAsLong());
+        }
+    }
+
+    private long clientRate(String clientKey) {
+        return clientLimits.getOrDefault(clientKey, limits.clientBytesPerSecond());
+    }
+
+    int clientCount() {
+        return clients.size();
+    }
+
+    /**
+     * Bandwidth limits in bytes per second, 0 for unlimited, and the bursts allowed above them.
+     */
+    public record Limits(long globalBytesPerSecond, long globalBurstBytes, long clientBytesPerSecond, long clientBurstBytes) {
+
+        void validate() {
+            if (globalBytesPerSecond < 0 || globalBurstBytes < 0 || clientBytesPerSecond < 0 || clientBurstBytes < 0) {
+                throw new IllegalArgumentException("Bandwidth limits cannot be negative.");
+            }
+        }
+    }
+
+    /**
+     * The shaped bytes of one response.
+     */
+    public final class Flow implements AutoCloseable {
+
+        private final String clientKey;
+        private final ClientBucket client;
+        private final AtomicBoolean closed = new AtomicBoolean();
+        private long credit; // Bytes granted but not written yet, a response is written by one thread at a time
+
+        private Flow(String clientKey, ClientBucket client) {
+            this.clientKey = clientKey;
+            this.client = client;
+        }
+
+        /**
+         * Waits until the client's and the global bucket allow the bytes to be written.
+         *
+         * @param bytes The number of bytes about to be written.
+         * @throws InterruptedIOException If the thread was interrupted while waiting.
+         */
+        public void acquire(long bytes) throws InterruptedIOException {
+            try {
+                while (credit < bytes) {
+                    // A whole quantum per turn, small writes spend it without queueing again
+                    pause(client.tokens.take(QUANTUM, nanoClock.getAsLong()));
+                    takeGlobal(QUANTUM);
+                    credit += QUANTUM;
+                }
+                credit -= bytes;
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+                throw new InterruptedIOException("Interrupted while waiting for bandwidth.");
+            }
+        }
+
+        /**
+         * Takes the bytes without waiting, for non-blocking writers that hold off their next write themselves.
+         * They are not queued with the blocking streams, each bucket just goes into debt for them.
+         *
+         * @param bytes The number of bytes written.
+         * @return Nanoseconds to wait before writing more, 0 if the buckets held enough.
+         */
+        public long reserve(long bytes) {
+            long now = nanoClock.getAsLong();
+            long wait = client.tokens.take(bytes, now);
+            if (limits.globalBytesPerSecond() > 0) {
+                wait = Math.max(wait, global.take(bytes, now));
+            }
+            return wait;
+        }
+
+        @Override
+        public void close() {
+            if (!closed.compareAndSet(false, true)) {
+                return;
+            }
+            if (credit > 0) {
+                // Short responses are not charged for the rest of their last quantum
+                long now = nanoClock.getAsLong();
+                client.tokens.refund(credit, now);
+                if (limits.globalBytesPerSecond() > 0) {
+                    global.refund(credit, now);
+                }
+                credit = 0;
+            }
+            clients.computeIfPresent(clientKey, (key, bucket) -> {
+                bucket.flows--;
+                return bucket;
+            });
+        }
+    }
+
+    /**
+     * A client's bucket and the number of its responses being written.
+     */
+    private static final class ClientBucket {
+
+        private final TokenBucket tokens;
+        private int flows; // Only changed inside compute on the client map
+
+        private ClientBucket(TokenBucket tokens) {
+            this.tokens = tokens;
+        }
+    }
+
+    /**
+     * Waits a number of nanoseconds, replaced by a fake clock in tests.
+     */
+    interface Sleeper {
+
+        void sleep(long nanos) throws InterruptedException;
+    }
+}
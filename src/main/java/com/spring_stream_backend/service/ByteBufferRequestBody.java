@@ -0,0 +1,55 @@
+package com.spring_stream_backend.service;
+
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+
+import java.nio.ByteBuffer;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Request body over an existing buffer. Unlike {@code AsyncRequestBody.fromByteBuffer} the bytes are not copied;
+ * every subscriber (the SDK resubscribes on retry) gets its own read-only view of the buffer.
+ */
+class ByteBufferRequestBody implements AsyncRequestBody {
+
+    private final ByteBuffer buffer;
+
+    ByteBufferRequestBody(ByteBuffer buffer) {
+        this.buffer = buffer.asReadOnlyBuffer();
+    }
+
+    @Override
+    public Optional<Long> contentLength() {
+        return Optional.of((long) buffer.remaining());
+    }
+
+    @Override
+    public void subscribe(Subscriber<? super ByteBuffer> subscriber) {
+        ByteBuffer view = buffer.duplicate();
+        AtomicBoolean done = new AtomicBoolean();
+        subscriber.onSubscribe(new Subscription() {
+            @Override
+            public void request(long n) {
+                if (n <= 0) {
+                    if (done.compareAndSet(false, true)) {
+                        subscriber.onError(new IllegalArgumentException("Demand must be positive, got " + n));
+                    }
+                    return;
+                }
+                if (done.compareAndSet(false, true)) {
+                    if (view.hasRemaining()) {
+                        subscriber.onNext(view);
+                    }
+                    subscriber.onComplete();
+                }
+            }
+
+            @Override
+            public void cancel() {
+                done.set(true);
+            }
+        });
+    }
+}
@@ -0,0 +1,115 @@
+package com.spring_stream_backend.service;
+
+import java.nio.ByteBuffer;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.Base64;
+
+/**
+ * Checksum helpers shared by the upload paths. Values travel base64 encoded, the same way S3 exchanges
+ * {@code x-amz-checksum-crc32c} and {@code x-amz-checksum-sha256}, so clients can use one encoding everywhere.
+ */
+public final class Checksums {
+
+    public static final String CRC32C_HEADER = "X-Checksum-CRC32C";
+    public static final String SHA256_HEADER = "X-Checksum-SHA256";
+
+    // CRC-32C (Castagnoli) polynomial, reflected
+    private static final int CRC32C_POLYNOMIAL = 0x82F63B78;
+
+    private Checksums() {
+    }
+
+    public static MessageDigest sha256() {
+        try {
+            return MessageDigest.getInstance("SHA-256");
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 is not available", e);
+        }
+    }
+
+    /**
+     * Combines the CRC-32C of two adjacent blocks into the CRC-32C of their concatenation, without the data,
+     * so chunks checksummed independently (and in parallel) yield the checksum of the whole file.
+     * This is zlib's {@code crc32_combine} with the Castagnoli polynomial.
+     *
+     * @param crc1    The checksum of the first block.
+     * @param crc2    The checksum of the second block.
+     * @param length2 The length of the second block.
+     * @return The checksum of the first block followed by the second.
+     */
+    public static int combineCrc32c(int crc1, int crc2, long length2) {
+        if (length2 <= 0) {
+            return crc1;
+        }
+        int[] even = new int[32]; // operator for an even power of two zero bits
+        int[] odd = new int[32]; // operator for an odd power of two zero bits
+
+        // Operator for one zero bit
+        odd[0] = CRC32C_POLYNOMIAL;
+        int row = 1;
+        for (int n = 1; n < 32; n++) {
+            odd[n] = row;
+            row <<= 1;
+        }
+        square(even, odd); // two zero bits
+        square(odd, even); // four zero bits
+
+        // Apply length2 zero bytes to crc1, squaring the operator for each bit of length2
+        do {
+            square(even, odd);
+            if ((length2 & 1) != 0) {
+                crc1 = times(even, crc1);
+            }
+            length2 >>>= 1;
+            if (length2 == 0) {
+                break;
+            }
+            square(odd, even);
+            if ((length2 & 1) != 0) {
+                crc1 = times(odd, crc1);
+            }
+            length2 >>>= 1;
+        } while (length2 != 0);
+
+        return crc1 ^ crc2;
+    }
+
+    public static String encodeCrc32c(int crc) {
+        return Base64.getEncoder().encodeToString(ByteBuffer.allocate(Integer.BYTES).putInt(crc).array());
+    }
+
+    public static String encode(byte[] digest) {
+        return Base64.getEncoder().encodeToString(digest);
+    }
+
+    /**
+     * Checks a checksum sent by the client, if any, against the one computed from the received bytes.
+     *
+     * @param what     What was checksummed, for the error message.
+     * @param expected The client's base64 checksum, may be null.
+     * @param actual   The base64 checksum of the received bytes.
+     * @throws IllegalArgumentException If the client sent a checksum and it does not match.
+     */
+    public static void verify(String what, String expected, String actual) {
+        if (expected != null && !expected.isBlank() && !expected.trim().equals(actual)) {
+            throw new IllegalArgumentException(what + " checksum mismatch: expected " + expected.trim() + ", received " + actual + ".");
+        }
+    }
+
+    private static int times(int[] matrix, int vector) {
+        int sum = 0;
+        for (int i = 0; vector != 0; i++, vector >>>= 1) {
+            if ((vector & 1) != 0) {
+                sum ^= matrix[i];
+            }
+        }
+        return sum;
+    }
+
+    private static void square(int[] square, int[] matrix) {
+        for (int n = 0; n < 32; n++) {
+            square[n] = times(matrix, matrix[n]);
+        }
+    }
+}
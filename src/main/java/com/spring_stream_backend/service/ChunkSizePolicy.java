@@ -0,0 +1,17 @@
+package com.spring_stream_backend.service;
+
+/**
+ * Decides how many bytes a single range response should carry.
+ * Implementations may keep per-client state, so every call is treated as one delivered region.
+ */
+public interface ChunkSizePolicy {
+
+    /**
+     * Picks the size of the next region served to a client.
+     *
+     * @param clientKey       A token identifying the viewer, may be null.
+     * @param requestedLength The number of bytes the client asked for.
+     * @return The number of bytes to serve, never more than requestedLength.
+     */
+    long regionSize(String clientKey, long requestedLength);
+}
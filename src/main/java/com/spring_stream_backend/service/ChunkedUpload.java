@@ -0,0 +1,310 @@
+package com.spring_stream_backend.service;
+
+import java.io.BufferedInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.ArrayList;
+import java.util.BitSet;
+import java.util.List;
+
+/**
+ * State of an upload whose chunks are written straight to their offset in a preallocated file.
+ * Received chunks are tracked in a bitmap that is persisted next to the file, so an interrupted
+ * upload can be resumed by sending only the missing chunks, even after a restart.
+ * The CRC-32C and SHA-256 of every received chunk are kept with the bitmap, so whole-file checksums
+ * are derived from them at completion instead of re-reading the file.
+ * <p>
+ * The state file is a log: a header describing the upload, then one fixed-size record per received chunk, appended as
+ * the chunk is marked. Accepting a chunk writes {@value #RECORD_LENGTH} bytes however many chunks there are. Chunks sent
+ * again append another record, the last one wins, and the log is compacted once it holds twice as many records as chunks.
+ */
+public class ChunkedUpload {
+
+    private static final int SHA256_LENGTH = 32;
+    // Chunk index, CRC-32C and SHA-256
+    private static final int RECORD_LENGTH = 2 * Integer.BYTES + SHA256_LENGTH;
+    // The bitmap and chunk checksums are held in memory, a tiny chunk size must not blow them up
+    static final int MAX_CHUNKS = 100_000;
+
+    private final Path dataFile;
+    private final Path stateFile;
+    private final String fileName;
+    private final long totalSize;
+    private final long chunkSize;
+    private final int totalChunks;
+    private final BitSet received;
+    private final int[] chunkCrc32c;
+    private final byte[][] chunkSha256;
+    private int loggedRecords;
+
+    private ChunkedUpload(Path dataFile, Path stateFile, String fileName, long totalSize, long chunkSize, BitSet received) {
+        this.dataFile = dataFile;
+        this.stateFile = stateFile;
+        this.fileName = fileName;
+        this.totalSize = totalSize;
+        this.chunkSize = chunkSize;
+        this.totalChunks = chunkCount(totalSize, chunkSize);
+        this.received = received;
+        this.chunkCrc32c = new int[totalChunks];
+        this.chunkSha256 = new byte[totalChunks][];
+    }
+
+    /**
+     * Opens an upload, restoring its received chunks if a previous attempt left state behind,
+     * otherwise preallocating the data file to its final size.
+     *
+     * @param dataFile  The file the chunks are written into.
+     * @param stateFile The file the received-chunks log is appended to.
+     * @param fileName  The name of the video being uploaded.
+     * @param totalSize The size of the complete file.
+     * @param chunkSize The size of every chunk but the last.
+     * @return The upload state.
+     */
+    public static ChunkedUpload open(Path dataFile, Path stateFile, String fileName, long totalSize, long chunkSize) throws IOException {
+        chunkCount(totalSize, chunkSize);
+        ChunkedUpload previous = restore(dataFile, stateFile);
+        if (previous != null) {
+            if (!previous.fileName.equals(fileName) || previous.totalSize != totalSize || previous.chunkSize != chunkSize) {
+                throw new IllegalArgumentException("A different upload is already in progress for this file.");
+            }
+            return previous;
+        }
+
+        try (RandomAccessFile file = new RandomAccessFile(dataFile.toFile(), "rw")) {
+            file.setLength(totalSize);
+        }
+        ChunkedUpload upload = new ChunkedUpload(dataFile, stateFile, fileName, totalSize, chunkSize, new BitSet());
+        upload.compact();
+        return upload;
+    }
+
+    /**
+     * Restores an upload left behind by a previous attempt. A record cut short by a crash is dropped,
+     * its chunk is simply missing and sent again.
+     *
+     * @param dataFile  The file the chunks are written into.
+     * @param stateFile The file the received-chunks log is appended to.
+     * @return The upload state, or null if there is nothing to resume.
+     */
+    public static ChunkedUpload restore(Path dataFile, Path stateFile) throws IOException {
+        if (!Files.exists(stateFile) || !Files.exists(dataFile)) {
+            return null;
+        }
+        ChunkedUpload upload;
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            upload = new ChunkedUpload(dataFile, stateFile, in.readUTF(), in.readLong(), in.readLong(), new BitSet());
+            while (true) {
+                int chunkIndex;
+                int crc32c;
+                byte[] sha256 = new byte[SHA256_LENGTH];
+                try {
+                    chunkIndex = in.readInt();
+                    crc32c = in.readInt();
+                    in.readFully(sha256);
+                } catch (EOFException e) {
+                    break;
+                }
+                if (chunkIndex < 0 || chunkIndex >= upload.totalChunks) {
+                    throw new IOException("Corrupt upload state " + stateFile.getFileName() + ": no chunk " + chunkIndex);
+                }
+                upload.received.set(chunkIndex);
+                upload.chunkCrc32c[chunkIndex] = crc32c;
+                upload.chunkSha256[chunkIndex] = sha256;
+                upload.loggedRecords++;
+            }
+        }
+        // Later records are appended after the last whole one
+        long logLength = upload.header().length + (long) upload.loggedRecords * RECORD_LENGTH;
+        if (Files.size(stateFile) > logLength) {
+            try (FileChannel log = FileChannel.open(stateFile, StandardOpenOption.WRITE)) {
+                log.truncate(logLength);
+            }
+        }
+        return upload;
+    }
+
+    /**
+     * Checks a chunk layout before anything is allocated for it.
+     *
+     * @param totalSize The size of the complete file.
+     * @param chunkSize The size of every chunk but the last.
+     * @return The number of chunks.
+     * @throws IllegalArgumentException If a size is not positive or there would be more than {@value #MAX_CHUNKS} chunks.
+     */
+    static int chunkCount(long totalSize, long chunkSize) {
+        if (totalSize <= 0 || chunkSize <= 0) {
+            throw new IllegalArgumentException("Total size and chunk size must be positive.");
+        }
+        int chunks;
+        try {
+            chunks = Math.toIntExact(totalSize / chunkSize + (totalSize % chunkSize == 0 ? 0 : 1));
+        } catch (ArithmeticException e) {
+            throw new IllegalArgumentException("Too many chunks, use a larger chunk size.");
+        }
+        if (chunks > MAX_CHUNKS) {
+            throw new IllegalArgumentException("Too many chunks (" + chunks + "), at most " + MAX_CHUNKS + " are allowed; use a larger chunk size.");
+        }
+        return chunks;
+    }
+
+    public long offsetOf(int chunkIndex) {
+        return chunkIndex * chunkSize;
+    }
+
+    public long lengthOf(int chunkIndex) {
+        return Math.min(chunkSize, totalSize - offsetOf(chunkIndex));
+    }
+
+    public void checkChunk(int chunkIndex, long length) {
+        if (chunkIndex < 0 || chunkIndex >= totalChunks) {
+            throw new IllegalArgumentException("chunkIndex must be between 0 and " + (totalChunks - 1) + ".");
+        }
+        if (length != lengthOf(chunkIndex)) {
+            throw new IllegalArgumentException("Chunk " + chunkIndex + " must be " + lengthOf(chunkIndex) + " bytes, got " + length + ".");
+        }
+    }
+
+    /**
+     * Marks a chunk as received once its bytes are durable and verified, and appends its record to the state file.
+     *
+     * @param chunkIndex The zero-based chunk index.
+     * @param crc32c     The CRC-32C of the chunk.
+     * @param sha256     The SHA-256 of the chunk.
+     */
+    public synchronized void markReceived(int chunkIndex, int crc32c, byte[] sha256) throws IOException {
+        received.set(chunkIndex);
+        chunkCrc32c[chunkIndex] = crc32c;
+        chunkSha256[chunkIndex] = sha256;
+        if (loggedRecords >= 2 * totalChunks) {
+            compact();
+            return;
+        }
+        ByteBuffer record = ByteBuffer.allocate(RECORD_LENGTH).putInt(chunkIndex).putInt(crc32c).put(sha256).flip();
+        try (FileChannel log = FileChannel.open(stateFile, StandardOpenOption.WRITE, StandardOpenOption.APPEND)) {
+            while (record.hasRemaining()) {
+                log.write(record);
+            }
+        }
+        loggedRecords++;
+    }
+
+    /**
+     * @return The CRC-32C of the whole file, combined from the chunk checksums.
+     */
+    public synchronized int fileCrc32c() {
+        checkComplete();
+        int crc = chunkCrc32c[0];
+        for (int i = 1; i < totalChunks; i++) {
+            crc = Checksums.combineCrc32c(crc, chunkCrc32c[i], lengthOf(i));
+        }
+        return crc;
+    }
+
+    /**
+     * @return The SHA-256 of the chunk SHA-256s in chunk order, the same composite S3 reports for multipart objects.
+     */
+    public synchronized byte[] compositeSha256() {
+        checkComplete();
+        MessageDigest digest = Checksums.sha256();
+        for (byte[] chunkDigest : chunkSha256) {
+            digest.update(chunkDigest);
+        }
+        return digest.digest();
+    }
+
+    private void checkComplete() {
+        if (!isComplete()) {
+            throw new IllegalStateException("Upload is missing chunks: " + missingChunks());
+        }
+    }
+
+    public synchronized boolean isComplete() {
+        return received.cardinality() == totalChunks;
+    }
+
+    public synchronized int receivedCount() {
+        return received.cardinality();
+    }
+
+    /**
+     * Deletes the data and state files of an upload that will not be completed.
+     */
+    public synchronized void discard() throws IOException {
+        Files.deleteIfExists(dataFile);
+        Files.deleteIfExists(stateFile);
+    }
+
+    public synchronized List<Integer> missingChunks() {
+        List<Integer> missing = new ArrayList<>();
+        for (int i = received.nextClearBit(0); i < totalChunks; i = received.nextClearBit(i + 1)) {
+            missing.add(i);
+        }
+        return missing;
+    }
+
+    public Path getDataFile() {
+        return dataFile;
+    }
+
+    public Path getStateFile() {
+        return stateFile;
+    }
+
+    public String getFileName() {
+        return fileName;
+    }
+
+    public long getTotalSize() {
+        return totalSize;
+    }
+
+    public long getChunkSize() {
+        return chunkSize;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    // Rewrites the log with one record per received chunk, write-then-rename so a crash never leaves a half written log
+    private void compact() throws IOException {
+        Path tempFile = stateFile.resolveSibling(stateFile.getFileName() + ".tmp");
+        ByteBuffer records = ByteBuffer.allocate(received.cardinality() * RECORD_LENGTH);
+        for (int i = received.nextSetBit(0); i >= 0; i = received.nextSetBit(i + 1)) {
+            records.putInt(i).putInt(chunkCrc32c[i]).put(chunkSha256[i]);
+        }
+        try (FileChannel log = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+            ByteBuffer header = ByteBuffer.wrap(header());
+            while (header.hasRemaining()) {
+                log.write(header);
+            }
+            records.flip();
+            while (records.hasRemaining()) {
+                log.write(records);
+            }
+        }
+        Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+        loggedRecords = received.cardinality();
+    }
+
+    private byte[] header() throws IOException {
+        ByteArrayOutputStream header = new ByteArrayOutputStream();
+        try (DataOutputStream out = new DataOutputStream(header)) {
+            out.writeUTF(fileName);
+            out.writeLong(totalSize);
+            out.writeLong(chunkSize);
+        }
+        return header.toByteArray();
+    }
+}
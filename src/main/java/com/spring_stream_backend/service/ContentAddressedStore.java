@@ -0,0 +1,105 @@
+package com.spring_stream_backend.service;
+
+import java.io.IOException;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.FileAlreadyExistsException;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.HexFormat;
+
+/**
+ * Stores file contents once, under the hash of their bytes as uploaded, in {@code <root>/<first two hex digits>/<hash>}.
+ * A blob may hold a deterministic rewrite of those bytes (a faststart MP4), so its key identifies the upload rather
+ * than hashing the blob itself; callers check {@link #contains} first and skip the rewrite for content already stored.
+ * The names clients see are hard links to the stored blob, so a re-upload of the same content costs
+ * a link instead of a second copy. Where links are not supported (e.g. a different file system) the blob is copied.
+ * Blobs are made read-only, so writing through one name cannot change the content seen through the others.
+ */
+public class ContentAddressedStore {
+
+    public static final String DIRECTORY = ".cas";
+    private static final String TEMP_DIRECTORY = "tmp";
+
+    private final Path root;
+
+    public ContentAddressedStore(Path root) {
+        this.root = root;
+    }
+
+    public static String key(byte[] digest) {
+        return HexFormat.of().formatHex(digest);
+    }
+
+    /**
+     * @return A new empty file on the store's file system, to stream incoming bytes into before they are hashed.
+     */
+    public Path newTempFile() throws IOException {
+        Path tempDirectory = Files.createDirectories(root.resolve(TEMP_DIRECTORY));
+        return Files.createTempFile(tempDirectory, "ingest-", ".tmp");
+    }
+
+    public Path blobPath(String key) {
+        return root.resolve(key.substring(0, 2)).resolve(key);
+    }
+
+    /**
+     * @param key The hash of the content as uploaded.
+     * @return True if the content is already stored, an upload of it only needs a link.
+     */
+    public boolean contains(String key) {
+        return Files.exists(blobPath(key));
+    }
+
+    /**
+     * Moves a file into the store under its key, or drops it if the same content is already stored.
+     *
+     * @param file The file holding the content, consumed by this call. Moved into place, or copied if it is on another file system.
+     * @param key  The hash of the content as uploaded.
+     * @return True if the content was new, false if it was a duplicate.
+     */
+    public boolean put(Path file, String key) throws IOException {
+        Path blob = blobPath(key);
+        if (Files.exists(blob)) {
+            Files.delete(file);
+            return false;
+        }
+        Files.createDirectories(blob.getParent());
+        try {
+            try {
+                Files.move(file, blob, StandardCopyOption.ATOMIC_MOVE);
+            } catch (AtomicMoveNotSupportedException e) {
+                // The file is on another volume, copy it into the store's file system first
+                Path temp = newTempFile();
+                Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING);
+                Files.move(temp, blob, StandardCopyOption.ATOMIC_MOVE);
+                Files.delete(file);
+            }
+        } catch (FileAlreadyExistsException e) {
+            // Another upload of the same content got there first
+            Files.delete(file);
+            return false;
+        }
+        blob.toFile().setReadOnly();
+        return true;
+    }
+
+    /**
+     * Makes {@code target} a name for a stored blob, replacing whatever was there.
+     *
+     * @param key    The hash of the content.
+     * @param target The name to create.
+     */
+    public void link(String key, Path target) throws IOException {
+        Path blob = blobPath(key);
+        Path temp = target.resolveSibling(target.getFileName() + ".link");
+        Files.deleteIfExists(temp);
+        try {
+            Files.createLink(temp, blob);
+        } catch (UnsupportedOperationException | FileSystemException e) {
+            Files.copy(blob, temp);
+        }
+        Files.move(temp, target, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+}
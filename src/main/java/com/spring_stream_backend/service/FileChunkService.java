@@ -1,94 +1,383 @@
 package com.spring_stream_backend.service;
 
+import jakarta.annotation.PostConstruct;
+import jakarta.annotation.PreDestroy;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.FileSystemUtils;
 import org.springframework.web.multipart.MultipartFile;
 
-import java.io.File;
-import java.io.FileInputStream;
-import java.io.FileOutputStream;
 import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.Set;
+import java.util.TreeSet;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
 import java.util.logging.Logger;
 
+/**
+ * Splits uploads into 1 MB chunks in the background.
+ * An upload is spooled to {@code jobs/<job id>/source} and forced to disk before the request returns, then every chunk
+ * is written by a fixed pool of workers to {@code jobs/<job id>/chunkN}, so concurrent uploads of the same name never
+ * share files. Each of these paths is placed on one of the chunk volumes by {@link StorageVolumes}, so the chunks of a
+ * job are written to all disks in parallel. The number of jobs accepted at once is bounded, further uploads are
+ * rejected until a job finishes instead of piling up spooled files.
+ * <p>
+ * A job is persisted to {@code jobs/<job id>/job} before the upload is acknowledged. After a restart, unfinished jobs
+ * are chunked again from their spooled source, and finished ones are still reported until they expire. A failed job is
+ * not retried: its source and chunks are deleted, its state is kept until it expires.
+ */
 @Service
 public class FileChunkService {
 
-    @Value("${file.chunk.storage.location}")
-    private String chunkStorageLocation;
-
+    public static final String JOB_DIRECTORY = "jobs";
+    private static final String SOURCE_FILE = "source";
+    private static final String STATE_FILE = "job";
     private static final int CHUNK_SIZE = 1024 * 1024; // 1 MB
     private static final Logger LOGGER = Logger.getLogger(FileChunkService.class.getName());
 
-    public void processAndChunkFile(MultipartFile file) throws IOException {
-        LOGGER.info("Processing file for chunking: " + file.getOriginalFilename());
+    private final StorageVolumes chunkVolumes;
+    private final Map<Path, ContentAddressedStore> chunkStores = new ConcurrentHashMap<>(); // One per volume
+    private final StreamingIngest streamingIngest;
+    private final StreamingMetrics streamingMetrics;
+    private final ExecutorService workers;
+    private final Semaphore pendingJobs;
+    private final long jobRetentionMillis;
+    private final LongSupplier clock;
+    private final Map<String, IngestJob> jobs = new ConcurrentHashMap<>();
+    private volatile boolean shuttingDown;
+
+    @Autowired
+    public FileChunkService(@Qualifier(StorageVolumes.CHUNKS) StorageVolumes chunkVolumes,
+                            StreamingIngest streamingIngest,
+                            StreamingMetrics streamingMetrics,
+                            @Value("${file.chunk.ingest.workers:0}") int workers,
+                            @Value("${file.chunk.ingest.max-pending-jobs:64}") int maxPendingJobs,
+                            @Value("${file.chunk.ingest.job-retention-minutes:60}") long jobRetentionMinutes) {
+        this(chunkVolumes, streamingIngest, streamingMetrics, workers > 0 ? workers : Runtime.getRuntime().availableProcessors(),
+                maxPendingJobs, TimeUnit.MINUTES.toMillis(jobRetentionMinutes), System::currentTimeMillis);
+    }
 
-        // Ensure the chunk storage directory exists
-        ensureDirectoryExists(chunkStorageLocation);
+    FileChunkService(StorageVolumes chunkVolumes, StreamingIngest streamingIngest, StreamingMetrics streamingMetrics,
+                     int workers, int maxPendingJobs, long jobRetentionMillis, LongSupplier clock) {
+        if (workers < 1 || maxPendingJobs < 1) {
+            throw new IllegalArgumentException("Ingest workers and pending jobs must be at least 1.");
+        }
+        this.chunkVolumes = chunkVolumes;
+        this.streamingIngest = streamingIngest;
+        this.streamingMetrics = streamingMetrics;
+        this.workers = Executors.newFixedThreadPool(workers, Thread.ofPlatform().name("chunk-ingest-", 1).daemon().factory());
+        this.pendingJobs = new Semaphore(maxPendingJobs);
+        this.jobRetentionMillis = jobRetentionMillis;
+        this.clock = clock;
+    }
 
+    /**
+     * Reloads the jobs left behind by a previous run. Unfinished jobs are queued again from their source, uploads that
+     * were never acknowledged are deleted. Job directories without a state file predate it and are left alone.
+     */
+    @PostConstruct
+    public void restore() throws IOException {
+        Set<String> ids = new TreeSet<>();
+        for (Path root : chunkVolumes.getRoots()) {
+            Path directory = root.resolve(JOB_DIRECTORY);
+            if (!Files.isDirectory(directory)) {
+                continue;
+            }
+            try (DirectoryStream<Path> jobDirectories = Files.newDirectoryStream(directory, entry -> Files.isDirectory(entry))) {
+                jobDirectories.forEach(jobDirectory -> ids.add(jobDirectory.getFileName().toString()));
+            }
+        }
+        for (String id : ids) {
+            Path stateFile = chunkVolumes.locate(jobFile(id, STATE_FILE));
+            Path source = chunkVolumes.locate(jobFile(id, SOURCE_FILE));
+            if (Files.notExists(stateFile)) {
+                // Never acknowledged, the server went down while the upload was being received
+                if (Files.exists(source)) {
+                    deleteJobFiles(id, false);
+                }
+                continue;
+            }
+            IngestJob job;
+            try {
+                job = IngestJob.restore(id, stateFile);
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.warning("Skipping unreadable chunking job " + id + ": " + e.getMessage());
+                continue;
+            }
+            jobs.put(id, job);
+            if (job.getState() != IngestJob.State.RUNNING) {
+                continue;
+            }
+            if (Files.exists(source) && pendingJobs.tryAcquire()) {
+                LOGGER.info("Resuming chunking job " + id);
+                queue(job, source);
+            } else if (job.fail("Interrupted by a restart, upload the file again.", clock.getAsLong())) {
+                discardFailed(job);
+            }
+        }
+        discardExpired();
+    }
+
+    /**
+     * Stores an upload durably and queues it for chunking.
+     *
+     * @param file The uploaded file.
+     * @return The status of the new job, chunking continues after this returns.
+     * @throws RejectedExecutionException If the maximum number of jobs is already in progress.
+     */
+    public IngestJobStatus processAndChunkFile(MultipartFile file) throws IOException {
         String fileName = file.getOriginalFilename();
         if (fileName == null || fileName.isEmpty()) {
             throw new IllegalArgumentException("Invalid file name.");
         }
+        discardExpired();
+        if (!pendingJobs.tryAcquire()) {
+            throw new RejectedExecutionException("Too many files being chunked, try again later.");
+        }
 
-        // Save the uploaded file temporarily
-        File tempFile = new File(chunkStorageLocation, "temp_" + fileName);
+        String id = UUID.randomUUID().toString();
+        Path source = chunkVolumes.resolve(jobFile(id, SOURCE_FILE));
+        IngestJob job;
+        long started = System.nanoTime();
         try {
-            file.transferTo(tempFile);
-            if (!tempFile.exists()) {
-                throw new IOException("Temporary file was not created: " + tempFile.getAbsolutePath());
+            Files.createDirectories(source.getParent());
+            long size;
+            try (InputStream input = file.getInputStream();
+                 FileChannel channel = FileChannel.open(source, StandardOpenOption.CREATE_NEW, StandardOpenOption.WRITE)) {
+                size = streamingIngest.copy(input, channel, Long.MAX_VALUE);
+                // The upload is acknowledged once its bytes are on disk, whatever happens to the workers afterwards
+                channel.force(true);
             }
-            LOGGER.info("Temporary file created: " + tempFile.getAbsolutePath());
+            // An empty upload still gets an empty chunk1
+            job = new IngestJob(id, fileName, (int) Math.max(1, (size + CHUNK_SIZE - 1) / CHUNK_SIZE));
+            // And once the job is on disk too, so it is resumed after a restart
+            Path stateFile = chunkVolumes.resolve(jobFile(id, STATE_FILE));
+            Files.createDirectories(stateFile.getParent());
+            job.persist(stateFile);
+            streamingMetrics.uploaded("chunking", size, System.nanoTime() - started);
+        } catch (IOException | RuntimeException e) {
+            pendingJobs.release();
+            deleteJobFiles(id, false);
+            LOGGER.severe("Error while receiving file: " + e.getMessage());
+            throw e;
+        }
 
-            // Chunk the file
-            chunkFile(tempFile, chunkStorageLocation);
-            LOGGER.info("File chunking completed successfully for: " + fileName);
-        } catch (IOException e) {
-            LOGGER.severe("Error while processing file: " + e.getMessage());
-            throw e; // Rethrow for further handling
-        } finally {
-            // Delete the temporary file
-            if (tempFile.exists() && !tempFile.delete()) {
-                LOGGER.warning("Failed to delete temporary file: " + tempFile.getAbsolutePath());
-            }
+        jobs.put(id, job);
+        queue(job, source);
+        return job.status();
+    }
+
+    /**
+     * @param jobId The job id returned for the upload.
+     * @return The progress of the job.
+     * @throws NoSuchElementException If there is no such job, or it finished longer ago than the retention time.
+     */
+    public IngestJobStatus getJobStatus(String jobId) {
+        discardExpired();
+        IngestJob job = jobs.get(jobId);
+        if (job == null) {
+            throw new NoSuchElementException("No chunking job: " + jobId);
         }
+        return job.status();
+    }
+
+    /**
+     * @param jobId      The job id returned for the upload.
+     * @param chunkIndex The one-based chunk index.
+     * @return Where the chunk is stored, whichever volume it is on.
+     */
+    public Path chunkPath(String jobId, int chunkIndex) {
+        return chunkVolumes.locate(chunkName(jobId, chunkIndex));
+    }
+
+    /**
+     * Moves the chunks of completed jobs to the volume that owns them, after volumes were added to
+     * {@code file.chunk.storage.locations}. Until then they are still found on their old volume.
+     * A job counts as completed only if its state file says so. Running and failed jobs, and job directories that
+     * predate the state file, are left where they are.
+     *
+     * @return The number of files moved.
+     */
+    public int rebalance() throws IOException {
+        Map<String, Boolean> completed = new HashMap<>();
+        return chunkVolumes.rebalance(JOB_DIRECTORY, 2,
+                file -> completed.computeIfAbsent(file.getParent().getFileName().toString(), this::isCompleted));
     }
 
-    private void chunkFile(File sourceFile, String targetDirectoryPath) throws IOException {
-        ensureDirectoryExists(targetDirectoryPath);
+    private boolean isCompleted(String jobId) {
+        Path stateFile = chunkVolumes.locate(jobFile(jobId, STATE_FILE));
+        try {
+            return Files.exists(stateFile) && IngestJob.restore(jobId, stateFile).getState() == IngestJob.State.COMPLETED;
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "Not moving chunking job " + jobId + ": " + e.getMessage());
+            return false;
+        }
+    }
+
+    @PreDestroy
+    public void shutdown() {
+        shuttingDown = true;
+        workers.shutdownNow();
+    }
+
+    private void queue(IngestJob job, Path source) {
+        try {
+            for (int chunkIndex = 1; chunkIndex <= job.getTotalChunks(); chunkIndex++) {
+                int index = chunkIndex;
+                workers.execute(() -> writeChunk(job, source, index));
+            }
+        } catch (RejectedExecutionException e) {
+            // Shutting down, the job stays running on disk and is chunked again after the restart
+            LOGGER.info("Chunking job " + job.getId() + " is resumed after the restart.");
+        }
+    }
 
-        try (FileChannel sourceChannel = new FileInputStream(sourceFile).getChannel()) {
-            long fileSize = sourceChannel.size();
-            long position = 0;
-            int chunkIndex = 1; // Start index at 1
+    // Every chunk is read from its own offset of the spooled file, hashed as it is written and stored once in the
+    // content-addressed store of its volume, chunkN links to it
+    private void writeChunk(IngestJob job, Path source, int chunkIndex) {
+        if (job.getState() != IngestJob.State.RUNNING) {
+            return;
+        }
+        Path chunkPath = chunkVolumes.resolve(chunkName(job.getId(), chunkIndex));
+        ContentAddressedStore chunkStore = chunkStores.computeIfAbsent(chunkVolumes.volumeFor(chunkName(job.getId(), chunkIndex)),
+                volume -> new ContentAddressedStore(volume.resolve(ContentAddressedStore.DIRECTORY)));
+        Path tempFile = null;
+        try {
+            tempFile = chunkStore.newTempFile();
+            MessageDigest sha256 = Checksums.sha256();
+            try (FileChannel sourceChannel = FileChannel.open(source, StandardOpenOption.READ);
+                 InputStream input = Channels.newInputStream(sourceChannel.position((long) (chunkIndex - 1) * CHUNK_SIZE));
+                 FileChannel chunkChannel = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+                streamingIngest.copy(input, chunkChannel, CHUNK_SIZE, sha256);
+            }
 
-            while (position < fileSize) {
-                long remaining = fileSize - position;
-                long chunkSize = Math.min(remaining, CHUNK_SIZE);
+            Files.createDirectories(chunkPath.getParent());
+            String key = ContentAddressedStore.key(sha256.digest());
+            chunkStore.put(tempFile, key);
+            tempFile = null;
+            chunkStore.link(key, chunkPath);
 
-                // Create chunk file name as "chunk1", "chunk2", etc.
-                File chunkFile = new File(targetDirectoryPath, "chunk" + chunkIndex);
-                try (FileChannel chunkChannel = new FileOutputStream(chunkFile).getChannel()) {
-                    sourceChannel.transferTo(position, chunkSize, chunkChannel);
-                    LOGGER.info("Created chunk: " + chunkFile.getAbsolutePath());
+            if (job.chunkCompleted()) {
+                long now = clock.getAsLong();
+                // The source only goes once the state is written, otherwise the job is chunked again after a restart
+                try {
+                    job.persistCompleted(chunkVolumes.locate(jobFile(job.getId(), STATE_FILE)), now);
+                    Files.deleteIfExists(source);
+                } catch (IOException e) {
+                    LOGGER.log(Level.WARNING, "Could not persist chunking job " + job.getId() + ": " + e);
                 }
+                if (job.complete(now)) {
+                    pendingJobs.release();
+                }
+            }
+        } catch (IOException | RuntimeException e) {
+            deleteQuietly(tempFile);
+            if (shuttingDown) {
+                // Interrupted, not failed: the job is still running on disk and is chunked again after the restart
+                return;
+            }
+            failed(job, "Chunk " + chunkIndex + ": " + e.getMessage());
+        }
+    }
+
+    // Create chunk file name as "chunk1", "chunk2", etc.
+    private static String chunkName(String jobId, int chunkIndex) {
+        return jobFile(jobId, "chunk" + chunkIndex);
+    }
+
+    private static String jobFile(String jobId, String fileName) {
+        return JOB_DIRECTORY + "/" + jobId + "/" + fileName;
+    }
+
+    private void failed(IngestJob job, String message) {
+        if (job.fail(message, clock.getAsLong())) {
+            pendingJobs.release();
+            LOGGER.severe("Error while chunking job " + job.getId() + ": " + message);
+            discardFailed(job);
+        }
+    }
 
-                position += chunkSize;
-                chunkIndex++;
+    // A failed job is not retried, so its source and chunks are deleted right away. Only its state is kept, until it
+    // expires. A chunk still being written when this runs is left behind and deleted with the job's directory then.
+    private void discardFailed(IngestJob job) {
+        persistQuietly(job);
+        deleteJobFiles(job.getId(), true);
+    }
+
+    private void persistQuietly(IngestJob job) {
+        try {
+            job.persist(chunkVolumes.locate(jobFile(job.getId(), STATE_FILE)));
+        } catch (IOException e) {
+            LOGGER.log(Level.WARNING, "Could not persist chunking job " + job.getId() + ": " + e);
+        }
+    }
+
+    // Finished jobs are forgotten after the retention time, the directory of a failed one is deleted with it
+    private void discardExpired() {
+        long now = clock.getAsLong();
+        for (IngestJob job : jobs.values()) {
+            if (job.getState() != IngestJob.State.RUNNING && now - job.getFinishedMillis() > jobRetentionMillis
+                    && jobs.remove(job.getId(), job) && job.getState() == IngestJob.State.FAILED) {
+                deleteJobFiles(job.getId(), false);
             }
         }
     }
 
-    private void ensureDirectoryExists(String directoryPath) throws IOException {
-        File directory = new File(directoryPath);
-        if (!directory.exists()) {
-            boolean isCreated = directory.mkdirs();
-            if (!isCreated) {
-                throw new IOException("Failed to create directory: " + directoryPath);
+    // The files of a job are spread over the volumes, so its directory may exist on each of them
+    private void deleteJobFiles(String jobId, boolean keepState) {
+        for (Path root : chunkVolumes.getRoots()) {
+            Path directory = root.resolve(JOB_DIRECTORY).resolve(jobId);
+            if (!keepState) {
+                deleteQuietly(directory);
+                continue;
+            }
+            try (DirectoryStream<Path> files = Files.newDirectoryStream(directory)) {
+                for (Path file : files) {
+                    if (!file.getFileName().toString().equals(STATE_FILE)) {
+                        deleteQuietly(file);
+                    }
+                }
+            } catch (NoSuchFileException e) {
+                // nothing of the job on this volume
+            } catch (IOException e) {
+                LOGGER.log(Level.FINE, "Could not clean up " + directory, e);
             }
-            LOGGER.info("Directory created: " + directoryPath);
-        } else {
-            LOGGER.info("Directory already exists: " + directoryPath);
         }
     }
+
+    private static void deleteQuietly(Path file) {
+        if (file == null) {
+            return;
+        }
+        try {
+            FileSystemUtils.deleteRecursively(file);
+        } catch (IOException e) {
+            LOGGER.log(Level.FINE, "Could not delete " + file, e);
+        }
+    }
+
+    int jobCount() {
+        return jobs.size();
+    }
 }
@@ -0,0 +1,24 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.stereotype.Component;
+
+/**
+ * Serves every client the same region size, 1 MB unless configured otherwise.
+ */
+@Component
+@ConditionalOnProperty(name = "video.stream.chunk-policy", havingValue = "fixed", matchIfMissing = true)
+public class FixedChunkSizePolicy implements ChunkSizePolicy {
+
+    private final long chunkSize;
+
+    public FixedChunkSizePolicy(@Value("${video.stream.chunk-size.default:1048576}") long chunkSize) {
+        this.chunkSize = chunkSize;
+    }
+
+    @Override
+    public long regionSize(String clientKey, long requestedLength) {
+        return Math.min(chunkSize, requestedLength);
+    }
+}
@@ -0,0 +1,161 @@
+package com.spring_stream_backend.service;
+
+import java.io.BufferedInputStream;
+import java.io.BufferedOutputStream;
+import java.io.DataInputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * A chunking job: a spooled upload being split into {@code chunkN} files of its own by the ingest workers.
+ * Chunks are written in any order, the job completes when the last one lands or fails with the first error.
+ * The job is persisted to a small state file in its directory when it is accepted and again when it finishes,
+ * so it is still known after a restart.
+ */
+public class IngestJob {
+
+    public enum State {
+        RUNNING, COMPLETED, FAILED
+    }
+
+    private final String id;
+    private final String fileName;
+    private final int totalChunks;
+    private final AtomicInteger completedChunks = new AtomicInteger();
+    private volatile State state = State.RUNNING;
+    private volatile String error;
+    private volatile long finishedMillis;
+
+    IngestJob(String id, String fileName, int totalChunks) {
+        this.id = id;
+        this.fileName = fileName;
+        this.totalChunks = totalChunks;
+    }
+
+    /**
+     * Reads a job persisted by {@link #persist}. A finished job is restored as it was, an unfinished one starts over.
+     *
+     * @param id        The job id.
+     * @param stateFile The job's state file.
+     * @return The job.
+     */
+    static IngestJob restore(String id, Path stateFile) throws IOException {
+        try (DataInputStream in = new DataInputStream(new BufferedInputStream(Files.newInputStream(stateFile)))) {
+            IngestJob job = new IngestJob(id, in.readUTF(), in.readInt());
+            job.state = State.valueOf(in.readUTF());
+            job.finishedMillis = in.readLong();
+            job.error = in.readBoolean() ? in.readUTF() : null;
+            if (job.state == State.COMPLETED) {
+                job.completedChunks.set(job.totalChunks);
+            }
+            return job;
+        }
+    }
+
+    /**
+     * Writes the job's state to disk, then renames it into place so a crash never leaves a half written file behind.
+     * The temporary file is hidden, so a rebalance never moves it.
+     *
+     * @param stateFile The job's state file.
+     */
+    synchronized void persist(Path stateFile) throws IOException {
+        write(stateFile, state, finishedMillis, error);
+    }
+
+    /**
+     * Persists the job as completed before it is reported so.
+     *
+     * @param stateFile The job's state file.
+     * @param now       The time the job completes at, in milliseconds.
+     */
+    synchronized void persistCompleted(Path stateFile, long now) throws IOException {
+        if (state == State.RUNNING) {
+            write(stateFile, State.COMPLETED, now, null);
+        }
+    }
+
+    private void write(Path stateFile, State state, long finishedMillis, String error) throws IOException {
+        Path tempFile = stateFile.resolveSibling("." + stateFile.getFileName() + ".tmp");
+        try (FileChannel channel = FileChannel.open(tempFile, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING);
+             DataOutputStream out = new DataOutputStream(new BufferedOutputStream(Channels.newOutputStream(channel)))) {
+            out.writeUTF(fileName);
+            out.writeInt(totalChunks);
+            out.writeUTF(state.name());
+            out.writeLong(finishedMillis);
+            out.writeBoolean(error != null);
+            if (error != null) {
+                out.writeUTF(error);
+            }
+            out.flush();
+            channel.force(true);
+        }
+        Files.move(tempFile, stateFile, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * Records a written chunk.
+     *
+     * @return True if it was the last one, the job is then {@link #complete}d by the caller.
+     */
+    boolean chunkCompleted() {
+        return completedChunks.incrementAndGet() == totalChunks;
+    }
+
+    /**
+     * Completes the job once all its chunks are written.
+     *
+     * @param now The current time in milliseconds.
+     * @return True if the job was still running.
+     */
+    boolean complete(long now) {
+        return finish(State.COMPLETED, null, now);
+    }
+
+    /**
+     * Fails the job, later chunks are skipped.
+     *
+     * @param message What went wrong.
+     * @param now     The current time in milliseconds.
+     * @return True if this was the first failure.
+     */
+    boolean fail(String message, long now) {
+        return finish(State.FAILED, message, now);
+    }
+
+    private synchronized boolean finish(State finalState, String message, long now) {
+        if (state != State.RUNNING) {
+            return false;
+        }
+        error = message;
+        finishedMillis = now;
+        state = finalState;
+        return true;
+    }
+
+    public IngestJobStatus status() {
+        return new IngestJobStatus(id, fileName, state, totalChunks, completedChunks.get(), error);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public int getTotalChunks() {
+        return totalChunks;
+    }
+
+    public State getState() {
+        return state;
+    }
+
+    public long getFinishedMillis() {
+        return finishedMillis;
+    }
+}
@@ -0,0 +1,12 @@
+package com.spring_stream_backend.service;
+
+/**
+ * Progress of a chunking job as reported to the client.
+ */
+public record IngestJobStatus(String jobId,
+                              String fileName,
+                              IngestJob.State state,
+                              int totalChunks,
+                              int completedChunks,
+                              String error) {
+}
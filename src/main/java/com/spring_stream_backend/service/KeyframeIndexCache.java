@@ -0,0 +1,127 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.media.Mp4Faststart;
+import com.spring_stream_backend.media.Mp4Index;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.nio.file.attribute.BasicFileAttributes;
+import java.util.LinkedHashMap;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Keyframe indexes of the served videos, loaded once per file version and then held in memory.
+ * An index is read from the {@code .idx} file written at ingest, or built from the moov of videos
+ * that predate it (and then persisted for the next restart).
+ * Entries are keyed by path and checked against the file's size and modification time, so a replaced video is re-indexed.
+ * At most {@code video.seek.index-cache-size} indexes are held, the least recently seeked one is dropped first, and the
+ * entry of a path is dropped as soon as a new upload is published to it or its video is moved by a rebalance.
+ */
+@Component
+public class KeyframeIndexCache {
+
+    private static final Logger LOGGER = Logger.getLogger(KeyframeIndexCache.class.getName());
+
+    private record Entry(long size, long modified, Mp4Index index) {
+    }
+
+    private final int maxEntries;
+
+    // access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<Path, Entry> entries = new LinkedHashMap<>(64, 0.75f, true);
+
+    @Autowired
+    public KeyframeIndexCache(@Value("${video.seek.index-cache-size:1000}") int maxEntries) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The keyframe index cache must hold at least one index.");
+        }
+        this.maxEntries = maxEntries;
+    }
+
+    /**
+     * @param video The video file.
+     * @return The keyframe index of its current content.
+     */
+    public Mp4Index get(Path video) throws IOException {
+        Path key = key(video);
+        // One stat for both the size and the modification time
+        BasicFileAttributes attributes = Files.readAttributes(key, BasicFileAttributes.class);
+        long size = attributes.size();
+        long modified = attributes.lastModifiedTime().toMillis();
+        Entry entry = cached(key);
+        if (entry != null && entry.size() == size && entry.modified() == modified) {
+            return entry.index();
+        }
+        Mp4Index index = load(key, modified);
+        cache(key, new Entry(size, modified, index));
+        return index;
+    }
+
+    /**
+     * Drops the index of a path whose video was replaced or moved away.
+     *
+     * @param video The video file.
+     */
+    public void evict(Path video) {
+        Path key = key(video);
+        synchronized (entries) {
+            entries.remove(key);
+        }
+    }
+
+    private static Path key(Path video) {
+        return video.toAbsolutePath().normalize();
+    }
+
+    private Mp4Index load(Path video, long modified) throws IOException {
+        Path indexFile = Mp4Index.pathFor(video);
+        if (Files.exists(indexFile) && Files.getLastModifiedTime(indexFile).toMillis() >= modified) {
+            try {
+                return Mp4Index.read(indexFile);
+            } catch (IOException | IllegalArgumentException e) {
+                LOGGER.log(Level.WARNING, "Rebuilding unreadable keyframe index " + indexFile.getFileName() + ": " + e.getMessage());
+            }
+        }
+        try (FileChannel channel = FileChannel.open(video, StandardOpenOption.READ)) {
+            if (!Mp4Faststart.isMp4(channel)) {
+                throw new IllegalArgumentException("Time-based seeking needs an MP4 video: " + video.getFileName());
+            }
+        }
+        Mp4Index index = Mp4Index.build(video);
+        try {
+            index.write(indexFile);
+        } catch (IOException e) {
+            // Read-only storage, the index is still served from memory
+            LOGGER.log(Level.FINE, "Could not persist keyframe index " + indexFile.getFileName(), e);
+        }
+        return index;
+    }
+
+    private Entry cached(Path key) {
+        synchronized (entries) {
+            return entries.get(key);
+        }
+    }
+
+    private void cache(Path key, Entry entry) {
+        synchronized (entries) {
+            entries.put(key, entry);
+            if (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
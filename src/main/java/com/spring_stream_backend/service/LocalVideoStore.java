@@ -0,0 +1,224 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.ClassPathResource;
+import org.springframework.core.io.FileSystemResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.FilterInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+
+/**
+ * Serves videos from the video volumes, where uploads are stored, or else from the videos bundled on the classpath.
+ * Ranges are copied with positional reads through buffers borrowed from the shared {@link DirectBufferPool}.
+ */
+@Component
+@ConditionalOnProperty(name = "video.store", havingValue = "local")
+public class LocalVideoStore implements VideoStore {
+
+    private static final String VIDEO_DIRECTORY = "videos"; // Videos bundled in `resources/videos`
+
+    private final StorageVolumes videoVolumes;
+    protected final DirectBufferPool bufferPool;
+
+    public LocalVideoStore(@Qualifier(StorageVolumes.VIDEOS) StorageVolumes videoVolumes, DirectBufferPool bufferPool) {
+        this.videoVolumes = videoVolumes;
+        this.bufferPool = bufferPool;
+    }
+
+    @Override
+    public Optional<StoredVideo> find(String name) throws IOException {
+        Path file = videoVolumes.locate(name);
+        if (!Files.isRegularFile(file)) {
+            ClassPathResource bundled = new ClassPathResource(VIDEO_DIRECTORY + "/" + name);
+            if (!bundled.isFile()) {
+                return Optional.empty();
+            }
+            file = bundled.getFile().toPath();
+            if (!Files.isRegularFile(file)) {
+                return Optional.empty();
+            }
+        }
+        return Optional.of(openFile(name, file, Files.size(file)));
+    }
+
+    @Override
+    public StoredVideo open(String name, String location, long length) {
+        return openFile(name, Path.of(location), length);
+    }
+
+    @Override
+    public StoredVideo publish(String name, Path file) throws IOException {
+        // Uploads are written to the video volumes, which is where this store reads from
+        return openFile(name, file, Files.size(file));
+    }
+
+    /**
+     * @param name   The name of the video.
+     * @param file   The file holding it.
+     * @param length The file length.
+     * @return The video read from the file.
+     */
+    protected StoredVideo openFile(String name, Path file, long length) {
+        return new LocalVideo(name, file, length, bufferPool);
+    }
+
+    /**
+     * A video in a local file.
+     */
+    protected static class LocalVideo implements StoredVideo {
+
+        protected final String name;
+        protected final Path file;
+        protected final long length;
+        private final DirectBufferPool bufferPool;
+
+        protected LocalVideo(String name, Path file, long length, DirectBufferPool bufferPool) {
+            this.name = name;
+            this.file = file;
+            this.length = length;
+            this.bufferPool = bufferPool;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public String getLocation() {
+            return file.toString();
+        }
+
+        @Override
+        public void transferTo(long position, long length, WritableByteChannel target) throws IOException {
+            ByteBuffer buffer = bufferPool.acquire();
+            try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+                long end = position + length;
+                while (position < end) {
+                    buffer.clear();
+                    buffer.limit((int) Math.min(buffer.capacity(), end - position));
+                    int read = channel.read(buffer, position);
+                    if (read == -1) {
+                        throw new IOException("Unexpected end of " + file + " at " + position);
+                    }
+                    buffer.flip();
+                    while (buffer.hasRemaining()) {
+                        target.write(buffer);
+                    }
+                    position += read;
+                }
+            } finally {
+                bufferPool.release(buffer);
+            }
+        }
+
+        @Override
+        public Resource region(long position, long length) throws IOException {
+            return new FileRegionResource(file, position, length);
+        }
+
+        @Override
+        public Resource resource() {
+            return new FileSystemResource(file) {
+                @Override
+                public String getFilename() {
+                    return name; // The media type is picked from the name the video is streamed under
+                }
+            };
+        }
+
+        @Override
+        public Optional<Path> localFile() {
+            return Optional.of(file);
+        }
+    }
+
+    /**
+     * A range of a file, read from its offset when the stream is opened.
+     */
+    private static final class FileRegionResource extends AbstractResource {
+
+        private final Path file;
+        private final long position;
+        private final long length;
+
+        private FileRegionResource(Path file, long position, long length) {
+            this.file = file;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public InputStream getInputStream() throws IOException {
+            FileChannel channel = FileChannel.open(file, StandardOpenOption.READ).position(position);
+            return new FilterInputStream(Channels.newInputStream(channel)) {
+
+                private long remaining = length;
+
+                @Override
+                public int read() throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int b = super.read();
+                    if (b >= 0) {
+                        remaining--;
+                    }
+                    return b;
+                }
+
+                @Override
+                public int read(byte[] b, int off, int len) throws IOException {
+                    if (remaining <= 0) {
+                        return -1;
+                    }
+                    int read = super.read(b, off, (int) Math.min(len, remaining));
+                    if (read > 0) {
+                        remaining -= read;
+                    }
+                    return read;
+                }
+
+                @Override
+                public long skip(long n) throws IOException {
+                    long skipped = super.skip(Math.min(n, remaining));
+                    remaining -= skipped;
+                    return skipped;
+                }
+            };
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public String getDescription() {
+            return "Region [" + position + ", " + (position + length) + ") of " + file;
+        }
+    }
+}
@@ -0,0 +1,83 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.core.io.AbstractResource;
+
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.util.List;
+
+/**
+ * A {@link org.springframework.core.io.Resource} over slices of mapped video segments.
+ * The bytes stay off-heap until the message converter copies them to the response.
+ */
+public class MappedRegionResource extends AbstractResource {
+
+    private final List<ByteBuffer> slices;
+    private final long length;
+    private final String description;
+
+    public MappedRegionResource(List<ByteBuffer> slices, String description) {
+        this.slices = slices;
+        this.length = slices.stream().mapToLong(ByteBuffer::remaining).sum();
+        this.description = description;
+    }
+
+    @Override
+    public InputStream getInputStream() {
+        return new SlicesInputStream(slices);
+    }
+
+    @Override
+    public long contentLength() {
+        return length;
+    }
+
+    @Override
+    public String getDescription() {
+        return "Mapped region of " + description;
+    }
+
+    private static final class SlicesInputStream extends InputStream {
+
+        private final List<ByteBuffer> slices;
+        private int current;
+
+        private SlicesInputStream(List<ByteBuffer> slices) {
+            // duplicate so every stream reads the slices from the start
+            this.slices = slices.stream().map(ByteBuffer::duplicate).toList();
+        }
+
+        @Override
+        public int read() {
+            ByteBuffer slice = nextSlice();
+            return slice == null ? -1 : slice.get() & 0xFF;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) {
+            if (len == 0) {
+                return 0;
+            }
+            ByteBuffer slice = nextSlice();
+            if (slice == null) {
+                return -1;
+            }
+            int count = Math.min(len, slice.remaining());
+            slice.get(b, off, count);
+            return count;
+        }
+
+        @Override
+        public int available() {
+            ByteBuffer slice = nextSlice();
+            return slice == null ? 0 : slice.remaining();
+        }
+
+        private ByteBuffer nextSlice() {
+            while (current < slices.size() && !slices.get(current).hasRemaining()) {
+                current++;
+            }
+            return current < slices.size() ? slices.get(current) : null;
+        }
+    }
+}
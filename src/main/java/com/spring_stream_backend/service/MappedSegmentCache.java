@@ -0,0 +1,142 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Off-heap cache of memory-mapped video segments keyed by (video file, segment index).
+ * The cache is bounded by the total number of mapped bytes and evicts the least recently used segments first.
+ * Evicted segments are unmapped by the GC once no in-flight response still holds a slice of them.
+ */
+@Component
+public class MappedSegmentCache {
+
+    private final long segmentSize;
+    private final long maxMappedBytes;
+
+    // access-ordered, so iteration starts at the least recently used segment
+    private final LinkedHashMap<SegmentKey, MappedByteBuffer> segments = new LinkedHashMap<>(64, 0.75f, true);
+    private long mappedBytes;
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public MappedSegmentCache(@Value("${video.stream.mmap-cache.segment-size:4194304}") long segmentSize,
+                              @Value("${video.stream.mmap-cache.max-bytes:536870912}") long maxMappedBytes) {
+        if (segmentSize <= 0 || segmentSize > Integer.MAX_VALUE) {
+            throw new IllegalArgumentException("Segment size must be between 1 and " + Integer.MAX_VALUE + " bytes.");
+        }
+        this.segmentSize = segmentSize;
+        this.maxMappedBytes = maxMappedBytes;
+    }
+
+    /**
+     * Returns read-only slices of the mapped segments covering the requested range, in order.
+     *
+     * @param file       The video file.
+     * @param fileLength The total length of the file.
+     * @param start      The first byte of the range.
+     * @param length     The number of bytes in the range.
+     * @return The slices covering the range.
+     */
+    public List<ByteBuffer> slices(Path file, long fileLength, long start, long length) throws IOException {
+        List<ByteBuffer> slices = new ArrayList<>();
+        long position = start;
+        long end = Math.min(start + length, fileLength);
+        while (position < end) {
+            long index = position / segmentSize;
+            MappedByteBuffer segment = segment(file, fileLength, index);
+            int offset = (int) (position - index * segmentSize);
+            int sliceLength = (int) Math.min(segment.capacity() - offset, end - position);
+            slices.add(segment.slice(offset, sliceLength));
+            position += sliceLength;
+        }
+        return slices;
+    }
+
+    /**
+     * Drops every cached segment of the given file, e.g. after it has been replaced on disk.
+     *
+     * @param file The video file.
+     */
+    public void invalidate(Path file) {
+        synchronized (segments) {
+            Iterator<Map.Entry<SegmentKey, MappedByteBuffer>> iterator = segments.entrySet().iterator();
+            while (iterator.hasNext()) {
+                Map.Entry<SegmentKey, MappedByteBuffer> entry = iterator.next();
+                if (entry.getKey().file().equals(file)) {
+                    mappedBytes -= entry.getValue().capacity();
+                    iterator.remove();
+                }
+            }
+        }
+    }
+
+    public Map<String, Long> stats() {
+        synchronized (segments) {
+            return Map.of(
+                    "hits", hits.get(),
+                    "misses", misses.get(),
+                    "evictions", evictions.get(),
+                    "segments", (long) segments.size(),
+                    "mappedBytes", mappedBytes);
+        }
+    }
+
+    private MappedByteBuffer segment(Path file, long fileLength, long index) throws IOException {
+        SegmentKey key = new SegmentKey(file, index);
+        synchronized (segments) {
+            MappedByteBuffer cached = segments.get(key);
+            if (cached != null) {
+                hits.incrementAndGet();
+                return cached;
+            }
+        }
+        misses.incrementAndGet();
+
+        // Map outside the lock, a concurrent miss on the same segment just wastes one mapping
+        long position = index * segmentSize;
+        long size = Math.min(segmentSize, fileLength - position);
+        MappedByteBuffer mapped;
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            mapped = channel.map(FileChannel.MapMode.READ_ONLY, position, size);
+        }
+
+        synchronized (segments) {
+            MappedByteBuffer raced = segments.putIfAbsent(key, mapped);
+            if (raced != null) {
+                return raced;
+            }
+            mappedBytes += size;
+            evictIfNeeded();
+        }
+        return mapped;
+    }
+
+    private void evictIfNeeded() {
+        Iterator<MappedByteBuffer> iterator = segments.values().iterator();
+        // always keep the segment that was just mapped
+        while (mappedBytes > maxMappedBytes && segments.size() > 1 && iterator.hasNext()) {
+            mappedBytes -= iterator.next().capacity();
+            iterator.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    private record SegmentKey(Path file, long index) {
+    }
+}
@@ -0,0 +1,61 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+
+/**
+ * The default store: the same files as {@link LocalVideoStore}, with ranges sliced out of the
+ * {@link MappedSegmentCache}, so hot videos are served without a read call or a copy per request.
+ */
+@Component
+@ConditionalOnProperty(name = "video.store", havingValue = "mmap", matchIfMissing = true)
+public class MappedVideoStore extends LocalVideoStore {
+
+    private final MappedSegmentCache segmentCache;
+
+    public MappedVideoStore(@Qualifier(StorageVolumes.VIDEOS) StorageVolumes videoVolumes, DirectBufferPool bufferPool,
+                            MappedSegmentCache segmentCache) {
+        super(videoVolumes, bufferPool);
+        this.segmentCache = segmentCache;
+    }
+
+    @Override
+    public StoredVideo publish(String name, Path file) throws IOException {
+        // A re-upload replaced the file, segments mapped from the old one must not be served
+        segmentCache.invalidate(file);
+        return super.publish(name, file);
+    }
+
+    @Override
+    protected StoredVideo openFile(String name, Path file, long length) {
+        return new MappedVideo(name, file, length);
+    }
+
+    private final class MappedVideo extends LocalVideo {
+
+        private MappedVideo(String name, Path file, long length) {
+            super(name, file, length, bufferPool);
+        }
+
+        @Override
+        public void transferTo(long position, long length, WritableByteChannel target) throws IOException {
+            for (ByteBuffer slice : segmentCache.slices(file, this.length, position, length)) {
+                while (slice.hasRemaining()) {
+                    target.write(slice);
+                }
+            }
+        }
+
+        @Override
+        public Resource region(long position, long length) throws IOException {
+            return new MappedRegionResource(segmentCache.slices(file, this.length, position, length), name);
+        }
+    }
+}
@@ -0,0 +1,75 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.media.Mp4Faststart;
+import com.spring_stream_backend.media.Mp4Index;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Post-upload processing of MP4s: moves the moov in front of the media data so playback can start from the
+ * first range request, and writes a keyframe index next to the stored video for time-based seeks.
+ * Files that are not MP4s (e.g. Matroska) are left untouched.
+ */
+@Component
+public class MediaIngest {
+
+    private static final Logger LOGGER = Logger.getLogger(MediaIngest.class.getName());
+
+    /**
+     * Rewrites a freshly uploaded file in place as faststart, if it is an MP4 with its moov after the media data.
+     * The rewritten copy is renamed over the original, so the file is never seen half written.
+     *
+     * @param file The uploaded file, not yet visible under its final name.
+     * @return True if the file was rewritten.
+     */
+    public boolean faststart(Path file) throws IOException {
+        if (!isMp4(file)) {
+            return false;
+        }
+        Path rewritten = file.resolveSibling(file.getFileName() + ".faststart");
+        try {
+            if (!Mp4Faststart.rewrite(file, rewritten)) {
+                return false;
+            }
+            Files.move(rewritten, file, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+            LOGGER.info("Moved moov to the front of: " + file.getFileName());
+            return true;
+        } catch (IllegalArgumentException e) {
+            // A malformed MP4 is still stored as uploaded, it just streams without the optimisation
+            LOGGER.log(Level.WARNING, "Not rewriting " + file.getFileName() + ": " + e.getMessage());
+            return false;
+        } finally {
+            Files.deleteIfExists(rewritten);
+        }
+    }
+
+    /**
+     * Writes the keyframe index of a stored video to {@code <video>.idx}.
+     *
+     * @param video The video under its final name.
+     */
+    public void index(Path video) throws IOException {
+        if (!isMp4(video)) {
+            return;
+        }
+        try {
+            Mp4Index.build(video).write(Mp4Index.pathFor(video));
+        } catch (IllegalArgumentException e) {
+            LOGGER.log(Level.WARNING, "Not indexing " + video.getFileName() + ": " + e.getMessage());
+        }
+    }
+
+    private static boolean isMp4(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            return Mp4Faststart.isMp4(channel);
+        }
+    }
+}
@@ -0,0 +1,282 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.entity.Video;
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.AsyncEvent;
+import jakarta.servlet.AsyncListener;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.DataBufferUtils;
+import org.springframework.core.io.buffer.DefaultDataBufferFactory;
+import org.springframework.http.HttpHeaders;
+import org.springframework.stereotype.Service;
+import reactor.core.publisher.Flux;
+import reactor.core.scheduler.Schedulers;
+
+import java.io.IOException;
+import java.nio.channels.AsynchronousFileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Optional;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Non-blocking counterpart of {@link VideoStreamingService#streamVideoIo}.
+ * The range is read with an {@link AsynchronousFileChannel} as a {@code Flux<DataBuffer>} (or, for videos that are not in
+ * a local file, from the store's region stream on the bounded elastic scheduler) and written through
+ * Servlet non-blocking I/O. A new buffer is only requested once the socket has accepted the previous one,
+ * so a slow viewer holds neither a thread nor more than one buffer.
+ * Under a bandwidth limit the next buffer is requested once the written bytes are paid for, see {@link BandwidthScheduler}.
+ */
+@Service
+@ConditionalOnProperty(name = "video.stream.reactive.enabled", havingValue = "true")
+public class ReactiveVideoStreamingService {
+
+    private final VideoStreamingService videoStreamingService;
+    private final int bufferSize;
+    private final long timeoutMillis;
+
+    public ReactiveVideoStreamingService(VideoStreamingService videoStreamingService,
+                                         @Value("${video.stream.reactive.buffer-size:65536}") int bufferSize,
+                                         @Value("${video.stream.reactive.timeout-ms:600000}") long timeoutMillis) {
+        this.videoStreamingService = videoStreamingService;
+        this.bufferSize = bufferSize;
+        this.timeoutMillis = timeoutMillis;
+    }
+
+    /**
+     * Starts streaming the requested range and returns immediately, the response completes asynchronously.
+     *
+     * @param fileName    The name of the video file.
+     * @param rangeHeader The raw Range header, may be null.
+     * @param request     The current request, put into async mode.
+     * @param response    The response the range is written to.
+     */
+    public void streamVideoReactive(String fileName, String rangeHeader, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<Video> found = videoStreamingService.findVideo(fileName);
+        if (found.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Video metadata = found.get();
+        StoredVideo video = videoStreamingService.open(metadata);
+        long fileLength = video.length();
+        long[] range = videoStreamingService.parseRangeHeaderIo(rangeHeader, fileLength);
+        long start = range[0];
+        long end = range[1];
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.CONTENT_TYPE, metadata.getMimeType());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentLengthLong(end - start + 1);
+
+        Flux<DataBuffer> body = read(video, start, end - start + 1);
+
+        AsyncContext asyncContext = request.startAsync();
+        asyncContext.setTimeout(timeoutMillis);
+        BandwidthScheduler.Flow flow = (BandwidthScheduler.Flow) request.getAttribute(BandwidthScheduler.FLOW_ATTRIBUTE);
+        new ServletWriteSubscriber(asyncContext, response.getOutputStream(), bufferSize, flow).start(body);
+    }
+
+    // Local files are read without blocking, remote stores are read through their region stream off the request thread
+    private Flux<DataBuffer> read(StoredVideo video, long start, long length) throws IOException {
+        Optional<Path> videoFile = video.localFile();
+        if (videoFile.isPresent()) {
+            return DataBufferUtils.takeUntilByteCount(
+                    DataBufferUtils.readAsynchronousFileChannel(
+                            () -> AsynchronousFileChannel.open(videoFile.get(), StandardOpenOption.READ),
+                            start, DefaultDataBufferFactory.sharedInstance, bufferSize),
+                    length);
+        }
+        Resource region = video.region(start, length);
+        return DataBufferUtils.readInputStream(region::getInputStream, DefaultDataBufferFactory.sharedInstance, bufferSize)
+                .subscribeOn(Schedulers.boundedElastic());
+    }
+
+    /**
+     * Bridges a {@code Publisher<DataBuffer>} to a non-blocking {@link ServletOutputStream}.
+     * Upstream signals and container write callbacks arrive on different threads, so all writes go through
+     * a single drain loop and at most one buffer is requested at a time.
+     * With a bandwidth flow, the request for the next buffer is delayed until the bytes written are within the limits.
+     */
+    static final class ServletWriteSubscriber implements Subscriber<DataBuffer>, WriteListener, AsyncListener {
+
+        private final AsyncContext asyncContext;
+        private final ServletOutputStream out;
+        private final byte[] scratch;
+        private final BandwidthScheduler.Flow flow;
+
+        private final AtomicReference<DataBuffer> pending = new AtomicReference<>();
+        private final AtomicBoolean demanded = new AtomicBoolean();
+        private final AtomicBoolean finished = new AtomicBoolean();
+        private final AtomicInteger wip = new AtomicInteger();
+        private volatile boolean upstreamDone;
+        private volatile Subscription subscription;
+        private long throttleNanos; // Owed for the last write, only touched in the drain loop
+
+        ServletWriteSubscriber(AsyncContext asyncContext, ServletOutputStream out, int bufferSize) {
+            this(asyncContext, out, bufferSize, null);
+        }
+
+        /**
+         * @param flow The response's bandwidth flow, null if it is not shaped.
+         */
+        ServletWriteSubscriber(AsyncContext asyncContext, ServletOutputStream out, int bufferSize, BandwidthScheduler.Flow flow) {
+            this.asyncContext = asyncContext;
+            this.out = out;
+            this.scratch = new byte[bufferSize];
+            this.flow = flow;
+        }
+
+        void start(Publisher<DataBuffer> body) {
+            asyncContext.addListener(this);
+            // Registered before subscribing: an upstream that fails at once completes the response,
+            // after which the listener could no longer be set. The first request waits for onWritePossible anyway
+            out.setWriteListener(this);
+            body.subscribe(this);
+        }
+
+        @Override
+        public void onSubscribe(Subscription subscription) {
+            this.subscription = subscription;
+            if (finished.get()) {
+                subscription.cancel();
+                return;
+            }
+            // The stream may have become ready before there was anything to request from
+            drain();
+        }
+
+        @Override
+        public void onNext(DataBuffer buffer) {
+            if (finished.get()) {
+                DataBufferUtils.release(buffer);
+                return;
+            }
+            pending.set(buffer);
+            demanded.set(false);
+            drain();
+        }
+
+        @Override
+        public void onError(Throwable throwable) {
+            finish(true);
+        }
+
+        @Override
+        public void onComplete() {
+            upstreamDone = true;
+            drain();
+        }
+
+        @Override
+        public void onWritePossible() {
+            drain();
+        }
+
+        @Override
+        public void onError(AsyncEvent event) {
+            finish(true);
+        }
+
+        @Override
+        public void onTimeout(AsyncEvent event) {
+            finish(true);
+        }
+
+        @Override
+        public void onComplete(AsyncEvent event) {
+            // nothing left to do, the response is closed
+        }
+
+        @Override
+        public void onStartAsync(AsyncEvent event) {
+            // not re-dispatched
+        }
+
+        private void drain() {
+            if (wip.getAndIncrement() != 0) {
+                return;
+            }
+            int missed = 1;
+            do {
+                try {
+                    // isReady() returning false schedules another onWritePossible callback
+                    while (!finished.get() && out.isReady()) {
+                        DataBuffer buffer = pending.getAndSet(null);
+                        if (buffer != null) {
+                            write(buffer);
+                        } else if (upstreamDone) {
+                            finish(false);
+                        } else {
+                            if (subscription != null && demanded.compareAndSet(false, true)) {
+                                requestNext();
+                            }
+                            break;
+                        }
+                    }
+                } catch (IOException | IllegalStateException e) {
+                    finish(true);
+                }
+                missed = wip.addAndGet(-missed);
+            } while (missed != 0);
+        }
+
+        private void requestNext() {
+            long wait = throttleNanos;
+            throttleNanos = 0;
+            if (wait <= 0) {
+                subscription.request(1);
+                return;
+            }
+            // No thread waits, the request is issued once the limit allows the next buffer
+            Schedulers.parallel().schedule(() -> {
+                if (!finished.get()) {
+                    subscription.request(1);
+                }
+            }, wait, TimeUnit.NANOSECONDS);
+        }
+
+        private void write(DataBuffer buffer) throws IOException {
+            try {
+                // One write per buffer, non-blocking streams reject a second write before isReady()
+                int length = buffer.readableByteCount();
+                buffer.read(scratch, 0, length);
+                out.write(scratch, 0, length);
+                if (flow != null) {
+                    throttleNanos = flow.reserve(length);
+                }
+            } finally {
+                DataBufferUtils.release(buffer);
+            }
+        }
+
+        private void finish(boolean cancel) {
+            if (!finished.compareAndSet(false, true)) {
+                return;
+            }
+            if (cancel && subscription != null) {
+                subscription.cancel();
+            }
+            DataBuffer buffer = pending.getAndSet(null);
+            if (buffer != null) {
+                DataBufferUtils.release(buffer);
+            }
+            asyncContext.complete();
+        }
+    }
+}
@@ -1,95 +1,209 @@
 package com.spring_stream_backend.service;
 
+import org.springframework.beans.factory.annotation.Autowired;
 import org.springframework.beans.factory.annotation.Value;
 import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
 import software.amazon.awssdk.auth.credentials.DefaultCredentialsProvider;
-import software.amazon.awssdk.core.async.AsyncRequestBody;
 import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.S3AsyncClientBuilder;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.ChecksumAlgorithm;
 import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.CompletedMultipartUpload;
 import software.amazon.awssdk.services.s3.model.CompletedPart;
 import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
 import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
 import software.amazon.awssdk.services.s3.model.UploadPartRequest;
-import software.amazon.awssdk.services.s3.model.UploadPartResponse;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
+import java.io.InputStream;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
 import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.CompletionException;
+import java.util.concurrent.Semaphore;
+import java.util.concurrent.atomic.AtomicReference;
+import java.util.zip.CRC32C;
 
 @Service // Marks this class as a Spring service, making it available for dependency injection.
 public class S3MultipartUploadService {
 
+    private static final int MAX_PARTS = 10_000; // S3 limit on the number of parts of one upload.
+
     private final S3AsyncClient s3AsyncClient; // Asynchronous S3 client for performing operations.
     private final String bucketName; // Stores the name of the S3 bucket.
+    private final int partSize; // Size of every part but the last, S3 requires at least 5 MB.
+    private final int maxInFlightParts; // Parts of one upload being sent at the same time.
+    private final DirectBufferPool partBuffers; // Part buffers for stream uploads, reused across uploads.
+    private final StreamingMetrics streamingMetrics; // Part latency and upload throughput.
 
     // Constructor to initialize the S3 client and bucket name using Spring's @Value annotation.
+    @Autowired
     public S3MultipartUploadService(@Value("${aws.s3.bucket-name}") String bucketName,
-                                    @Value("${aws.s3.region}") String region) {
+                                    @Value("${aws.s3.region}") String region,
+                                    @Value("${aws.s3.endpoint:}") String endpoint,
+                                    @Value("${aws.s3.part-size:5242880}") int partSize,
+                                    @Value("${aws.s3.max-in-flight-parts:4}") int maxInFlightParts,
+                                    @Value("${aws.s3.max-pooled-parts:64}") int maxPooledParts,
+                                    StreamingMetrics streamingMetrics) {
+        this(createClient(region, endpoint), bucketName, partSize, maxInFlightParts, maxPooledParts, streamingMetrics);
+    }
+
+    S3MultipartUploadService(S3AsyncClient s3AsyncClient, String bucketName, int partSize, int maxInFlightParts, int maxPooledParts,
+                             StreamingMetrics streamingMetrics) {
+        if (maxInFlightParts < 1) {
+            throw new IllegalArgumentException("At least one part must be allowed in flight.");
+        }
+        this.s3AsyncClient = s3AsyncClient;
         this.bucketName = bucketName; // Assign the bucket name from application properties.
+        this.partSize = partSize;
+        this.maxInFlightParts = maxInFlightParts;
+        this.partBuffers = new DirectBufferPool(partSize, maxPooledParts);
+        this.streamingMetrics = streamingMetrics;
+    }
 
-        // Initialize the S3 client with the region and default credentials provider.
-        this.s3AsyncClient = S3AsyncClient.builder()
+    // Initialize the S3 client with the region and default credentials provider.
+    // An endpoint override points the client at an S3-compatible stand-in such as MinIO or LocalStack.
+    private static S3AsyncClient createClient(String region, String endpoint) {
+        S3AsyncClientBuilder builder = S3AsyncClient.builder()
                 .region(software.amazon.awssdk.regions.Region.of(region))
-                .credentialsProvider(DefaultCredentialsProvider.create())
-                .build();
+                .credentialsProvider(DefaultCredentialsProvider.create());
+        if (StringUtils.hasText(endpoint)) {
+            builder.endpointOverride(URI.create(endpoint)).forcePathStyle(true);
+        }
+        return builder.build();
+    }
+
+    // The client and bucket are shared with the S3 video store, which reads back what is uploaded here.
+    public S3AsyncClient getS3AsyncClient() {
+        return s3AsyncClient;
+    }
+
+    public String getBucketName() {
+        return bucketName;
     }
 
     /**
      * Uploads a large file to the S3 bucket using multipart upload.
+     * Each part is sent straight from a read-only mapping of its file region.
      * @param keyName The key (path) under which the file will be stored in the bucket.
      * @param filePath The path of the file to be uploaded.
      * @return A success message with the S3 key name.
      */
     public String uploadLargeFile(String keyName, Path filePath) throws Exception {
+        try (FileChannel file = FileChannel.open(filePath, StandardOpenOption.READ)) {
+            long fileSize = file.size();
+            // Grow the parts of very large files so they still fit in S3's part limit.
+            long filePartSize = Math.max(partSize, (fileSize + MAX_PARTS - 1) / MAX_PARTS);
+            return uploadParts(keyName, new FileRegionParts(file, fileSize, filePartSize));
+        }
+    }
+
+    /**
+     * Uploads a stream, e.g. a request body, to the S3 bucket using multipart upload without staging it on disk.
+     * At most {@code aws.s3.max-in-flight-parts} part buffers are held for the upload.
+     * @param keyName The key (path) under which the file will be stored in the bucket.
+     * @param input The stream to upload, read until it ends.
+     * @return A success message with the S3 key name.
+     */
+    public String uploadStream(String keyName, InputStream input) throws Exception {
+        return uploadParts(keyName, new StreamParts(Channels.newChannel(input)));
+    }
+
+    private String uploadParts(String keyName, PartSource source) throws IOException, InterruptedException {
         // Step 1: Initiate the multipart upload request.
         CreateMultipartUploadRequest createRequest = CreateMultipartUploadRequest.builder()
                 .bucket(bucketName) // Specify the bucket name.
                 .key(keyName) // Specify the object key (S3 path).
+                .checksumAlgorithm(ChecksumAlgorithm.CRC32_C) // S3 verifies every part against the CRC-32C we send.
                 .build();
 
         // Step 2: Create the multipart upload session and retrieve the upload ID.
         CreateMultipartUploadResponse createResponse = s3AsyncClient.createMultipartUpload(createRequest).join();
         String uploadId = createResponse.uploadId(); // Store the upload ID for subsequent operations.
+        long uploadStarted = System.nanoTime();
+        long uploadedBytes = 0;
 
-        // Step 3: Prepare a list to store information about each uploaded part.
-        List<CompletedPart> completedParts = new ArrayList<>();
-        long partSize = 5 * 1024 * 1024; // Define the part size (5 MB).
-        long fileSize = java.nio.file.Files.size(filePath); // Get the size of the file to upload.
+        // Step 3: Keep one future per part; the window bounds how many are unfinished at a time.
+        List<CompletableFuture<CompletedPart>> parts = new ArrayList<>();
+        int objectCrc32c = 0; // CRC-32C of everything read so far, parts are read in order.
+        Semaphore window = new Semaphore(maxInFlightParts);
+        AtomicReference<Throwable> failure = new AtomicReference<>();
 
-        // Step 4: Loop through the file and upload it in parts.
-        for (int partNumber = 1; partSize * (partNumber - 1) < fileSize; partNumber++) {
-            long start = partSize * (partNumber - 1); // Calculate the starting byte of the current part.
-            long remainingBytes = fileSize - start; // Calculate the remaining bytes to upload.
-            long size = Math.min(partSize, remainingBytes); // Determine the size of the current part.
-
-            // Step 5: Read the current part of the file into a byte array.
-            byte[] buffer = readPart(filePath, start, size);
-
-            // Step 6: Create the upload request for the current part.
-            UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
-                    .bucket(bucketName) // Specify the bucket name.
-                    .key(keyName) // Specify the object key.
-                    .uploadId(uploadId) // Include the multipart upload ID.
-                    .partNumber(partNumber) // Specify the part number.
-                    .contentLength(size) // Specify the size of the part.
-                    .build();
-
-            // Step 7: Upload the part to S3 and retrieve its response.
-            UploadPartResponse uploadPartResponse = s3AsyncClient
-                    .uploadPart(uploadPartRequest, AsyncRequestBody.fromBytes(buffer))
-                    .join();
-
-            // Step 8: Add the uploaded part's information to the completed parts list.
-            completedParts.add(CompletedPart.builder()
-                    .partNumber(partNumber) // Specify the part number.
-                    .eTag(uploadPartResponse.eTag()) // Add the part's ETag.
-                    .build());
+        try {
+            for (int partNumber = 1; ; partNumber++) {
+                // Step 4: Wait for a free slot, and stop reading as soon as any part has failed.
+                window.acquire();
+                if (failure.get() != null) {
+                    window.release();
+                    break;
+                }
+                Part part = source.next(partNumber);
+                if (part == null) {
+                    window.release();
+                    break;
+                }
+                if (partNumber > MAX_PARTS) {
+                    source.release(part);
+                    window.release();
+                    throw new IllegalArgumentException("Upload exceeds " + MAX_PARTS + " parts of " + partSize + " bytes.");
+                }
+                uploadedBytes += part.length();
+                objectCrc32c = partNumber == 1 ? part.crc32c() : Checksums.combineCrc32c(objectCrc32c, part.crc32c(), part.length());
+
+                // Step 5: Create the upload request for the current part.
+                UploadPartRequest uploadPartRequest = UploadPartRequest.builder()
+                        .bucket(bucketName) // Specify the bucket name.
+                        .key(keyName) // Specify the object key.
+                        .uploadId(uploadId) // Include the multipart upload ID.
+                        .partNumber(partNumber) // Specify the part number.
+                        .contentLength((long) part.length()) // Specify the size of the part.
+                        .checksumAlgorithm(ChecksumAlgorithm.CRC32_C)
+                        .checksumCRC32C(part.encodedCrc32c()) // Computed while the part was read, S3 rejects the part if it differs.
+                        .build();
+
+                // Step 6: Send the part without waiting for it; its slot and buffer are freed once S3 answers.
+                int number = partNumber;
+                long partStarted = System.nanoTime();
+                parts.add(s3AsyncClient.uploadPart(uploadPartRequest, new ByteBufferRequestBody(part.data()))
+                        .thenApply(response -> CompletedPart.builder()
+                                .partNumber(number) // Specify the part number.
+                                .eTag(response.eTag()) // Add the part's ETag.
+                                .checksumCRC32C(part.encodedCrc32c())
+                                .build())
+                        .whenComplete((completedPart, error) -> {
+                            streamingMetrics.s3PartUploaded(System.nanoTime() - partStarted);
+                            if (error != null) {
+                                failure.compareAndSet(null, error);
+                            }
+                            source.release(part);
+                            window.release();
+                        }));
+            }
+
+            // Step 7: Wait for the parts still in flight.
+            CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).join();
+        } catch (CompletionException e) {
+            abort(keyName, uploadId, parts);
+            throw asRuntime(e);
+        } catch (IOException | InterruptedException | RuntimeException e) {
+            abort(keyName, uploadId, parts);
+            throw e;
         }
 
-        // Step 9: Prepare the completed multipart upload request.
+        // Step 8: Prepare the completed multipart upload request, parts are listed in part number order.
+        List<CompletedPart> completedParts = new ArrayList<>(parts.size());
+        for (CompletableFuture<CompletedPart> part : parts) {
+            completedParts.add(part.join());
+        }
         CompletedMultipartUpload completedMultipartUpload = CompletedMultipartUpload.builder()
                 .parts(completedParts) // Include all the uploaded parts.
                 .build();
@@ -101,27 +215,124 @@ public class S3MultipartUploadService {
                 .multipartUpload(completedMultipartUpload) // Attach the completed parts.
                 .build();
 
-        // Step 10: Complete the multipart upload in S3.
+        // Step 9: Complete the multipart upload in S3.
         s3AsyncClient.completeMultipartUpload(completeRequest).join();
+        streamingMetrics.uploaded("s3", uploadedBytes, System.nanoTime() - uploadStarted);
+
+        // Step 10: Return a success message with the key name and the CRC-32C of the whole object.
+        return "File uploaded successfully with key: " + keyName + " (crc32c " + Checksums.encodeCrc32c(objectCrc32c) + ")";
+    }
+
+    /**
+     * Aborts a failed upload so S3 does not keep (and bill for) the parts already stored.
+     * Parts still in flight are waited for first, otherwise they could land after the abort.
+     */
+    private void abort(String keyName, String uploadId, List<CompletableFuture<CompletedPart>> parts) {
+        CompletableFuture.allOf(parts.toArray(new CompletableFuture<?>[0])).exceptionally(error -> null).join();
+        AbortMultipartUploadRequest abortRequest = AbortMultipartUploadRequest.builder()
+                .bucket(bucketName)
+                .key(keyName)
+                .uploadId(uploadId)
+                .build();
+        s3AsyncClient.abortMultipartUpload(abortRequest).exceptionally(error -> null).join();
+    }
+
+    private static RuntimeException asRuntime(Throwable error) {
+        Throwable cause = error instanceof CompletionException && error.getCause() != null ? error.getCause() : error;
+        return cause instanceof RuntimeException runtime ? runtime : new RuntimeException("Part upload failed: " + cause.getMessage(), cause);
+    }
+
+    /**
+     * A part's bytes and their CRC-32C.
+     */
+    private record Part(ByteBuffer data, int length, int crc32c) {
+
+        String encodedCrc32c() {
+            return Checksums.encodeCrc32c(crc32c);
+        }
+    }
+
+    /**
+     * Hands out the parts of an upload in order, and takes back each part once S3 is done with it.
+     */
+    private interface PartSource {
 
-        // Step 11: Return a success message with the key name.
-        return "File uploaded successfully with key: " + keyName;
+        /**
+         * @param partNumber The one-based part number.
+         * @return The next part, or null once the source is exhausted.
+         */
+        Part next(int partNumber) throws IOException;
+
+        void release(Part part);
     }
 
     /**
-     * Reads a specific part of the file into a byte array.
-     * @param filePath The path of the file to read.
-     * @param start The starting byte position.
-     * @param size The number of bytes to read.
-     * @return A byte array containing the part data.
-     * @throws IOException If an error occurs while reading the file.
+     * Parts of a file, each a read-only mapping of its region, so no part is copied onto the heap.
      */
-    private byte[] readPart(Path filePath, long start, long size) throws IOException {
-        try (RandomAccessFile file = new RandomAccessFile(filePath.toFile(), "r")) {
-            byte[] buffer = new byte[(int) size]; // Create a buffer to hold the part data.
-            file.seek(start); // Move the file pointer to the start position.
-            file.readFully(buffer); // Read the specified number of bytes into the buffer.
-            return buffer; // Return the buffer.
+    private static final class FileRegionParts implements PartSource {
+
+        private final FileChannel file;
+        private final long fileSize;
+        private final long partSize;
+
+        private FileRegionParts(FileChannel file, long fileSize, long partSize) {
+            this.file = file;
+            this.fileSize = fileSize;
+            this.partSize = partSize;
+        }
+
+        @Override
+        public Part next(int partNumber) throws IOException {
+            long start = partSize * (partNumber - 1); // Calculate the starting byte of the current part.
+            if (start >= fileSize && partNumber > 1) {
+                return null;
+            }
+            long size = Math.min(partSize, fileSize - start); // Determine the size of the current part.
+            ByteBuffer region = file.map(FileChannel.MapMode.READ_ONLY, start, size);
+            // Faults the region in once; the SDK then sends it from the page cache
+            CRC32C crc32c = new CRC32C();
+            crc32c.update(region.duplicate());
+            return new Part(region, (int) size, (int) crc32c.getValue());
+        }
+
+        @Override
+        public void release(Part part) {
+            // The mapping is unmapped by the GC once the SDK lets go of it
+        }
+    }
+
+    /**
+     * Parts of a stream, each read into a buffer from the shared part pool.
+     */
+    private final class StreamParts implements PartSource {
+
+        private final ReadableByteChannel input;
+        private boolean ended;
+
+        private StreamParts(ReadableByteChannel input) {
+            this.input = input;
+        }
+
+        @Override
+        public Part next(int partNumber) throws IOException {
+            if (ended) {
+                return null;
+            }
+            ByteBuffer buffer = partBuffers.acquire();
+            CRC32C crc32c = new CRC32C();
+            int size = StreamingIngest.fill(input, buffer, crc32c);
+            ended = size < partSize;
+            if (size == 0 && partNumber > 1) {
+                // The stream ended exactly on a part boundary
+                partBuffers.release(buffer);
+                return null;
+            }
+            return new Part(buffer.flip(), size, (int) crc32c.getValue());
+        }
+
+        @Override
+        public void release(Part part) {
+            partBuffers.release(part.data());
         }
     }
 }
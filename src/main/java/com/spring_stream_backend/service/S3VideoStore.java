@@ -0,0 +1,288 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.autoconfigure.condition.ConditionalOnProperty;
+import org.springframework.core.io.AbstractResource;
+import org.springframework.core.io.Resource;
+import org.springframework.stereotype.Component;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Optional;
+import java.util.concurrent.CompletionException;
+
+/**
+ * Serves videos straight from the upload bucket, the object key being the video name.
+ * Every range is fetched with ranged GETs of at most {@code video.store.s3.read-size} bytes, so a response never holds
+ * more than one window of the object in memory and nothing before the requested range is downloaded.
+ * Videos stored on the video volumes are uploaded to the bucket when they are published, uploads sent to the S3
+ * endpoints are streamed straight into it.
+ */
+@Component
+@ConditionalOnProperty(name = "video.store", havingValue = "s3")
+public class S3VideoStore implements VideoStore {
+
+    private final S3AsyncClient s3AsyncClient;
+    private final String bucketName;
+    private final int readSize;
+    private final S3MultipartUploadService uploadService;
+
+    @Autowired
+    public S3VideoStore(S3MultipartUploadService uploadService,
+                        @Value("${video.store.s3.read-size:1048576}") int readSize) {
+        this(uploadService.getS3AsyncClient(), uploadService.getBucketName(), readSize, uploadService);
+    }
+
+    S3VideoStore(S3AsyncClient s3AsyncClient, String bucketName, int readSize, S3MultipartUploadService uploadService) {
+        if (readSize < 1) {
+            throw new IllegalArgumentException("The S3 read size must be at least 1 byte.");
+        }
+        this.s3AsyncClient = s3AsyncClient;
+        this.bucketName = bucketName;
+        this.readSize = readSize;
+        this.uploadService = uploadService;
+    }
+
+    @Override
+    public Optional<StoredVideo> find(String name) throws IOException {
+        HeadObjectRequest request = HeadObjectRequest.builder().bucket(bucketName).key(name).build();
+        try {
+            HeadObjectResponse response = s3AsyncClient.headObject(request).join();
+            return Optional.of(new S3Video(name, response.contentLength()));
+        } catch (CompletionException e) {
+            if (e.getCause() instanceof S3Exception s3Exception && s3Exception.statusCode() == 404) {
+                return Optional.empty();
+            }
+            throw asIOException(name, e);
+        }
+    }
+
+    @Override
+    public StoredVideo open(String name, String location, long length) {
+        return new S3Video(name, length); // The key is the name
+    }
+
+    @Override
+    public StoredVideo publish(String name, Path file) throws IOException {
+        try {
+            uploadService.uploadLargeFile(name, file);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not upload " + name + " to S3: " + e.getMessage(), e);
+        }
+        return new S3Video(name, Files.size(file));
+    }
+
+    @Override
+    public boolean acceptsStreams() {
+        return true;
+    }
+
+    @Override
+    public StoredVideo publish(String name, InputStream content) throws IOException {
+        try {
+            uploadService.uploadStream(name, content);
+        } catch (IOException e) {
+            throw e;
+        } catch (Exception e) {
+            throw new IOException("Could not upload " + name + " to S3: " + e.getMessage(), e);
+        }
+        // The length of a stream is only known once S3 has it all
+        return find(name).orElseThrow(() -> new IOException(name + " is missing from S3 after its upload."));
+    }
+
+    /**
+     * Fetches one window of an object.
+     *
+     * @param key      The object key.
+     * @param position The first byte.
+     * @param length   The number of bytes, at least 1.
+     * @return The bytes, exactly {@code length} of them.
+     */
+    private ByteBuffer fetch(String key, long position, long length) throws IOException {
+        GetObjectRequest request = GetObjectRequest.builder()
+                .bucket(bucketName)
+                .key(key)
+                .range("bytes=" + position + "-" + (position + length - 1))
+                .build();
+        ByteBuffer bytes;
+        try {
+            bytes = s3AsyncClient.getObject(request, AsyncResponseTransformer.toBytes()).join().asByteBuffer();
+        } catch (CompletionException e) {
+            throw asIOException(key, e);
+        }
+        if (bytes.remaining() != length) {
+            throw new IOException("S3 returned " + bytes.remaining() + " bytes of " + key + " at " + position
+                    + " instead of " + length + ", the object changed while it was read.");
+        }
+        return bytes;
+    }
+
+    private static IOException asIOException(String key, CompletionException e) {
+        Throwable cause = e.getCause() != null ? e.getCause() : e;
+        return cause instanceof IOException io ? io : new IOException("Error reading " + key + " from S3: " + cause.getMessage(), cause);
+    }
+
+    private final class S3Video implements StoredVideo {
+
+        private final String name;
+        private final long length;
+
+        private S3Video(String name, long length) {
+            this.name = name;
+            this.length = length;
+        }
+
+        @Override
+        public String getName() {
+            return name;
+        }
+
+        @Override
+        public long length() {
+            return length;
+        }
+
+        @Override
+        public String getLocation() {
+            return "s3://" + bucketName + "/" + name;
+        }
+
+        @Override
+        public void transferTo(long position, long length, WritableByteChannel target) throws IOException {
+            long end = position + length;
+            while (position < end) {
+                ByteBuffer window = fetch(name, position, Math.min(readSize, end - position));
+                position += window.remaining();
+                while (window.hasRemaining()) {
+                    target.write(window);
+                }
+            }
+        }
+
+        @Override
+        public Resource region(long position, long length) {
+            return new S3RangeResource(this, position, length);
+        }
+
+        @Override
+        public Resource resource() {
+            return new S3RangeResource(this, 0, length);
+        }
+    }
+
+    /**
+     * A range of an object, fetched window by window as the stream is read.
+     */
+    private final class S3RangeResource extends AbstractResource {
+
+        private final S3Video video;
+        private final long position;
+        private final long length;
+
+        private S3RangeResource(S3Video video, long position, long length) {
+            this.video = video;
+            this.position = position;
+            this.length = length;
+        }
+
+        @Override
+        public InputStream getInputStream() {
+            return new WindowInputStream(video.getName(), position, position + length);
+        }
+
+        @Override
+        public long contentLength() {
+            return length;
+        }
+
+        @Override
+        public boolean exists() {
+            return true;
+        }
+
+        @Override
+        public String getFilename() {
+            return video.getName();
+        }
+
+        @Override
+        public String getDescription() {
+            return "S3 object s3://" + bucketName + "/" + video.getName() + " [" + position + ", " + (position + length) + ")";
+        }
+    }
+
+    private final class WindowInputStream extends InputStream {
+
+        private final String key;
+        private final long end;
+        private long position; // Of the first byte not fetched yet
+        private ByteBuffer window = ByteBuffer.allocate(0);
+
+        private WindowInputStream(String key, long start, long end) {
+            this.key = key;
+            this.position = start;
+            this.end = end;
+        }
+
+        @Override
+        public int read() throws IOException {
+            return fill() ? window.get() & 0xFF : -1;
+        }
+
+        @Override
+        public int read(byte[] b, int off, int len) throws IOException {
+            if (len == 0) {
+                return 0;
+            }
+            if (!fill()) {
+                return -1;
+            }
+            int count = Math.min(len, window.remaining());
+            window.get(b, off, count);
+            return count;
+        }
+
+        // Skipping only moves the position, e.g. when a ResourceRegion starts further into the object
+        @Override
+        public long skip(long n) {
+            if (n <= 0) {
+                return 0;
+            }
+            int fromWindow = (int) Math.min(n, window.remaining());
+            window.position(window.position() + fromWindow);
+            long fromObject = Math.min(n - fromWindow, end - position);
+            position += fromObject;
+            return fromWindow + fromObject;
+        }
+
+        @Override
+        public int available() {
+            return window.remaining();
+        }
+
+        private boolean fill() throws IOException {
+            if (window.hasRemaining()) {
+                return true;
+            }
+            if (position >= end) {
+                return false;
+            }
+            window = fetch(key, position, Math.min(readSize, end - position));
+            position += window.remaining();
+            return true;
+        }
+    }
+}
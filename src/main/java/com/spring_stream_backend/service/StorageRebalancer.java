@@ -0,0 +1,54 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.boot.context.event.ApplicationReadyEvent;
+import org.springframework.context.event.EventListener;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Moves videos and chunks to the volume that owns them once the application is up, so files written before a disk was
+ * added spread onto it. It runs in the background, files are found on their old volume until they are moved.
+ * <p>
+ * It moves user files while requests are served, so it only runs when asked to: start the application once with
+ * {@code storage.rebalance-on-startup=true} (e.g. {@code --storage.rebalance-on-startup=true}) after adding a location.
+ */
+@Component
+public class StorageRebalancer {
+
+    private static final Logger LOGGER = Logger.getLogger(StorageRebalancer.class.getName());
+
+    private final VideoUploadService videoUploadService;
+    private final FileChunkService fileChunkService;
+    private final boolean rebalanceOnStartup;
+
+    public StorageRebalancer(VideoUploadService videoUploadService, FileChunkService fileChunkService,
+                             @Value("${storage.rebalance-on-startup:false}") boolean rebalanceOnStartup) {
+        this.videoUploadService = videoUploadService;
+        this.fileChunkService = fileChunkService;
+        this.rebalanceOnStartup = rebalanceOnStartup;
+    }
+
+    @EventListener(ApplicationReadyEvent.class)
+    public void onApplicationReady() {
+        if (rebalanceOnStartup) {
+            Thread.ofVirtual().name("storage-rebalance").start(this::rebalance);
+        }
+    }
+
+    public void rebalance() {
+        try {
+            int videos = videoUploadService.rebalance();
+            int chunks = fileChunkService.rebalance();
+            if (videos + chunks > 0) {
+                LOGGER.info("Storage rebalanced: moved " + videos + " video files and " + chunks + " chunk files.");
+            }
+        } catch (IOException | RuntimeException e) {
+            // Including the catalog failing to follow a moved video, the rebalance stops there
+            LOGGER.log(Level.SEVERE, "Storage rebalance failed: " + e.getMessage(), e);
+        }
+    }
+}
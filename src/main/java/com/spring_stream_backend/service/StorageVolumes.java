@@ -0,0 +1,206 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.media.Mp4Index;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.AtomicMoveNotSupportedException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.List;
+import java.util.Map;
+import java.util.NavigableMap;
+import java.util.TreeMap;
+import java.util.function.BiConsumer;
+import java.util.function.Predicate;
+import java.util.logging.Logger;
+import java.util.stream.Stream;
+
+/**
+ * Spreads files over several storage directories (typically one per disk) by consistent hashing of their relative path,
+ * so reads and writes of different files land on different disks and adding a disk only moves the files it now owns.
+ * <p>
+ * Every volume is placed on a hash ring at {@value #VIRTUAL_NODES} points derived from its path, and a file belongs to
+ * the first volume point at or after the hash of its relative path. Keyframe index sidecars are placed by the name of
+ * their video, so they always sit next to it. A single configured directory behaves exactly like a plain directory.
+ */
+public class StorageVolumes {
+
+    // Bean names of the video and chunk volumes
+    public static final String VIDEOS = "videoVolumes";
+    public static final String CHUNKS = "chunkVolumes";
+    private static final int VIRTUAL_NODES = 160;
+    private static final Logger LOGGER = Logger.getLogger(StorageVolumes.class.getName());
+
+    private final List<Path> roots;
+    private final NavigableMap<Long, Path> ring = new TreeMap<>();
+
+    public StorageVolumes(List<Path> roots) {
+        if (roots.isEmpty()) {
+            throw new IllegalArgumentException("At least one storage location is required.");
+        }
+        this.roots = roots.stream().map(root -> root.toAbsolutePath().normalize()).distinct().toList();
+        for (Path root : this.roots) {
+            for (int node = 0; node < VIRTUAL_NODES; node++) {
+                ring.put(hash(root + "#" + node), root);
+            }
+        }
+    }
+
+    /**
+     * @param locations Comma-separated directories, blanks are ignored.
+     * @return The volumes.
+     */
+    public static StorageVolumes parse(String locations) {
+        return new StorageVolumes(Stream.of(locations.split(","))
+                .map(String::trim)
+                .filter(location -> !location.isEmpty())
+                .map(Path::of)
+                .toList());
+    }
+
+    public List<Path> getRoots() {
+        return roots;
+    }
+
+    /**
+     * @return The first configured volume, for state that is not worth spreading (sessions, manifests).
+     */
+    public Path primary() {
+        return roots.get(0);
+    }
+
+    /**
+     * @param relativePath A path relative to the volume roots, with {@code /} separators.
+     * @return The volume the path belongs on.
+     */
+    public Path volumeFor(String relativePath) {
+        Map.Entry<Long, Path> owner = ring.ceilingEntry(hash(placementKey(relativePath)));
+        return owner != null ? owner.getValue() : ring.firstEntry().getValue();
+    }
+
+    /**
+     * @param relativePath A path relative to the volume roots, with {@code /} separators.
+     * @return Where the path is written.
+     */
+    public Path resolve(String relativePath) {
+        return volumeFor(relativePath).resolve(relativePath);
+    }
+
+    /**
+     * Finds an existing file. It is looked for on its own volume first, then on the others for files written
+     * before a volume was added and not rebalanced yet.
+     *
+     * @param relativePath A path relative to the volume roots, with {@code /} separators.
+     * @return The existing file, or where it would be written if it exists nowhere.
+     */
+    public Path locate(String relativePath) {
+        Path owned = resolve(relativePath);
+        if (roots.size() == 1 || Files.exists(owned)) {
+            return owned;
+        }
+        for (Path root : roots) {
+            Path candidate = root.resolve(relativePath);
+            if (Files.exists(candidate)) {
+                return candidate;
+            }
+        }
+        return owned;
+    }
+
+    /**
+     * Moves the files under a directory of every volume to the volume that owns them, after volumes were added or removed
+     * from the configuration. A file is copied next to its new place and renamed into it before the misplaced copy is
+     * deleted, so it can be found through {@link #locate} throughout. A file that already exists on its owner is left alone.
+     *
+     * @param directory The directory to rebalance, relative to the volume roots, empty for the roots themselves.
+     * @param maxDepth  How many directory levels below it hold files to move.
+     * @param movable   Filters out files that must not be moved, e.g. ones still being written. Hidden files never are.
+     * @return The number of files moved.
+     */
+    public int rebalance(String directory, int maxDepth, Predicate<Path> movable) throws IOException {
+        return rebalance(directory, maxDepth, movable, (source, target) -> {
+        });
+    }
+
+    /**
+     * {@link #rebalance(String, int, Predicate)}, telling the caller about every file moved.
+     *
+     * @param moved Called with the old and the new path once a file was moved.
+     */
+    public int rebalance(String directory, int maxDepth, Predicate<Path> movable, BiConsumer<Path, Path> moved) throws IOException {
+        int count = 0;
+        for (Path root : roots) {
+            Path start = root.resolve(directory);
+            if (!Files.isDirectory(start)) {
+                continue;
+            }
+            List<Path> files;
+            try (Stream<Path> walk = Files.walk(start, maxDepth)) {
+                files = walk.filter(Files::isRegularFile)
+                        .filter(file -> !isHidden(root.relativize(file)))
+                        .filter(movable)
+                        .toList();
+            }
+            for (Path file : files) {
+                String relativePath = root.relativize(file).toString().replace('\\', '/');
+                Path owner = volumeFor(relativePath);
+                if (owner.equals(root)) {
+                    continue;
+                }
+                Path target = owner.resolve(relativePath);
+                if (Files.exists(target)) {
+                    LOGGER.warning("Not moving " + file + ", " + target + " already exists.");
+                    continue;
+                }
+                move(file, target);
+                moved.accept(file, target);
+                count++;
+            }
+        }
+        return count;
+    }
+
+    private static void move(Path file, Path target) throws IOException {
+        Files.createDirectories(target.getParent());
+        try {
+            Files.move(file, target, StandardCopyOption.ATOMIC_MOVE);
+            return;
+        } catch (AtomicMoveNotSupportedException e) {
+            // Another file system, copy and rename into place
+        }
+        Path temp = target.resolveSibling("." + target.getFileName() + ".rebalance");
+        Files.copy(file, temp, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.COPY_ATTRIBUTES);
+        Files.move(temp, target, StandardCopyOption.ATOMIC_MOVE);
+        Files.delete(file);
+    }
+
+    private static boolean isHidden(Path relativePath) {
+        for (Path element : relativePath) {
+            if (element.toString().startsWith(".")) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    // Sidecars follow the file they describe
+    private static String placementKey(String relativePath) {
+        return relativePath.endsWith(Mp4Index.EXTENSION)
+                ? relativePath.substring(0, relativePath.length() - Mp4Index.EXTENSION.length())
+                : relativePath;
+    }
+
+    // FNV-1a followed by the SplitMix64 finalizer, cheap enough for every lookup and evenly spread over the ring
+    private static long hash(String key) {
+        long hash = 0xcbf29ce484222325L;
+        for (byte b : key.getBytes(StandardCharsets.UTF_8)) {
+            hash ^= b & 0xff;
+            hash *= 0x100000001b3L;
+        }
+        hash = (hash ^ (hash >>> 30)) * 0xbf58476d1ce4e5b9L;
+        hash = (hash ^ (hash >>> 27)) * 0x94d049bb133111ebL;
+        return hash ^ (hash >>> 31);
+    }
+}
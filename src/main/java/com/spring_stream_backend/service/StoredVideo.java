@@ -0,0 +1,52 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.core.io.Resource;
+
+import java.io.IOException;
+import java.nio.channels.WritableByteChannel;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * A video found in a {@link VideoStore}, read by byte range.
+ */
+public interface StoredVideo {
+
+    String getName();
+
+    long length();
+
+    /**
+     * @return Where the video is stored, a file path or an {@code s3://} URI.
+     */
+    String getLocation();
+
+    /**
+     * Writes a range of the video.
+     *
+     * @param position The first byte.
+     * @param length   The number of bytes, the range must lie within the video.
+     * @param target   The channel to write to.
+     */
+    void transferTo(long position, long length, WritableByteChannel target) throws IOException;
+
+    /**
+     * @param position The first byte.
+     * @param length   The number of bytes, the range must lie within the video.
+     * @return A resource holding exactly the range, for responses whose body is the range itself.
+     */
+    Resource region(long position, long length) throws IOException;
+
+    /**
+     * @return The whole video, for {@link org.springframework.core.io.support.ResourceRegion} responses.
+     * Skipping to a region's start does not read the bytes before it.
+     */
+    Resource resource();
+
+    /**
+     * @return The file holding the video, for sendfile and asynchronous file I/O, or empty for remote stores.
+     */
+    default Optional<Path> localFile() {
+        return Optional.empty();
+    }
+}
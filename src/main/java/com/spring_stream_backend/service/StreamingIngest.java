@@ -0,0 +1,164 @@
+package com.spring_stream_backend.service;
+
+import org.springframework.stereotype.Component;
+
+import java.io.EOFException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.channels.ReadableByteChannel;
+import java.nio.channels.WritableByteChannel;
+import java.security.MessageDigest;
+import java.util.zip.Checksum;
+
+/**
+ * Copies request bodies to their destination through one buffer borrowed from the {@link DirectBufferPool},
+ * so the memory an upload holds is a single pooled buffer however large the upload is.
+ * Checksums are updated from the same buffer as the bytes pass through, never in a second pass over the data.
+ */
+@Component
+public class StreamingIngest {
+
+    private final DirectBufferPool bufferPool;
+
+    public StreamingIngest(DirectBufferPool bufferPool) {
+        this.bufferPool = bufferPool;
+    }
+
+    /**
+     * Writes exactly {@code length} bytes of the input at the given position of a file.
+     *
+     * @param input    The request body.
+     * @param target   The file to write into.
+     * @param position The file offset of the first byte.
+     * @param length   The number of bytes expected from the input.
+     * @throws EOFException If the input ends before {@code length} bytes.
+     */
+    public void writeAt(InputStream input, FileChannel target, long position, long length) throws IOException {
+        writeAt(input, target, position, length, null, null);
+    }
+
+    /**
+     * Writes exactly {@code length} bytes of the input at the given position of a file, checksumming them on the way.
+     *
+     * @param input    The request body.
+     * @param target   The file to write into.
+     * @param position The file offset of the first byte.
+     * @param length   The number of bytes expected from the input.
+     * @param checksum Updated with every byte written, may be null.
+     * @param digest   Updated with every byte written, may be null.
+     * @throws EOFException If the input ends before {@code length} bytes.
+     */
+    public void writeAt(InputStream input, FileChannel target, long position, long length,
+                        Checksum checksum, MessageDigest digest) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(input);
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            long written = 0;
+            while (written < length) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), length - written));
+                if (source.read(buffer) < 0) {
+                    throw new EOFException("Input ended after " + written + " of " + length + " bytes.");
+                }
+                buffer.flip();
+                update(buffer, checksum, digest);
+                while (buffer.hasRemaining()) {
+                    written += target.write(buffer, position + written);
+                }
+            }
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Copies the input to a channel until the input ends, or until {@code maxBytes} have been copied.
+     *
+     * @param input    The request body.
+     * @param target   The channel to write to.
+     * @param maxBytes The most bytes to copy.
+     * @return The number of bytes copied, less than {@code maxBytes} only if the input ended.
+     */
+    public long copy(InputStream input, WritableByteChannel target, long maxBytes) throws IOException {
+        return copy(input, target, maxBytes, null);
+    }
+
+    /**
+     * Copies the input to a channel until the input ends, or until {@code maxBytes} have been copied,
+     * digesting the bytes on the way.
+     *
+     * @param input    The request body.
+     * @param target   The channel to write to.
+     * @param maxBytes The most bytes to copy.
+     * @param digest   Updated with every byte copied, may be null.
+     * @return The number of bytes copied, less than {@code maxBytes} only if the input ended.
+     */
+    public long copy(InputStream input, WritableByteChannel target, long maxBytes, MessageDigest digest) throws IOException {
+        ReadableByteChannel source = Channels.newChannel(input);
+        ByteBuffer buffer = bufferPool.acquire();
+        try {
+            long copied = 0;
+            while (copied < maxBytes) {
+                buffer.clear().limit((int) Math.min(buffer.capacity(), maxBytes - copied));
+                if (source.read(buffer) < 0) {
+                    break;
+                }
+                buffer.flip();
+                update(buffer, null, digest);
+                while (buffer.hasRemaining()) {
+                    copied += target.write(buffer);
+                }
+            }
+            return copied;
+        } finally {
+            bufferPool.release(buffer);
+        }
+    }
+
+    /**
+     * Reads from a channel until the buffer is full or the channel ends.
+     *
+     * @param source The channel to read.
+     * @param target The buffer to fill, from its position to its limit.
+     * @return The number of bytes read.
+     */
+    public static int fill(ReadableByteChannel source, ByteBuffer target) throws IOException {
+        return fill(source, target, null);
+    }
+
+    /**
+     * Reads from a channel until the buffer is full or the channel ends, checksumming each read as it lands.
+     *
+     * @param source   The channel to read.
+     * @param target   The buffer to fill, from its position to its limit.
+     * @param checksum Updated with every byte read, may be null.
+     * @return The number of bytes read.
+     */
+    public static int fill(ReadableByteChannel source, ByteBuffer target, Checksum checksum) throws IOException {
+        int read = 0;
+        while (target.hasRemaining()) {
+            int start = target.position();
+            int n = source.read(target);
+            if (n < 0) {
+                break;
+            }
+            if (checksum != null && n > 0) {
+                checksum.update(target.duplicate().flip().position(start));
+            }
+            read += n;
+        }
+        return read;
+    }
+
+    // Leaves the buffer's position where it was, ready to be written out
+    private static void update(ByteBuffer buffer, Checksum checksum, MessageDigest digest) {
+        if (checksum != null) {
+            checksum.update(buffer.duplicate());
+        }
+        if (digest != null) {
+            digest.update(buffer.duplicate());
+        }
+    }
+}
@@ -0,0 +1,156 @@
+package com.spring_stream_backend.service;
+
+import io.micrometer.core.instrument.Counter;
+import io.micrometer.core.instrument.DistributionSummary;
+import io.micrometer.core.instrument.Gauge;
+import io.micrometer.core.instrument.MeterRegistry;
+import io.micrometer.core.instrument.Timer;
+import org.springframework.stereotype.Component;
+
+import java.time.Duration;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Hot-path meters for streaming and uploads, exported through Actuator at {@code /actuator/prometheus}.
+ * Meters are registered once per endpoint or upload kind and kept here, so recording is a lookup
+ * and an atomic add rather than a registry lookup per request.
+ *
+ * <ul>
+ *     <li>{@code video.stream.bytes} and {@code video.stream.range.size}, bytes served per endpoint and per response</li>
+ *     <li>{@code video.stream.ttfb}, time from the request arriving to the first byte of the body</li>
+ *     <li>{@code video.stream.active}, responses being written</li>
+ *     <li>{@code video.upload.bytes} and {@code video.upload.throughput}, bytes received per upload kind and their rate</li>
+ *     <li>{@code video.upload.merge}, time to merge chunk uploads into a video</li>
+ *     <li>{@code video.s3.part.latency}, time for S3 to answer one multipart part</li>
+ * </ul>
+ */
+@Component
+public class StreamingMetrics {
+
+    private static final double MIN_RANGE_BYTES = 1024;
+    private static final double MAX_RANGE_BYTES = 64.0 * 1024 * 1024;
+
+    private final MeterRegistry registry;
+    private final AtomicInteger activeStreams = new AtomicInteger();
+    private final Map<String, StreamMeters> streamMeters = new ConcurrentHashMap<>();
+    private final Map<String, UploadMeters> uploadMeters = new ConcurrentHashMap<>();
+    private final Timer mergeTimer;
+    private final Timer s3PartTimer;
+
+    public StreamingMetrics(MeterRegistry registry) {
+        this.registry = registry;
+        Gauge.builder("video.stream.active", activeStreams, AtomicInteger::get)
+                .description("Video responses being written")
+                .register(registry);
+        this.mergeTimer = Timer.builder("video.upload.merge")
+                .description("Time to merge uploaded chunks into a video")
+                .publishPercentileHistogram()
+                .register(registry);
+        this.s3PartTimer = Timer.builder("video.s3.part.latency")
+                .description("Time for S3 to answer one multipart part")
+                .publishPercentileHistogram()
+                .register(registry);
+    }
+
+    //----------------------------------------------------------streaming----------------------------------------------------------
+
+    public void streamStarted() {
+        activeStreams.incrementAndGet();
+    }
+
+    /**
+     * Records a finished video response.
+     *
+     * @param endpoint       The handler's path pattern, e.g. {@code /api/stream/videos/{videoName}}.
+     * @param bytes          The body bytes written.
+     * @param firstByteNanos Nanoseconds from the request arriving to the first byte, negative if none was written.
+     */
+    public void streamFinished(String endpoint, long bytes, long firstByteNanos) {
+        activeStreams.decrementAndGet();
+        StreamMeters meters = streamMeters.computeIfAbsent(endpoint, this::streamMeters);
+        if (bytes > 0) {
+            meters.bytes.increment(bytes);
+            meters.rangeSize.record(bytes);
+        }
+        if (firstByteNanos >= 0) {
+            meters.timeToFirstByte.record(firstByteNanos, TimeUnit.NANOSECONDS);
+        }
+    }
+
+    public int activeStreams() {
+        return activeStreams.get();
+    }
+
+    private StreamMeters streamMeters(String endpoint) {
+        return new StreamMeters(
+                Counter.builder("video.stream.bytes")
+                        .description("Video bytes served")
+                        .baseUnit("bytes")
+                        .tag("endpoint", endpoint)
+                        .register(registry),
+                DistributionSummary.builder("video.stream.range.size")
+                        .description("Bytes served per video response")
+                        .baseUnit("bytes")
+                        .tag("endpoint", endpoint)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(MIN_RANGE_BYTES)
+                        .maximumExpectedValue(MAX_RANGE_BYTES)
+                        .register(registry),
+                Timer.builder("video.stream.ttfb")
+                        .description("Time from the request to the first byte of the video body")
+                        .tag("endpoint", endpoint)
+                        .publishPercentileHistogram()
+                        .minimumExpectedValue(Duration.ofMillis(1))
+                        .maximumExpectedValue(Duration.ofSeconds(10))
+                        .register(registry));
+    }
+
+    //----------------------------------------------------------uploads----------------------------------------------------------
+
+    /**
+     * Records bytes received by an upload.
+     *
+     * @param kind  The kind of upload, e.g. {@code single}, {@code chunk}, {@code session}, {@code chunking} or {@code s3}.
+     * @param bytes The bytes received.
+     * @param nanos Nanoseconds spent receiving them.
+     */
+    public void uploaded(String kind, long bytes, long nanos) {
+        UploadMeters meters = uploadMeters.computeIfAbsent(kind, this::uploadMeters);
+        meters.bytes.increment(bytes);
+        if (nanos > 0) {
+            meters.throughput.record(bytes * 1e9 / nanos);
+        }
+    }
+
+    public void merged(long nanos) {
+        mergeTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    public void s3PartUploaded(long nanos) {
+        s3PartTimer.record(nanos, TimeUnit.NANOSECONDS);
+    }
+
+    private UploadMeters uploadMeters(String kind) {
+        return new UploadMeters(
+                Counter.builder("video.upload.bytes")
+                        .description("Upload bytes received")
+                        .baseUnit("bytes")
+                        .tag("kind", kind)
+                        .register(registry),
+                DistributionSummary.builder("video.upload.throughput")
+                        .description("Rate at which an upload was received")
+                        .baseUnit("bytes.per.second")
+                        .tag("kind", kind)
+                        .publishPercentileHistogram()
+                        .register(registry));
+    }
+
+    private record StreamMeters(Counter bytes, DistributionSummary rangeSize, Timer timeToFirstByte) {
+    }
+
+    private record UploadMeters(Counter bytes, DistributionSummary throughput) {
+    }
+}
@@ -0,0 +1,76 @@
+package com.spring_stream_backend.service;
+
+/**
+ * A token bucket of bytes, refilled at a fixed rate up to its capacity.
+ * Taking more than the bucket holds is allowed and leaves it in debt; the caller waits the debt off,
+ * so a write is never split on a token boundary and the rate still holds over time.
+ * A rate of 0 or less means unlimited.
+ */
+final class TokenBucket {
+
+    private long bytesPerSecond;
+    private long capacity;
+    private double tokens;
+    private long refilledAt;
+
+    /**
+     * @param bytesPerSecond The refill rate, 0 or less for unlimited.
+     * @param capacity       The most tokens held, the burst a client gets after being idle. The bucket starts full.
+     * @param now            The current time in nanoseconds.
+     */
+    TokenBucket(long bytesPerSecond, long capacity, long now) {
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.tokens = capacity;
+        this.refilledAt = now;
+    }
+
+    /**
+     * Takes tokens for bytes about to be written.
+     *
+     * @param bytes The number of bytes.
+     * @param now   The current time in nanoseconds.
+     * @return Nanoseconds to wait before writing them, 0 if the bucket held enough.
+     */
+    synchronized long take(long bytes, long now) {
+        if (bytesPerSecond <= 0) {
+            return 0;
+        }
+        refill(now);
+        tokens -= bytes;
+        return tokens >= 0 ? 0 : (long) Math.ceil(-tokens * 1e9 / bytesPerSecond);
+    }
+
+    /**
+     * Gives back tokens that were taken but not used, up to the capacity.
+     */
+    synchronized void refund(long bytes, long now) {
+        refill(now);
+        tokens = Math.min(capacity, tokens + bytes);
+    }
+
+    /**
+     * Changes the rate and capacity, tokens earned at the old rate are kept up to the new capacity.
+     */
+    synchronized void setLimit(long bytesPerSecond, long capacity, long now) {
+        refill(now);
+        this.bytesPerSecond = bytesPerSecond;
+        this.capacity = capacity;
+        this.tokens = Math.min(tokens, capacity);
+    }
+
+    /**
+     * @return True if the bucket is as full as a new one, so it can be dropped without a client gaining anything.
+     */
+    synchronized boolean isFull(long now) {
+        refill(now);
+        return bytesPerSecond <= 0 || tokens >= capacity;
+    }
+
+    private void refill(long now) {
+        if (bytesPerSecond > 0) {
+            tokens = Math.min(capacity, tokens + (now - refilledAt) * (bytesPerSecond / 1e9));
+        }
+        refilledAt = now;
+    }
+}
@@ -0,0 +1,39 @@
+package com.spring_stream_backend.service;
+
+/**
+ * A resumable upload identified by a session id. The chunk bookkeeping lives in the
+ * {@link ChunkedUpload}, the session adds the id and the time it was last used.
+ */
+public class UploadSession {
+
+    private final String id;
+    private final ChunkedUpload upload;
+    private volatile long lastActivityMillis;
+
+    UploadSession(String id, ChunkedUpload upload, long lastActivityMillis) {
+        this.id = id;
+        this.upload = upload;
+        this.lastActivityMillis = lastActivityMillis;
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public ChunkedUpload getUpload() {
+        return upload;
+    }
+
+    public long getLastActivityMillis() {
+        return lastActivityMillis;
+    }
+
+    void touch(long nowMillis) {
+        lastActivityMillis = nowMillis;
+    }
+
+    public UploadSessionStatus status() {
+        return new UploadSessionStatus(id, upload.getFileName(), upload.getTotalSize(), upload.getChunkSize(),
+                upload.getTotalChunks(), upload.receivedCount(), upload.missingChunks());
+    }
+}
@@ -0,0 +1,174 @@
+package com.spring_stream_backend.service;
+
+import jakarta.annotation.PostConstruct;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Component;
+
+import java.io.IOException;
+import java.nio.file.DirectoryStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Map;
+import java.util.NoSuchElementException;
+import java.util.UUID;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.TimeUnit;
+import java.util.function.LongSupplier;
+
+/**
+ * Keeps track of resumable uploads by session id.
+ * Each session is a preallocated {@code <id>.part} file plus a {@code <id>.session} file holding the expected
+ * chunk layout and the received-chunks bitmap, both under {@code .uploads} of the primary video volume.
+ * Sessions survive a restart, and sessions left idle longer than the configured timeout are discarded.
+ * The file is preallocated when the session is created, so its size is capped before anything is allocated.
+ */
+@Component
+public class UploadSessionRegistry {
+
+    private static final String SESSION_DIRECTORY = ".uploads";
+    private static final String DATA_SUFFIX = ".part";
+    private static final String STATE_SUFFIX = ".session";
+
+    private final Path sessionDirectory;
+    private final long idleTimeoutMillis;
+    private final long maxTotalSize;
+    private final LongSupplier clock;
+    private final Map<String, UploadSession> sessions = new ConcurrentHashMap<>();
+
+    @Autowired
+    public UploadSessionRegistry(@Qualifier(StorageVolumes.VIDEOS) StorageVolumes videoVolumes,
+                                 @Value("${video.upload.session.idle-timeout-minutes:1440}") long idleTimeoutMinutes,
+                                 @Value("${video.upload.session.max-size-bytes:10737418240}") long maxTotalSize) {
+        this(videoVolumes.primary().resolve(SESSION_DIRECTORY), TimeUnit.MINUTES.toMillis(idleTimeoutMinutes), maxTotalSize, System::currentTimeMillis);
+    }
+
+    UploadSessionRegistry(Path sessionDirectory, long idleTimeoutMillis, long maxTotalSize, LongSupplier clock) {
+        this.sessionDirectory = sessionDirectory;
+        this.idleTimeoutMillis = idleTimeoutMillis;
+        this.maxTotalSize = maxTotalSize;
+        this.clock = clock;
+    }
+
+    /**
+     * Reloads the sessions left behind by a previous run, a session's last activity being the last time its state was written.
+     */
+    @PostConstruct
+    public void restore() throws IOException {
+        if (Files.notExists(sessionDirectory)) {
+            return;
+        }
+        try (DirectoryStream<Path> stateFiles = Files.newDirectoryStream(sessionDirectory, "*" + STATE_SUFFIX)) {
+            for (Path stateFile : stateFiles) {
+                String fileName = stateFile.getFileName().toString();
+                String id = fileName.substring(0, fileName.length() - STATE_SUFFIX.length());
+                // Read before restoring, which may truncate a torn record
+                long lastActivity = Files.getLastModifiedTime(stateFile).toMillis();
+                ChunkedUpload upload = ChunkedUpload.restore(sessionDirectory.resolve(id + DATA_SUFFIX), stateFile);
+                if (upload != null) {
+                    sessions.put(id, new UploadSession(id, upload, lastActivity));
+                }
+            }
+        }
+        discardExpired();
+    }
+
+    /**
+     * Starts a new session and preallocates its file.
+     *
+     * @param fileName  The name of the video being uploaded.
+     * @param totalSize The size of the complete file.
+     * @param chunkSize The size of every chunk but the last.
+     * @return The new session.
+     * @throws IllegalArgumentException If the file is larger than the configured maximum or would have too many chunks.
+     */
+    public UploadSession create(String fileName, long totalSize, long chunkSize) throws IOException {
+        if (totalSize > maxTotalSize) {
+            throw new IllegalArgumentException("Total size exceeds the limit of " + maxTotalSize + " bytes.");
+        }
+        ChunkedUpload.chunkCount(totalSize, chunkSize);
+        discardExpired();
+        Files.createDirectories(sessionDirectory);
+
+        String id = UUID.randomUUID().toString();
+        ChunkedUpload upload = ChunkedUpload.open(sessionDirectory.resolve(id + DATA_SUFFIX),
+                sessionDirectory.resolve(id + STATE_SUFFIX), fileName, totalSize, chunkSize);
+        UploadSession session = new UploadSession(id, upload, clock.getAsLong());
+        sessions.put(id, session);
+        return session;
+    }
+
+    /**
+     * Looks up a session and marks it as active.
+     *
+     * @param id The session id.
+     * @return The session.
+     * @throws NoSuchElementException If there is no such session or it has expired.
+     */
+    public UploadSession get(String id) {
+        UploadSession session = sessions.get(id);
+        long now = clock.getAsLong();
+        if (session == null) {
+            throw new NoSuchElementException("No upload session: " + id);
+        }
+        if (isExpired(session, now)) {
+            discard(session);
+            throw new NoSuchElementException("Upload session expired: " + id);
+        }
+        session.touch(now);
+        return session;
+    }
+
+    /**
+     * Drops a session and deletes whatever was uploaded so far.
+     *
+     * @param id The session id.
+     * @throws NoSuchElementException If there is no such session.
+     */
+    public void abort(String id) {
+        UploadSession session = sessions.get(id);
+        if (session == null) {
+            throw new NoSuchElementException("No upload session: " + id);
+        }
+        discard(session);
+    }
+
+    /**
+     * Forgets a session whose file has been moved to its final place.
+     *
+     * @param session The completed session.
+     */
+    public void remove(UploadSession session) throws IOException {
+        sessions.remove(session.getId(), session);
+        Files.deleteIfExists(session.getUpload().getStateFile());
+    }
+
+    int size() {
+        return sessions.size();
+    }
+
+    private boolean isExpired(UploadSession session, long now) {
+        return now - session.getLastActivityMillis() > idleTimeoutMillis;
+    }
+
+    private void discardExpired() {
+        long now = clock.getAsLong();
+        for (UploadSession session : sessions.values()) {
+            if (isExpired(session, now)) {
+                discard(session);
+            }
+        }
+    }
+
+    private void discard(UploadSession session) {
+        if (!sessions.remove(session.getId(), session)) {
+            return;
+        }
+        try {
+            session.getUpload().discard();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to delete upload session files: " + e.getMessage(), e);
+        }
+    }
+}
@@ -0,0 +1,15 @@
+package com.spring_stream_backend.service;
+
+import java.util.List;
+
+/**
+ * What the client needs to resume an upload: the chunk layout and the chunks still to send.
+ */
+public record UploadSessionStatus(String sessionId,
+                                  String fileName,
+                                  long totalSize,
+                                  long chunkSize,
+                                  int totalChunks,
+                                  int receivedChunks,
+                                  List<Integer> missingChunks) {
+}
@@ -0,0 +1,226 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.entity.Video;
+import com.spring_stream_backend.media.Mp4Index;
+import com.spring_stream_backend.repository.VideoRepository;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.http.MediaType;
+import org.springframework.http.MediaTypeFactory;
+import org.springframework.stereotype.Service;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.InvalidPathException;
+import java.nio.file.Path;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.function.LongSupplier;
+import java.util.logging.Level;
+import java.util.logging.Logger;
+
+/**
+ * Metadata of the stored videos (size, MIME type, duration, checksum and location), persisted in the {@code videos}
+ * table and held in a bounded in-process cache, so serving a range needs neither a database query nor a file stat.
+ * <p>
+ * Entries are written when an upload completes and replace the cached entry of a re-uploaded name. Videos stored before
+ * the catalog existed, or bundled with the application, are described from the {@link VideoStore} on their first request.
+ * A name found nowhere is remembered as missing for {@code video.catalog.miss-ttl-millis}, so requests for unknown
+ * videos do not query the database and the storage every time. Registering the name ends this at once.
+ */
+@Service
+public class VideoCatalog {
+
+    private static final Logger LOGGER = Logger.getLogger(VideoCatalog.class.getName());
+
+    private final VideoRepository videoRepository;
+    private final VideoStore videoStore;
+    private final int maxEntries;
+    private final long missTtlMillis;
+    private final LongSupplier clock;
+
+    // A cached video, or a name found nowhere (video null) until missingUntil
+    private record Entry(Video video, long missingUntil) {
+    }
+
+    // access-ordered, so the eldest entry is the least recently used one
+    private final LinkedHashMap<String, Entry> entries = new LinkedHashMap<>(256, 0.75f, true);
+
+    @Autowired
+    public VideoCatalog(VideoRepository videoRepository, VideoStore videoStore,
+                        @Value("${video.catalog.cache-size:10000}") int maxEntries,
+                        @Value("${video.catalog.miss-ttl-millis:5000}") long missTtlMillis) {
+        this(videoRepository, videoStore, maxEntries, missTtlMillis, System::currentTimeMillis);
+    }
+
+    VideoCatalog(VideoRepository videoRepository, VideoStore videoStore, int maxEntries, long missTtlMillis, LongSupplier clock) {
+        if (maxEntries < 1) {
+            throw new IllegalArgumentException("The catalog cache must hold at least one video.");
+        }
+        this.videoRepository = videoRepository;
+        this.videoStore = videoStore;
+        this.maxEntries = maxEntries;
+        this.missTtlMillis = missTtlMillis;
+        this.clock = clock;
+    }
+
+    /**
+     * @param name The name of the video, already checked not to leave the store.
+     * @return The video's catalog entry, or empty if the video is stored nowhere.
+     */
+    public Optional<Video> find(String name) throws IOException {
+        Entry entry = cached(name);
+        if (entry != null) {
+            return Optional.ofNullable(entry.video());
+        }
+        Video video = videoRepository.findById(name).orElse(null);
+        if (video == null) {
+            Optional<StoredVideo> stored = videoStore.find(name);
+            if (stored.isEmpty()) {
+                cache(name, new Entry(null, clock.getAsLong() + missTtlMillis));
+                return Optional.empty();
+            }
+            video = saveDiscovered(describe(stored.get(), stored.get().localFile().orElse(null), null, false));
+        }
+        cache(video);
+        return Optional.of(video);
+    }
+
+    /**
+     * @param video A catalog entry.
+     * @return The video's content, opened without touching the storage.
+     */
+    public StoredVideo open(Video video) {
+        return videoStore.open(video.getName(), video.getStorageLocation(), video.getSize());
+    }
+
+    /**
+     * Records a completed upload, replacing the entry of an earlier upload of the same name.
+     *
+     * @param stored    The video as published to the store.
+     * @param file      The uploaded file on the video volumes, with its keyframe index next to it.
+     * @param checksum  The content hash reported to the uploader, the video's ETag, may be null.
+     * @param immutable True if the name will never hold other content, so responses can be cached without revalidation.
+     * @return The new entry.
+     * @throws org.springframework.dao.DataAccessException If the entry could not be saved, the video's checksum and
+     *                                                     caching would otherwise be lost with the next restart.
+     */
+    public Video register(StoredVideo stored, Path file, String checksum, boolean immutable) throws IOException {
+        Video video;
+        try {
+            video = videoRepository.save(describe(stored, file, checksum, immutable));
+        } catch (RuntimeException e) {
+            // The cached entry may describe an earlier upload of the name
+            forget(stored.getName());
+            throw e;
+        }
+        cache(video);
+        return video;
+    }
+
+    /**
+     * Follows a video file moved to another volume by a rebalance. Entries of other stores are left alone.
+     *
+     * @param name   The name of the video.
+     * @param source Where the file was.
+     * @param target Where the file is now.
+     */
+    public void relocate(String name, Path source, Path target) {
+        forget(name);
+        videoRepository.findById(name)
+                .filter(video -> source.toString().equals(video.getStorageLocation()))
+                .ifPresent(video -> {
+                    video.setStorageLocation(target.toString());
+                    video.setUpdatedAt(clock.getAsLong());
+                    videoRepository.save(video);
+                });
+    }
+
+    private Video describe(StoredVideo stored, Path file, String checksum, boolean immutable) throws IOException {
+        return new Video(stored.getName(), stored.length(), mimeTypeOf(stored.getName(), file), durationMillis(file), checksum,
+                immutable, stored.getLocation(), clock.getAsLong());
+    }
+
+    // A video found in the store but not in the catalog is still served if its entry cannot be written, it is simply
+    // described again after a restart. Registered uploads carry a checksum that cannot be recovered, they are not.
+    private Video saveDiscovered(Video video) {
+        try {
+            return videoRepository.save(video);
+        } catch (RuntimeException e) {
+            LOGGER.log(Level.WARNING, "Could not save catalog entry of " + video.getName() + ": " + e.getMessage());
+            return video;
+        }
+    }
+
+    // Read from the keyframe index written at ingest, MP4s that predate it are indexed on their first seek instead
+    private static Long durationMillis(Path file) {
+        if (file == null) {
+            return null;
+        }
+        Path indexFile = Mp4Index.pathFor(file);
+        if (!Files.exists(indexFile)) {
+            return null;
+        }
+        try {
+            Mp4Index index = Mp4Index.read(indexFile);
+            return Math.round(index.seconds(index.getDuration()) * 1000);
+        } catch (IOException | IllegalArgumentException e) {
+            LOGGER.log(Level.FINE, "No duration for " + file.getFileName() + ": " + e.getMessage());
+            return null;
+        }
+    }
+
+    /**
+     * @param name The name of the video.
+     * @param file The file holding it, may be null for remote stores.
+     * @return The MIME type probed from the file, or else derived from the name.
+     */
+    static String mimeTypeOf(String name, Path file) {
+        try {
+            String probed = Files.probeContentType(file != null ? file : Path.of(name));
+            if (probed != null) {
+                return probed;
+            }
+        } catch (IOException | InvalidPathException e) {
+            // fall back to the extension
+        }
+        return MediaTypeFactory.getMediaType(name).orElse(MediaType.APPLICATION_OCTET_STREAM).toString();
+    }
+
+    private Entry cached(String name) {
+        synchronized (entries) {
+            Entry entry = entries.get(name);
+            if (entry != null && entry.video() == null && clock.getAsLong() >= entry.missingUntil()) {
+                entries.remove(name);
+                return null;
+            }
+            return entry;
+        }
+    }
+
+    private void cache(Video video) {
+        cache(video.getName(), new Entry(video, 0));
+    }
+
+    private void cache(String name, Entry entry) {
+        synchronized (entries) {
+            entries.put(name, entry);
+            if (entries.size() > maxEntries) {
+                entries.remove(entries.keySet().iterator().next());
+            }
+        }
+    }
+
+    private void forget(String name) {
+        synchronized (entries) {
+            entries.remove(name);
+        }
+    }
+
+    int size() {
+        synchronized (entries) {
+            return entries.size();
+        }
+    }
+}
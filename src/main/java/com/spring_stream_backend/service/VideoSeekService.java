@@ -0,0 +1,75 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.entity.Video;
+import com.spring_stream_backend.media.Mp4Index;
+import org.springframework.core.io.Resource;
+import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.MediaType;
+import org.springframework.http.ResponseEntity;
+import org.springframework.stereotype.Service;
+import org.springframework.web.server.ResponseStatusException;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.util.Locale;
+
+/**
+ * Answers time-based seeks: the region served starts at the keyframe at or before the requested time,
+ * found with one binary search over the video's cached keyframe index instead of the player probing with range requests.
+ */
+@Service
+public class VideoSeekService {
+
+    public static final String SEEK_TIME_HEADER = "X-Seek-Time";
+    public static final String SEEK_OFFSET_HEADER = "X-Seek-Offset";
+
+    private final VideoStreamingService videoStreamingService;
+    private final KeyframeIndexCache keyframeIndexCache;
+    private final ChunkSizePolicy chunkSizePolicy;
+
+    public VideoSeekService(VideoStreamingService videoStreamingService, KeyframeIndexCache keyframeIndexCache, ChunkSizePolicy chunkSizePolicy) {
+        this.videoStreamingService = videoStreamingService;
+        this.keyframeIndexCache = keyframeIndexCache;
+        this.chunkSizePolicy = chunkSizePolicy;
+    }
+
+    /**
+     * Streams the region of a video that starts at the keyframe at or before a time.
+     *
+     * @param videoName The name of the video file.
+     * @param seconds   The seek target in seconds from the start.
+     * @param clientKey Token identifying the viewer for chunk sizing, may be null.
+     * @return The region, with the keyframe's time and byte offset in the X-Seek-Time and X-Seek-Offset headers.
+     */
+    public ResponseEntity<ResourceRegion> seek(String videoName, double seconds, String clientKey) {
+        if (!(seconds >= 0) || Double.isInfinite(seconds)) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Seek time must be a non-negative number of seconds.");
+        }
+        Video metadata = videoStreamingService.loadVideo(videoName);
+        StoredVideo video = videoStreamingService.open(metadata);
+        // The keyframe index is parsed from, and kept next to, a local file
+        Path videoFile = video.localFile()
+                .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_IMPLEMENTED, "Seeking needs a locally stored video."));
+
+        try {
+            Mp4Index index = keyframeIndexCache.get(videoFile);
+            int keyframe = index.keyframeAtOrBefore(seconds);
+            long start = index.keyframeOffset(keyframe);
+            long fileLength = video.length();
+            Resource videoResource = video.resource();
+            long chunkSize = chunkSizePolicy.regionSize(clientKey, fileLength - start);
+
+            MediaType mediaType = MediaType.parseMediaType(metadata.getMimeType());
+            return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT)
+                    .contentType(mediaType)
+                    .header(SEEK_TIME_HEADER, String.format(Locale.ROOT, "%.3f", index.seconds(index.keyframeTime(keyframe))))
+                    .header(SEEK_OFFSET_HEADER, String.valueOf(start))
+                    .body(new ResourceRegion(videoResource, start, Math.min(chunkSize, fileLength - start)));
+        } catch (IllegalArgumentException | IllegalStateException e) {
+            throw new ResponseStatusException(HttpStatus.BAD_REQUEST, e.getMessage());
+        } catch (IOException e) {
+            throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading video index.");
+        }
+    }
+}
@@ -0,0 +1,171 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.media.Mp4Segmenter;
+import com.spring_stream_backend.media.SegmentedMovie;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Value;
+import org.springframework.stereotype.Service;
+import org.springframework.util.StringUtils;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.FileSystemException;
+import java.nio.file.Files;
+import java.nio.file.NoSuchFileException;
+import java.nio.file.Path;
+import java.nio.file.Paths;
+import java.nio.file.StandardCopyOption;
+import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
+import java.util.Comparator;
+import java.util.NoSuchElementException;
+import java.util.regex.Pattern;
+import java.util.stream.Stream;
+
+/**
+ * Turns uploaded MP4s into fMP4 segments with HLS and DASH manifests, stored next to the byte chunks of {@link FileChunkService}.
+ * <p>
+ * Every segmenting run is written to a version directory named after the content hash of the upload and the
+ * target duration, so a segment URL always names the same bytes and can be cached forever.
+ * A small {@code current} file names the version the manifests of a video are served from.
+ * Layout: {@code <file.chunk.storage.location>/segments/<video>/<version>/{init.mp4, seg-N.m4s, index.m3u8, manifest.mpd}}.
+ */
+@Service
+public class VideoSegmentService {
+
+    public static final String HLS_PLAYLIST = "index.m3u8";
+    public static final String DASH_MANIFEST = "manifest.mpd";
+    private static final String SEGMENTS_DIRECTORY = "segments";
+    private static final String CURRENT_VERSION = "current";
+    private static final Pattern VIDEO_NAME = Pattern.compile("[A-Za-z0-9][A-Za-z0-9._-]{0,127}");
+    private static final Pattern VERSION = Pattern.compile("[0-9a-f]{16}-\\d+");
+    private static final Pattern SEGMENT_NAME = Pattern.compile("init\\.mp4|seg-\\d{1,9}\\.m4s");
+
+    @Value("${file.chunk.storage.location}")
+    private String chunkStorageLocation;
+
+    @Value("${video.segment.target-duration-seconds:4}")
+    private double targetDurationSeconds;
+
+    @Autowired
+    private StreamingIngest streamingIngest;
+
+    /**
+     * Segments an uploaded MP4 and makes it the current version of the video.
+     *
+     * @param file The MP4, progressive or already fragmented.
+     * @return The name the video is served under.
+     */
+    public String segmentUpload(MultipartFile file) throws IOException {
+        String originalName = file.getOriginalFilename();
+        if (originalName == null || originalName.isEmpty()) {
+            throw new IllegalArgumentException("Invalid file name.");
+        }
+        String videoName = StringUtils.stripFilenameExtension(StringUtils.getFilename(StringUtils.cleanPath(originalName)));
+        Path videoDirectory = videoDirectory(videoName);
+        Files.createDirectories(videoDirectory);
+
+        // The source needs random access (the moov may trail the media data), so it is spooled to disk and hashed on the way
+        Path source = Files.createTempFile(videoDirectory, ".upload-", ".mp4");
+        try {
+            MessageDigest sha256 = Checksums.sha256();
+            try (InputStream input = file.getInputStream();
+                 FileChannel channel = FileChannel.open(source, StandardOpenOption.WRITE)) {
+                streamingIngest.copy(input, channel, Long.MAX_VALUE, sha256);
+            }
+            String version = ContentAddressedStore.key(sha256.digest()).substring(0, 16) + "-" + Math.round(targetDurationSeconds * 1000);
+            publish(source, videoDirectory, version);
+            return videoName;
+        } finally {
+            Files.deleteIfExists(source);
+        }
+    }
+
+    // Segments into a scratch directory that is renamed into place, readers never see a partial version
+    private void publish(Path source, Path videoDirectory, String version) throws IOException {
+        Path versionDirectory = videoDirectory.resolve(version);
+        if (!Files.isDirectory(versionDirectory)) {
+            Path scratch = Files.createTempDirectory(videoDirectory, ".segmenting-");
+            try {
+                SegmentedMovie movie = new Mp4Segmenter(targetDurationSeconds).segment(source, scratch);
+                // Manifests are served from the video directory, so their URIs point into the version directory
+                Files.writeString(scratch.resolve(HLS_PLAYLIST), movie.toHlsPlaylist(version + "/"), StandardCharsets.UTF_8);
+                Files.writeString(scratch.resolve(DASH_MANIFEST), movie.toDashManifest(version + "/"), StandardCharsets.UTF_8);
+                try {
+                    Files.move(scratch, versionDirectory, StandardCopyOption.ATOMIC_MOVE);
+                } catch (FileSystemException e) {
+                    // The same content was segmented concurrently, its version is identical
+                    if (!Files.isDirectory(versionDirectory)) {
+                        throw e;
+                    }
+                }
+            } finally {
+                deleteRecursively(scratch);
+            }
+        }
+        Path current = videoDirectory.resolve(CURRENT_VERSION);
+        Path temp = Files.createTempFile(videoDirectory, ".current-", ".tmp");
+        Files.writeString(temp, version, StandardCharsets.UTF_8);
+        Files.move(temp, current, StandardCopyOption.REPLACE_EXISTING, StandardCopyOption.ATOMIC_MOVE);
+    }
+
+    /**
+     * @param videoName    The video.
+     * @param manifestName {@link #HLS_PLAYLIST} or {@link #DASH_MANIFEST}.
+     * @return The manifest of the current version of the video.
+     */
+    public Path manifest(String videoName, String manifestName) throws IOException {
+        if (!HLS_PLAYLIST.equals(manifestName) && !DASH_MANIFEST.equals(manifestName)) {
+            throw new IllegalArgumentException("Unknown manifest: " + manifestName);
+        }
+        Path videoDirectory = videoDirectory(videoName);
+        String version;
+        try {
+            version = Files.readString(videoDirectory.resolve(CURRENT_VERSION), StandardCharsets.UTF_8).trim();
+        } catch (NoSuchFileException e) {
+            throw new NoSuchElementException("No segmented video named " + videoName + ".");
+        }
+        return existing(videoDirectory.resolve(version).resolve(manifestName));
+    }
+
+    /**
+     * @param videoName   The video.
+     * @param version     The version directory named by the manifest.
+     * @param segmentName {@code init.mp4} or {@code seg-N.m4s}.
+     * @return The segment file, whose content never changes.
+     */
+    public Path segment(String videoName, String version, String segmentName) {
+        if (!VERSION.matcher(version).matches() || !SEGMENT_NAME.matcher(segmentName).matches()) {
+            throw new IllegalArgumentException("Invalid segment: " + version + "/" + segmentName);
+        }
+        return existing(videoDirectory(videoName).resolve(version).resolve(segmentName));
+    }
+
+    private Path videoDirectory(String videoName) {
+        if (videoName == null || !VIDEO_NAME.matcher(videoName).matches()) {
+            throw new IllegalArgumentException("Invalid video name: " + videoName);
+        }
+        return Paths.get(chunkStorageLocation, SEGMENTS_DIRECTORY, videoName);
+    }
+
+    private static Path existing(Path file) {
+        if (!Files.isRegularFile(file)) {
+            throw new NoSuchElementException("Not found: " + file.getFileName());
+        }
+        return file;
+    }
+
+    private static void deleteRecursively(Path directory) throws IOException {
+        if (!Files.exists(directory)) {
+            return;
+        }
+        try (Stream<Path> paths = Files.walk(directory)) {
+            for (Path path : paths.sorted(Comparator.reverseOrder()).toList()) {
+                Files.deleteIfExists(path);
+            }
+        }
+    }
+}
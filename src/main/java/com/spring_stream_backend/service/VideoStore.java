@@ -0,0 +1,61 @@
+package com.spring_stream_backend.service;
+
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Path;
+import java.util.Optional;
+
+/**
+ * Where the streaming endpoints read videos from, picked with {@code video.store}:
+ * {@code mmap} (the default) serves the video volumes through the mapped segment cache, {@code local} reads the same
+ * files with positional reads, and {@code s3} reads the objects of the upload bucket with ranged GETs.
+ */
+public interface VideoStore {
+
+    /**
+     * Looks a video up in the storage, for videos the {@link VideoCatalog} does not know yet.
+     *
+     * @param name The name of the video, already checked not to leave the store.
+     * @return The video, or empty if the store does not have it.
+     */
+    Optional<StoredVideo> find(String name) throws IOException;
+
+    /**
+     * Opens a video described by the catalog, without touching the storage.
+     *
+     * @param name     The name of the video.
+     * @param location Where the store said the video is, see {@link StoredVideo#getLocation()}.
+     * @param length   The length of the video.
+     * @return The video.
+     */
+    StoredVideo open(String name, String location, long length);
+
+    /**
+     * Makes a video that was just written to the video volumes available from this store.
+     *
+     * @param name The name the video is streamed under.
+     * @param file The stored file.
+     * @return The video as it is now served.
+     */
+    StoredVideo publish(String name, Path file) throws IOException;
+
+    /**
+     * @return True if uploads can be {@link #publish(String, InputStream) published} as they arrive, without being
+     * written to the video volumes first.
+     */
+    default boolean acceptsStreams() {
+        return false;
+    }
+
+    /**
+     * Makes a video available from this store as it is read from its uploader.
+     *
+     * @param name    The name the video is streamed under.
+     * @param content The video, read until it ends.
+     * @return The video as it is now served.
+     * @throws UnsupportedOperationException If the store does not {@link #acceptsStreams() accept streams}.
+     */
+    default StoredVideo publish(String name, InputStream content) throws IOException {
+        throw new UnsupportedOperationException("This video store only publishes stored files.");
+    }
+}
@@ -1,69 +1,163 @@
 package com.spring_stream_backend.service;
 
+import com.spring_stream_backend.entity.Video;
 import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.http.HttpServletRequest;
 import jakarta.servlet.http.HttpServletResponse;
-import org.springframework.core.io.ByteArrayResource;
-import org.springframework.core.io.ClassPathResource;
 import org.springframework.core.io.Resource;
-import org.springframework.core.io.ResourceLoader;
 import org.springframework.core.io.support.ResourceRegion;
+import org.springframework.http.CacheControl;
 import org.springframework.http.HttpHeaders;
 import org.springframework.http.HttpRange;
 import org.springframework.http.HttpStatus;
 import org.springframework.http.MediaType;
-import org.springframework.http.MediaTypeFactory;
 import org.springframework.http.ResponseEntity;
 import org.springframework.stereotype.Service;
 import org.springframework.util.MimeTypeUtils;
 import org.springframework.util.StringUtils;
+import org.springframework.web.context.request.ServletWebRequest;
 import org.springframework.web.server.ResponseStatusException;
 
 import java.io.IOException;
-import java.io.RandomAccessFile;
 import java.nio.ByteBuffer;
+import java.nio.channels.Channels;
 import java.nio.channels.FileChannel;
-import java.nio.file.Files;
+import java.nio.channels.WritableByteChannel;
+import java.nio.charset.StandardCharsets;
 import java.nio.file.Path;
 import java.nio.file.StandardOpenOption;
-import java.util.Arrays;
+import java.time.Duration;
+import java.time.ZonedDateTime;
+import java.time.format.DateTimeFormatter;
+import java.time.format.DateTimeParseException;
+import java.util.ArrayList;
+import java.util.Comparator;
 import java.util.List;
-import java.util.stream.Collectors;
+import java.util.Optional;
 
 @Service
 public class VideoStreamingService {
 
-    private static final String VIDEO_DIRECTORY = "videos"; // Video directory
-    private static final int BUFFER_SIZE_IO = 1024 * 8; // 8KB buffer
-    // 1MB chunks
+    // Request attributes understood by Tomcat's NIO/NIO2 connectors for sendfile
+    private static final String SENDFILE_SUPPORT_ATTR = "org.apache.tomcat.sendfile.support";
+    private static final String SENDFILE_FILENAME_ATTR = "org.apache.tomcat.sendfile.filename";
+    private static final String SENDFILE_START_ATTR = "org.apache.tomcat.sendfile.start";
+    private static final String SENDFILE_END_ATTR = "org.apache.tomcat.sendfile.end";
+    private static final int MAX_RANGES = 16; // Parts served per multipart/byteranges response
+    private static final CacheControl IMMUTABLE_CACHE = CacheControl.maxAge(Duration.ofDays(365)).cachePublic().immutable();
+    private static final CacheControl REVALIDATE_CACHE = CacheControl.noCache().cachePublic();
+
+    private final VideoCatalog videoCatalog;
+    private final ChunkSizePolicy chunkSizePolicy;
+
+    public VideoStreamingService(VideoCatalog videoCatalog, ChunkSizePolicy chunkSizePolicy) {
+        this.videoCatalog = videoCatalog;
+        this.chunkSizePolicy = chunkSizePolicy;
+    }
+
+    /**
+     * Finds a video in the {@link VideoCatalog}, which answers from its cache without touching the storage.
+     *
+     * @param fileName The name of the video file.
+     * @return The video's catalog entry, or empty if the name points outside the store or the video is stored nowhere.
+     */
+    public Optional<Video> findVideo(String fileName) throws IOException {
+        if (fileName == null) {
+            return Optional.empty();
+        }
+        String cleanName = StringUtils.cleanPath(fileName);
+        if (cleanName.isEmpty() || cleanName.startsWith("/") || cleanName.equals("..") || cleanName.startsWith("../")) {
+            return Optional.empty();
+        }
+        return videoCatalog.find(cleanName);
+    }
+
+    /**
+     * @param video A catalog entry.
+     * @return The video's content, opened from the entry alone.
+     */
+    public StoredVideo open(Video video) {
+        return videoCatalog.open(video);
+    }
+//--------------------------------------------------------------conditional requests--------------------------------------------------------
 
-    private final ResourceLoader resourceLoader;
+    /**
+     * Writes the validators and Cache-Control of a video and answers If-None-Match and If-Modified-Since.
+     * The ETag is the strong content hash computed at ingest and Last-Modified is when the video was stored.
+     * Content-addressed uploads, whose name never holds other content, are cacheable for a year; other names
+     * must be revalidated, which costs a 304 instead of the range.
+     *
+     * @param fileName The name of the video file.
+     * @param request  The current request.
+     * @param response The response the headers are written to.
+     * @return True if the client's copy is current and the response is complete (304), false to serve the video.
+     */
+    public boolean checkNotModified(String fileName, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<Video> found = findVideo(fileName);
+        if (found.isEmpty()) {
+            return false; // answered with 404 by the endpoint
+        }
+        Video video = found.get();
+        response.setHeader(HttpHeaders.CACHE_CONTROL, (video.isImmutable() ? IMMUTABLE_CACHE : REVALIDATE_CACHE).getHeaderValue());
+        ServletWebRequest webRequest = new ServletWebRequest(request, response);
+        String eTag = eTag(video);
+        return eTag != null ? webRequest.checkNotModified(eTag, video.getUpdatedAt()) : webRequest.checkNotModified(video.getUpdatedAt());
+    }
+
+    /**
+     * Applies If-Range: a range is only served if the client's partial copy is of the current version of the video.
+     *
+     * @param fileName    The name of the video file.
+     * @param rangeHeader The raw Range header, may be null.
+     * @param ifRange     The raw If-Range header, may be null.
+     * @return The Range header to serve, or null if If-Range names another version, which is then served from the start.
+     */
+    public String currentRange(String fileName, String rangeHeader, String ifRange) throws IOException {
+        if (rangeHeader == null || ifRange == null) {
+            return rangeHeader;
+        }
+        Optional<Video> found = findVideo(fileName);
+        if (found.isEmpty()) {
+            return rangeHeader;
+        }
+        Video video = found.get();
+        if (ifRange.startsWith("\"") || ifRange.startsWith("W/")) {
+            // Strong comparison, a weak tag never matches
+            String eTag = eTag(video);
+            return eTag != null && ifRange.equals(eTag) ? rangeHeader : null;
+        }
+        try {
+            long date = ZonedDateTime.parse(ifRange, DateTimeFormatter.RFC_1123_DATE_TIME).toInstant().toEpochMilli();
+            return date / 1000 == video.getUpdatedAt() / 1000 ? rangeHeader : null;
+        } catch (DateTimeParseException e) {
+            return null;
+        }
+    }
 
-    public VideoStreamingService(ResourceLoader resourceLoader) {
-        this.resourceLoader = resourceLoader;
+    // Quoted content hash, null for videos stored without one (they are validated by Last-Modified only)
+    private static String eTag(Video video) {
+        return video.getChecksum() != null ? "\"" + video.getChecksum() + "\"" : null;
     }
 //--------------------------------------------------------------streamVideoIo--------------------------------------------------------
 
     public ResponseEntity<byte[]> streamVideoIo(String fileName, String rangeHeader, HttpServletResponse response) throws IOException {
         // Sanitize and validate the file name
-        fileName = StringUtils.cleanPath(fileName);
-        ClassPathResource videoResource = new ClassPathResource(VIDEO_DIRECTORY + "/" + fileName);
+        Optional<Video> found = findVideo(fileName);
 
-        if (!videoResource.exists() || !videoResource.isFile()) {
-            System.out.println("File not found: " + videoResource.getPath());
+        if (found.isEmpty()) {
             return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
         }
-//try to use nio instead
-        try (RandomAccessFile videoFile = new RandomAccessFile(videoResource.getFile(), "r")) {
-            long fileLength = videoFile.length();
+        Video metadata = found.get();
+        StoredVideo video = open(metadata);
+        // Serve the range through the store, from the mapped segments with the default store
+        try {
+            long fileLength = video.length();
             long[] range = parseRangeHeaderIo(rangeHeader, fileLength);
 
             long start = range[0];
             long end = range[1];
             long chunkSize = end - start + 1;
 
-            byte[] data = new byte[BUFFER_SIZE_IO];
-            videoFile.seek(start);
-
             // Set response headers for streaming
             HttpHeaders headers = new HttpHeaders();
             headers.setContentType(MediaType.valueOf("video/x-matroska"));
@@ -76,29 +170,20 @@ public class VideoStreamingService {
             response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
             response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
 
-            // Stream the video in chunks
+            // Stream the video range
             try (ServletOutputStream out = response.getOutputStream()) {
-                long bytesRead = 0;
-                while (bytesRead < chunkSize) {
-                    int bytesToRead = (int) Math.min(BUFFER_SIZE_IO, chunkSize - bytesRead);
-                    int read = videoFile.read(data, 0, bytesToRead);
-                    if (read == -1) break;
-                    out.write(data, 0, read);
-                    bytesRead += read;
-                }
+                video.transferTo(start, chunkSize, Channels.newChannel(out));
             }
 
             return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).build();
 
         } catch (IOException e) {
-            System.out.println("Error reading video file: " + videoResource.getPath());
             throw new RuntimeException("Error reading video file", e);
         }
     }
 
-    private long[] parseRangeHeaderIo(String rangeHeader, long fileLength) {
+    long[] parseRangeHeaderIo(String rangeHeader, long fileLength) {
         if (rangeHeader == null || !rangeHeader.startsWith("bytes=")) {
-            System.out.println("Range header is null or invalid. Returning full file range.");
             return new long[]{0, fileLength - 1}; // Default range: full file
         }
 
@@ -113,123 +198,247 @@ public class VideoStreamingService {
 
             return new long[]{start, Math.min(end, fileLength - 1)};
         } catch (Exception e) {
-            System.out.println("Invalid Range Header: " + rangeHeader + ". Returning full file range.");
             return new long[]{0, fileLength - 1}; // Default to full range in case of error
         }
     }
 //    ---------------------------------------------------------streamVideoIo end ------------------------------------------------
 
-    //------------------------------------------------NIO----------------------------------------------------------------
+    //------------------------------------------------zero copy----------------------------------------------------------------
+
+    /**
+     * Streams the requested range without copying the bytes through the JVM heap.
+     * When the connector supports sendfile the range is handed over to Tomcat, which writes it from the
+     * page cache to the socket after the handler returns. Only that path avoids the heap: otherwise the range is
+     * pushed with {@link FileChannel#transferTo} into the servlet output stream, which copies it through heap buffers.
+     * Videos that are not in a local file (S3) are copied through the store.
+     *
+     * @param fileName    The name of the video file.
+     * @param rangeHeader The raw Range header, may be null.
+     * @param request     The current request, used to hand the range to sendfile.
+     * @param response    The response the range is written to.
+     */
+    public void streamVideoZeroCopy(String fileName, String rangeHeader, HttpServletRequest request, HttpServletResponse response) throws IOException {
+        Optional<Video> found = findVideo(fileName);
+        if (found.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
 
+        Video metadata = found.get();
+        StoredVideo video = open(metadata);
+        long fileLength = video.length();
+        long[] range = parseRangeHeaderIo(rangeHeader, fileLength);
+        long start = range[0];
+        long end = range[1];
+
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.CONTENT_TYPE, metadata.getMimeType());
+        response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileLength);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+        response.setContentLengthLong(end - start + 1);
+
+        Optional<Path> videoFile = video.localFile();
+        if (videoFile.isEmpty()) {
+            video.transferTo(start, end - start + 1, Channels.newChannel(response.getOutputStream()));
+            return;
+        }
 
-    public ResponseEntity<Resource> streamVideoNio(String fileName, String rangeHeader) {
-        // Load the video file from the classpath
-        ClassPathResource videoResource = new ClassPathResource(VIDEO_DIRECTORY + "/" + fileName);
-        if (!videoResource.exists()) {
-            System.err.println("File not found: " + videoResource.getPath());
-            return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+        if (Boolean.TRUE.equals(request.getAttribute(SENDFILE_SUPPORT_ATTR))) {
+            // Tomcat picks these up once the handler returns; the end offset is exclusive
+            request.setAttribute(SENDFILE_FILENAME_ATTR, videoFile.get().toAbsolutePath().toString());
+            request.setAttribute(SENDFILE_START_ATTR, start);
+            request.setAttribute(SENDFILE_END_ATTR, end + 1);
+            return;
         }
 
-        long fileSize;
+        try (FileChannel fileChannel = FileChannel.open(videoFile.get(), StandardOpenOption.READ)) {
+            // Not zero-copy: the target is no socket channel, so transferTo copies through the channel adapter's heap buffer
+            WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+            long position = start;
+            while (position <= end) {
+                long transferred = fileChannel.transferTo(position, end - position + 1, out);
+                if (transferred <= 0) break;
+                position += transferred;
+            }
+        }
+    }
+//    ---------------------------------------------------------zero copy end ------------------------------------------------
+
+    //------------------------------------------------NIO----------------------------------------------------------------
+
+
+    public ResponseEntity<Resource> streamVideoNio(String fileName, String rangeHeader, String clientKey) {
+        // Look the video up in the video store
+        Video metadata;
         try {
-            fileSize = videoResource.contentLength();
-            System.out.println("File Size: " + fileSize);
+            Optional<Video> found = findVideo(fileName);
+            if (found.isEmpty()) {
+                return ResponseEntity.status(HttpStatus.NOT_FOUND).body(null);
+            }
+            metadata = found.get();
         } catch (IOException e) {
-            // Log the error with proper message
-            System.err.println("Error getting file size: " + e.getMessage());
+            // Answered as a server error, the status is counted by the HTTP server metrics
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
+        StoredVideo video = open(metadata);
+        long fileSize = video.length();
 
         // Parse Range header if present, or set the entire file as default range
         List<HttpRange> ranges = (rangeHeader != null) ? parseHttpRanges(rangeHeader) : null;
         HttpRange range = (ranges != null && !ranges.isEmpty()) ? ranges.get(0) : HttpRange.createByteRange(0, fileSize - 1);
-        System.out.println("Requested Range: " + range);
 
         long start = range.getRangeStart(fileSize);
         long end = range.getRangeEnd(fileSize);
-        long chunkSize = Math.min(end - start + 1, 1024 * 1024); // Read in 1 MB chunks
-        System.out.println("Start Byte: " + start + " End Byte: " + end + " Chunk Size: " + chunkSize);
-
-        try (FileChannel fileChannel = FileChannel.open(videoResource.getFile().toPath(), StandardOpenOption.READ)) {
-            // Ensure the fileChannel is positioned at the start byte
-            ByteBuffer buffer = ByteBuffer.allocate((int) chunkSize);
-            fileChannel.position(start);
-            int bytesRead = fileChannel.read(buffer);
-            if (bytesRead == -1) {
-                System.err.println("End of file reached unexpectedly");
-                return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
-            }
-            buffer.flip();
+        // HttpRange clamps the end to the file but not the start, a range starting past it is not satisfiable
+        if (start >= fileSize || start > end) {
+            return ResponseEntity.status(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE)
+                    .header(HttpHeaders.CONTENT_RANGE, "bytes */" + fileSize)
+                    .body(null);
+        }
+        long chunkSize = chunkSizePolicy.regionSize(clientKey, end - start + 1); // Region size picked per client
 
-            byte[] data = new byte[buffer.remaining()];
-            buffer.get(data);
-            System.out.println("Date" + data);
-            // Return the video chunk as a Resource
-            Resource resource = new ByteArrayResource(data);
-            System.out.println("resource" + resource);
+        try {
+            // The store hands out the range itself, mapped slices with the default store, instead of a heap buffer
+            Resource resource = video.region(start, chunkSize);
 
             HttpHeaders headers = new HttpHeaders();
-            String mimeType = getMimeType(videoResource.getFile().toPath());
-            System.out.println("MIME Type: " + mimeType);
+            String mimeType = metadata.getMimeType();
             headers.set(HttpHeaders.CONTENT_TYPE, mimeType); // Set dynamic MIME type
-            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + end + "/" + fileSize);
+            headers.set(HttpHeaders.CONTENT_RANGE, "bytes " + start + "-" + (start + chunkSize - 1) + "/" + fileSize);
             headers.set(HttpHeaders.ACCEPT_RANGES, "bytes");
             headers.set(HttpHeaders.CONTENT_LENGTH, String.valueOf(chunkSize)); // Set Content-Length
-            Resource resource1 = resource;
-            System.out.println("resource1 :" + resource1);
             return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).headers(headers).body(resource);
         } catch (IOException e) {
-            // Log the error with a message
-            System.err.println("Error reading video chunk: " + e.getMessage());
+            // Answered as a server error, the status is counted by the HTTP server metrics
             return ResponseEntity.status(HttpStatus.INTERNAL_SERVER_ERROR).body(null);
         }
     }
 
-    // Utility method to parse the Range header
+    // Utility method to parse the Range header, including open-ended, suffix and comma separated ranges
     private List<HttpRange> parseHttpRanges(String rangeHeader) {
-        return Arrays.stream(rangeHeader.split(",")).map(this::parseHttpRange).collect(Collectors.toList());
+        return HttpRange.parseRanges(rangeHeader);
     }
 
-    // Convert a single range string to HttpRange
-    private HttpRange parseHttpRange(String range) {
-        if (range.startsWith("bytes=")) {
-            String[] parts = range.substring(6).split("-");
-            long start = Long.parseLong(parts[0]);
-            long end = (parts.length > 1) ? Long.parseLong(parts[1]) : start;
-            return HttpRange.createByteRange(start, end);
+//    -----------------------------------------------------nio end----------------------------------------------------------------------
+//    -----------------------------------------------------multi range----------------------------------------------------------------------
+
+    /**
+     * Checks whether the Range header asks for more than one range.
+     *
+     * @param rangeHeader The raw Range header, may be null.
+     * @return true if the request should be answered as multipart/byteranges.
+     */
+    public boolean isMultiRange(String rangeHeader) {
+        if (rangeHeader == null || rangeHeader.indexOf(',') < 0) {
+            return false;
+        }
+        try {
+            return HttpRange.parseRanges(rangeHeader).size() > 1;
+        } catch (IllegalArgumentException e) {
+            return false;
         }
-        throw new IllegalArgumentException("Invalid range format");
     }
 
-    // Utility method to get MIME type based on file extension
-    private String getMimeType(Path filePath) {
-        String mimeType = null;
-        try {
-            mimeType = Files.probeContentType(filePath); // Using java.nio.file.Files to get MIME type
-            if (mimeType == null) {
-                // If no MIME type is found, you can manually set based on file extension or use a library
-                String fileName = filePath.getFileName().toString().toLowerCase();
-                if (fileName.endsWith(".mp4")) {
-                    mimeType = MimeTypeUtils.APPLICATION_OCTET_STREAM_VALUE; // video/mp4
-                } else if (fileName.endsWith(".mkv")) {
-                    mimeType = "video/x-matroska"; // video/mkv
-                } else if (fileName.endsWith(".avi")) {
-                    mimeType = "video/x-msvideo"; // video/avi
-                } else if (fileName.endsWith(".mov")) {
-                    mimeType = "video/quicktime"; // video/quicktime
-                } else if (fileName.endsWith(".webm")) {
-                    mimeType = "video/webm"; // video/webm
-                } else {
-                    mimeType = "application/octet-stream"; // Default if unknown format
+    /**
+     * Streams several ranges of the video in one multipart/byteranges response.
+     * Overlapping and adjacent ranges are coalesced first, and the parts are copied through the video store.
+     *
+     * @param fileName    The name of the video file.
+     * @param rangeHeader The raw Range header.
+     * @param response    The response the parts are written to.
+     */
+    public void streamMultiRange(String fileName, String rangeHeader, HttpServletResponse response) throws IOException {
+        Optional<Video> found = findVideo(fileName);
+        if (found.isEmpty()) {
+            response.sendError(HttpServletResponse.SC_NOT_FOUND);
+            return;
+        }
+
+        Video metadata = found.get();
+        StoredVideo video = open(metadata);
+        long fileLength = video.length();
+        List<long[]> ranges = coalesceRanges(parseHttpRanges(rangeHeader), fileLength);
+        if (ranges.isEmpty()) {
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes */" + fileLength);
+            response.sendError(HttpServletResponse.SC_REQUESTED_RANGE_NOT_SATISFIABLE);
+            return;
+        }
+
+        String mimeType = metadata.getMimeType();
+        response.setStatus(HttpServletResponse.SC_PARTIAL_CONTENT);
+        response.setHeader(HttpHeaders.ACCEPT_RANGES, "bytes");
+
+        WritableByteChannel out = Channels.newChannel(response.getOutputStream());
+
+        // Everything coalesced into one range, answer it like a plain range request
+        if (ranges.size() == 1) {
+            long[] range = ranges.get(0);
+            response.setHeader(HttpHeaders.CONTENT_TYPE, mimeType);
+            response.setHeader(HttpHeaders.CONTENT_RANGE, "bytes " + range[0] + "-" + range[1] + "/" + fileLength);
+            response.setContentLengthLong(range[1] - range[0] + 1);
+            video.transferTo(range[0], range[1] - range[0] + 1, out);
+            return;
+        }
+
+        String boundary = MimeTypeUtils.generateMultipartBoundaryString();
+        List<byte[]> partHeaders = new ArrayList<>(ranges.size());
+        long contentLength = 0;
+        for (long[] range : ranges) {
+            byte[] partHeader = ("\r\n--" + boundary + "\r\n"
+                    + HttpHeaders.CONTENT_TYPE + ": " + mimeType + "\r\n"
+                    + HttpHeaders.CONTENT_RANGE + ": bytes " + range[0] + "-" + range[1] + "/" + fileLength + "\r\n\r\n")
+                    .getBytes(StandardCharsets.US_ASCII);
+            partHeaders.add(partHeader);
+            contentLength += partHeader.length + range[1] - range[0] + 1;
+        }
+        byte[] closingBoundary = ("\r\n--" + boundary + "--\r\n").getBytes(StandardCharsets.US_ASCII);
+        contentLength += closingBoundary.length;
+
+        response.setHeader(HttpHeaders.CONTENT_TYPE, "multipart/byteranges; boundary=" + boundary);
+        response.setContentLengthLong(contentLength);
+
+        for (int i = 0; i < ranges.size(); i++) {
+            writeFully(out, ByteBuffer.wrap(partHeaders.get(i)));
+            video.transferTo(ranges.get(i)[0], ranges.get(i)[1] - ranges.get(i)[0] + 1, out);
+        }
+        writeFully(out, ByteBuffer.wrap(closingBoundary));
+    }
+
+    // Resolves the ranges against the file length, drops unsatisfiable ones and merges overlapping or adjacent ones
+    private List<long[]> coalesceRanges(List<HttpRange> httpRanges, long fileLength) {
+        List<long[]> ranges = new ArrayList<>();
+        for (HttpRange httpRange : httpRanges.subList(0, Math.min(httpRanges.size(), MAX_RANGES))) {
+            try {
+                long start = httpRange.getRangeStart(fileLength);
+                long end = httpRange.getRangeEnd(fileLength);
+                // HttpRange does not reject a start past the end of the file
+                if (start < fileLength && start <= end) {
+                    ranges.add(new long[]{start, end});
                 }
+            } catch (IllegalArgumentException e) {
+                // unsatisfiable range, skip it
+            }
+        }
+        ranges.sort(Comparator.comparingLong(range -> range[0]));
+
+        List<long[]> coalesced = new ArrayList<>();
+        for (long[] range : ranges) {
+            long[] last = coalesced.isEmpty() ? null : coalesced.get(coalesced.size() - 1);
+            if (last != null && range[0] <= last[1] + 1) {
+                last[1] = Math.max(last[1], range[1]);
+            } else {
+                coalesced.add(range);
             }
-        } catch (IOException e) {
-            // Handle MIME type detection failure gracefully
-            mimeType = "application/octet-stream";
         }
-        return mimeType;
+        return coalesced;
     }
-//    -----------------------------------------------------nio end----------------------------------------------------------------------
+
+    private void writeFully(WritableByteChannel out, ByteBuffer buffer) throws IOException {
+        while (buffer.hasRemaining()) {
+            out.write(buffer);
+        }
+    }
+//    -----------------------------------------------------multi range end----------------------------------------------------------------------
 //    ------------------------------Resource Region --------best to use in current time ------------------------------------
 
     /**
@@ -237,56 +446,37 @@ public class VideoStreamingService {
      *
      * @param videoName The name of the video file.
      * @param headers   HTTP headers containing range requests.
+     * @param clientKey Token identifying the viewer for chunk sizing, may be null.
      * @return ResponseEntity with the requested video region.
      */
-    public ResponseEntity<ResourceRegion> streamVideo(String videoName, HttpHeaders headers) {
+    public ResponseEntity<ResourceRegion> streamVideo(String videoName, HttpHeaders headers, String clientKey) {
         // Validate the video name
         if (videoName == null || videoName.trim().isEmpty()) {
             throw new ResponseStatusException(HttpStatus.BAD_REQUEST, "Video name cannot be empty.");
         }
 
         // Load the video resource
-        Resource videoResource = loadVideoResource(videoName);
-        System.out.println("video resource :" + videoResource);
+        Video metadata = loadVideo(videoName);
+        Resource videoResource = open(metadata).resource();
         // Determine content length
-        long contentLength = getResourceContentLength(videoResource);
-        System.out.println("content length :" + contentLength);
+        long contentLength = metadata.getSize();
         // Calculate the region to stream
-        ResourceRegion region = calculateResourceRegion(videoResource, headers, contentLength);
-        System.out.println("region :" + region);
+        ResourceRegion region = calculateResourceRegion(videoResource, headers, contentLength, clientKey);
         // Build and return the response
-        MediaType mediaType = MediaTypeFactory.getMediaType(videoResource).orElse(MediaType.APPLICATION_OCTET_STREAM);
-        System.out.println("media type :" + mediaType);
-        System.out.println("Returning video file");
+        MediaType mediaType = MediaType.parseMediaType(metadata.getMimeType());
         return ResponseEntity.status(HttpStatus.PARTIAL_CONTENT).contentType(mediaType).body(region);
     }
 
     /**
-     * Loads a video resource by name.
+     * Loads a video's catalog entry by name.
      *
      * @param videoName The name of the video file.
-     * @return The video resource.
-     */
-    private Resource loadVideoResource(String videoName) {
-        String videoPath = "classpath:videos/" + videoName; // Videos are placed in `resources/videos`
-        System.out.println("video path :" + videoPath);
-        Resource resource = resourceLoader.getResource(videoPath);
-        System.out.println("resource :" + resource);
-        if (!resource.exists() || !resource.isReadable()) {
-            throw new ResponseStatusException(HttpStatus.NOT_FOUND, "Video not found: " + videoName);
-        }
-        return resource;
-    }
-
-    /**
-     * Retrieves the content length of the resource.
-     *
-     * @param resource The video resource.
-     * @return The content length.
+     * @return The catalog entry.
      */
-    private long getResourceContentLength(Resource resource) {
+    Video loadVideo(String videoName) {
         try {
-            return resource.contentLength();
+            return findVideo(videoName)
+                    .orElseThrow(() -> new ResponseStatusException(HttpStatus.NOT_FOUND, "Video not found: " + videoName));
         } catch (IOException e) {
             throw new ResponseStatusException(HttpStatus.INTERNAL_SERVER_ERROR, "Error reading video content.");
         }
@@ -298,22 +488,23 @@ public class VideoStreamingService {
      * @param resource      The video resource.
      * @param headers       The HTTP headers containing range requests.
      * @param contentLength The total length of the resource.
+     * @param clientKey     Token identifying the viewer for chunk sizing, may be null.
      * @return The ResourceRegion to be streamed.
      */
-    private ResourceRegion calculateResourceRegion(Resource resource, HttpHeaders headers, long contentLength) {
+    private ResourceRegion calculateResourceRegion(Resource resource, HttpHeaders headers, long contentLength, String clientKey) {
         List<HttpRange> ranges = headers.getRange();
 
         if (ranges.isEmpty()) {
-            // Default to the first 1MB if no range is specified
-            long defaultChunkSize = Math.min(1024 * 1024, contentLength);
+            // Default to the first region if no range is specified
+            long defaultChunkSize = chunkSizePolicy.regionSize(clientKey, contentLength);
             return new ResourceRegion(resource, 0, defaultChunkSize);
         }
 
-        // Handle the first range only (most clients use one range)
+        // Single range only, multi-range requests are answered by streamMultiRange
         HttpRange range = ranges.get(0);
         long start = range.getRangeStart(contentLength);
         long end = range.getRangeEnd(contentLength);
-        long chunkSize = Math.min(1024 * 1024, end - start + 1);
+        long chunkSize = chunkSizePolicy.regionSize(clientKey, end - start + 1);
 
         return new ResourceRegion(resource, start, chunkSize);
     }
@@ -1,6 +1,8 @@
 package com.spring_stream_backend.service;
 
-import org.springframework.beans.factory.annotation.Value;
+import com.spring_stream_backend.media.Mp4Index;
+import org.springframework.beans.factory.annotation.Autowired;
+import org.springframework.beans.factory.annotation.Qualifier;
 import org.springframework.stereotype.Service;
 import org.springframework.web.multipart.MultipartFile;
 
@@ -10,38 +12,67 @@ import java.io.InputStream;
 import java.nio.channels.FileChannel;
 import java.nio.file.Files;
 import java.nio.file.Path;
-import java.nio.file.Paths;
-import java.nio.file.StandardCopyOption;
 import java.nio.file.StandardOpenOption;
+import java.security.MessageDigest;
 import java.util.Arrays;
 import java.util.Comparator;
 import java.util.List;
 import java.util.UUID;
+import java.util.zip.CRC32C;
 
 @Service
 public class VideoUploadService {
 
-    @Value("${video.storage.location}")
-    private String videoStorageLocation;
+    // Videos are spread over the configured volumes by name, see StorageVolumes
+    @Autowired
+    @Qualifier(StorageVolumes.VIDEOS)
+    private StorageVolumes videoVolumes;
 
     private static final List<String> ALLOWED_CONTENT_TYPES = List.of("video/mp4", "video/mkv", "video/x-matroska", "application/octet-stream");
     private static final List<String> ALLOWED_EXTENSIONS = List.of(".mp4", ".mkv", ".avi", ".mov", ".flv", ".wmv", ".webm", "");
     private static final long MAX_FILE_SIZE = 50 * 1024 * 1024; // 50 MB
     private static final long MAX_CHUNK_SIZE = 20 * 1024 * 1024; // 20 MB per chunk
+    // Files still being written next to a video
+    private static final List<String> IN_PROGRESS_SUFFIXES = List.of(".merging", ".faststart", ".link", ".tmp");
 
+    @Autowired
+    private UploadSessionRegistry uploadSessionRegistry;
 
-    public String saveVideoToLocal(MultipartFile file) {
+    @Autowired
+    private StreamingIngest streamingIngest;
+
+    @Autowired
+    private MediaIngest mediaIngest;
+
+    // Completed uploads are published to the store the streaming endpoints read from, and recorded in the catalog
+    @Autowired
+    private VideoStore videoStore;
+
+    @Autowired
+    private VideoCatalog videoCatalog;
+
+    // Seeks into a replaced or moved video must not use the index cached for the old file
+    @Autowired
+    private KeyframeIndexCache keyframeIndexCache;
+
+    @Autowired
+    private StreamingMetrics streamingMetrics;
+
+
+    /**
+     * Saves an upload under a unique name, computing its SHA-256 while it is copied.
+     * The content goes into the content-addressed store and the unique name is a link to it,
+     * so a video uploaded before is not stored a second time.
+     * MP4s are stored faststart (moov first) with a keyframe index next to them.
+     *
+     * @param file           The uploaded video.
+     * @param expectedSha256 The base64 SHA-256 the client computed, may be null.
+     * @return A status message with the SHA-256 of the stored file.
+     */
+    public String saveVideoToLocal(MultipartFile file, String expectedSha256) {
         validateFile(file);
 
         try {
-            // Construct the path relative to the project root
-            Path videoDirPath = Paths.get(videoStorageLocation);
-            System.out.println("video dir path :" + videoDirPath);
-            // Ensure the directory exists
-            if (!Files.exists(videoDirPath)) {
-                Files.createDirectories(videoDirPath);
-            }
-
             // Generate a unique filename
             String originalFileName = file.getOriginalFilename();
             String fileExtension = "";
@@ -50,21 +81,73 @@ public class VideoUploadService {
             }
             String uniqueFileName = UUID.randomUUID().toString() + fileExtension;
 
-            // Create the file path with unique filename
-            Path videoFilePath = videoDirPath.resolve(uniqueFileName);
-            System.out.println("video file path :" + videoFilePath);
-            // Copy the file
+            // A unique name is never uploaded to again
             try (InputStream input = file.getInputStream()) {
-                Files.copy(input, videoFilePath, StandardCopyOption.REPLACE_EXISTING);
+                return storeOnVolumes(input, uniqueFileName, expectedSha256, true);
             }
-
-            return "File uploaded successfully to: " + videoFilePath.toAbsolutePath();
-
         } catch (IOException e) {
             throw new RuntimeException("Failed to save file: " + e.getMessage(), e);
         }
     }
 
+    /**
+     * Saves an upload under its own name through the configured {@link VideoStore}, replacing an earlier upload of
+     * that name. A store that takes streams (S3) receives the bytes as they arrive, without them touching the local
+     * disk. Otherwise the video is stored on the video volumes like a simple upload.
+     *
+     * @param fileName The name the video is streamed under.
+     * @param input    The video, read until it ends.
+     * @return A status message with where the video is stored.
+     */
+    public String saveVideoToStore(String fileName, InputStream input) throws IOException {
+        validateFileName(fileName);
+        if (!videoStore.acceptsStreams()) {
+            return storeOnVolumes(input, fileName, null, false);
+        }
+        StoredVideo stored = videoStore.publish(fileName, input);
+        videoCatalog.register(stored, null, null, false);
+        return "File uploaded successfully to: " + stored.getLocation();
+    }
+
+    // Copies the upload through a pooled buffer, digesting it on the way. The content goes into the content-addressed
+    // store and the name is a link to it, then the video is published and recorded in the catalog.
+    private String storeOnVolumes(InputStream input, String fileName, String expectedSha256, boolean immutable) throws IOException {
+        // On the volume that owns the name
+        Path videoFilePath = videoVolumes.resolve(fileName);
+        ContentAddressedStore contentStore = contentStore(videoFilePath);
+        Path tempFile = contentStore.newTempFile();
+        MessageDigest sha256 = Checksums.sha256();
+        long started = System.nanoTime();
+        try (FileChannel output = FileChannel.open(tempFile, StandardOpenOption.WRITE)) {
+            long size = streamingIngest.copy(input, output, Long.MAX_VALUE, sha256);
+            streamingMetrics.uploaded("single", size, System.nanoTime() - started);
+        } catch (IOException | RuntimeException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+        byte[] digest = sha256.digest();
+        try {
+            Checksums.verify("File", expectedSha256, Checksums.encode(digest));
+        } catch (IllegalArgumentException e) {
+            Files.deleteIfExists(tempFile);
+            throw e;
+        }
+
+        // Keyed by the bytes as uploaded, a duplicate is dropped without being rewritten first
+        String key = ContentAddressedStore.key(digest);
+        if (!contentStore.contains(key)) {
+            mediaIngest.faststart(tempFile);
+        }
+        boolean stored = contentStore.put(tempFile, key);
+        contentStore.link(key, videoFilePath);
+        mediaIngest.index(videoFilePath);
+        keyframeIndexCache.evict(videoFilePath);
+        videoCatalog.register(videoStore.publish(fileName, videoFilePath), videoFilePath, Checksums.encode(digest), immutable);
+
+        return "File uploaded successfully to: " + videoFilePath.toAbsolutePath() + " (sha256 " + Checksums.encode(digest)
+                + (stored ? "" : ", duplicate of an earlier upload") + ")";
+    }
+
     private void validateFile(MultipartFile file) {
         if (file.isEmpty()) {
             throw new IllegalArgumentException("File is empty.");
@@ -80,12 +163,12 @@ public class VideoUploadService {
     }
 
     //    ------------------------------------------------ chunk upload------------------------------------------------------
-    public String saveVideoChunk(MultipartFile file, int chunkIndex, int totalChunks, String fileName) {
+    public String saveVideoChunk(MultipartFile file, int chunkIndex, int totalChunks, String fileName, String expectedCrc32c) {
         validateFile(file, chunkIndex);
 
         try {
-            // Create the directory if it does not exist
-            Path directoryPath = Paths.get(videoStorageLocation, fileName);
+            // Create the directory if it does not exist, next to where the chunks are merged
+            Path directoryPath = videoVolumes.volumeFor(fileName + ".mp4").resolve(fileName);
             if (Files.notExists(directoryPath)) {
                 Files.createDirectories(directoryPath);
             }
@@ -95,7 +178,20 @@ public class VideoUploadService {
 
             // Define chunk file path
             Path chunkFilePath = directoryPath.resolve("chunk-" + chunkIndex);
-            Files.write(chunkFilePath, file.getBytes(), StandardOpenOption.CREATE);
+            CRC32C crc32c = new CRC32C();
+            long started = System.nanoTime();
+            try (InputStream input = file.getInputStream();
+                 FileChannel output = FileChannel.open(chunkFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                streamingIngest.writeAt(input, output, 0, file.getSize(), crc32c, null);
+            }
+            streamingMetrics.uploaded("chunk", file.getSize(), System.nanoTime() - started);
+            try {
+                Checksums.verify("Chunk " + chunkIndex, expectedCrc32c, Checksums.encodeCrc32c((int) crc32c.getValue()));
+            } catch (IllegalArgumentException e) {
+                // Leave no corrupt chunk behind for the merge to pick up
+                Files.deleteIfExists(chunkFilePath);
+                throw e;
+            }
 
             return "Chunk " + chunkIndex + " of " + totalChunks + " uploaded successfully.";
         } catch (IOException e) {
@@ -105,47 +201,217 @@ public class VideoUploadService {
 //------------------------------------------merge chunks -----------------------------------------------------------
 
     public String mergeChunks(String fileName) {
-        Path directoryPath = Paths.get(videoStorageLocation, fileName);
+        Path volume = videoVolumes.volumeFor(fileName + ".mp4");
+        Path directoryPath = volume.resolve(fileName);
         if (Files.notExists(directoryPath) || !Files.isDirectory(directoryPath)) {
             throw new RuntimeException("Directory not found for file: " + fileName);
         }
 
-        Path mergedFilePath = Paths.get(videoStorageLocation, fileName + ".mp4");
-        try (FileChannel outputChannel = FileChannel.open(mergedFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
-            // List all chunks in the directory and sort them by chunk index
-            File[] chunks = directoryPath.toFile().listFiles();
-            if (chunks == null || chunks.length == 0) {
-                throw new RuntimeException("No chunks found for file: " + fileName);
-            }
-
-            Arrays.sort(chunks, Comparator.comparingInt(chunk -> Integer.parseInt(chunk.getName().split("-")[1])));
+        Path mergedFilePath = volume.resolve(fileName + ".mp4");
+        // Merge next to the target, then store it like a single upload; an existing name is relinked, never written through
+        Path mergingFilePath = volume.resolve(fileName + ".mp4.merging");
+        // Digested as merged, like a single upload it identifies the bytes as uploaded
+        MessageDigest sha256 = Checksums.sha256();
+        long started = System.nanoTime();
+        try {
+            try (FileChannel outputChannel = FileChannel.open(mergingFilePath, StandardOpenOption.CREATE, StandardOpenOption.WRITE, StandardOpenOption.TRUNCATE_EXISTING)) {
+                // List all chunks in the directory and sort them by chunk index
+                File[] chunks = directoryPath.toFile().listFiles();
+                if (chunks == null || chunks.length == 0) {
+                    throw new RuntimeException("No chunks found for file: " + fileName);
+                }
 
-            // Write each chunk to the merged file
-            for (File chunk : chunks) {
-                Path chunkPath = chunk.toPath();
-                try (FileChannel inputChannel = FileChannel.open(chunkPath, StandardOpenOption.READ)) {
-                    long chunkSize = inputChannel.size();
-                    long position = 0;
+                Arrays.sort(chunks, Comparator.comparingInt(chunk -> Integer.parseInt(chunk.getName().split("-")[1])));
 
-                    while (position < chunkSize) {
-                        position += inputChannel.transferTo(position, chunkSize - position, outputChannel);
+                // Write each chunk to the merged file
+                for (File chunk : chunks) {
+                    Path chunkPath = chunk.toPath();
+                    try (InputStream input = Files.newInputStream(chunkPath)) {
+                        streamingIngest.copy(input, outputChannel, Long.MAX_VALUE, sha256);
                     }
-                }
 
-                // Delete the chunk after merging
-                Files.delete(chunk.toPath());
+                    // Delete the chunk after merging
+                    Files.delete(chunk.toPath());
+                }
             }
+            byte[] digest = sha256.digest();
+            ContentAddressedStore contentStore = contentStore(mergedFilePath);
+            String key = ContentAddressedStore.key(digest);
+            if (!contentStore.contains(key)) {
+                mediaIngest.faststart(mergingFilePath);
+            }
+            boolean stored = contentStore.put(mergingFilePath, key);
+            contentStore.link(key, mergedFilePath);
+            mediaIngest.index(mergedFilePath);
+            keyframeIndexCache.evict(mergedFilePath);
+            videoCatalog.register(videoStore.publish(fileName + ".mp4", mergedFilePath), mergedFilePath, Checksums.encode(digest), false);
 
             // Delete the directory after merging
             Files.delete(directoryPath);
+            streamingMetrics.merged(System.nanoTime() - started);
 
-            return "File upload completed successfully: " + mergedFilePath.toAbsolutePath();
+            return "File upload completed successfully: " + mergedFilePath.toAbsolutePath()
+                    + (stored ? "" : " (duplicate of an earlier upload)");
         } catch (IOException e) {
             throw new RuntimeException("Failed to merge chunks: " + e.getMessage(), e);
         }
     }
 
 
+//------------------------------------------resumable upload sessions -----------------------------------------------
+
+    /**
+     * Starts a resumable upload. The file is preallocated to its final size and chunks are then
+     * sent against the returned session id, in parallel and in any order.
+     *
+     * @param fileName  The name of the video being uploaded.
+     * @param totalSize The size of the complete file.
+     * @param chunkSize The size of every chunk but the last.
+     * @return The session status, listing every chunk as missing.
+     */
+    public UploadSessionStatus createUploadSession(String fileName, long totalSize, long chunkSize) {
+        validateFileName(fileName);
+        if (chunkSize > MAX_CHUNK_SIZE) {
+            throw new IllegalArgumentException("Chunk size exceeds the limit of 20 MB.");
+        }
+
+        try {
+            return uploadSessionRegistry.create(fileName, totalSize, chunkSize).status();
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to create upload session: " + e.getMessage(), e);
+        }
+    }
+
+    /**
+     * Writes a chunk straight to its offset ({@code chunkIndex * chunkSize}) in the session's preallocated file.
+     * A chunk that was already received is simply written again, so retrying is always safe.
+     *
+     * The chunk's CRC-32C and SHA-256 are computed as it is written; a chunk that does not match the client's
+     * CRC-32C stays missing, so it is simply sent again.
+     *
+     * @param sessionId      The upload session id.
+     * @param file           The chunk body.
+     * @param chunkIndex     The zero-based chunk index.
+     * @param expectedCrc32c The base64 CRC-32C the client computed for the chunk, may be null.
+     * @return A status message.
+     */
+    public String saveSessionChunk(String sessionId, MultipartFile file, int chunkIndex, String expectedCrc32c) {
+        validateFile(file, chunkIndex);
+        ChunkedUpload upload = uploadSessionRegistry.get(sessionId).getUpload();
+        upload.checkChunk(chunkIndex, file.getSize());
+
+        try {
+            long offset = upload.offsetOf(chunkIndex);
+            long length = upload.lengthOf(chunkIndex);
+            CRC32C crc32c = new CRC32C();
+            MessageDigest sha256 = Checksums.sha256();
+            long started = System.nanoTime();
+            try (FileChannel channel = FileChannel.open(upload.getDataFile(), StandardOpenOption.WRITE);
+                 InputStream input = file.getInputStream()) {
+                streamingIngest.writeAt(input, channel, offset, length, crc32c, sha256);
+                streamingMetrics.uploaded("session", length, System.nanoTime() - started);
+                Checksums.verify("Chunk " + chunkIndex, expectedCrc32c, Checksums.encodeCrc32c((int) crc32c.getValue()));
+                // The chunk only counts as received once its bytes are on disk
+                channel.force(false);
+            }
+            upload.markReceived(chunkIndex, (int) crc32c.getValue(), sha256.digest());
+
+            return "Chunk " + chunkIndex + " of " + upload.getTotalChunks() + " uploaded successfully, "
+                    + (upload.getTotalChunks() - upload.receivedCount()) + " remaining.";
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to save chunk: " + e.getMessage(), e);
+        }
+    }
+
+    public UploadSessionStatus getUploadSessionStatus(String sessionId) {
+        return uploadSessionRegistry.get(sessionId).status();
+    }
+
+    public String abortUploadSession(String sessionId) {
+        uploadSessionRegistry.abort(sessionId);
+        return "Upload session " + sessionId + " aborted.";
+    }
+
+    /**
+     * Completes a resumable upload. The chunks already sit at their final offsets,
+     * so this is a move into the content-addressed store instead of a second copy of the whole file.
+     * The whole-file checksums are derived from the chunk checksums, the file is not read again.
+     *
+     * @param sessionId      The upload session id.
+     * @param expectedCrc32c The base64 CRC-32C of the whole file, may be null.
+     * @param expectedSha256 The base64 SHA-256 of the chunk SHA-256s in chunk order followed by {@code -<chunk count>}, may be null.
+     * @return A status message.
+     */
+    public String completeUploadSession(String sessionId, String expectedCrc32c, String expectedSha256) {
+        UploadSession session = uploadSessionRegistry.get(sessionId);
+        ChunkedUpload upload = session.getUpload();
+        if (!upload.isComplete()) {
+            throw new IllegalArgumentException("Upload is missing chunks: " + upload.missingChunks());
+        }
+        String crc32c = Checksums.encodeCrc32c(upload.fileCrc32c());
+        String sha256 = Checksums.encode(upload.compositeSha256()) + "-" + upload.getTotalChunks();
+        Checksums.verify("File", expectedCrc32c, crc32c);
+        Checksums.verify("File", expectedSha256, sha256);
+
+        // Chunk digests in order identify the content as well as a digest of the whole file would, without reading it again.
+        // The key depends on the chunk size though: it only matches sessions of the same file split the same way,
+        // never a single or chunk-upload of it, which are keyed by the SHA-256 of the whole file
+        String key = ContentAddressedStore.key(upload.compositeSha256()) + "-" + upload.getTotalChunks();
+        Path videoFilePath = videoVolumes.resolve(upload.getFileName() + ".mp4");
+        try {
+            // Sessions live on the primary volume, the data file is copied once if the video belongs on another one
+            ContentAddressedStore contentStore = contentStore(videoFilePath);
+            if (!contentStore.contains(key)) {
+                mediaIngest.faststart(upload.getDataFile());
+            }
+            boolean stored = contentStore.put(upload.getDataFile(), key);
+            contentStore.link(key, videoFilePath);
+            mediaIngest.index(videoFilePath);
+            keyframeIndexCache.evict(videoFilePath);
+            videoCatalog.register(videoStore.publish(upload.getFileName() + ".mp4", videoFilePath), videoFilePath, sha256, false);
+            uploadSessionRegistry.remove(session);
+            return "File upload completed successfully: " + videoFilePath.toAbsolutePath()
+                    + " (crc32c " + crc32c + ", sha256 " + sha256 + (stored ? "" : ", duplicate of an earlier upload") + ")";
+        } catch (IOException e) {
+            throw new RuntimeException("Failed to complete upload: " + e.getMessage(), e);
+        }
+    }
+
+    // One store per volume, names can only be hard links to blobs on their own file system
+    private ContentAddressedStore contentStore(Path videoFilePath) {
+        return new ContentAddressedStore(videoFilePath.getParent().resolve(ContentAddressedStore.DIRECTORY));
+    }
+
+    /**
+     * Moves videos and their keyframe indexes to the volume that owns them, after volumes were added to
+     * {@code video.storage.locations}. Until then they are still found on their old volume.
+     * A moved video is a copy of its content-store blob on its new volume, it no longer shares storage with duplicates.
+     * The catalog follows every moved video, and the cached keyframe index of its old path is dropped.
+     *
+     * @return The number of files moved.
+     */
+    public int rebalance() throws IOException {
+        return videoVolumes.rebalance("", 1, file -> !IN_PROGRESS_SUFFIXES.contains(extensionOf(file.getFileName().toString())),
+                (source, target) -> {
+                    String name = target.getFileName().toString();
+                    if (!name.endsWith(Mp4Index.EXTENSION)) {
+                        keyframeIndexCache.evict(source);
+                        videoCatalog.relocate(name, source, target);
+                    }
+                });
+    }
+
+    private static String extensionOf(String fileName) {
+        int dot = fileName.lastIndexOf('.');
+        return dot < 0 ? "" : fileName.substring(dot);
+    }
+
+    private void validateFileName(String fileName) {
+        if (fileName == null || fileName.isBlank() || fileName.contains("..") || fileName.contains("/") || fileName.contains("\\")) {
+            throw new IllegalArgumentException("Invalid file name: " + fileName);
+        }
+    }
+
     private void validateFile(MultipartFile file, int chunkIndex) {
         if (file.isEmpty()) {
             throw new IllegalArgumentException("Chunk " + chunkIndex + " is empty.");
@@ -0,0 +1,66 @@
+package com.spring_stream_backend.config;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpHeaders;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ConcurrencyLimitInterceptorTest {
+
+    private final ConcurrencyLimitInterceptor interceptor = new ConcurrencyLimitInterceptor("stream", 1);
+
+    @Test
+    void preHandle_LimitReached_RejectsWith503() throws Exception {
+        MockHttpServletResponse rejected = new MockHttpServletResponse();
+
+        assertTrue(interceptor.preHandle(new MockHttpServletRequest(), new MockHttpServletResponse(), null));
+        assertFalse(interceptor.preHandle(new MockHttpServletRequest(), rejected, null));
+
+        assertEquals(503, rejected.getStatus());
+        assertEquals("1", rejected.getHeader(HttpHeaders.RETRY_AFTER));
+    }
+
+    @Test
+    void afterCompletion_SyncRequest_ReleasesPermit() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        interceptor.preHandle(request, response, null);
+        assertEquals(0, interceptor.availablePermits());
+
+        interceptor.afterCompletion(request, response, null, null);
+        interceptor.afterCompletion(request, response, null, null); // released once only
+
+        assertEquals(1, interceptor.availablePermits());
+    }
+
+    @Test
+    void afterCompletion_AsyncRequest_HoldsPermitUntilComplete() throws Exception {
+        MockHttpServletRequest request = new MockHttpServletRequest();
+        MockHttpServletResponse response = new MockHttpServletResponse();
+        request.setAsyncSupported(true);
+        interceptor.preHandle(request, response, null);
+        request.startAsync();
+
+        interceptor.afterCompletion(request, response, null, null);
+        assertEquals(0, interceptor.availablePermits()); // still streaming
+
+        request.getAsyncContext().complete();
+        assertEquals(1, interceptor.availablePermits());
+    }
+
+    @Test
+    void preHandle_RejectedRequest_ReleasesNothing() throws Exception {
+        MockHttpServletRequest admitted = new MockHttpServletRequest();
+        MockHttpServletRequest rejected = new MockHttpServletRequest();
+        interceptor.preHandle(admitted, new MockHttpServletResponse(), null);
+        interceptor.preHandle(rejected, new MockHttpServletResponse(), null);
+
+        interceptor.afterCompletion(rejected, new MockHttpServletResponse(), null, null);
+
+        assertEquals(0, interceptor.availablePermits());
+    }
+}
@@ -0,0 +1,94 @@
+package com.spring_stream_backend.config;
+
+import com.spring_stream_backend.service.StreamingMetrics;
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import jakarta.servlet.http.HttpServlet;
+import jakarta.servlet.http.HttpServletRequest;
+import jakarta.servlet.http.HttpServletResponse;
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockFilterChain;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+import org.springframework.web.servlet.HandlerMapping;
+
+import java.io.IOException;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class StreamMetricsFilterTest {
+
+    private static final String ENDPOINT = "/api/stream/videos/{videoName}";
+
+    private final SimpleMeterRegistry registry = new SimpleMeterRegistry();
+    private final StreamingMetrics streamingMetrics = new StreamingMetrics(registry);
+    private final StreamMetricsFilter filter = new StreamMetricsFilter(streamingMetrics);
+
+    @Test
+    void countsTheBytesWrittenPerEndpoint() throws Exception {
+        MockHttpServletResponse response = new MockHttpServletResponse();
+
+        filter.doFilter(request(), response, new MockFilterChain(writing(new byte[1000])));
+        filter.doFilter(request(), new MockHttpServletResponse(), new MockFilterChain(writing(new byte[24])));
+
+        assertArrayEquals(new byte[1000], response.getContentAsByteArray()); // passed through unchanged
+        assertEquals(1024, registry.get("video.stream.bytes").tag("endpoint", ENDPOINT).counter().count());
+        assertEquals(2, registry.get("video.stream.range.size").tag("endpoint", ENDPOINT).summary().count());
+        assertEquals(2, registry.get("video.stream.ttfb").tag("endpoint", ENDPOINT).timer().count());
+        assertEquals(0, streamingMetrics.activeStreams());
+    }
+
+    @Test
+    void countsRangesHandedToSendfile() throws Exception {
+        HttpServlet sendfile = new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                request.setAttribute("org.apache.tomcat.sendfile.start", 100L);
+                request.setAttribute("org.apache.tomcat.sendfile.end", 612L);
+            }
+        };
+
+        filter.doFilter(request(), new MockHttpServletResponse(), new MockFilterChain(sendfile));
+
+        assertEquals(512, registry.get("video.stream.bytes").tag("endpoint", ENDPOINT).counter().count());
+        assertEquals(1, registry.get("video.stream.ttfb").tag("endpoint", ENDPOINT).timer().count());
+    }
+
+    @Test
+    void recordsAsyncStreamsOnceTheyComplete() throws Exception {
+        MockHttpServletRequest request = request();
+        request.setAsyncSupported(true);
+        HttpServletResponse[] streaming = new HttpServletResponse[1];
+        HttpServlet async = new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) {
+                request.startAsync();
+                streaming[0] = response; // written to after the handler returned
+            }
+        };
+
+        filter.doFilter(request, new MockHttpServletResponse(), new MockFilterChain(async));
+        assertEquals(1, streamingMetrics.activeStreams());
+
+        streaming[0].getOutputStream().write(new byte[64]);
+        request.getAsyncContext().complete();
+
+        assertEquals(0, streamingMetrics.activeStreams());
+        assertEquals(1, registry.get("video.stream.range.size").tag("endpoint", ENDPOINT).summary().count());
+    }
+
+    private static MockHttpServletRequest request() {
+        MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/stream/videos/sample.mp4");
+        request.setAttribute(HandlerMapping.BEST_MATCHING_PATTERN_ATTRIBUTE, ENDPOINT);
+        return request;
+    }
+
+    private static HttpServlet writing(byte[] body) {
+        return new HttpServlet() {
+            @Override
+            protected void doGet(HttpServletRequest request, HttpServletResponse response) throws IOException {
+                response.getOutputStream().write(body, 0, body.length);
+            }
+        };
+    }
+}
@@ -0,0 +1,34 @@
+package com.spring_stream_backend.controller;
+
+import com.fasterxml.jackson.databind.ObjectMapper;
+import com.spring_stream_backend.service.BandwidthScheduler;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class BandwidthControllerTest {
+
+    private final BandwidthScheduler bandwidthScheduler = new BandwidthScheduler(1000, 4000, 100, 800);
+    private final BandwidthController bandwidthController = new BandwidthController(bandwidthScheduler);
+
+    @Test
+    void setLimits_PartialBody_KeepsTheOtherLimits() throws Exception {
+        BandwidthController.LimitsUpdate update = new ObjectMapper()
+                .readValue("{\"globalBytesPerSecond\":5000}", BandwidthController.LimitsUpdate.class);
+
+        ResponseEntity<?> response = bandwidthController.setLimits(update);
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(new BandwidthScheduler.Limits(5000, 4000, 100, 800), bandwidthScheduler.getLimits());
+    }
+
+    @Test
+    void setLimits_NegativeValue_ReturnsBadRequestAndKeepsLimits() {
+        ResponseEntity<?> response = bandwidthController.setLimits(new BandwidthController.LimitsUpdate(null, null, -1L, null));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals(new BandwidthScheduler.Limits(1000, 4000, 100, 800), bandwidthScheduler.getLimits());
+    }
+}
@@ -1,6 +1,9 @@
 package com.spring_stream_backend.controller;
 
 import com.spring_stream_backend.service.FileChunkService;
+import com.spring_stream_backend.service.IngestJob;
+import com.spring_stream_backend.service.IngestJobStatus;
+import com.spring_stream_backend.service.VideoSegmentService;
 import org.junit.jupiter.api.Test;
 import org.mockito.InjectMocks;
 import org.mockito.Mock;
@@ -11,15 +14,16 @@ import org.springframework.web.multipart.MultipartFile;
 import java.io.IOException;
 import java.util.ArrayList;
 import java.util.List;
+import java.util.NoSuchElementException;
 import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
 import java.util.concurrent.TimeUnit;
 
 import static org.junit.jupiter.api.Assertions.assertEquals;
 import static org.mockito.ArgumentMatchers.any;
-import static org.mockito.Mockito.doNothing;
 import static org.mockito.Mockito.doThrow;
 import static org.mockito.Mockito.mock;
 import static org.mockito.Mockito.times;
@@ -27,23 +31,27 @@ import static org.mockito.Mockito.verify;
 import static org.mockito.Mockito.when;
 
 class FileChunkControllerTest {
+    private static final IngestJobStatus JOB = new IngestJobStatus("job-1", "video.mp4", IngestJob.State.RUNNING, 100, 0, null);
+
     @Mock
     private FileChunkService fileChunkService = mock(FileChunkService.class);
+    @Mock
+    private VideoSegmentService videoSegmentService = mock(VideoSegmentService.class);
     @InjectMocks
-    private FileChunkController fileChunkController = new FileChunkController(fileChunkService);
+    private FileChunkController fileChunkController = new FileChunkController(fileChunkService, videoSegmentService);
 
     @Test
-    void uploadAndChunkFile_SuccessfulProcessing_ReturnsOkResponse() throws Exception {
+    void uploadAndChunkFile_SuccessfulProcessing_ReturnsAcceptedResponse() throws Exception {
         // Arrange
         MultipartFile mockFile = mock(MultipartFile.class);
-        doNothing().when(fileChunkService).processAndChunkFile(mockFile);
+        when(fileChunkService.processAndChunkFile(mockFile)).thenReturn(JOB);
 
         // Act
         ResponseEntity<String> response = fileChunkController.uploadAndChunkFile(mockFile);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("File successfully split into chunks and saved.", response.getBody());
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("File received, chunking as job: job-1", response.getBody());
         verify(fileChunkService, times(1)).processAndChunkFile(mockFile);
     }
 
@@ -96,19 +104,19 @@ class FileChunkControllerTest {
     }
 
     @Test
-    void uploadAndChunkFile_LargeFileWithinSizeLimit_ReturnsOkResponse() throws Exception {
+    void uploadAndChunkFile_LargeFileWithinSizeLimit_ReturnsAcceptedResponse() throws Exception {
         // Arrange
         MultipartFile mockFile = mock(MultipartFile.class);
         long fileSizeInBytes = 100 * 1024 * 1024; // 100 MB
         when(mockFile.getSize()).thenReturn(fileSizeInBytes);
-        doNothing().when(fileChunkService).processAndChunkFile(mockFile);
+        when(fileChunkService.processAndChunkFile(mockFile)).thenReturn(JOB);
 
         // Act
         ResponseEntity<String> response = fileChunkController.uploadAndChunkFile(mockFile);
 
         // Assert
-        assertEquals(HttpStatus.OK, response.getStatusCode());
-        assertEquals("File successfully split into chunks and saved.", response.getBody());
+        assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+        assertEquals("File received, chunking as job: job-1", response.getBody());
         verify(fileChunkService, times(1)).processAndChunkFile(mockFile);
     }
 
@@ -147,6 +155,7 @@ class FileChunkControllerTest {
         CountDownLatch latch = new CountDownLatch(concurrentUploads);
         ExecutorService executorService = Executors.newFixedThreadPool(concurrentUploads);
         List<Future<ResponseEntity<String>>> futures = new ArrayList<>();
+        when(fileChunkService.processAndChunkFile(any(MultipartFile.class))).thenReturn(JOB);
 
         // Act
         for (int i = 0; i < concurrentUploads; i++) {
@@ -163,8 +172,8 @@ class FileChunkControllerTest {
         // Assert
         for (Future<ResponseEntity<String>> future : futures) {
             ResponseEntity<String> response = future.get();
-            assertEquals(HttpStatus.OK, response.getStatusCode());
-            assertEquals("File successfully split into chunks and saved.", response.getBody());
+            assertEquals(HttpStatus.ACCEPTED, response.getStatusCode());
+            assertEquals("File received, chunking as job: job-1", response.getBody());
         }
 
         verify(fileChunkService, times(concurrentUploads)).processAndChunkFile(any(MultipartFile.class));
@@ -185,4 +194,85 @@ class FileChunkControllerTest {
         assertEquals("Error while processing file: " + errorMessage, response.getBody());
         verify(fileChunkService, times(1)).processAndChunkFile(mockFile);
     }
-}
\ No newline at end of file
+
+    @Test
+    void uploadAndChunkFile_SuccessfulProcessing_PointsToJobStatus() throws Exception {
+        // Arrange
+        MultipartFile mockFile = mock(MultipartFile.class);
+        when(fileChunkService.processAndChunkFile(mockFile)).thenReturn(JOB);
+
+        // Act
+        ResponseEntity<String> response = fileChunkController.uploadAndChunkFile(mockFile);
+
+        // Assert
+        assertEquals("/api/file/chunk/jobs/job-1", response.getHeaders().getLocation().toString());
+    }
+
+    @Test
+    void uploadAndChunkFile_TooManyJobs_ReturnsServiceUnavailableResponse() throws Exception {
+        // Arrange
+        MultipartFile mockFile = mock(MultipartFile.class);
+        doThrow(new RejectedExecutionException("Too many files being chunked, try again later.")).when(fileChunkService).processAndChunkFile(mockFile);
+
+        // Act
+        ResponseEntity<String> response = fileChunkController.uploadAndChunkFile(mockFile);
+
+        // Assert
+        assertEquals(HttpStatus.SERVICE_UNAVAILABLE, response.getStatusCode());
+        assertEquals("Too many files being chunked, try again later.", response.getBody());
+    }
+
+    @Test
+    void getChunkJob_KnownJob_ReturnsStatus() {
+        // Arrange
+        when(fileChunkService.getJobStatus("job-1")).thenReturn(JOB);
+
+        // Act
+        ResponseEntity<?> response = fileChunkController.getChunkJob("job-1");
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals(JOB, response.getBody());
+    }
+
+    @Test
+    void getChunkJob_UnknownJob_ReturnsNotFoundResponse() {
+        // Arrange
+        when(fileChunkService.getJobStatus("missing")).thenThrow(new NoSuchElementException("No chunking job: missing"));
+
+        // Act
+        ResponseEntity<?> response = fileChunkController.getChunkJob("missing");
+
+        // Assert
+        assertEquals(HttpStatus.NOT_FOUND, response.getStatusCode());
+        assertEquals("No chunking job: missing", response.getBody());
+    }
+
+    @Test
+    void uploadAndSegmentFile_SuccessfulProcessing_ReturnsVideoName() throws Exception {
+        // Arrange
+        MultipartFile mockFile = mock(MultipartFile.class);
+        when(videoSegmentService.segmentUpload(mockFile)).thenReturn("sample");
+
+        // Act
+        ResponseEntity<String> response = fileChunkController.uploadAndSegmentFile(mockFile);
+
+        // Assert
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("File successfully segmented for streaming as: sample", response.getBody());
+    }
+
+    @Test
+    void uploadAndSegmentFile_NotAnMp4_ReturnsBadRequestResponse() throws Exception {
+        // Arrange
+        MultipartFile mockFile = mock(MultipartFile.class);
+        doThrow(new IllegalArgumentException("Not an MP4 file: no moov box.")).when(videoSegmentService).segmentUpload(mockFile);
+
+        // Act
+        ResponseEntity<String> response = fileChunkController.uploadAndSegmentFile(mockFile);
+
+        // Assert
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        assertEquals("Not an MP4 file: no moov box.", response.getBody());
+    }
+}
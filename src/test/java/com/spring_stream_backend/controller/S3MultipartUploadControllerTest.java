@@ -0,0 +1,92 @@
+package com.spring_stream_backend.controller;
+
+import com.spring_stream_backend.service.VideoUploadService;
+import org.junit.jupiter.api.Test;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockMultipartFile;
+
+import java.io.IOException;
+import java.io.InputStream;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyString;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3MultipartUploadControllerTest {
+
+    private final VideoUploadService videoUploadService = mock(VideoUploadService.class);
+    private final S3MultipartUploadController s3MultipartUploadController = new S3MultipartUploadController(videoUploadService);
+
+    private static MockHttpServletRequest rawBody(byte[] body) {
+        MockHttpServletRequest request = new MockHttpServletRequest("POST", "/api/upload/video-stream");
+        request.setContentType("application/octet-stream");
+        request.setContent(body);
+        return request;
+    }
+
+    @Test
+    void uploadVideoStream_RawBody_StreamedToTheVideoStore() throws Exception {
+        byte[] body = {1, 2, 3, 4, 5};
+        byte[][] received = new byte[1][];
+        when(videoUploadService.saveVideoToStore(eq("movie.mp4"), any(InputStream.class))).thenAnswer(invocation -> {
+            received[0] = invocation.<InputStream>getArgument(1).readAllBytes(); // read while the request is open
+            return "File uploaded successfully to: s3://bucket/movie.mp4";
+        });
+
+        ResponseEntity<String> response = s3MultipartUploadController.uploadVideoStream("movie.mp4", rawBody(body));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        assertEquals("File uploaded successfully to: s3://bucket/movie.mp4", response.getBody());
+        assertArrayEquals(body, received[0]);
+    }
+
+    @Test
+    void uploadVideo_Multipart_StoredUnderItsOriginalName() throws Exception {
+        when(videoUploadService.saveVideoToStore(eq("movie.mp4"), any(InputStream.class))).thenReturn("stored");
+
+        ResponseEntity<String> response = s3MultipartUploadController.uploadVideo(
+                new MockMultipartFile("file", "movie.mp4", "video/mp4", new byte[]{1, 2, 3}));
+
+        assertEquals(HttpStatus.OK, response.getStatusCode());
+        verify(videoUploadService).saveVideoToStore(eq("movie.mp4"), any(InputStream.class));
+    }
+
+    @Test
+    void uploadVideoStream_StoreFailure_ReturnsServerError() throws Exception {
+        when(videoUploadService.saveVideoToStore(anyString(), any(InputStream.class)))
+                .thenThrow(new IOException("Could not upload movie.mp4 to S3: Access Denied"));
+
+        ResponseEntity<String> response = s3MultipartUploadController.uploadVideoStream("movie.mp4", rawBody(new byte[]{1}));
+
+        assertEquals(HttpStatus.INTERNAL_SERVER_ERROR, response.getStatusCode());
+        assertTrue(response.getBody().startsWith("Failed to upload video: Could not upload movie.mp4 to S3: Access Denied"));
+    }
+
+    @Test
+    void uploadVideo_InvalidName_ReturnsBadRequest() throws Exception {
+        when(videoUploadService.saveVideoToStore(any(), any(InputStream.class)))
+                .thenThrow(new IllegalArgumentException("Invalid file name: null"));
+
+        ResponseEntity<String> response = s3MultipartUploadController.uploadVideo(
+                new MockMultipartFile("file", null, "video/mp4", new byte[]{1}));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+    }
+
+    @Test
+    void uploadVideoStream_PathInFileName_ReturnsBadRequest() throws Exception {
+        ResponseEntity<String> response = s3MultipartUploadController.uploadVideoStream("../movie.mp4", rawBody(new byte[]{1}));
+
+        assertEquals(HttpStatus.BAD_REQUEST, response.getStatusCode());
+        verify(videoUploadService, never()).saveVideoToStore(anyString(), any(InputStream.class));
+    }
+}
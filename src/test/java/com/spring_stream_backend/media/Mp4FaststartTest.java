@@ -0,0 +1,108 @@
+package com.spring_stream_backend.media;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Mp4FaststartTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path sample;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sample = Path.of(getClass().getResource("/videos/sample.mp4").toURI());
+    }
+
+    // Rebuilds the sample with its moov after the media data, the layout many encoders write
+    private Path moovLast() throws IOException {
+        byte[] original = Files.readAllBytes(sample);
+        List<Mp4Box> boxes = Mp4Box.parseAll(ByteBuffer.wrap(original));
+        Mp4Box moov = boxes.stream().filter(box -> box.getType().equals("moov")).findFirst().orElseThrow();
+        long shift = -moov.size();
+        for (Mp4Box trak : moov.findAll("trak")) {
+            ByteBuffer stco = trak.find("mdia", "minf", "stbl", "stco").payload();
+            for (int i = 0; i < stco.getInt(4); i++) {
+                stco.putInt(8 + 4 * i, (int) (stco.getInt(8 + 4 * i) + shift));
+            }
+        }
+        ByteBuffer out = ByteBuffer.allocate(original.length);
+        boxes.stream().filter(box -> !box.getType().equals("moov")).forEach(box -> box.writeTo(out));
+        moov.writeTo(out);
+        return Files.write(tempDir.resolve("moov-last.mp4"), out.array());
+    }
+
+    private static List<String> topLevelTypes(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return Mp4Box.scan(channel, 0, channel.size()).stream().map(Mp4Box.Header::type).toList();
+        }
+    }
+
+    private static List<Mp4Track> tracks(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            return Mp4Track.parseAll(Mp4Box.readMoov(channel, Mp4Box.scan(channel, 0, channel.size())));
+        }
+    }
+
+    private static byte[] sampleBytes(Path file, Mp4Track track, int sample) throws IOException {
+        try (FileChannel channel = FileChannel.open(file)) {
+            ByteBuffer bytes = ByteBuffer.allocate(track.size(sample));
+            channel.read(bytes, track.offset(sample));
+            return bytes.array();
+        }
+    }
+
+    @Test
+    void rewrite_MoovAfterMediaData_MovesMoovFirstAndKeepsEverySample() throws Exception {
+        Path source = moovLast();
+        assertEquals(List.of("ftyp", "free", "mdat", "moov"), topLevelTypes(source));
+        Path target = tempDir.resolve("faststart.mp4");
+
+        assertTrue(Mp4Faststart.rewrite(source, target));
+
+        assertEquals(List.of("ftyp", "free", "moov", "mdat"), topLevelTypes(target));
+        assertEquals(Files.size(source), Files.size(target));
+        List<Mp4Track> before = tracks(source);
+        List<Mp4Track> after = tracks(target);
+        for (int t = 0; t < before.size(); t++) {
+            for (int sample = 0; sample < before.get(t).sampleCount(); sample += 7) {
+                assertArrayEquals(sampleBytes(source, before.get(t), sample), sampleBytes(target, after.get(t), sample));
+            }
+        }
+    }
+
+    @Test
+    void rewrite_AlreadyFaststart_LeavesFileAlone() throws Exception {
+        Path target = tempDir.resolve("faststart.mp4");
+
+        assertFalse(Mp4Faststart.rewrite(sample, target));
+
+        assertFalse(Files.exists(target));
+    }
+
+    @Test
+    void isMp4_OtherContainer_ReturnsFalse() throws Exception {
+        Path matroska = Files.write(tempDir.resolve("video.mkv"), new byte[]{0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, 0, 0, 0, 0});
+
+        try (FileChannel channel = FileChannel.open(matroska)) {
+            assertFalse(Mp4Faststart.isMp4(channel));
+        }
+        try (FileChannel channel = FileChannel.open(sample)) {
+            assertTrue(Mp4Faststart.isMp4(channel));
+        }
+    }
+}
@@ -0,0 +1,69 @@
+package com.spring_stream_backend.media;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class Mp4IndexTest {
+
+    @TempDir
+    Path tempDir;
+
+    @Test
+    void build_IndexesEveryKeyframeOfTheVideoTrack() throws Exception {
+        Path sample = Path.of(getClass().getResource("/videos/sample.mp4").toURI());
+        Mp4Track video;
+        try (FileChannel channel = FileChannel.open(sample)) {
+            video = Mp4Track.reference(Mp4Track.parseAll(Mp4Box.readMoov(channel, Mp4Box.scan(channel, 0, channel.size()))));
+        }
+
+        Mp4Index index = Mp4Index.build(sample);
+
+        assertEquals(video.getTimescale(), index.getTimescale());
+        assertEquals(video.endTime(), index.getDuration());
+        assertEquals(video.sampleCount(), index.getSampleCount());
+        int keyframe = 0;
+        for (int i = 0; i < video.sampleCount(); i++) {
+            if (video.isSync(i)) {
+                assertEquals(video.decodeTime(i), index.keyframeTime(keyframe));
+                assertEquals(video.offset(i), index.keyframeOffset(keyframe));
+                keyframe++;
+            }
+        }
+        assertEquals(keyframe, index.keyframeCount());
+    }
+
+    @Test
+    void writeAndRead_RoundTrips() throws Exception {
+        Path sample = Path.of(getClass().getResource("/videos/sample.mp4").toURI());
+        Mp4Index index = Mp4Index.build(sample);
+        Path file = Mp4Index.pathFor(tempDir.resolve("video.mp4"));
+
+        index.write(file);
+        Mp4Index read = Mp4Index.read(file);
+
+        assertEquals(tempDir.resolve("video.mp4.idx"), file);
+        assertEquals(index.getDuration(), read.getDuration());
+        assertEquals(index.keyframeCount(), read.keyframeCount());
+        for (int i = 0; i < index.keyframeCount(); i++) {
+            assertEquals(index.keyframeTime(i), read.keyframeTime(i));
+            assertEquals(index.keyframeOffset(i), read.keyframeOffset(i));
+        }
+    }
+
+    @Test
+    void keyframeAtOrBefore_FindsPrecedingKeyframe() throws Exception {
+        Mp4Index index = Mp4Index.build(Path.of(getClass().getResource("/videos/sample.mp4").toURI()));
+        double second = index.seconds(index.keyframeTime(1));
+
+        assertEquals(0, index.keyframeAtOrBefore(0));
+        assertEquals(0, index.keyframeAtOrBefore(second - 0.01));
+        assertEquals(1, index.keyframeAtOrBefore(second));
+        assertEquals(1, index.keyframeAtOrBefore(second + 0.01));
+        assertEquals(index.keyframeCount() - 1, index.keyframeAtOrBefore(1_000_000));
+    }
+}
@@ -0,0 +1,153 @@
+package com.spring_stream_backend.media;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.io.OutputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotNull;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class Mp4SegmenterTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path sample;
+    private List<Mp4Track> sourceTracks;
+
+    @BeforeEach
+    void setUp() throws Exception {
+        sample = Path.of(getClass().getResource("/videos/sample.mp4").toURI());
+        try (FileChannel in = FileChannel.open(sample)) {
+            Mp4Box moov = null;
+            for (Mp4Box.Header header : Mp4Box.scan(in, 0, in.size())) {
+                if (header.type().equals("moov")) {
+                    moov = Mp4Box.read(in, header);
+                }
+            }
+            sourceTracks = new ArrayList<>();
+            for (Mp4Box trak : moov.findAll("trak")) {
+                sourceTracks.add(Mp4Track.parse(trak));
+            }
+        }
+    }
+
+    private static List<Mp4Box> boxes(Path file) throws IOException {
+        return Mp4Box.parseAll(ByteBuffer.wrap(Files.readAllBytes(file)));
+    }
+
+    @Test
+    void segment_ProgressiveFile_SegmentsStartOnKeyframesAndCarryEverySample() throws Exception {
+        SegmentedMovie movie = new Mp4Segmenter(2).segment(sample, tempDir);
+
+        Map<Integer, Integer> samplesPerTrack = new HashMap<>();
+        Map<Integer, Long> bytesPerTrack = new HashMap<>();
+        for (SegmentedMovie.Segment segment : movie.segments()) {
+            List<Mp4Box> boxes = boxes(tempDir.resolve(segment.name()));
+            assertEquals("moof", boxes.get(0).getType());
+            assertEquals("mdat", boxes.get(1).getType());
+            long mdatBytes = 0;
+            for (Mp4Box traf : boxes.get(0).findAll("traf")) {
+                ByteBuffer tfhd = traf.find("tfhd").payload();
+                int trackId = tfhd.getInt(4);
+                ByteBuffer trun = traf.find("trun").payload();
+                int count = trun.getInt(4);
+                samplesPerTrack.merge(trackId, count, Integer::sum);
+                for (int i = 0; i < count; i++) {
+                    long size = Integer.toUnsignedLong(trun.getInt(12 + 16 * i + 4));
+                    bytesPerTrack.merge(trackId, size, Long::sum);
+                    mdatBytes += size;
+                }
+                if (trackId == 1) {
+                    assertEquals(0x02000000, trun.getInt(12 + 8), "video segment does not start on a keyframe");
+                }
+            }
+            assertEquals(mdatBytes, boxes.get(1).payload().remaining());
+        }
+
+        for (Mp4Track track : sourceTracks) {
+            long bytes = 0;
+            for (int i = 0; i < track.sampleCount(); i++) {
+                bytes += track.size(i);
+            }
+            assertEquals(track.sampleCount(), samplesPerTrack.get(track.getTrackId()));
+            assertEquals(bytes, bytesPerTrack.get(track.getTrackId()));
+        }
+        long duration = movie.segments().stream().mapToLong(SegmentedMovie.Segment::duration).sum();
+        assertEquals(sourceTracks.get(0).endTime(), duration);
+    }
+
+    @Test
+    void segment_InitSegment_HasFragmentSetupWithoutSamples() throws Exception {
+        new Mp4Segmenter(4).segment(sample, tempDir);
+
+        List<Mp4Box> init = boxes(tempDir.resolve(SegmentedMovie.INIT_SEGMENT));
+        assertEquals("ftyp", init.get(0).getType());
+        Mp4Box moov = init.get(1);
+        assertEquals(sourceTracks.size(), moov.find("mvex").findAll("trex").size());
+        for (Mp4Box trak : moov.findAll("trak")) {
+            Mp4Box stbl = trak.find("mdia", "minf", "stbl");
+            assertNotNull(stbl.find("stsd"));
+            assertNull(stbl.find("stss"));
+            assertEquals(0, stbl.find("stsz").payload().getInt(8));
+        }
+    }
+
+    @Test
+    void segment_FragmentedFile_SplitsAtExistingFragments() throws Exception {
+        Path first = Files.createDirectory(tempDir.resolve("first"));
+        SegmentedMovie movie = new Mp4Segmenter(2).segment(sample, first);
+        Path fragmented = tempDir.resolve("fragmented.mp4");
+        try (OutputStream out = Files.newOutputStream(fragmented)) {
+            Files.copy(first.resolve(SegmentedMovie.INIT_SEGMENT), out);
+            for (SegmentedMovie.Segment segment : movie.segments()) {
+                Files.copy(first.resolve(segment.name()), out);
+            }
+        }
+
+        Path second = Files.createDirectory(tempDir.resolve("second"));
+        SegmentedMovie resegmented = new Mp4Segmenter(2).segment(fragmented, second);
+
+        assertEquals(movie.segments(), resegmented.segments());
+        for (SegmentedMovie.Segment segment : movie.segments()) {
+            assertArrayEquals(Files.readAllBytes(first.resolve(segment.name())), Files.readAllBytes(second.resolve(segment.name())));
+        }
+    }
+
+    @Test
+    void toHlsPlaylist_ListsEverySegmentAfterTheInitSegment() throws Exception {
+        SegmentedMovie movie = new Mp4Segmenter(4).segment(sample, tempDir);
+
+        String playlist = movie.toHlsPlaylist("v1/");
+
+        assertTrue(playlist.startsWith("#EXTM3U\n"));
+        assertTrue(playlist.contains("#EXT-X-MAP:URI=\"v1/init.mp4\"\n"));
+        for (SegmentedMovie.Segment segment : movie.segments()) {
+            assertTrue(playlist.contains("\nv1/" + segment.name() + "\n"));
+        }
+        assertTrue(playlist.endsWith("#EXT-X-ENDLIST\n"));
+        assertTrue(movie.toDashManifest("v1/").contains("codecs=\"" + String.join(",", movie.codecs()) + "\""));
+    }
+
+    @Test
+    void segment_NotAnMp4_ThrowsIllegalArgumentException() throws Exception {
+        Path text = Files.writeString(tempDir.resolve("notes.mp4"), "not a video at all");
+
+        assertThrows(IllegalArgumentException.class, () -> new Mp4Segmenter(4).segment(text, tempDir));
+    }
+}
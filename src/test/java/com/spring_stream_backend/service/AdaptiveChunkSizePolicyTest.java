@@ -0,0 +1,59 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class AdaptiveChunkSizePolicyTest {
+
+    private static final long MB = 1024 * 1024;
+
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1));
+    private final AdaptiveChunkSizePolicy policy =
+            new AdaptiveChunkSizePolicy(256 * 1024, 16 * MB, MB, 4, 60, 10, clock::get);
+
+    @Test
+    void regionSize_FirstRequest_ReturnsInitialSize() {
+        assertEquals(MB, policy.regionSize("client", 100 * MB));
+    }
+
+    @Test
+    void regionSize_FastClient_GrowsUpToMax() {
+        policy.regionSize("client", 100 * MB);
+        for (int i = 0; i < 20; i++) {
+            clock.addAndGet(TimeUnit.MILLISECONDS.toNanos(10)); // every region delivered in 10 ms
+            policy.regionSize("client", 100 * MB);
+        }
+
+        assertEquals(16 * MB, policy.regionSize("client", 100 * MB));
+    }
+
+    @Test
+    void regionSize_SlowClient_ShrinksToMin() {
+        policy.regionSize("client", 100 * MB);
+        for (int i = 0; i < 20; i++) {
+            clock.addAndGet(TimeUnit.SECONDS.toNanos(30)); // one region every 30 s
+            policy.regionSize("client", 100 * MB);
+        }
+
+        assertEquals(256 * 1024, policy.regionSize("client", 100 * MB));
+    }
+
+    @Test
+    void regionSize_IdleGap_IsNotTreatedAsSlowLink() {
+        policy.regionSize("client", 100 * MB);
+        clock.addAndGet(TimeUnit.MINUTES.toNanos(5));
+        policy.regionSize("client", 100 * MB);
+
+        assertEquals(0.0, policy.estimatedBytesPerSecond("client"), 0.0);
+    }
+
+    @Test
+    void regionSize_NeverExceedsRequestedLength() {
+        assertEquals(1000, policy.regionSize("client", 1000));
+        assertEquals(1000, policy.regionSize(null, 1000));
+    }
+}
@@ -0,0 +1,145 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.springframework.mock.web.MockHttpServletRequest;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class BandwidthSchedulerTest {
+
+    private static final long MB = 1024 * 1024;
+    private static final double SECOND = TimeUnit.SECONDS.toNanos(1);
+    private static final double ROUNDING = 1000; // ns, waits are rounded up per quantum
+
+    // Waiting only moves the clock, so every test runs instantly and the waits are exact
+    private final AtomicLong clock = new AtomicLong(TimeUnit.SECONDS.toNanos(1));
+
+    private BandwidthScheduler scheduler(long globalRate, long globalBurst, long clientRate, long clientBurst) {
+        return new BandwidthScheduler(new BandwidthScheduler.Limits(globalRate, globalBurst, clientRate, clientBurst),
+                clock::get, clock::addAndGet);
+    }
+
+    private long waited(Runnable writes) {
+        long before = clock.get();
+        writes.run();
+        return clock.get() - before;
+    }
+
+    private static void acquire(BandwidthScheduler.Flow flow, long bytes) {
+        try {
+            flow.acquire(bytes);
+        } catch (Exception e) {
+            throw new AssertionError(e);
+        }
+    }
+
+    @Test
+    void acquire_NoLimits_NeverWaits() {
+        BandwidthScheduler scheduler = scheduler(0, 0, 0, 0);
+        BandwidthScheduler.Flow flow = scheduler.open("client");
+
+        assertEquals(0L, waited(() -> acquire(flow, 100 * MB)));
+        assertFalse(scheduler.isShaping());
+    }
+
+    @Test
+    void acquire_AfterBurst_HeldToClientRate() {
+        BandwidthScheduler scheduler = scheduler(0, 0, MB, 2 * MB);
+        BandwidthScheduler.Flow flow = scheduler.open("client");
+
+        assertEquals(0L, waited(() -> acquire(flow, 2 * MB))); // the initial buffer goes out at once
+        assertEquals(3 * SECOND, waited(() -> acquire(flow, 3 * MB)), ROUNDING);
+    }
+
+    @Test
+    void acquire_StreamsOfOneClient_ShareItsBucket() {
+        BandwidthScheduler scheduler = scheduler(0, 0, MB, MB);
+        BandwidthScheduler.Flow first = scheduler.open("client");
+        BandwidthScheduler.Flow second = scheduler.open("client");
+        BandwidthScheduler.Flow other = scheduler.open("other");
+
+        assertEquals(0L, waited(() -> acquire(first, MB)));
+        assertEquals(SECOND, waited(() -> acquire(second, MB)), ROUNDING);
+        assertEquals(0L, waited(() -> acquire(other, MB)));
+    }
+
+    @Test
+    void clientKey_ClientRotatingItsId_GetsNoFreshBurst() {
+        BandwidthScheduler scheduler = scheduler(0, 0, MB, MB);
+        long total = 0;
+        for (int i = 0; i < 4; i++) {
+            MockHttpServletRequest request = new MockHttpServletRequest();
+            request.setRemoteAddr("203.0.113.7");
+            request.addHeader(BandwidthScheduler.CLIENT_ID_HEADER, "viewer-" + i);
+            BandwidthScheduler.Flow flow = scheduler.open(BandwidthScheduler.clientKey(request));
+            total += waited(() -> acquire(flow, MB));
+            flow.close();
+        }
+
+        // One burst, then the client rate, however many ids it sent
+        assertEquals(3 * SECOND, total, 4 * ROUNDING);
+        assertEquals(1, scheduler.clientCount());
+    }
+
+    @Test
+    void acquire_GlobalLimit_SharedByAllClients() {
+        BandwidthScheduler scheduler = scheduler(2 * MB, 0, 0, 0);
+        BandwidthScheduler.Flow first = scheduler.open("client");
+        BandwidthScheduler.Flow second = scheduler.open("other");
+
+        assertEquals(0.5 * SECOND, waited(() -> acquire(first, MB)), ROUNDING);
+        assertEquals(0.5 * SECOND, waited(() -> acquire(second, MB)), ROUNDING);
+    }
+
+    @Test
+    void setLimits_RunningFlow_ShapedFromNextWrite() {
+        BandwidthScheduler scheduler = scheduler(0, 0, 0, 0);
+        BandwidthScheduler.Flow flow = scheduler.open("client");
+        assertEquals(0L, waited(() -> acquire(flow, 10 * MB)));
+
+        scheduler.setLimits(new BandwidthScheduler.Limits(0, 0, 4 * MB, 0));
+
+        assertTrue(scheduler.isShaping());
+        assertEquals(0.5 * SECOND, waited(() -> acquire(flow, 2 * MB)), ROUNDING);
+    }
+
+    @Test
+    void setClientLimit_OverridesDefaultRate() {
+        BandwidthScheduler scheduler = scheduler(0, 0, MB, 0);
+        BandwidthScheduler.Flow flow = scheduler.open("premium");
+
+        scheduler.setClientLimit("premium", 4 * MB);
+        assertEquals(0.25 * SECOND, waited(() -> acquire(flow, MB)), ROUNDING);
+
+        scheduler.removeClientLimit("premium");
+        assertEquals(SECOND, waited(() -> acquire(flow, MB)), ROUNDING);
+    }
+
+    @Test
+    void setLimits_Negative_Rejected() {
+        BandwidthScheduler scheduler = scheduler(0, 0, 0, 0);
+
+        assertThrows(IllegalArgumentException.class, () -> scheduler.setLimits(new BandwidthScheduler.Limits(-1, 0, 0, 0)));
+        assertThrows(IllegalArgumentException.class, () -> scheduler.setClientLimit("client", -1));
+    }
+
+    @Test
+    void open_ClosedClientsThatRefilled_AreForgotten() {
+        BandwidthScheduler scheduler = scheduler(0, 0, MB, MB);
+        BandwidthScheduler.Flow busy = scheduler.open("busy");
+        acquire(busy, 2 * MB); // in debt, and still streaming
+        for (int i = 0; i < 1100; i++) {
+            scheduler.open("client-" + i).close();
+        }
+
+        // Idle clients with full buckets were dropped at the sweep, the busy one is kept
+        assertTrue(scheduler.clientCount() < 100);
+        busy.close();
+    }
+}
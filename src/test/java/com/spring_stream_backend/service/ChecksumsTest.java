@@ -0,0 +1,67 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Path;
+import java.security.MessageDigest;
+import java.util.Arrays;
+import java.util.concurrent.ThreadLocalRandom;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class ChecksumsTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static int crc32c(byte[] bytes, int from, int to) {
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(bytes, from, to - from);
+        return (int) crc32c.getValue();
+    }
+
+    @Test
+    void combineCrc32c_MatchesChecksumOfConcatenation() {
+        byte[] content = new byte[100_000];
+        ThreadLocalRandom.current().nextBytes(content);
+
+        for (int split : new int[]{0, 1, 4096, 65_537, 99_999, 100_000}) {
+            int combined = Checksums.combineCrc32c(crc32c(content, 0, split), crc32c(content, split, content.length), content.length - split);
+            assertEquals(crc32c(content, 0, content.length), combined, "split at " + split);
+        }
+    }
+
+    @Test
+    void chunkedUpload_DerivesWholeFileChecksumsFromChunks() throws IOException {
+        byte[] content = new byte[2500];
+        ThreadLocalRandom.current().nextBytes(content);
+        ChunkedUpload upload = ChunkedUpload.open(tempDir.resolve("movie.part"), tempDir.resolve("movie.session"), "movie", content.length, 1000);
+
+        MessageDigest composite = Checksums.sha256();
+        // Chunks arrive out of order
+        for (int chunk : new int[]{2, 0, 1}) {
+            int from = (int) upload.offsetOf(chunk);
+            int to = from + (int) upload.lengthOf(chunk);
+            upload.markReceived(chunk, crc32c(content, from, to), Checksums.sha256().digest(Arrays.copyOfRange(content, from, to)));
+        }
+        for (int chunk = 0; chunk < 3; chunk++) {
+            int from = (int) upload.offsetOf(chunk);
+            composite.update(Checksums.sha256().digest(Arrays.copyOfRange(content, from, from + (int) upload.lengthOf(chunk))));
+        }
+
+        ChunkedUpload restored = ChunkedUpload.restore(upload.getDataFile(), upload.getStateFile());
+        assertEquals(crc32c(content, 0, content.length), restored.fileCrc32c());
+        assertEquals(Checksums.encode(composite.digest()), Checksums.encode(restored.compositeSha256()));
+    }
+
+    @Test
+    void verify_Mismatch_Throws() {
+        Checksums.verify("Chunk 0", null, "AAAAAA==");
+        Checksums.verify("Chunk 0", "AAAAAA==", "AAAAAA==");
+        assertThrows(IllegalArgumentException.class, () -> Checksums.verify("Chunk 0", "AAAAAQ==", "AAAAAA=="));
+    }
+}
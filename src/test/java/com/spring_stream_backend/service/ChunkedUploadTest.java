@@ -0,0 +1,84 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ChunkedUploadTest {
+
+    private static final int RECORD_LENGTH = 40;
+
+    @TempDir
+    Path tempDir;
+
+    private ChunkedUpload open(int chunks) throws IOException {
+        return ChunkedUpload.open(tempDir.resolve("movie.part"), tempDir.resolve("movie.session"), "movie", chunks * 1000L, 1000);
+    }
+
+    private static byte[] sha256(int seed) {
+        return Checksums.sha256().digest(new byte[]{(byte) seed});
+    }
+
+    @Test
+    void markReceived_AppendsOneRecordPerChunk() throws IOException {
+        ChunkedUpload upload = open(1000);
+        long headerLength = Files.size(upload.getStateFile());
+
+        for (int chunk = 0; chunk < 1000; chunk++) {
+            upload.markReceived(chunk, chunk, sha256(chunk));
+            assertEquals(headerLength + (chunk + 1L) * RECORD_LENGTH, Files.size(upload.getStateFile()));
+        }
+
+        ChunkedUpload restored = ChunkedUpload.restore(upload.getDataFile(), upload.getStateFile());
+        assertTrue(restored.isComplete());
+        assertEquals(upload.fileCrc32c(), restored.fileCrc32c());
+        assertArrayEquals(upload.compositeSha256(), restored.compositeSha256());
+    }
+
+    @Test
+    void restore_TornRecord_DropsItAndKeepsAppending() throws IOException {
+        ChunkedUpload upload = open(3);
+        upload.markReceived(0, 0, sha256(0));
+        upload.markReceived(1, 1, sha256(1));
+        long intact = Files.size(upload.getStateFile());
+        // A crash in the middle of the record for chunk 1
+        try (FileChannel log = FileChannel.open(upload.getStateFile(), StandardOpenOption.WRITE)) {
+            log.truncate(intact - RECORD_LENGTH / 2);
+        }
+
+        ChunkedUpload restored = ChunkedUpload.restore(upload.getDataFile(), upload.getStateFile());
+        assertEquals(List.of(1, 2), restored.missingChunks());
+        assertEquals(intact - RECORD_LENGTH, Files.size(upload.getStateFile()));
+
+        restored.markReceived(2, 2, sha256(2));
+        restored.markReceived(1, 1, sha256(1));
+        assertTrue(ChunkedUpload.restore(upload.getDataFile(), upload.getStateFile()).isComplete());
+    }
+
+    @Test
+    void markReceived_ResentChunks_CompactsLog() throws IOException {
+        ChunkedUpload upload = open(2);
+        long headerLength = Files.size(upload.getStateFile());
+
+        for (int attempt = 0; attempt < 5; attempt++) {
+            upload.markReceived(0, attempt, sha256(attempt));
+        }
+
+        assertTrue(Files.size(upload.getStateFile()) <= headerLength + 4L * RECORD_LENGTH);
+        ChunkedUpload restored = ChunkedUpload.restore(upload.getDataFile(), upload.getStateFile());
+        assertEquals(List.of(1), restored.missingChunks());
+        restored.markReceived(1, 1, sha256(1));
+        upload.markReceived(1, 1, sha256(1));
+        assertEquals(upload.fileCrc32c(), restored.fileCrc32c());
+    }
+}
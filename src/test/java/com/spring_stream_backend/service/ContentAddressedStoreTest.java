@@ -0,0 +1,57 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class ContentAddressedStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path ingest(ContentAddressedStore store, byte[] content) throws IOException {
+        return Files.write(store.newTempFile(), content);
+    }
+
+    @Test
+    void put_DuplicateContent_IsStoredOnce() throws IOException {
+        ContentAddressedStore store = new ContentAddressedStore(tempDir.resolve(ContentAddressedStore.DIRECTORY));
+        byte[] content = "same video".getBytes();
+        String key = ContentAddressedStore.key(Checksums.sha256().digest(content));
+
+        Path first = ingest(store, content);
+        Path second = ingest(store, content);
+        assertFalse(store.contains(key));
+        assertTrue(store.put(first, key));
+        assertTrue(store.contains(key));
+        assertFalse(store.put(second, key));
+        store.link(key, tempDir.resolve("a.mp4"));
+        store.link(key, tempDir.resolve("b.mp4"));
+
+        assertFalse(Files.exists(second));
+        assertArrayEquals(content, Files.readAllBytes(tempDir.resolve("a.mp4")));
+        assertTrue(Files.isSameFile(tempDir.resolve("a.mp4"), tempDir.resolve("b.mp4")));
+        assertTrue(Files.isSameFile(store.blobPath(key), tempDir.resolve("b.mp4")));
+    }
+
+    @Test
+    void link_ExistingName_IsReplaced() throws IOException {
+        ContentAddressedStore store = new ContentAddressedStore(tempDir.resolve(ContentAddressedStore.DIRECTORY));
+        Path target = Files.write(tempDir.resolve("a.mp4"), "old".getBytes());
+        byte[] content = "new".getBytes();
+        String key = ContentAddressedStore.key(Checksums.sha256().digest(content));
+
+        store.put(ingest(store, content), key);
+        store.link(key, target);
+
+        assertArrayEquals(content, Files.readAllBytes(target));
+        assertFalse(Files.exists(tempDir.resolve("a.mp4.link")));
+    }
+}
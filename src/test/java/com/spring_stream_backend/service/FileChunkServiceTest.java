@@ -0,0 +1,268 @@
+package com.spring_stream_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.AfterEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.web.multipart.MultipartFile;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNotEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class FileChunkServiceTest {
+
+    private static final int CHUNK_SIZE = 1024 * 1024;
+    private static final long RETENTION = TimeUnit.MINUTES.toMillis(60);
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+    private FileChunkService service;
+
+    @AfterEach
+    void tearDown() {
+        if (service != null) {
+            service.shutdown();
+        }
+    }
+
+    private FileChunkService newService(int maxPendingJobs) {
+        return newService(new StorageVolumes(List.of(tempDir)), maxPendingJobs);
+    }
+
+    private FileChunkService newService(StorageVolumes volumes, int maxPendingJobs) {
+        service = new FileChunkService(volumes, new StreamingIngest(new DirectBufferPool(64 * 1024, 8)),
+                new StreamingMetrics(new SimpleMeterRegistry()), 4, maxPendingJobs, RETENTION, clock::get);
+        return service;
+    }
+
+    private static MultipartFile upload(String name, InputStream content) throws IOException {
+        MultipartFile file = mock(MultipartFile.class);
+        when(file.getOriginalFilename()).thenReturn(name);
+        when(file.getInputStream()).thenReturn(content);
+        return file;
+    }
+
+    private static byte[] randomBytes(int length, long seed) {
+        byte[] bytes = new byte[length];
+        new Random(seed).nextBytes(bytes);
+        return bytes;
+    }
+
+    private IngestJobStatus awaitFinished(String jobId) throws InterruptedException {
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(10);
+        IngestJobStatus status = service.getJobStatus(jobId);
+        while (status.state() == IngestJob.State.RUNNING && System.nanoTime() < deadline) {
+            Thread.sleep(10);
+            status = service.getJobStatus(jobId);
+        }
+        return status;
+    }
+
+    private byte[] joinedChunks(String jobId, int chunks) throws IOException {
+        ByteArrayOutputStream joined = new ByteArrayOutputStream();
+        for (int i = 1; i <= chunks; i++) {
+            joined.write(Files.readAllBytes(service.chunkPath(jobId, i)));
+        }
+        return joined.toByteArray();
+    }
+
+    @Test
+    void processAndChunkFile_WritesEveryChunkIntoTheJobDirectory() throws Exception {
+        byte[] content = randomBytes(2 * CHUNK_SIZE + 12345, 1);
+
+        IngestJobStatus accepted = newService(4).processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(content)));
+        IngestJobStatus finished = awaitFinished(accepted.jobId());
+
+        assertEquals(IngestJob.State.COMPLETED, finished.state());
+        assertEquals(3, finished.totalChunks());
+        assertEquals(3, finished.completedChunks());
+        assertArrayEquals(content, joinedChunks(accepted.jobId(), 3));
+        assertFalse(Files.exists(tempDir.resolve(FileChunkService.JOB_DIRECTORY).resolve(accepted.jobId()).resolve("source")));
+        assertEquals(tempDir.resolve(FileChunkService.JOB_DIRECTORY).resolve(accepted.jobId()).resolve("chunk1"), service.chunkPath(accepted.jobId(), 1));
+    }
+
+    @Test
+    void processAndChunkFile_SeveralVolumes_SpreadsChunksOverThem() throws Exception {
+        Path first = tempDir.resolve("disk1");
+        Path second = tempDir.resolve("disk2");
+        byte[] content = randomBytes(16 * CHUNK_SIZE, 4);
+
+        IngestJobStatus accepted = newService(new StorageVolumes(List.of(first, second)), 4)
+                .processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(content)));
+        awaitFinished(accepted.jobId());
+
+        assertArrayEquals(content, joinedChunks(accepted.jobId(), 16));
+        assertTrue(Files.exists(first.resolve(FileChunkService.JOB_DIRECTORY).resolve(accepted.jobId())));
+        assertTrue(Files.exists(second.resolve(FileChunkService.JOB_DIRECTORY).resolve(accepted.jobId())));
+    }
+
+    @Test
+    void processAndChunkFile_SameFileName_KeepsJobsApart() throws Exception {
+        byte[] first = randomBytes(CHUNK_SIZE + 1, 2);
+        byte[] second = randomBytes(CHUNK_SIZE + 1, 3);
+        newService(4);
+
+        IngestJobStatus firstJob = service.processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(first)));
+        IngestJobStatus secondJob = service.processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(second)));
+        awaitFinished(firstJob.jobId());
+        awaitFinished(secondJob.jobId());
+
+        assertNotEquals(firstJob.jobId(), secondJob.jobId());
+        assertArrayEquals(first, joinedChunks(firstJob.jobId(), 2));
+        assertArrayEquals(second, joinedChunks(secondJob.jobId(), 2));
+    }
+
+    @Test
+    void processAndChunkFile_TooManyJobs_RejectsUntilOneFinishes() throws Exception {
+        newService(1);
+        CountDownLatch reading = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        InputStream slowUpload = new InputStream() {
+            @Override
+            public int read() throws IOException {
+                reading.countDown();
+                try {
+                    release.await();
+                } catch (InterruptedException e) {
+                    throw new IOException(e);
+                }
+                return -1;
+            }
+        };
+        ExecutorService uploader = Executors.newSingleThreadExecutor();
+        try {
+            Future<IngestJobStatus> pending = uploader.submit(() -> service.processAndChunkFile(upload("slow.mp4", slowUpload)));
+            reading.await(5, TimeUnit.SECONDS);
+
+            MultipartFile rejected = upload("video.mp4", new ByteArrayInputStream(new byte[10]));
+            assertThrows(RejectedExecutionException.class, () -> service.processAndChunkFile(rejected));
+
+            release.countDown();
+            awaitFinished(pending.get(5, TimeUnit.SECONDS).jobId());
+            IngestJobStatus accepted = service.processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(new byte[10])));
+            assertEquals(IngestJob.State.COMPLETED, awaitFinished(accepted.jobId()).state());
+        } finally {
+            uploader.shutdownNow();
+        }
+    }
+
+    @Test
+    void restore_UnfinishedJob_ChunksItAgainFromItsSource() throws Exception {
+        byte[] content = randomBytes(2 * CHUNK_SIZE + 1, 5);
+        Path jobDirectory = Files.createDirectories(tempDir.resolve(FileChunkService.JOB_DIRECTORY).resolve("interrupted"));
+        Files.write(jobDirectory.resolve("source"), content);
+        new IngestJob("interrupted", "video.mp4", 3).persist(jobDirectory.resolve("job"));
+
+        newService(4).restore();
+
+        assertEquals(IngestJob.State.COMPLETED, awaitFinished("interrupted").state());
+        assertArrayEquals(content, joinedChunks("interrupted", 3));
+        assertFalse(Files.exists(jobDirectory.resolve("source")));
+    }
+
+    @Test
+    void restore_FinishedJob_IsStillReported() throws Exception {
+        IngestJobStatus accepted = newService(4).processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(new byte[10])));
+        awaitFinished(accepted.jobId());
+        service.shutdown();
+
+        newService(4).restore();
+
+        IngestJobStatus restored = awaitFinished(accepted.jobId());
+        assertEquals(IngestJob.State.COMPLETED, restored.state());
+        assertEquals(1, restored.completedChunks());
+        assertEquals("video.mp4", restored.fileName());
+    }
+
+    @Test
+    void restore_UnfinishedJobWithoutSource_FailsAndDeletesItsFilesOnceExpired() throws Exception {
+        Path jobDirectory = Files.createDirectories(tempDir.resolve(FileChunkService.JOB_DIRECTORY).resolve("lost"));
+        Files.write(jobDirectory.resolve("chunk1"), new byte[10]);
+        new IngestJob("lost", "video.mp4", 2).persist(jobDirectory.resolve("job"));
+
+        newService(4).restore();
+
+        assertEquals(IngestJob.State.FAILED, service.getJobStatus("lost").state());
+        assertFalse(Files.exists(jobDirectory.resolve("chunk1")));
+        assertTrue(Files.exists(jobDirectory.resolve("job")));
+
+        clock.addAndGet(RETENTION + 1);
+        assertThrows(NoSuchElementException.class, () -> service.getJobStatus("lost"));
+        assertFalse(Files.exists(jobDirectory));
+    }
+
+    @Test
+    void restore_UploadNeverAcknowledged_IsDeleted() throws Exception {
+        Path jobDirectory = Files.createDirectories(tempDir.resolve(FileChunkService.JOB_DIRECTORY).resolve("partial"));
+        Files.write(jobDirectory.resolve("source"), new byte[10]);
+
+        newService(4).restore();
+
+        assertFalse(Files.exists(jobDirectory));
+        assertEquals(0, service.jobCount());
+    }
+
+    @Test
+    void rebalance_MovesOnlyJobsKnownToBeCompleted() throws Exception {
+        Path first = tempDir.resolve("disk1");
+        Path second = tempDir.resolve("disk2");
+        byte[] content = randomBytes(16 * CHUNK_SIZE, 6);
+        IngestJobStatus accepted = newService(new StorageVolumes(List.of(first)), 4)
+                .processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(content)));
+        awaitFinished(accepted.jobId());
+        service.shutdown();
+        // A job interrupted by a restart, and one that predates the state file
+        Path running = Files.createDirectories(first.resolve(FileChunkService.JOB_DIRECTORY).resolve("running"));
+        Path legacy = Files.createDirectories(first.resolve(FileChunkService.JOB_DIRECTORY).resolve("legacy"));
+        for (int i = 1; i <= 16; i++) {
+            Files.write(running.resolve("chunk" + i), new byte[1]);
+            Files.write(legacy.resolve("chunk" + i), new byte[1]);
+        }
+        new IngestJob("running", "video.mp4", 16).persist(running.resolve("job"));
+
+        int moved = newService(new StorageVolumes(List.of(first, second)), 4).rebalance();
+
+        assertTrue(moved > 0);
+        assertTrue(Files.exists(second.resolve(FileChunkService.JOB_DIRECTORY).resolve(accepted.jobId())));
+        assertArrayEquals(content, joinedChunks(accepted.jobId(), 16));
+        for (int i = 1; i <= 16; i++) {
+            assertTrue(Files.exists(running.resolve("chunk" + i)));
+            assertTrue(Files.exists(legacy.resolve("chunk" + i)));
+        }
+    }
+
+    @Test
+    void getJobStatus_FinishedLongAgo_ThrowsNoSuchElementException() throws Exception {
+        IngestJobStatus accepted = newService(4).processAndChunkFile(upload("video.mp4", new ByteArrayInputStream(new byte[10])));
+        awaitFinished(accepted.jobId());
+
+        clock.addAndGet(RETENTION + 1);
+
+        assertThrows(NoSuchElementException.class, () -> service.getJobStatus(accepted.jobId()));
+    }
+}
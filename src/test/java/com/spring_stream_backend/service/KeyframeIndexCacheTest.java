@@ -0,0 +1,93 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.media.Mp4Index;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.attribute.FileTime;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNotSame;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class KeyframeIndexCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private final KeyframeIndexCache cache = new KeyframeIndexCache(2);
+
+    private Path copyOfSample() throws Exception {
+        return copyOfSample("video.mp4");
+    }
+
+    private Path copyOfSample(String name) throws Exception {
+        Path sample = Path.of(getClass().getResource("/videos/sample.mp4").toURI());
+        return Files.copy(sample, tempDir.resolve(name));
+    }
+
+    @Test
+    void get_BuildsOnceAndPersistsIndex() throws Exception {
+        Path video = copyOfSample();
+
+        Mp4Index first = cache.get(video);
+        Mp4Index second = cache.get(video);
+
+        assertSame(first, second);
+        assertTrue(Files.exists(tempDir.resolve("video.mp4.idx")));
+        assertEquals(1, cache.size());
+    }
+
+    @Test
+    void get_VideoReplaced_Reindexes() throws Exception {
+        Path video = copyOfSample();
+        Mp4Index first = cache.get(video);
+
+        Files.setLastModifiedTime(video, FileTime.fromMillis(Files.getLastModifiedTime(video).toMillis() + 60_000));
+
+        assertNotSame(first, cache.get(video));
+    }
+
+    @Test
+    void get_OverCapacity_DropsLeastRecentlySeeked() throws Exception {
+        Path first = copyOfSample("first.mp4");
+        Path second = copyOfSample("second.mp4");
+        Path third = copyOfSample("third.mp4");
+        Mp4Index firstIndex = cache.get(first);
+        Mp4Index secondIndex = cache.get(second);
+        cache.get(first); // second is now the least recently seeked
+
+        cache.get(third);
+
+        assertEquals(2, cache.size());
+        assertSame(firstIndex, cache.get(first));
+        assertNotSame(secondIndex, cache.get(second));
+    }
+
+    @Test
+    void evict_MovedVideo_DropsItsEntry() throws Exception {
+        Path video = copyOfSample();
+        Mp4Index first = cache.get(video);
+
+        cache.evict(tempDir.resolve(".").resolve("video.mp4"));
+
+        assertEquals(0, cache.size());
+        assertNotSame(first, cache.get(video));
+    }
+
+    @Test
+    void new_NoCapacity_ThrowsIllegalArgumentException() {
+        assertThrows(IllegalArgumentException.class, () -> new KeyframeIndexCache(0));
+    }
+
+    @Test
+    void get_NotAnMp4_ThrowsIllegalArgumentException() throws Exception {
+        Path video = Files.write(tempDir.resolve("video.mkv"), new byte[]{0x1A, 0x45, (byte) 0xDF, (byte) 0xA3, 0, 0, 0, 0});
+
+        assertThrows(IllegalArgumentException.class, () -> cache.get(video));
+    }
+}
@@ -0,0 +1,87 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardCopyOption;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class LocalVideoStoreTest {
+
+    @TempDir
+    Path tempDir;
+
+    private StorageVolumes volumes;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        volumes = new StorageVolumes(List.of(tempDir));
+        content = new byte[10_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        Files.write(tempDir.resolve("video.mp4"), content);
+    }
+
+    @Test
+    void find_LocalStore_ReadsExactRanges() throws IOException {
+        assertReadsExactRanges(new LocalVideoStore(volumes, new DirectBufferPool(1024, 4)));
+    }
+
+    @Test
+    void find_MappedStore_ReadsExactRanges() throws IOException {
+        assertReadsExactRanges(new MappedVideoStore(volumes, new DirectBufferPool(1024, 4), new MappedSegmentCache(4096, 1024 * 1024)));
+    }
+
+    @Test
+    void find_MissingVideo_ReturnsEmpty() throws IOException {
+        LocalVideoStore store = new LocalVideoStore(volumes, new DirectBufferPool(1024, 4));
+
+        assertTrue(store.find("missing.mp4").isEmpty());
+    }
+
+    @Test
+    void publish_ReplacedVideo_MappedStoreServesNewContent() throws IOException {
+        MappedVideoStore store = new MappedVideoStore(volumes, new DirectBufferPool(1024, 4), new MappedSegmentCache(4096, 1024 * 1024));
+        transfer(store.find("video.mp4").orElseThrow(), 0, 100);
+
+        byte[] replacement = new byte[content.length];
+        Arrays.fill(replacement, (byte) 1);
+        Path upload = Files.write(tempDir.resolve("video.mp4.merging"), replacement);
+        Path video = Files.move(upload, tempDir.resolve("video.mp4"), StandardCopyOption.REPLACE_EXISTING);
+        store.publish("video.mp4", video);
+
+        assertArrayEquals(Arrays.copyOfRange(replacement, 0, 100), transfer(store.find("video.mp4").orElseThrow(), 0, 100));
+    }
+
+    private void assertReadsExactRanges(VideoStore store) throws IOException {
+        StoredVideo video = store.find("video.mp4").orElseThrow();
+
+        assertEquals(content.length, video.length());
+        assertEquals(tempDir.resolve("video.mp4"), video.localFile().orElseThrow());
+        assertEquals("video.mp4", video.resource().getFilename());
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 6000), transfer(video, 1000, 5000));
+        try (InputStream region = video.region(3000, 4500).getInputStream()) {
+            assertArrayEquals(Arrays.copyOfRange(content, 3000, 7500), region.readAllBytes());
+        }
+    }
+
+    private static byte[] transfer(StoredVideo video, long position, long length) throws IOException {
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+        video.transferTo(position, length, Channels.newChannel(out));
+        return out.toByteArray();
+    }
+}
@@ -0,0 +1,87 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.Arrays;
+import java.util.List;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+
+class MappedSegmentCacheTest {
+
+    @TempDir
+    Path tempDir;
+
+    private Path video;
+    private byte[] content;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        content = new byte[10_000];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) i;
+        }
+        video = Files.write(tempDir.resolve("video.mp4"), content);
+    }
+
+    @Test
+    void slices_RangeSpanningSegments_ReturnsExactBytes() throws IOException {
+        MappedSegmentCache cache = new MappedSegmentCache(1024, 1024 * 1024);
+
+        List<ByteBuffer> slices = cache.slices(video, content.length, 1000, 3000);
+
+        assertEquals(4, slices.size());
+        assertArrayEquals(Arrays.copyOfRange(content, 1000, 4000), concat(slices));
+    }
+
+    @Test
+    void slices_RepeatedRange_CountsHits() throws IOException {
+        MappedSegmentCache cache = new MappedSegmentCache(4096, 1024 * 1024);
+
+        cache.slices(video, content.length, 0, 4096);
+        cache.slices(video, content.length, 0, 4096);
+
+        assertEquals(1L, cache.stats().get("misses"));
+        assertEquals(1L, cache.stats().get("hits"));
+    }
+
+    @Test
+    void slices_OverBudget_EvictsLeastRecentlyUsed() throws IOException {
+        MappedSegmentCache cache = new MappedSegmentCache(1024, 2048);
+
+        cache.slices(video, content.length, 0, 1024);
+        cache.slices(video, content.length, 1024, 1024);
+        cache.slices(video, content.length, 0, 1024); // touch segment 0
+        cache.slices(video, content.length, 2048, 1024); // evicts segment 1
+
+        assertEquals(1L, cache.stats().get("evictions"));
+        assertEquals(2048L, cache.stats().get("mappedBytes"));
+
+        cache.slices(video, content.length, 0, 1024);
+        assertEquals(2L, cache.stats().get("hits"));
+    }
+
+    @Test
+    void invalidate_DropsSegmentsOfFile() throws IOException {
+        MappedSegmentCache cache = new MappedSegmentCache(1024, 1024 * 1024);
+        cache.slices(video, content.length, 0, content.length);
+
+        cache.invalidate(video);
+
+        assertEquals(0L, cache.stats().get("segments"));
+        assertEquals(0L, cache.stats().get("mappedBytes"));
+    }
+
+    private byte[] concat(List<ByteBuffer> slices) {
+        ByteBuffer all = ByteBuffer.allocate(slices.stream().mapToInt(ByteBuffer::remaining).sum());
+        slices.forEach(slice -> all.put(slice.duplicate()));
+        return all.array();
+    }
+}
@@ -0,0 +1,234 @@
+package com.spring_stream_backend.service;
+
+import jakarta.servlet.AsyncContext;
+import jakarta.servlet.ServletOutputStream;
+import jakarta.servlet.WriteListener;
+import org.junit.jupiter.api.Test;
+import org.reactivestreams.Publisher;
+import org.reactivestreams.Subscriber;
+import org.reactivestreams.Subscription;
+import org.springframework.core.io.buffer.DataBuffer;
+import org.springframework.core.io.buffer.PooledDataBuffer;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertDoesNotThrow;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.anyInt;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class ReactiveVideoStreamingServiceTest {
+
+    private static final int BUFFER_SIZE = 8;
+
+    private final MockHttpServletRequest request = new MockHttpServletRequest();
+    private final FakeOutputStream out = new FakeOutputStream(request);
+    private final ManualPublisher body = new ManualPublisher();
+    private final List<PooledDataBuffer> buffers = new ArrayList<>();
+
+    private ReactiveVideoStreamingService.ServletWriteSubscriber start(Publisher<DataBuffer> publisher) {
+        return start(publisher, null);
+    }
+
+    private ReactiveVideoStreamingService.ServletWriteSubscriber start(Publisher<DataBuffer> publisher, BandwidthScheduler.Flow flow) {
+        request.setAsyncSupported(true);
+        AsyncContext asyncContext = request.startAsync(request, new MockHttpServletResponse());
+        ReactiveVideoStreamingService.ServletWriteSubscriber subscriber =
+                new ReactiveVideoStreamingService.ServletWriteSubscriber(asyncContext, out, BUFFER_SIZE, flow);
+        subscriber.start(publisher);
+        return subscriber;
+    }
+
+    // Pooled, so the subscriber has to release it
+    private PooledDataBuffer buffer(byte... content) {
+        PooledDataBuffer buffer = mock(PooledDataBuffer.class);
+        when(buffer.readableByteCount()).thenReturn(content.length);
+        when(buffer.read(any(byte[].class), anyInt(), anyInt())).thenAnswer(invocation -> {
+            System.arraycopy(content, 0, invocation.getArgument(0), invocation.<Integer>getArgument(1), invocation.<Integer>getArgument(2));
+            return buffer;
+        });
+        when(buffer.isAllocated()).thenReturn(true);
+        buffers.add(buffer);
+        return buffer;
+    }
+
+    @Test
+    void start_SlowSocket_OneBufferOutstandingAndBytesInOrder() {
+        start(body);
+        for (int i = 0; i < 5; i++) {
+            assertEquals(1, body.requested); // requested once the socket took the previous buffer
+            body.emit(buffer((byte) (4 * i), (byte) (4 * i + 1), (byte) (4 * i + 2), (byte) (4 * i + 3)));
+            assertEquals(0, body.requested);
+            out.makeReady();
+        }
+        body.complete();
+
+        assertArrayEquals(new byte[]{0, 1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11, 12, 13, 14, 15, 16, 17, 18, 19}, out.written.toByteArray());
+        assertFalse(request.isAsyncStarted()); // completed
+        buffers.forEach(buffer -> verify(buffer).release());
+    }
+
+    @Test
+    void start_ClientGone_CancelsUpstreamAndReleasesBuffers() {
+        start(body);
+        body.emit(buffer((byte) 1));
+        out.makeReady();
+        out.failWrites = true;
+
+        body.emit(buffer((byte) 2));
+
+        assertTrue(body.cancelled);
+        assertFalse(request.isAsyncStarted());
+        buffers.forEach(buffer -> verify(buffer).release());
+    }
+
+    @Test
+    void onTimeout_BufferWaitingForSocket_IsReleased() {
+        ReactiveVideoStreamingService.ServletWriteSubscriber subscriber = start(body);
+        body.emit(buffer((byte) 1));
+        out.makeReady(); // the next buffer is requested
+        out.ready = false;
+        body.emit(buffer((byte) 2)); // arrives while the socket is busy
+
+        subscriber.onTimeout(null);
+
+        assertTrue(body.cancelled);
+        assertFalse(request.isAsyncStarted());
+        assertArrayEquals(new byte[]{1}, out.written.toByteArray());
+        buffers.forEach(buffer -> verify(buffer).release());
+    }
+
+    @Test
+    void start_BandwidthLimit_HoldsOffNextRequest() throws InterruptedException {
+        AtomicLong clock = new AtomicLong();
+        BandwidthScheduler scheduler = new BandwidthScheduler(new BandwidthScheduler.Limits(0, 0, 40, 0), clock::get, clock::addAndGet);
+        start(body, scheduler.open("client"));
+
+        body.emit(buffer((byte) 1, (byte) 2, (byte) 3, (byte) 4)); // 100 ms at 40 bytes per second
+        out.makeReady();
+        assertEquals(0, body.requested);
+
+        long deadline = System.nanoTime() + TimeUnit.SECONDS.toNanos(5);
+        while (body.requested == 0 && System.nanoTime() < deadline) {
+            Thread.sleep(5);
+        }
+        assertEquals(1, body.requested);
+    }
+
+    @Test
+    void start_UpstreamFailsOnSubscribe_CompletesWithoutThrowing() {
+        Publisher<DataBuffer> failing = subscriber -> {
+            subscriber.onSubscribe(new ManualPublisher());
+            subscriber.onError(new IOException("no such file"));
+        };
+
+        assertDoesNotThrow(() -> start(failing));
+        assertFalse(request.isAsyncStarted());
+    }
+
+    /**
+     * Emits only what was requested, under the test's control.
+     */
+    private static final class ManualPublisher implements Publisher<DataBuffer>, Subscription {
+
+        private Subscriber<? super DataBuffer> subscriber;
+        private volatile long requested;
+        private boolean cancelled;
+
+        @Override
+        public void subscribe(Subscriber<? super DataBuffer> subscriber) {
+            this.subscriber = subscriber;
+            subscriber.onSubscribe(this);
+        }
+
+        @Override
+        public void request(long n) {
+            requested += n;
+        }
+
+        @Override
+        public void cancel() {
+            cancelled = true;
+        }
+
+        void emit(DataBuffer buffer) {
+            assertTrue(requested > 0, "emitted without demand");
+            requested--;
+            subscriber.onNext(buffer);
+        }
+
+        void complete() {
+            subscriber.onComplete();
+        }
+    }
+
+    /**
+     * A socket that is busy after every write until the test makes it ready again, failing writes
+     * made while busy like a container does.
+     */
+    private static final class FakeOutputStream extends ServletOutputStream {
+
+        private final MockHttpServletRequest request;
+        private final ByteArrayOutputStream written = new ByteArrayOutputStream();
+        private WriteListener listener;
+        private boolean ready = true;
+        private boolean failWrites;
+
+        private FakeOutputStream(MockHttpServletRequest request) {
+            this.request = request;
+        }
+
+        void makeReady() {
+            ready = true;
+            try {
+                listener.onWritePossible();
+            } catch (IOException e) {
+                throw new AssertionError(e);
+            }
+        }
+
+        @Override
+        public boolean isReady() {
+            return ready;
+        }
+
+        @Override
+        public void setWriteListener(WriteListener writeListener) {
+            if (!request.isAsyncStarted()) {
+                throw new IllegalStateException("Not in async mode");
+            }
+            listener = writeListener;
+            makeReady();
+        }
+
+        @Override
+        public void write(int b) throws IOException {
+            write(new byte[]{(byte) b}, 0, 1);
+        }
+
+        @Override
+        public void write(byte[] b, int off, int len) throws IOException {
+            if (!ready) {
+                throw new IllegalStateException("Write while not ready");
+            }
+            if (failWrites) {
+                throw new IOException("Broken pipe");
+            }
+            written.write(b, off, len);
+            ready = false;
+        }
+    }
+}
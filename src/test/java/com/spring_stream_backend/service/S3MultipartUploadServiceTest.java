@@ -0,0 +1,129 @@
+package com.spring_stream_backend.service;
+
+import io.micrometer.core.instrument.simple.SimpleMeterRegistry;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.mockito.ArgumentCaptor;
+import software.amazon.awssdk.core.async.AsyncRequestBody;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.AbortMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CompleteMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.CompletedPart;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadRequest;
+import software.amazon.awssdk.services.s3.model.CreateMultipartUploadResponse;
+import software.amazon.awssdk.services.s3.model.UploadPartRequest;
+import software.amazon.awssdk.services.s3.model.UploadPartResponse;
+
+import java.io.ByteArrayInputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.stream.Collectors;
+import java.util.zip.CRC32C;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3MultipartUploadServiceTest {
+
+    private static final int PART_SIZE = 1024;
+    private static final int WINDOW = 3;
+
+    @TempDir
+    Path tempDir;
+
+    private final S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+    private final S3MultipartUploadService service = new S3MultipartUploadService(s3AsyncClient, "bucket", PART_SIZE, WINDOW, 8,
+            new StreamingMetrics(new SimpleMeterRegistry()));
+
+    private final AtomicInteger inFlight = new AtomicInteger();
+    private final AtomicInteger maxInFlight = new AtomicInteger();
+
+    @BeforeEach
+    void setUp() {
+        when(s3AsyncClient.createMultipartUpload(any(CreateMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CreateMultipartUploadResponse.builder().uploadId("upload-1").build()));
+        when(s3AsyncClient.completeMultipartUpload(any(CompleteMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(CompleteMultipartUploadResponse.builder().build()));
+        when(s3AsyncClient.abortMultipartUpload(any(AbortMultipartUploadRequest.class)))
+                .thenReturn(CompletableFuture.completedFuture(AbortMultipartUploadResponse.builder().build()));
+    }
+
+    // Answers every part a little later on another thread, like a real round trip
+    private void answerPartsAsynchronously(int failingPart) {
+        when(s3AsyncClient.uploadPart(any(UploadPartRequest.class), any(AsyncRequestBody.class))).thenAnswer(invocation -> {
+            UploadPartRequest request = invocation.getArgument(0);
+            maxInFlight.accumulateAndGet(inFlight.incrementAndGet(), Math::max);
+            return CompletableFuture.supplyAsync(() -> {
+                inFlight.decrementAndGet();
+                if (request.partNumber() == failingPart) {
+                    throw new IllegalStateException("part " + failingPart + " rejected");
+                }
+                return UploadPartResponse.builder().eTag("etag-" + request.partNumber()).build();
+            }, CompletableFuture.delayedExecutor(20, TimeUnit.MILLISECONDS));
+        });
+    }
+
+    private static int crc32c(byte[] bytes) {
+        CRC32C crc32c = new CRC32C();
+        crc32c.update(bytes);
+        return (int) crc32c.getValue();
+    }
+
+    @Test
+    void uploadLargeFile_SendsPartsConcurrentlyWithinWindow() throws Exception {
+        answerPartsAsynchronously(-1);
+        Path file = Files.write(tempDir.resolve("video.mp4"), new byte[10 * PART_SIZE + 100]);
+
+        service.uploadLargeFile("videos/video.mp4", file);
+
+        ArgumentCaptor<CompleteMultipartUploadRequest> complete = ArgumentCaptor.forClass(CompleteMultipartUploadRequest.class);
+        verify(s3AsyncClient).completeMultipartUpload(complete.capture());
+        List<Integer> partNumbers = complete.getValue().multipartUpload().parts().stream()
+                .map(CompletedPart::partNumber)
+                .collect(Collectors.toList());
+        assertEquals(List.of(1, 2, 3, 4, 5, 6, 7, 8, 9, 10, 11), partNumbers);
+        assertEquals("etag-11", complete.getValue().multipartUpload().parts().get(10).eTag());
+        assertEquals(Checksums.encodeCrc32c(crc32c(new byte[100])), complete.getValue().multipartUpload().parts().get(10).checksumCRC32C());
+        assertTrue(maxInFlight.get() > 1, "parts were sent one at a time");
+        assertTrue(maxInFlight.get() <= WINDOW, "more than " + WINDOW + " parts in flight: " + maxInFlight.get());
+    }
+
+    @Test
+    void uploadStream_SizesPartsFromStream() throws Exception {
+        answerPartsAsynchronously(-1);
+
+        service.uploadStream("videos/video.mp4", new ByteArrayInputStream(new byte[2 * PART_SIZE + 10]));
+
+        ArgumentCaptor<UploadPartRequest> parts = ArgumentCaptor.forClass(UploadPartRequest.class);
+        verify(s3AsyncClient, times(3)).uploadPart(parts.capture(), any(AsyncRequestBody.class));
+        List<Long> sizes = parts.getAllValues().stream().map(UploadPartRequest::contentLength).collect(Collectors.toList());
+        assertEquals(List.of((long) PART_SIZE, (long) PART_SIZE, 10L), sizes);
+        assertEquals(Checksums.encodeCrc32c(crc32c(new byte[10])), parts.getAllValues().get(2).checksumCRC32C());
+    }
+
+    @Test
+    void uploadLargeFile_PartFails_AbortsUpload() throws Exception {
+        answerPartsAsynchronously(2);
+        Path file = Files.write(tempDir.resolve("video.mp4"), new byte[10 * PART_SIZE]);
+
+        assertThrows(IllegalStateException.class, () -> service.uploadLargeFile("videos/video.mp4", file));
+
+        verify(s3AsyncClient).abortMultipartUpload(any(AbortMultipartUploadRequest.class));
+        verify(s3AsyncClient, never()).completeMultipartUpload(any(CompleteMultipartUploadRequest.class));
+        assertEquals(0, inFlight.get());
+    }
+}
@@ -0,0 +1,107 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import software.amazon.awssdk.core.ResponseBytes;
+import software.amazon.awssdk.core.async.AsyncResponseTransformer;
+import software.amazon.awssdk.services.s3.S3AsyncClient;
+import software.amazon.awssdk.services.s3.model.GetObjectRequest;
+import software.amazon.awssdk.services.s3.model.GetObjectResponse;
+import software.amazon.awssdk.services.s3.model.HeadObjectRequest;
+import software.amazon.awssdk.services.s3.model.HeadObjectResponse;
+import software.amazon.awssdk.services.s3.model.S3Exception;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.channels.Channels;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CompletableFuture;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.eq;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class S3VideoStoreTest {
+
+    private static final int READ_SIZE = 1000;
+
+    private final S3AsyncClient s3AsyncClient = mock(S3AsyncClient.class);
+    private final S3MultipartUploadService uploadService = mock(S3MultipartUploadService.class);
+    private final S3VideoStore store = new S3VideoStore(s3AsyncClient, "bucket", READ_SIZE, uploadService);
+    private final List<String> requestedRanges = new ArrayList<>();
+    private byte[] content;
+
+    @BeforeEach
+    @SuppressWarnings("unchecked")
+    void setUp() {
+        content = new byte[4500];
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 7);
+        }
+        when(s3AsyncClient.headObject(any(HeadObjectRequest.class))).thenAnswer(invocation -> {
+            HeadObjectRequest request = invocation.getArgument(0);
+            if (!request.key().equals("video.mp4")) {
+                return CompletableFuture.failedFuture(S3Exception.builder().statusCode(404).message("Not Found").build());
+            }
+            return CompletableFuture.completedFuture(HeadObjectResponse.builder().contentLength((long) content.length).build());
+        });
+        // Answers ranged GETs from the content, like S3 does for "bytes=first-last"
+        when(s3AsyncClient.getObject(any(GetObjectRequest.class), any(AsyncResponseTransformer.class))).thenAnswer(invocation -> {
+            GetObjectRequest request = invocation.getArgument(0);
+            requestedRanges.add(request.range());
+            String[] range = request.range().substring("bytes=".length()).split("-");
+            byte[] bytes = Arrays.copyOfRange(content, Integer.parseInt(range[0]), Integer.parseInt(range[1]) + 1);
+            return CompletableFuture.completedFuture(ResponseBytes.fromByteArray(GetObjectResponse.builder().build(), bytes));
+        });
+    }
+
+    @Test
+    void find_MissingObject_ReturnsEmpty() throws IOException {
+        assertTrue(store.find("missing.mp4").isEmpty());
+    }
+
+    @Test
+    void transferTo_Range_FetchesWindowsOfReadSize() throws IOException {
+        StoredVideo video = store.find("video.mp4").orElseThrow();
+        ByteArrayOutputStream out = new ByteArrayOutputStream();
+
+        video.transferTo(500, 2200, Channels.newChannel(out));
+
+        assertEquals(content.length, video.length());
+        assertTrue(video.localFile().isEmpty());
+        assertArrayEquals(Arrays.copyOfRange(content, 500, 2700), out.toByteArray());
+        assertEquals(List.of("bytes=500-1499", "bytes=1500-2499", "bytes=2500-2699"), requestedRanges);
+    }
+
+    @Test
+    void resource_Skipped_FetchesNothingBeforeTheRegion() throws IOException {
+        StoredVideo video = store.find("video.mp4").orElseThrow();
+
+        try (InputStream input = video.resource().getInputStream()) {
+            assertEquals(3000, input.skip(3000));
+            assertArrayEquals(Arrays.copyOfRange(content, 3000, 4500), input.readAllBytes());
+        }
+        assertEquals(List.of("bytes=3000-3999", "bytes=4000-4499"), requestedRanges);
+    }
+
+    @Test
+    void publish_Stream_UploadedUnderTheNameItIsReadBy() throws Exception {
+        InputStream body = new ByteArrayInputStream(content);
+
+        StoredVideo video = store.publish("video.mp4", body);
+
+        verify(uploadService).uploadStream(eq("video.mp4"), eq(body));
+        assertTrue(store.acceptsStreams());
+        assertEquals(content.length, video.length());
+        assertEquals("s3://bucket/video.mp4", video.getLocation());
+    }
+}
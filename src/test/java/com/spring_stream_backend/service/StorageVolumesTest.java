@@ -0,0 +1,102 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.stream.IntStream;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+
+class StorageVolumesTest {
+
+    private static final int FILES = 10_000;
+
+    @TempDir
+    Path tempDir;
+
+    private List<Path> disks(int count) {
+        return IntStream.rangeClosed(1, count).mapToObj(i -> tempDir.resolve("disk" + i)).toList();
+    }
+
+    @Test
+    void volumeFor_SpreadsFilesEvenly() {
+        StorageVolumes volumes = new StorageVolumes(disks(4));
+
+        Map<Path, Integer> counts = new HashMap<>();
+        for (int i = 0; i < FILES; i++) {
+            counts.merge(volumes.volumeFor("video-" + i + ".mp4"), 1, Integer::sum);
+        }
+
+        assertEquals(4, counts.size());
+        counts.values().forEach(count -> assertTrue(count > FILES / 4 * 0.8 && count < FILES / 4 * 1.2, "Uneven spread: " + counts));
+    }
+
+    @Test
+    void volumeFor_AddedVolume_OnlyMovesFilesToIt() {
+        StorageVolumes before = new StorageVolumes(disks(3));
+        StorageVolumes after = new StorageVolumes(disks(4));
+        Path added = disks(4).get(3);
+
+        int moved = 0;
+        for (int i = 0; i < FILES; i++) {
+            String name = "video-" + i + ".mp4";
+            if (!before.volumeFor(name).equals(after.volumeFor(name))) {
+                assertEquals(added, after.volumeFor(name));
+                moved++;
+            }
+        }
+
+        assertTrue(moved > FILES / 4 * 0.8 && moved < FILES / 4 * 1.2, "Moved " + moved);
+    }
+
+    @Test
+    void volumeFor_KeyframeIndexFollowsItsVideo() {
+        StorageVolumes volumes = new StorageVolumes(disks(4));
+
+        for (int i = 0; i < 100; i++) {
+            assertEquals(volumes.volumeFor("video-" + i + ".mp4"), volumes.volumeFor("video-" + i + ".mp4.idx"));
+        }
+    }
+
+    @Test
+    void rebalance_AddedVolume_MovesFilesToTheirOwner() throws Exception {
+        List<Path> disks = disks(2);
+        Path old = Files.createDirectories(disks.get(0));
+        for (int i = 0; i < 50; i++) {
+            Files.writeString(old.resolve("video-" + i + ".mp4"), "video " + i);
+        }
+        Files.createDirectories(old.resolve(".cas"));
+        Files.writeString(old.resolve(".cas").resolve("blob"), "blob");
+        StorageVolumes volumes = new StorageVolumes(disks);
+
+        int moved = volumes.rebalance("", 1, file -> true);
+
+        assertTrue(moved > 0);
+        for (int i = 0; i < 50; i++) {
+            String name = "video-" + i + ".mp4";
+            assertEquals(volumes.resolve(name), volumes.locate(name));
+            assertEquals("video " + i, Files.readString(volumes.locate(name)));
+        }
+        assertTrue(Files.exists(old.resolve(".cas").resolve("blob")));
+        assertFalse(Files.exists(disks.get(1).resolve(".cas")));
+    }
+
+    @Test
+    void locate_NotRebalancedYet_FindsFileOnItsOldVolume() throws Exception {
+        List<Path> disks = disks(2);
+        StorageVolumes volumes = new StorageVolumes(disks);
+        String name = IntStream.range(0, 100).mapToObj(i -> "video-" + i + ".mp4")
+                .filter(candidate -> volumes.volumeFor(candidate).equals(disks.get(1)))
+                .findFirst().orElseThrow();
+        Path old = Files.writeString(Files.createDirectories(disks.get(0)).resolve(name), "video");
+
+        assertEquals(old, volumes.locate(name));
+    }
+}
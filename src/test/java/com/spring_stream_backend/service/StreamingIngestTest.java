@@ -0,0 +1,70 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.EOFException;
+import java.io.IOException;
+import java.nio.channels.Channels;
+import java.nio.channels.FileChannel;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+import java.util.Arrays;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class StreamingIngestTest {
+
+    @TempDir
+    Path tempDir;
+
+    // Smaller than the inputs, so every copy takes several rounds through the buffer
+    private final StreamingIngest ingest = new StreamingIngest(new DirectBufferPool(1024, 4));
+
+    private static byte[] content(int length) {
+        byte[] content = new byte[length];
+        for (int i = 0; i < length; i++) {
+            content[i] = (byte) i;
+        }
+        return content;
+    }
+
+    @Test
+    void writeAt_WritesAtOffset() throws IOException {
+        byte[] content = content(5000);
+        Path target = tempDir.resolve("target");
+        try (FileChannel channel = FileChannel.open(target, StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            ingest.writeAt(new ByteArrayInputStream(content), channel, 3000, content.length);
+        }
+
+        byte[] written = Files.readAllBytes(target);
+        assertEquals(8000, written.length);
+        assertArrayEquals(content, Arrays.copyOfRange(written, 3000, 8000));
+    }
+
+    @Test
+    void writeAt_ShortInput_Throws() throws IOException {
+        try (FileChannel channel = FileChannel.open(tempDir.resolve("target"), StandardOpenOption.CREATE, StandardOpenOption.WRITE)) {
+            assertThrows(EOFException.class, () -> ingest.writeAt(new ByteArrayInputStream(content(100)), channel, 0, 200));
+        }
+    }
+
+    @Test
+    void copy_StopsAtMaxBytes() throws IOException {
+        byte[] content = content(5000);
+        ByteArrayInputStream input = new ByteArrayInputStream(content);
+        ByteArrayOutputStream first = new ByteArrayOutputStream();
+        ByteArrayOutputStream rest = new ByteArrayOutputStream();
+
+        assertEquals(3000, ingest.copy(input, Channels.newChannel(first), 3000));
+        assertEquals(2000, ingest.copy(input, Channels.newChannel(rest), 3000));
+
+        assertArrayEquals(Arrays.copyOfRange(content, 0, 3000), first.toByteArray());
+        assertArrayEquals(Arrays.copyOfRange(content, 3000, 5000), rest.toByteArray());
+    }
+}
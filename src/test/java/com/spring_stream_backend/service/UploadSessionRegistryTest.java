@@ -0,0 +1,100 @@
+package com.spring_stream_backend.service;
+
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.NoSuchElementException;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+
+class UploadSessionRegistryTest {
+
+    private static final long IDLE_TIMEOUT = TimeUnit.MINUTES.toMillis(30);
+    private static final long MAX_SIZE = 1024 * 1024 * 1024;
+
+    @TempDir
+    Path tempDir;
+
+    private final AtomicLong clock = new AtomicLong(System.currentTimeMillis());
+
+    private UploadSessionRegistry newRegistry() {
+        return new UploadSessionRegistry(tempDir, IDLE_TIMEOUT, MAX_SIZE, clock::get);
+    }
+
+    @Test
+    void create_NewSession_ReportsEveryChunkMissing() throws IOException {
+        UploadSession session = newRegistry().create("movie", 2500, 1000);
+
+        UploadSessionStatus status = session.status();
+        assertEquals("movie", status.fileName());
+        assertEquals(3, status.totalChunks());
+        assertEquals(List.of(0, 1, 2), status.missingChunks());
+        assertEquals(2500, Files.size(session.getUpload().getDataFile()));
+    }
+
+    @Test
+    void restore_AfterRestart_KeepsReceivedChunks() throws IOException {
+        UploadSession session = newRegistry().create("movie", 2500, 1000);
+        session.getUpload().markReceived(1, 0x1234abcd, new byte[32]);
+
+        UploadSessionRegistry restarted = newRegistry();
+        restarted.restore();
+
+        UploadSessionStatus status = restarted.get(session.getId()).status();
+        assertEquals("movie", status.fileName());
+        assertEquals(List.of(0, 2), status.missingChunks());
+    }
+
+    @Test
+    void abort_DeletesSessionFiles() throws IOException {
+        UploadSessionRegistry registry = newRegistry();
+        UploadSession session = registry.create("movie", 2500, 1000);
+
+        registry.abort(session.getId());
+
+        assertFalse(Files.exists(session.getUpload().getDataFile()));
+        assertFalse(Files.exists(session.getUpload().getStateFile()));
+        assertThrows(NoSuchElementException.class, () -> registry.get(session.getId()));
+    }
+
+    @Test
+    void get_IdleSession_IsExpired() throws IOException {
+        UploadSessionRegistry registry = newRegistry();
+        UploadSession session = registry.create("movie", 2500, 1000);
+
+        clock.addAndGet(IDLE_TIMEOUT + 1);
+
+        assertThrows(NoSuchElementException.class, () -> registry.get(session.getId()));
+        assertFalse(Files.exists(session.getUpload().getDataFile()));
+        assertEquals(0, registry.size());
+    }
+
+    @Test
+    void create_LargerThanMaximum_RejectedBeforeAllocating() throws IOException {
+        UploadSessionRegistry registry = newRegistry();
+
+        assertThrows(IllegalArgumentException.class, () -> registry.create("movie", 1L << 40, 1));
+        assertThrows(IllegalArgumentException.class, () -> registry.create("movie", MAX_SIZE + 1, 20 * 1024 * 1024));
+        assertEquals(0, registry.size());
+        try (var files = Files.list(tempDir)) {
+            assertEquals(0, files.count());
+        }
+    }
+
+    @Test
+    void create_TooManyChunks_Rejected() throws IOException {
+        UploadSessionRegistry registry = newRegistry();
+
+        assertThrows(IllegalArgumentException.class, () -> registry.create("movie", ChunkedUpload.MAX_CHUNKS + 1, 1));
+        assertThrows(IllegalArgumentException.class, () -> ChunkedUpload.chunkCount(Long.MAX_VALUE, 1));
+        assertEquals(ChunkedUpload.MAX_CHUNKS, registry.create("movie", ChunkedUpload.MAX_CHUNKS, 1).status().totalChunks());
+    }
+}
@@ -0,0 +1,136 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.entity.Video;
+import com.spring_stream_backend.repository.VideoRepository;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.dao.DataAccessResourceFailureException;
+
+import java.io.IOException;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.List;
+import java.util.Optional;
+import java.util.concurrent.atomic.AtomicLong;
+
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertSame;
+import static org.junit.jupiter.api.Assertions.assertThrows;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.ArgumentMatchers.argThat;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.never;
+import static org.mockito.Mockito.times;
+import static org.mockito.Mockito.verify;
+import static org.mockito.Mockito.when;
+
+class VideoCatalogTest {
+
+    @TempDir
+    Path tempDir;
+
+    private static final long MISS_TTL = 5000;
+
+    private final VideoRepository videoRepository = mock(VideoRepository.class);
+    private final AtomicLong clock = new AtomicLong(42);
+    private LocalVideoStore videoStore;
+    private VideoCatalog catalog;
+
+    @BeforeEach
+    void setUp() throws IOException {
+        Files.write(tempDir.resolve("a.mp4"), new byte[100]);
+        Files.write(tempDir.resolve("b.mkv"), new byte[200]);
+        videoStore = new LocalVideoStore(new StorageVolumes(List.of(tempDir)), new DirectBufferPool(1024, 4));
+        catalog = new VideoCatalog(videoRepository, videoStore, 1, MISS_TTL, clock::get);
+        when(videoRepository.findById(any())).thenReturn(Optional.empty());
+        when(videoRepository.save(any(Video.class))).thenAnswer(invocation -> invocation.getArgument(0));
+    }
+
+    @Test
+    void find_Uncatalogued_DescribesFromStoreOnceThenServesFromCache() throws IOException {
+        Video first = catalog.find("a.mp4").orElseThrow();
+        Video second = catalog.find("a.mp4").orElseThrow();
+
+        assertSame(first, second);
+        assertEquals(100, first.getSize());
+        assertEquals(tempDir.resolve("a.mp4").toString(), first.getStorageLocation());
+        assertNull(first.getDurationMillis()); // not an indexed MP4
+        assertEquals(42L, first.getUpdatedAt());
+        verify(videoRepository, times(1)).findById("a.mp4");
+        verify(videoRepository, times(1)).save(first);
+    }
+
+    @Test
+    void find_OverCacheSize_EvictsLeastRecentlyUsed() throws IOException {
+        catalog.find("a.mp4");
+        catalog.find("b.mkv");
+        catalog.find("a.mp4");
+
+        verify(videoRepository, times(2)).findById("a.mp4");
+        assertEquals(1, catalog.size());
+    }
+
+    @Test
+    void find_Missing_ReturnsEmptyWithoutSaving() throws IOException {
+        assertTrue(catalog.find("missing.mp4").isEmpty());
+
+        verify(videoRepository, never()).save(any(Video.class));
+    }
+
+    @Test
+    void find_MissingAgainWithinTtl_AnsweredFromCache() throws IOException {
+        catalog.find("missing.mp4");
+        assertTrue(catalog.find("missing.mp4").isEmpty());
+        verify(videoRepository, times(1)).findById("missing.mp4");
+
+        clock.addAndGet(MISS_TTL);
+        assertTrue(catalog.find("missing.mp4").isEmpty());
+        verify(videoRepository, times(2)).findById("missing.mp4");
+    }
+
+    @Test
+    void register_CachedMiss_FoundRightAway() throws IOException {
+        assertTrue(catalog.find("c.mp4").isEmpty());
+        Path file = Files.write(tempDir.resolve("c.mp4"), new byte[50]);
+
+        catalog.register(videoStore.publish("c.mp4", file), file, "checksum", false);
+
+        assertEquals(50, catalog.find("c.mp4").orElseThrow().getSize());
+    }
+
+    @Test
+    void register_SaveFails_ThrowsAndDropsTheCachedEntry() throws IOException {
+        catalog.find("a.mp4");
+        Path file = Files.write(tempDir.resolve("a.mp4"), new byte[300]);
+        when(videoRepository.save(argThat(video -> "checksum".equals(video.getChecksum()))))
+                .thenThrow(new DataAccessResourceFailureException("database down"));
+
+        assertThrows(DataAccessResourceFailureException.class,
+                () -> catalog.register(videoStore.publish("a.mp4", file), file, "checksum", false));
+
+        assertEquals(300, catalog.find("a.mp4").orElseThrow().getSize()); // described again, not the stale entry
+    }
+
+    @Test
+    void find_SaveOfDiscoveredVideoFails_StillServed() throws IOException {
+        when(videoRepository.save(any(Video.class))).thenThrow(new DataAccessResourceFailureException("database down"));
+
+        assertEquals(100, catalog.find("a.mp4").orElseThrow().getSize());
+    }
+
+    @Test
+    void register_ReUpload_ReplacesCachedEntry() throws IOException {
+        catalog.find("a.mp4");
+        Path file = Files.write(tempDir.resolve("a.mp4"), new byte[300]);
+
+        catalog.register(videoStore.publish("a.mp4", file), file, "checksum", false);
+        Video video = catalog.find("a.mp4").orElseThrow();
+
+        assertEquals(300, video.getSize());
+        assertEquals("checksum", video.getChecksum());
+        assertEquals(300, catalog.open(video).length());
+    }
+}
@@ -0,0 +1,205 @@
+package com.spring_stream_backend.service;
+
+import com.spring_stream_backend.entity.Video;
+import org.junit.jupiter.api.BeforeEach;
+import org.junit.jupiter.api.Test;
+import org.junit.jupiter.api.io.TempDir;
+import org.springframework.core.io.Resource;
+import org.springframework.http.HttpHeaders;
+import org.springframework.http.HttpStatus;
+import org.springframework.http.ResponseEntity;
+import org.springframework.mock.web.MockHttpServletRequest;
+import org.springframework.mock.web.MockHttpServletResponse;
+
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Optional;
+import java.util.regex.Matcher;
+import java.util.regex.Pattern;
+
+import static org.junit.jupiter.api.Assertions.assertArrayEquals;
+import static org.junit.jupiter.api.Assertions.assertEquals;
+import static org.junit.jupiter.api.Assertions.assertFalse;
+import static org.junit.jupiter.api.Assertions.assertNull;
+import static org.junit.jupiter.api.Assertions.assertTrue;
+import static org.mockito.ArgumentMatchers.any;
+import static org.mockito.Mockito.mock;
+import static org.mockito.Mockito.when;
+
+class VideoStreamingServiceTest {
+
+    private static final long UPDATED_AT = 1_700_000_000_000L;
+    private static final Pattern PART_RANGE = Pattern.compile("Content-Range: bytes (\\d+)-(\\d+)/4096\r\n\r\n");
+
+    @TempDir
+    Path tempDir;
+
+    private final VideoCatalog videoCatalog = mock(VideoCatalog.class);
+    private final VideoStreamingService service = new VideoStreamingService(videoCatalog, new FixedChunkSizePolicy(1024));
+    private final MockHttpServletRequest request = new MockHttpServletRequest("GET", "/api/stream/videos/a.mp4");
+    private final MockHttpServletResponse response = new MockHttpServletResponse();
+    private final byte[] content = new byte[4096];
+
+    @BeforeEach
+    void setUp() throws IOException {
+        for (int i = 0; i < content.length; i++) {
+            content[i] = (byte) (i * 31);
+        }
+        Path videoFile = Files.write(tempDir.resolve("a.mp4"), content);
+        LocalVideoStore store = new LocalVideoStore(new StorageVolumes(List.of(tempDir)), new DirectBufferPool(1024, 4));
+        when(videoCatalog.open(any(Video.class))).thenAnswer(invocation -> store.open("a.mp4", videoFile.toString(), content.length));
+        when(videoCatalog.find("a.mp4")).thenReturn(Optional.of(
+                new Video("a.mp4", 4096, "video/mp4", null, "hash", false, "/videos/a.mp4", UPDATED_AT)));
+        when(videoCatalog.find("b.mp4")).thenReturn(Optional.of(
+                new Video("b.mp4", 4096, "video/mp4", null, "other", true, "/videos/b.mp4", UPDATED_AT)));
+    }
+
+    @Test
+    void checkNotModified_MatchingETag_Answers304() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"hash\"");
+
+        assertTrue(service.checkNotModified("a.mp4", request, response));
+        assertEquals(304, response.getStatus());
+        assertEquals("\"hash\"", response.getHeader(HttpHeaders.ETAG));
+    }
+
+    @Test
+    void checkNotModified_StaleETag_WritesValidators() throws IOException {
+        request.addHeader(HttpHeaders.IF_NONE_MATCH, "\"old\"");
+
+        assertFalse(service.checkNotModified("a.mp4", request, response));
+        assertEquals("\"hash\"", response.getHeader(HttpHeaders.ETAG));
+        assertEquals(UPDATED_AT / 1000 * 1000, response.getDateHeader(HttpHeaders.LAST_MODIFIED));
+        assertEquals("no-cache, public", response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    void checkNotModified_ContentAddressedVideo_IsImmutable() throws IOException {
+        assertFalse(service.checkNotModified("b.mp4", request, response));
+        assertEquals("max-age=31536000, public, immutable", response.getHeader(HttpHeaders.CACHE_CONTROL));
+    }
+
+    @Test
+    void currentRange_IfRange_KeepsRangeOnlyForCurrentVersion() throws IOException {
+        assertEquals("bytes=0-99", service.currentRange("a.mp4", "bytes=0-99", "\"hash\""));
+        assertNull(service.currentRange("a.mp4", "bytes=0-99", "\"old\""));
+        assertNull(service.currentRange("a.mp4", "bytes=0-99", "W/\"hash\""));
+        assertEquals("bytes=0-99", service.currentRange("a.mp4", "bytes=0-99", "Tue, 14 Nov 2023 22:13:20 GMT"));
+        assertNull(service.currentRange("a.mp4", "bytes=0-99", "Mon, 13 Nov 2023 22:13:20 GMT"));
+    }
+
+    @Test
+    void streamMultiRange_OverlappingAndAdjacentRanges_AreCoalesced() throws IOException {
+        service.streamMultiRange("a.mp4", "bytes=1000-1099,0-99,50-199,200-299", response);
+
+        assertEquals(206, response.getStatus());
+        assertTrue(response.getContentType().startsWith("multipart/byteranges; boundary="));
+        assertEquals(List.of("0-299", "1000-1099"), partRanges(response.getContentAsByteArray()));
+    }
+
+    @Test
+    void streamMultiRange_ManyRanges_ServesAtMostSixteenParts() throws IOException {
+        StringBuilder rangeHeader = new StringBuilder("bytes=0-0");
+        for (int i = 1; i < 20; i++) {
+            rangeHeader.append(',').append(10 * i).append('-').append(10 * i);
+        }
+
+        service.streamMultiRange("a.mp4", rangeHeader.toString(), response);
+
+        assertEquals(16, partRanges(response.getContentAsByteArray()).size());
+    }
+
+    @Test
+    void streamMultiRange_NoSatisfiableRange_Answers416() throws IOException {
+        service.streamMultiRange("a.mp4", "bytes=5000-5100,6000-6100", response);
+
+        assertEquals(416, response.getStatus());
+        assertEquals("bytes */4096", response.getHeader(HttpHeaders.CONTENT_RANGE));
+    }
+
+    @Test
+    void streamVideoNio_RangeStartsPastTheEnd_Answers416() {
+        ResponseEntity<Resource> answer = service.streamVideoNio("a.mp4", "bytes=4096-5000", null);
+
+        assertEquals(HttpStatus.REQUESTED_RANGE_NOT_SATISFIABLE, answer.getStatusCode());
+        assertEquals("bytes */4096", answer.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertNull(answer.getBody());
+    }
+
+    @Test
+    void streamVideoNio_RangeWithinTheFile_ServesIt() throws IOException {
+        ResponseEntity<Resource> answer = service.streamVideoNio("a.mp4", "bytes=4000-", null);
+
+        assertEquals(HttpStatus.PARTIAL_CONTENT, answer.getStatusCode());
+        assertEquals("bytes 4000-4095/4096", answer.getHeaders().getFirst(HttpHeaders.CONTENT_RANGE));
+        assertArrayEquals(Arrays.copyOfRange(content, 4000, 4096), answer.getBody().getInputStream().readAllBytes());
+    }
+
+    @Test
+    void streamMultiRange_RangesCoalescedIntoOne_AnsweredAsSingleRange() throws IOException {
+        service.streamMultiRange("a.mp4", "bytes=0-99,100-199", response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("video/mp4", response.getContentType());
+        assertEquals("bytes 0-199/4096", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(200, response.getContentLengthLong());
+        assertArrayEquals(Arrays.copyOfRange(content, 0, 200), response.getContentAsByteArray());
+    }
+
+    @Test
+    void streamMultiRange_DeclaredContentLength_MatchesBytesWritten() throws IOException {
+        service.streamMultiRange("a.mp4", "bytes=10-19,-10,2000-2999", response);
+
+        byte[] body = response.getContentAsByteArray();
+        assertEquals(body.length, response.getContentLengthLong());
+        String text = new String(body, StandardCharsets.ISO_8859_1);
+        Matcher part = PART_RANGE.matcher(text);
+        int parts = 0;
+        while (part.find()) {
+            parts++;
+            int start = Integer.parseInt(part.group(1));
+            int end = Integer.parseInt(part.group(2));
+            assertArrayEquals(Arrays.copyOfRange(content, start, end + 1), Arrays.copyOfRange(body, part.end(), part.end() + end - start + 1));
+        }
+        assertEquals(3, parts);
+        assertTrue(text.endsWith("--\r\n"));
+    }
+
+    @Test
+    void streamVideoZeroCopy_SendfileSupported_HandsRangeToConnector() throws IOException {
+        request.setAttribute("org.apache.tomcat.sendfile.support", Boolean.TRUE);
+
+        service.streamVideoZeroCopy("a.mp4", "bytes=100-199", request, response);
+
+        assertEquals(206, response.getStatus());
+        assertEquals("bytes 100-199/4096", response.getHeader(HttpHeaders.CONTENT_RANGE));
+        assertEquals(100, response.getContentLengthLong());
+        assertEquals(tempDir.resolve("a.mp4").toAbsolutePath().toString(), request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertEquals(100L, request.getAttribute("org.apache.tomcat.sendfile.start"));
+        assertEquals(200L, request.getAttribute("org.apache.tomcat.sendfile.end")); // exclusive
+        assertEquals(0, response.getContentAsByteArray().length); // written by the connector
+    }
+
+    @Test
+    void streamVideoZeroCopy_NoSendfile_WritesExactlyTheRange() throws IOException {
+        service.streamVideoZeroCopy("a.mp4", "bytes=100-199", request, response);
+
+        assertEquals(206, response.getStatus());
+        assertNull(request.getAttribute("org.apache.tomcat.sendfile.filename"));
+        assertArrayEquals(Arrays.copyOfRange(content, 100, 200), response.getContentAsByteArray());
+    }
+
+    private static List<String> partRanges(byte[] body) {
+        Matcher part = PART_RANGE.matcher(new String(body, StandardCharsets.ISO_8859_1));
+        List<String> ranges = new ArrayList<>();
+        while (part.find()) {
+            ranges.add(part.group(1) + "-" + part.group(2));
+        }
+        return ranges;
+    }
+}